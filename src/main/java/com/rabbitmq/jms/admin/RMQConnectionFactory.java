@@ -8,6 +8,9 @@ import com.rabbitmq.client.NoOpMetricsCollector;
 import com.rabbitmq.jms.client.ConnectionParams;
 import com.rabbitmq.jms.client.RMQConnection;
 import com.rabbitmq.jms.client.RMQMessage;
+import com.rabbitmq.jms.client.RMQSession;
+import com.rabbitmq.jms.client.CompressionMetricsCollector;
+import com.rabbitmq.jms.client.MessageIdGenerator;
 import com.rabbitmq.jms.client.ReceivingContextConsumer;
 import com.rabbitmq.jms.client.SendingContextConsumer;
 import com.rabbitmq.jms.util.RMQJMSException;
@@ -207,6 +210,124 @@ public class RMQConnectionFactory implements ConnectionFactory, Referenceable, S
      */
     private boolean declareReplyToDestination = true;
 
+    /**
+     * Number of messages to prefetch for synchronous receive.
+     * 0 (the default) means messages are polled one at a time.
+     *
+     * @since 2.0.0
+     */
+    private int receivePrefetch = 0;
+
+    /**
+     * Number of acknowledgements to coalesce into one multiple acknowledgement
+     * in {@link javax.jms.Session#AUTO_ACKNOWLEDGE} and {@link javax.jms.Session#DUPS_OK_ACKNOWLEDGE} sessions.
+     *
+     * @since 2.0.0
+     */
+    private int ackBatchSize = 0;
+
+    /**
+     * Maximum time in milliseconds a coalesced acknowledgement can be delayed.
+     *
+     * @since 2.0.0
+     */
+    private int ackBatchMaxDelayMs = RMQSession.DEFAULT_ACK_BATCH_MAX_DELAY_MS;
+
+    /**
+     * Whether {@link MessageListener#onMessage(Message)} is called directly on the
+     * delivering thread, with a connection-wide watchdog enforcing the timeout.
+     *
+     * @since 2.0.0
+     */
+    private boolean directListenerDispatch = false;
+
+    /**
+     * Number of threads each consumer calls its {@link MessageListener} on.
+     *
+     * @since 2.0.0
+     */
+    private int listenerConcurrency = 0;
+
+    /**
+     * Message property whose values are processed in order when listeners are called concurrently.
+     *
+     * @since 2.0.0
+     */
+    private String listenerOrderingProperty = RMQSession.DEFAULT_LISTENER_ORDERING_PROPERTY;
+
+    /**
+     * Whether sessions call {@link MessageListener}s on virtual threads, where the JVM supports them.
+     *
+     * @since 2.0.0
+     */
+    private boolean useVirtualThreads = false;
+
+    /**
+     * Whether the properties and body of received messages are decoded on first access.
+     *
+     * @since 2.0.0
+     */
+    private boolean lazyMessageDecoding = false;
+
+    /**
+     * Whether non-transacted sessions publish with publisher confirms.
+     *
+     * @since 2.0.0
+     */
+    private boolean usePublisherConfirms = false;
+
+    /**
+     * Maximum number of messages a session with publisher confirms may have sent but not had confirmed.
+     * Default is 0, meaning no limit.
+     *
+     * @since 2.0.0
+     */
+    private int maxUnconfirmedMessages = 0;
+
+    /**
+     * Whether JMS messages are sent in the compact binary format rather than with Java serialization.
+     *
+     * @since 2.0.0
+     */
+    private boolean useCompactMessageFormat = false;
+
+    /**
+     * Generates the IDs of the messages sent; <code>null</code> for a {@link MessageIdGenerator#sequential()}
+     * generator for each connection.
+     *
+     * @since 2.0.0
+     */
+    private MessageIdGenerator messageIdGenerator = null;
+
+    /**
+     * Payloads of messages sent larger than this number of bytes are compressed; 0 for none.
+     *
+     * @since 2.0.0
+     */
+    private int compressionThreshold = 0;
+
+    /**
+     * Collects the sizes of the payloads compressed and decompressed.
+     *
+     * @since 2.0.0
+     */
+    private CompressionMetricsCollector compressionMetricsCollector = CompressionMetricsCollector.NO_OP;
+
+    /**
+     * Payloads of messages received decompressing to more than this number of bytes are rejected; 0 for no limit.
+     *
+     * @since 2.0.0
+     */
+    private int maxDecompressedSize = 64 * 1024 * 1024;
+
+    /**
+     * Payloads of messages sent larger than this number of bytes are split into chunk messages of this size; 0 for
+     * none.
+     *
+     * @since 2.0.0
+     */
+    private int largeMessageChunkSize = 0;
+
     /**
      * {@inheritDoc}
      */
@@ -284,6 +405,22 @@ public class RMQConnectionFactory implements ConnectionFactory, Referenceable, S
                 .setAmqpPropertiesCustomiser(amqpPropertiesCustomiser)
                 .setSendingContextConsumer(sendingContextConsumer)
                 .setReceivingContextConsumer(rcc)
+                .setReceivePrefetch(receivePrefetch)
+                .setAckBatchSize(ackBatchSize)
+                .setAckBatchMaxDelayMs(ackBatchMaxDelayMs)
+                .setDirectListenerDispatch(directListenerDispatch)
+                .setListenerConcurrency(listenerConcurrency)
+                .setListenerOrderingProperty(listenerOrderingProperty)
+                .setUseVirtualThreads(useVirtualThreads)
+                .setLazyMessageDecoding(lazyMessageDecoding)
+                .setUsePublisherConfirms(usePublisherConfirms)
+                .setMaxUnconfirmedMessages(maxUnconfirmedMessages)
+                .setUseCompactMessageFormat(useCompactMessageFormat)
+                .setMessageIdGenerator(messageIdGenerator)
+                .setCompressionThreshold(compressionThreshold)
+                .setCompressionMetricsCollector(compressionMetricsCollector)
+                .setMaxDecompressedSize(maxDecompressedSize)
+                .setLargeMessageChunkSize(largeMessageChunkSize)
         );
         conn.setTrustedPackages(this.trustedPackages);
         logger.debug("Connection {} created.", conn);
@@ -950,6 +1087,382 @@ public class RMQConnectionFactory implements ConnectionFactory, Referenceable, S
         this.requeueOnNackException = requeueOnNackException;
     }
 
+    public int getReceivePrefetch() {
+        return receivePrefetch;
+    }
+
+    /**
+     * Number of messages to prefetch for {@link javax.jms.MessageConsumer#receive()}.
+     * <p>
+     * When positive, a consumer used synchronously subscribes to its queue and buffers up to this
+     * number of messages, so <code>receive</code> calls return from memory and blocked calls are
+     * woken as soon as a message arrives. Prefetching only applies to non-transacted sessions with
+     * {@link javax.jms.Session#AUTO_ACKNOWLEDGE} or {@link javax.jms.Session#DUPS_OK_ACKNOWLEDGE};
+     * other sessions still poll.
+     * <p>
+     * Default is 0: messages are polled one at a time with <code>basic.get</code>.
+     * Negative values are rejected.
+     *
+     * @param receivePrefetch number of messages to buffer per consumer
+     * @since 2.0.0
+     */
+    public void setReceivePrefetch(int receivePrefetch) {
+        if (receivePrefetch >= 0) this.receivePrefetch = receivePrefetch;
+        else
+            this.logger.warn("Cannot set receivePrefetch to negative value {} (on {})", receivePrefetch, this);
+    }
+
+    public int getAckBatchSize() {
+        return ackBatchSize;
+    }
+
+    /**
+     * Number of acknowledgements to coalesce into one multiple acknowledgement.
+     * <p>
+     * Sessions in {@link javax.jms.Session#AUTO_ACKNOWLEDGE} and {@link javax.jms.Session#DUPS_OK_ACKNOWLEDGE}
+     * mode acknowledge each message as it is received. With a batch size greater than 1, these acknowledgements
+     * are sent as one multiple acknowledgement when the batch is full, when the oldest one has waited
+     * {@link #setAckBatchMaxDelayMs(int) ackBatchMaxDelayMs}, or when the session is closed or recovered.
+     * Messages whose acknowledgement is still pending are redelivered if the connection fails.
+     * <p>
+     * Default is 0: no coalescing for AUTO_ACKNOWLEDGE, and batches of
+     * {@value RMQSession#DEFAULT_DUPS_OK_ACK_BATCH_SIZE} for DUPS_OK_ACKNOWLEDGE.
+     * Set to 1 to acknowledge each message individually in both modes.
+     * Coalescing is not used when {@link #setReceivePrefetch(int) receivePrefetch} is set, and the batch size is
+     * capped by {@link #setChannelsQos(int) channelsQos}. Negative values are rejected.
+     *
+     * @param ackBatchSize number of acknowledgements to coalesce
+     * @since 2.0.0
+     */
+    public void setAckBatchSize(int ackBatchSize) {
+        if (ackBatchSize >= 0) this.ackBatchSize = ackBatchSize;
+        else
+            this.logger.warn("Cannot set ackBatchSize to negative value {} (on {})", ackBatchSize, this);
+    }
+
+    public int getAckBatchMaxDelayMs() {
+        return ackBatchMaxDelayMs;
+    }
+
+    /**
+     * Maximum time in milliseconds a coalesced acknowledgement can be delayed.
+     * Default is {@value RMQSession#DEFAULT_ACK_BATCH_MAX_DELAY_MS} ms. Non-positive values are rejected.
+     *
+     * @param ackBatchMaxDelayMs duration in milliseconds
+     * @see #setAckBatchSize(int)
+     * @since 2.0.0
+     */
+    public void setAckBatchMaxDelayMs(int ackBatchMaxDelayMs) {
+        if (ackBatchMaxDelayMs > 0) this.ackBatchMaxDelayMs = ackBatchMaxDelayMs;
+        else
+            this.logger.warn("Cannot set ackBatchMaxDelayMs to non-positive value {} (on {})", ackBatchMaxDelayMs, this);
+    }
+
+    public boolean isDirectListenerDispatch() {
+        return directListenerDispatch;
+    }
+
+    /**
+     * Whether {@link MessageListener#onMessage(Message)} is called directly on the thread
+     * that delivers the message.
+     * <p>
+     * By default each session hands every message to its own delivery thread and waits for
+     * <code>onMessage</code> to return, so that it can give up after {@link #setOnMessageTimeoutMs(int) onMessageTimeoutMs}.
+     * When this is set to <code>true</code>, <code>onMessage</code> is a plain method call and a single watchdog
+     * per connection interrupts calls that overrun the timeout; the message is then negatively acknowledged as before.
+     * The difference is that the delivering thread cannot move on until <code>onMessage</code> actually returns,
+     * so listeners should respond to interruption.
+     * <p>
+     * Default is false.
+     *
+     * @param directListenerDispatch true to call listeners directly
+     * @since 2.0.0
+     */
+    public void setDirectListenerDispatch(boolean directListenerDispatch) {
+        this.directListenerDispatch = directListenerDispatch;
+    }
+
+    public int getListenerConcurrency() {
+        return listenerConcurrency;
+    }
+
+    /**
+     * Number of threads each consumer calls its {@link MessageListener} on.
+     * <p>
+     * When greater than 1, a consumer with a listener subscribes on a channel of its own and passes messages to
+     * the listener on a pool of this many threads. Messages with the same value of the
+     * {@link #setListenerOrderingProperty(String) listenerOrderingProperty} are still processed one at a time,
+     * in order; other messages are processed in parallel. Processed messages are acknowledged once all the messages
+     * delivered before them have been processed, so messages in progress are redelivered if the connection fails.
+     * The number of messages in progress is bounded by {@link #setChannelsQos(int) channelsQos}, or by
+     * twice the number of threads if that is not set. Concurrent listeners only apply to non-transacted sessions with
+     * {@link javax.jms.Session#AUTO_ACKNOWLEDGE} or {@link javax.jms.Session#DUPS_OK_ACKNOWLEDGE};
+     * other sessions call listeners one at a time.
+     * <p>
+     * Default is 0: listeners are called one at a time. Negative values are rejected.
+     *
+     * @param listenerConcurrency number of threads per consumer
+     * @since 2.0.0
+     */
+    public void setListenerConcurrency(int listenerConcurrency) {
+        if (listenerConcurrency >= 0) this.listenerConcurrency = listenerConcurrency;
+        else
+            this.logger.warn("Cannot set listenerConcurrency to negative value {} (on {})", listenerConcurrency, this);
+    }
+
+    public String getListenerOrderingProperty() {
+        return listenerOrderingProperty;
+    }
+
+    /**
+     * Name of the message property whose values are processed in order when listeners are called concurrently.
+     * <p>
+     * Default is <code>JMSXGroupID</code>. Messages without the property are not ordered.
+     *
+     * @param listenerOrderingProperty name of a message property
+     * @see #setListenerConcurrency(int)
+     * @since 2.0.0
+     */
+    public void setListenerOrderingProperty(String listenerOrderingProperty) {
+        if (listenerOrderingProperty != null && !listenerOrderingProperty.trim().isEmpty())
+            this.listenerOrderingProperty = listenerOrderingProperty;
+        else
+            this.logger.warn("Cannot set listenerOrderingProperty to empty value (on {})", this);
+    }
+
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Whether sessions call {@link MessageListener#onMessage(Message)} on virtual threads.
+     * <p>
+     * Each session that has a listener otherwise holds a platform thread to call it on, which
+     * is costly for applications with thousands of sessions. When this is set to <code>true</code>
+     * and the JVM supports virtual threads (Java 21 or later), those threads are virtual instead;
+     * on other JVMs platform threads are used and an informational message is logged.
+     * Waits in {@link javax.jms.MessageConsumer#receive()} do not pin the carrier thread of a virtual
+     * thread calling it, whatever this setting.
+     * <p>
+     * Default is false.
+     *
+     * @param useVirtualThreads true to use virtual threads where possible
+     * @since 2.0.0
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    public boolean isLazyMessageDecoding() {
+        return lazyMessageDecoding;
+    }
+
+    /**
+     * Whether the properties and body of received JMS messages are decoded on first access.
+     * <p>
+     * By default a received message is fully deserialized before it is returned or passed to a listener.
+     * When this is set to <code>true</code>, the message keeps its raw payload: its properties are decoded when
+     * a property or header is first read, and its body when the body is first read. Consumers that look at one or two
+     * properties, or forward messages unread, then skip most of the decoding. <code>JMSType</code>,
+     * <code>JMSPriority</code> and <code>JMSCorrelationID</code> are answered from the AMQP headers without
+     * decoding anything. A malformed payload is then reported when it is first accessed rather than on receipt.
+     * This applies to messages in JMS format only, not to messages from AMQP destinations.
+     * <p>
+     * Default is false.
+     *
+     * @param lazyMessageDecoding true to decode received messages on first access
+     * @since 2.0.0
+     */
+    public void setLazyMessageDecoding(boolean lazyMessageDecoding) {
+        this.lazyMessageDecoding = lazyMessageDecoding;
+    }
+
+    public boolean isUsePublisherConfirms() {
+        return usePublisherConfirms;
+    }
+
+    /**
+     * Whether non-transacted sessions put their channel in confirm mode.
+     * <p>
+     * The broker then confirms each message it has taken responsibility for (for a persistent message to a
+     * durable queue, once it is written to disk). Messages sent with a {@link com.rabbitmq.jms.client.CompletionListener}
+     * (see {@link com.rabbitmq.jms.client.RMQMessageProducer#send(javax.jms.Message, com.rabbitmq.jms.client.CompletionListener)})
+     * have the listener called when they are confirmed, or rejected, in the order they were sent. Other messages are
+     * sent as usual, without waiting for their confirmation.
+     * This gives guaranteed delivery to the broker without the round trip of a transaction commit.
+     * <p>
+     * Default is false.
+     *
+     * @param usePublisherConfirms true to publish with publisher confirms
+     * @see #setMaxUnconfirmedMessages(int)
+     * @since 2.0.0
+     */
+    public void setUsePublisherConfirms(boolean usePublisherConfirms) {
+        this.usePublisherConfirms = usePublisherConfirms;
+    }
+
+    public int getMaxUnconfirmedMessages() {
+        return maxUnconfirmedMessages;
+    }
+
+    /**
+     * Maximum number of messages a session with publisher confirms may have sent and not had confirmed.
+     * <p>
+     * A send that would exceed this waits for confirmations. This bounds the memory used to track messages
+     * in flight, and slows producers down to the pace of the broker.
+     * <p>
+     * Default is 0, meaning no limit.
+     *
+     * @param maxUnconfirmedMessages maximum number of unconfirmed messages per session, 0 for no limit
+     * @see #setUsePublisherConfirms(boolean)
+     * @since 2.0.0
+     */
+    public void setMaxUnconfirmedMessages(int maxUnconfirmedMessages) {
+        this.maxUnconfirmedMessages = maxUnconfirmedMessages;
+    }
+
+    public boolean isUseCompactMessageFormat() {
+        return useCompactMessageFormat;
+    }
+
+    /**
+     * Whether messages sent to JMS destinations are encoded in the compact binary format.
+     * <p>
+     * The compact format encodes the message type, properties and body directly, without Java serialization, so
+     * messages are smaller and cheaper to encode and decode. It is labelled with its own AMQP content type and
+     * version. Receivers of this library decode both formats whatever this setting, but older versions
+     * only understand the Java serialization format: enable this once all the consumers have been upgraded.
+     * Messages sent to AMQP destinations are not affected.
+     * <p>
+     * Default is false.
+     *
+     * @param useCompactMessageFormat true to send messages in the compact format
+     * @since 2.0.0
+     */
+    public void setUseCompactMessageFormat(boolean useCompactMessageFormat) {
+        this.useCompactMessageFormat = useCompactMessageFormat;
+    }
+
+    public MessageIdGenerator getMessageIdGenerator() {
+        return messageIdGenerator;
+    }
+
+    /**
+     * Set the generator of the IDs of the messages sent.
+     * <p>
+     * The default, when no generator is set, is a {@link MessageIdGenerator#sequential()} generator for each
+     * connection, which combines a random prefix with a counter and does not draw random numbers for each message.
+     * {@link MessageIdGenerator#RANDOM_UUID} generates a random UUID for each message, as previous versions did.
+     * A generator set here is shared by all the connections created by this factory.
+     * <p>
+     * No ID is generated for the messages of a producer with {@link javax.jms.MessageProducer#setDisableMessageID(boolean)}
+     * set.
+     *
+     * @param messageIdGenerator generator of message IDs, or <code>null</code> for the default
+     * @see MessageIdGenerator
+     * @since 2.0.0
+     */
+    public void setMessageIdGenerator(MessageIdGenerator messageIdGenerator) {
+        this.messageIdGenerator = messageIdGenerator;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Set the size above which the payloads of messages sent are compressed.
+     * <p>
+     * Payloads larger than this number of bytes, once encoded, are compressed with the <code>deflate</code> (zlib)
+     * format and sent with the AMQP <code>content-encoding</code> property set to <code>deflate</code>, unless
+     * compression does not make them smaller. Receivers of this library decompress them whatever this setting, but
+     * older versions do not: enable this once all the consumers have been upgraded. A destination can override the
+     * threshold, see {@link RMQDestination#setCompressionThreshold(Integer)}.
+     * <p>
+     * Messages received from JMS destinations are decompressed whatever the threshold. Messages received from AMQP
+     * destinations are only decompressed if the threshold of the destination is set: otherwise their body is left as
+     * published, whatever its <code>content-encoding</code>.
+     * <p>
+     * Default is 0, meaning no compression.
+     *
+     * @param compressionThreshold size in bytes above which payloads are compressed, 0 for no compression
+     * @see #setCompressionMetricsCollector(CompressionMetricsCollector)
+     * @since 2.0.0
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public CompressionMetricsCollector getCompressionMetricsCollector() {
+        return compressionMetricsCollector;
+    }
+
+    /**
+     * Set the collector of the sizes of the payloads compressed and decompressed, to monitor the compression ratio.
+     *
+     * @param compressionMetricsCollector collector of the compression metrics
+     * @see CompressionMetricsCollector
+     * @see #setCompressionThreshold(int)
+     * @since 2.0.0
+     */
+    public void setCompressionMetricsCollector(CompressionMetricsCollector compressionMetricsCollector) {
+        this.compressionMetricsCollector = compressionMetricsCollector;
+    }
+
+    public int getMaxDecompressedSize() {
+        return maxDecompressedSize;
+    }
+
+    /**
+     * Set the maximum size of the payloads of messages received, once decompressed.
+     * <p>
+     * A compressed payload that decompresses to more than this number of bytes is rejected, so that a small message
+     * cannot exhaust the memory of the consumer. The limit applies to large messages sent in chunks once their chunks
+     * are put back together, if they were compressed.
+     * <p>
+     * Default is 64 MiB.
+     *
+     * @param maxDecompressedSize size in bytes, 0 for no limit
+     * @see #setCompressionThreshold(int)
+     * @since 2.0.0
+     */
+    public void setMaxDecompressedSize(int maxDecompressedSize) {
+        this.maxDecompressedSize = maxDecompressedSize;
+    }
+
+    public int getLargeMessageChunkSize() {
+        return largeMessageChunkSize;
+    }
+
+    /**
+     * Set the size of the chunks large messages are split into.
+     * <p>
+     * Messages sent to JMS destinations whose payload, once encoded (and compressed), is larger than this number of
+     * bytes are published as a group of chunk messages of at most this size, and reassembled by the consumer, which
+     * acknowledges the chunks once the whole message has been processed. The chunks of a message must all reach the
+     * same consumer, so a queue receiving large messages should have a single consumer. Message consumers of this
+     * library reassemble chunks whatever this setting, but connection consumers, queue browsers and older versions
+     * do not: enable this once all the consumers have been upgraded.
+     * <p>
+     * The chunks of a message are held unacknowledged until its last chunk arrives, so a consumer must be able to
+     * receive them all without acknowledging them: the number of chunks of a message must not exceed the consumer's
+     * prefetch, if any, which is {@link #setReceivePrefetch(int) receivePrefetch} for <code>receive</code>,
+     * {@link #setChannelsQos(int) channelsQos} for listeners, or twice the {@link #setListenerConcurrency(int)
+     * listenerConcurrency} for concurrent listeners without <code>channelsQos</code>. A message with more chunks is
+     * rejected rather than stalling the consumer: choose a chunk size large enough for the largest messages.
+     * <p>
+     * {@link com.rabbitmq.jms.client.RMQMessageProducer#createLargeMessageOutputStream(javax.jms.Destination, javax.jms.BytesMessage)}
+     * sends a large {@link javax.jms.BytesMessage} in chunks of this size without holding its body in memory.
+     * <p>
+     * Default is 0, meaning messages are not split.
+     *
+     * @param largeMessageChunkSize size in bytes of the chunks, 0 to not split messages
+     * @since 2.0.0
+     */
+    public void setLargeMessageChunkSize(int largeMessageChunkSize) {
+        this.largeMessageChunkSize = largeMessageChunkSize;
+    }
+
     @FunctionalInterface
     private interface ConnectionCreator {
         com.rabbitmq.client.Connection create(com.rabbitmq.client.ConnectionFactory cf) throws Exception;
@@ -2,6 +2,12 @@
 package com.rabbitmq.jms.admin;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
 
 import javax.jms.Destination;
 import javax.jms.JMSException;
@@ -48,7 +54,12 @@ public class RMQDestination implements Queue, Topic, Destination, Referenceable,
     private boolean isQueue;
     private boolean isTemporary;
 
+    /** Payloads larger than this are compressed; <code>null</code> for the connection's threshold */
+    private Integer compressionThreshold;
+
     private transient boolean isDeclared;   // field not serialised and not recovered
+    /** Told when this destination is deleted, see {@link #addDeletionListener(Consumer)}; not serialised */
+    private transient Set<Consumer<RMQDestination>> deletionListeners; // @GuardedBy(this)
 
     /**
      * Constructor used only for Java serialisation
@@ -267,6 +278,8 @@ public class RMQDestination implements Queue, Topic, Destination, Referenceable,
         addStringProperty(ref, "amqpExchangeName", this.amqpExchangeName);
         addStringProperty(ref, "amqpRoutingKey", this.amqpRoutingKey);
         addStringProperty(ref, "amqpQueueName", this.amqpQueueName);
+        if (this.compressionThreshold != null)
+            addStringProperty(ref, "compressionThreshold", this.compressionThreshold.toString());
         return ref;
     }
 
@@ -301,6 +314,25 @@ public class RMQDestination implements Queue, Topic, Destination, Referenceable,
         }
     }
 
+    /**
+     * @return the threshold above which the payloads of messages sent to this destination are compressed,
+     * <code>null</code> if the connection's threshold applies
+     * @see com.rabbitmq.jms.admin.RMQConnectionFactory#setCompressionThreshold(int)
+     */
+    public Integer getCompressionThreshold() {
+        return this.compressionThreshold;
+    }
+
+    /**
+     * For JNDI binding and Spring beans
+     * @param compressionThreshold payloads of messages sent to this destination larger than this number of bytes are
+     *            compressed, <code>0</code> for none; <code>null</code> to use the connection's threshold
+     * @see com.rabbitmq.jms.admin.RMQConnectionFactory#setCompressionThreshold(int)
+     */
+    public void setCompressionThreshold(Integer compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
     /**
      * For internal use only.
      * @return true if we have declared RabbitMQ resources to back this destination
@@ -320,6 +352,19 @@ public class RMQDestination implements Queue, Topic, Destination, Referenceable,
         this.isDeclared = isDeclared;
     }
 
+    /**
+     * For internal use only.
+     *
+     * @param listener - told when this destination is {@link #delete() deleted}, so that the connections which
+     *            declared it forget they did; only weakly referenced
+     */
+    public synchronized void addDeletionListener(Consumer<RMQDestination> listener) {
+        if (this.deletionListeners == null) {
+            this.deletionListeners = Collections.newSetFromMap(new WeakHashMap<Consumer<RMQDestination>, Boolean>());
+        }
+        this.deletionListeners.add(listener);
+    }
+
     /**
      * @return <code>true</code> if this is a temporary destination, <code>false</code> otherwise
      */
@@ -329,12 +374,22 @@ public class RMQDestination implements Queue, Topic, Destination, Referenceable,
 
     /**
      * This method is for {@link TemporaryQueue}s only — deletion currently occurs automatically on session close.
+     * The connections which declared the destination forget they did, and declare it again if it is used again.
      * {@inheritDoc}
      */
     @Override
     public void delete() throws JMSException {
         //TODO implement delete by Channel.queueDelete for TemporaryQueues only
         //See RMQSession.close how we call Channel.queueDelete
+        List<Consumer<RMQDestination>> listeners;
+        synchronized (this) {
+            this.isDeclared = false;
+            if (this.deletionListeners == null) return;
+            listeners = new ArrayList<Consumer<RMQDestination>>(this.deletionListeners);
+        }
+        for (Consumer<RMQDestination> listener : listeners) {
+            listener.accept(this);
+        }
     }
 
     @Override
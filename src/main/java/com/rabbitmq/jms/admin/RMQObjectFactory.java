@@ -107,6 +107,7 @@ import org.slf4j.LoggerFactory;
  * </p>
  * <ul>
  * <li>destinationName</li>
+ * <li>compressionThreshold - optional, overrides the threshold of the connection factory</li>
  * </ul>
  * TODO Implement socket options.
  */
@@ -219,14 +220,19 @@ public class RMQObjectFactory implements ObjectFactory {
         this.logger.trace("Creating destination ref '{}', name '{}' (topic={}).", ref, name, topic);
         String dname = getStringProperty(ref, environment, "destinationName", false, null);
         boolean amqp = getBooleanProperty(ref, environment, "amqp", true, false);
+        RMQDestination destination;
         if (amqp) {
             String amqpExchangeName = getStringProperty(ref, environment, "amqpExchangeName", false, null);
             String amqpRoutingKey = getStringProperty(ref, environment,"amqpRoutingKey", false, null);
             String amqpQueueName = getStringProperty(ref, environment, "amqpQueueName", false, null);
-            return new RMQDestination(dname, amqpExchangeName, amqpRoutingKey, amqpQueueName);
+            destination = new RMQDestination(dname, amqpExchangeName, amqpRoutingKey, amqpQueueName);
         } else {
-            return new RMQDestination(dname, !topic, false);
+            destination = new RMQDestination(dname, !topic, false);
         }
+        if (propertyContent(ref, environment, "compressionThreshold", true) != null) {
+            destination.setCompressionThreshold(getIntProperty(ref, environment, "compressionThreshold", false, 0));
+        }
+        return destination;
     }
 
     /**
@@ -0,0 +1,147 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.jms.util.SequenceSet;
+
+/**
+ * Coalesces the acknowledgements of a session that acknowledges on receipt.
+ * <p>
+ * Instead of one <code>basicAck(tag, false)</code> per message, the acknowledgements are remembered and sent
+ * with <code>multiple=true</code> once <code>batchSize</code> messages are pending, once the oldest pending
+ * acknowledgement is <code>maxDelayMs</code> old, or when {@link #flush()} is called (on close, commit, recover and
+ * before any negative acknowledgement).
+ * </p>
+ * <p>
+ * A multiple acknowledgement covers <i>every</i> outstanding delivery on the channel up to the tag given, including
+ * messages deliberately left unacknowledged (when a listener throws and the message is not requeued). So messages
+ * are reported as {@link #delivered(long) delivered} when they are received, and a multiple acknowledgement never
+ * reaches the lowest delivery still outstanding: acknowledgements above it are sent one by one.
+ * </p>
+ */
+class AckAccumulator {
+
+    private final Logger logger = LoggerFactory.getLogger(AckAccumulator.class);
+
+    private final Channel channel;
+    private final int batchSize;
+    private final long maxDelayMs;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    /** delivered, and neither acknowledged nor rejected yet */
+    private final SequenceSet outstanding = new SequenceSet(); // @GuardedBy(lock)
+    /** acknowledged, but not yet sent to the server */
+    private final SequenceSet acked = new SequenceSet();       // @GuardedBy(lock)
+    private ScheduledFuture<?> flushTask = null;               // @GuardedBy(lock)
+
+    /**
+     * @param channel - channel on which the messages were delivered
+     * @param batchSize - number of pending acknowledgements which causes a flush
+     * @param maxDelayMs - maximum time (in milliseconds) an acknowledgement may be pending
+     * @param scheduler - used to flush after <code>maxDelayMs</code>; if <code>null</code> there is no time bound
+     */
+    AckAccumulator(Channel channel, int batchSize, long maxDelayMs, ScheduledExecutorService scheduler) {
+        this.channel = channel;
+        this.batchSize = batchSize;
+        this.maxDelayMs = maxDelayMs;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Record a message as received: no multiple acknowledgement covers it until it is acknowledged or rejected.
+     * @param deliveryTag - tag of the message delivered
+     */
+    void delivered(long deliveryTag) {
+        synchronized (this.lock) {
+            this.outstanding.add(deliveryTag);
+        }
+    }
+
+    /**
+     * Record a message as acknowledged; sends the acknowledgement if the batch is full.
+     * @param deliveryTag - tag of the message delivered
+     */
+    void ack(long deliveryTag) {
+        synchronized (this.lock) {
+            this.outstanding.remove(deliveryTag);
+            if (!this.acked.add(deliveryTag)) return;
+            if (this.acked.size() >= this.batchSize) {
+                this.flush();
+            } else if (this.acked.size() == 1 && this.scheduler != null) {
+                this.flushTask = this.scheduleFlush();
+            }
+        }
+    }
+
+    /**
+     * Record a message as rejected (or requeued) on the channel.
+     * @param deliveryTag - tag of the message delivered
+     */
+    void rejected(long deliveryTag) {
+        synchronized (this.lock) {
+            this.outstanding.remove(deliveryTag);
+        }
+    }
+
+    private ScheduledFuture<?> scheduleFlush() {
+        try {
+            return this.scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, this.maxDelayMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) { // RejectedExecutionException, if the connection is closing
+            logger.debug("Cannot schedule flush of pending acknowledgements", e);
+            return null;
+        }
+    }
+
+    /**
+     * Send the acknowledgement for all pending messages, if there are any.
+     */
+    void flush() {
+        synchronized (this.lock) {
+            if (this.flushTask != null) {
+                this.flushTask.cancel(false);
+                this.flushTask = null;
+            }
+            if (this.acked.isEmpty()) return;
+            long highestTag = this.acked.last();
+            long lowestOutstanding = this.outstanding.first();
+            long upTo = lowestOutstanding < 0 ? highestTag : this.acked.floor(lowestOutstanding - 1);
+            try {
+                if (upTo > 0) {
+                    this.channel.basicAck(upTo, true);
+                    this.acked.removeUpTo(upTo);
+                }
+                while (!this.acked.isEmpty()) { // above a message still outstanding
+                    long deliveryTag = this.acked.first();
+                    this.acked.remove(deliveryTag);
+                    this.channel.basicAck(deliveryTag, false);
+                }
+            } catch (Exception x) {
+                // this is problematic, we have received messages, but we can't ACK them to the server
+                this.logger.error("Cannot acknowledge messages received (dTag<={})", highestTag, x);
+                this.acked.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages acknowledged but not yet sent to the server
+     */
+    int pending() {
+        synchronized (this.lock) {
+            return this.acked.size();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.rabbitmq.client.AMQP;
+
+/**
+ * A producer's cache of pre-built AMQP properties, keyed by the properties that are the same for every message sent
+ * with a given delivery mode, priority, time-to-live and reply-to queue.
+ * <p>
+ * A send starts from a copy of the template ({@link AMQP.BasicProperties#builder()}) and sets only the per-message
+ * fields: the headers and the correlation ID. The cache holds at most <code>maxEntries</code> templates, discarding the
+ * least recently used.
+ * </p>
+ */
+final class BasicPropertiesTemplates {
+
+    static final int DEFAULT_MAX_ENTRIES = 16;
+
+    private static final String CONTENT_TYPE = "application/json";
+
+    /** This is dictated by `erlang:send_after' on which rabbitmq depends to implement TTL:
+     * <br/><code>-define(MAX_EXPIRY_TIMER, 4294967295)</code>.
+     */
+    private static final long MAX_TTL = 4294967295L;
+
+    private final Map<Key, AMQP.BasicProperties> templates; // @GuardedBy(this)
+
+    private Key lastKey = null;                              // @GuardedBy(this)
+    private AMQP.BasicProperties lastTemplate = null;        // @GuardedBy(this)
+
+    BasicPropertiesTemplates() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    BasicPropertiesTemplates(final int maxEntries) {
+        this.templates = new LinkedHashMap<Key, AMQP.BasicProperties>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, AMQP.BasicProperties> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param deliveryMode - JMS delivery mode
+     * @param priority - message priority
+     * @param ttl - time-to-live in milliseconds, <code>0</code> for none
+     * @param replyTo - AMQP reply-to queue, may be <code>null</code>
+     * @return a builder initialised from the template for these properties
+     */
+    AMQP.BasicProperties.Builder builder(int deliveryMode, int priority, long ttl, String replyTo) {
+        return this.template(deliveryMode, priority, ttl, replyTo).builder();
+    }
+
+    synchronized AMQP.BasicProperties template(int deliveryMode, int priority, long ttl, String replyTo) {
+        if (this.lastKey != null && this.lastKey.matches(deliveryMode, priority, ttl, replyTo)) {
+            return this.lastTemplate;
+        }
+        Key key = new Key(deliveryMode, priority, ttl, replyTo);
+        AMQP.BasicProperties template = this.templates.get(key);
+        if (template == null) {
+            template = new AMQP.BasicProperties.Builder()
+                .contentType(CONTENT_TYPE)
+                .deliveryMode(RMQMessage.rmqDeliveryMode(deliveryMode))
+                .priority(priority)
+                .expiration(rmqExpiration(ttl))
+                .replyTo(replyTo)
+                .build();
+            this.templates.put(key, template);
+        }
+        this.lastKey = key;
+        this.lastTemplate = template;
+        return template;
+    }
+
+    synchronized int size() {
+        return this.templates.size();
+    }
+
+    /**
+     * Convert long time-to-live to String time-to-live for amqp protocol.
+     * Constrain to limits: <code>0 &LT;= ttl &LT;= MAX_TTL</code>.
+     * @param ttl JMS time-to-live long integer
+     * @return RabbitMQ message expiration setting (null if expiration==0L)
+     */
+    static String rmqExpiration(long ttl) {
+        if (ttl == 0L) return null;
+
+        return String.valueOf( ttl < 0L      ? 0L
+                             : ttl > MAX_TTL ? MAX_TTL
+                             :                 ttl
+                             );
+    }
+
+    private static final class Key {
+        private final int deliveryMode;
+        private final int priority;
+        private final long ttl;
+        private final String replyTo;
+
+        Key(int deliveryMode, int priority, long ttl, String replyTo) {
+            this.deliveryMode = deliveryMode;
+            this.priority = priority;
+            this.ttl = ttl;
+            this.replyTo = replyTo;
+        }
+
+        boolean matches(int deliveryMode, int priority, long ttl, String replyTo) {
+            return this.deliveryMode == deliveryMode && this.priority == priority && this.ttl == ttl
+                && (this.replyTo == null ? replyTo == null : this.replyTo.equals(replyTo));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return other.matches(this.deliveryMode, this.priority, this.ttl, this.replyTo);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.deliveryMode;
+            result = 31 * result + this.priority;
+            result = 31 * result + (int) (this.ttl ^ (this.ttl >>> 32));
+            result = 31 * result + (this.replyTo == null ? 0 : this.replyTo.hashCode());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * A bounded pool of channels for browsing queues, shared by the sessions of a connection.
+ * <p>
+ * A channel is reset when it is {@link #release released}: the browsing consumer is cancelled, the messages it
+ * received are requeued (by a negative acknowledgement of all outstanding deliveries) and the channel prefetch count
+ * is lifted. At most <code>maxIdle</code> channels are kept; a channel idle for longer than <code>idleTimeoutMs</code>,
+ * or found closed, is discarded instead of being reused.
+ * </p>
+ */
+class BrowsingChannelPool {
+
+    private final Logger logger = LoggerFactory.getLogger(BrowsingChannelPool.class);
+
+    static final int DEFAULT_MAX_IDLE = 4;
+    static final long DEFAULT_IDLE_TIMEOUT_MS = 60000;
+
+    /** Source of new channels */
+    interface ChannelFactory {
+        Channel createChannel() throws IOException;
+    }
+
+    private final ChannelFactory channelFactory;
+    private final int maxIdle;
+    private final long idleTimeoutMs;
+
+    private final ArrayDeque<IdleChannel> idleChannels = new ArrayDeque<IdleChannel>(); // @GuardedBy(this); most recently used first
+    private boolean closed = false; // @GuardedBy(this)
+
+    BrowsingChannelPool(ChannelFactory channelFactory) {
+        this(channelFactory, DEFAULT_MAX_IDLE, DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    BrowsingChannelPool(ChannelFactory channelFactory, int maxIdle, long idleTimeoutMs) {
+        this.channelFactory = channelFactory;
+        this.maxIdle = maxIdle;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * @return an open channel, reused if possible
+     * @throws IOException if a new channel cannot be created
+     */
+    Channel borrow() throws IOException {
+        long now = System.currentTimeMillis();
+        while (true) {
+            IdleChannel idle;
+            synchronized (this) {
+                idle = this.idleChannels.pollFirst();
+            }
+            if (idle == null) break;
+            if (now - idle.since <= this.idleTimeoutMs && idle.channel.isOpen()) return idle.channel;
+            closeQuietly(idle.channel);
+        }
+        return this.channelFactory.createChannel();
+    }
+
+    /**
+     * Reset a channel and return it to the pool; the channel is closed if it cannot be reset or is not needed.
+     * @param channel - a channel {@link #borrow borrowed} from this pool
+     * @param consumerTag - the tag of the consumer on the channel, if any
+     */
+    void release(Channel channel, String consumerTag) {
+        if (!channel.isOpen()) return;
+        try {
+            if (consumerTag != null) {
+                try {
+                    channel.basicCancel(consumerTag);
+                } catch (IOException e) {
+                    // the consumer was already cancelled
+                }
+            }
+            channel.basicNack(0L, true, true); // requeue everything delivered on this channel
+            channel.basicQos(0, true);
+        } catch (Exception e) { // includes unchecked exceptions, e.g. ShutdownSignalException
+            logger.debug("Cannot reset browsing channel {}, closing it", channel, e);
+            closeQuietly(channel);
+            return;
+        }
+        synchronized (this) {
+            evictIdle(System.currentTimeMillis());
+            if (!this.closed && this.idleChannels.size() < this.maxIdle) {
+                this.idleChannels.addFirst(new IdleChannel(channel));
+                return;
+            }
+        }
+        closeQuietly(channel);
+    }
+
+    /**
+     * Close the idle channels; channels released afterwards are closed.
+     */
+    void close() {
+        synchronized (this) {
+            this.closed = true;
+            for (IdleChannel idle : this.idleChannels) closeQuietly(idle.channel);
+            this.idleChannels.clear();
+        }
+    }
+
+    /** @return the number of channels waiting to be reused */
+    synchronized int idleCount() {
+        return this.idleChannels.size();
+    }
+
+    private void evictIdle(long now) { // @GuardedBy(this)
+        Iterator<IdleChannel> it = this.idleChannels.descendingIterator(); // least recently used first
+        while (it.hasNext()) {
+            IdleChannel idle = it.next();
+            if (now - idle.since > this.idleTimeoutMs || !idle.channel.isOpen()) {
+                it.remove();
+                closeQuietly(idle.channel);
+            }
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            if (channel.isOpen())
+                channel.close();
+        } catch (Exception e) {
+            // ignore any failures, we are clearing up
+        }
+    }
+
+    private static final class IdleChannel {
+        private final Channel channel;
+        private final long since = System.currentTimeMillis();
+
+        IdleChannel(Channel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -2,8 +2,8 @@
 package com.rabbitmq.jms.client;
 
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayDeque;
+import java.util.Map;
 
 import javax.jms.JMSException;
 
@@ -12,49 +12,112 @@ import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.DefaultConsumer;
 import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.ShutdownSignalException;
 import com.rabbitmq.jms.admin.RMQDestination;
 import com.rabbitmq.jms.parse.sql.SqlEvaluator;
 
+/**
+ * Consumer for browsing a queue: it buffers the messages selected from the first <code>messagesExpected</code>
+ * delivered, until they are taken with {@link #poll()}.
+ * <p>
+ * The messages are not acknowledged, so they are requeued when the channel is closed. The number of messages
+ * buffered is limited by the prefetch count of the channel.
+ * </p>
+ */
 class BrowsingConsumer extends DefaultConsumer {
 
-    private final CountDownLatch latch = new CountDownLatch(1);
+    private final Object lock = new Object();
+    private final ArrayDeque<RMQMessage> msgQueue = new ArrayDeque<RMQMessage>(); // @GuardedBy(lock)
+    private int deliveries = 0;                                                    // @GuardedBy(lock)
+    private boolean finished = false;                                              // @GuardedBy(lock)
 
     private int messagesExpected;
-    private final java.util.Queue<RMQMessage> msgQueue;
     private final SqlEvaluator evaluator;
     private final RMQSession session;
     private final RMQDestination dest;
 
     private final ReceivingContextConsumer receivingContextConsumer;
 
-    public BrowsingConsumer(Channel channel, RMQSession session, RMQDestination dest, int messagesExpected, java.util.Queue<RMQMessage> msgQueue, SqlEvaluator evaluator,
+    public BrowsingConsumer(Channel channel, RMQSession session, RMQDestination dest, int messagesExpected, SqlEvaluator evaluator,
             ReceivingContextConsumer receivingContextConsumer) {
         super(channel);
         this.messagesExpected = messagesExpected;
-        this.msgQueue = msgQueue;
         this.evaluator = evaluator;
         this.session = session;
         this.dest = dest;
         this.receivingContextConsumer = receivingContextConsumer;
     }
 
-    public boolean finishesInTime(int browsingConsumerTimeout) {
-        try {
-            return this.latch.await(browsingConsumerTimeout, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt(); // reset interrupted status
-            return false;
+    /**
+     * @return the next message selected, or <code>null</code> if there is none buffered
+     */
+    RMQMessage poll() {
+        synchronized (this.lock) {
+            return this.msgQueue.poll();
+        }
+    }
+
+    /**
+     * @return the number of messages delivered so far, whether or not they were selected
+     */
+    int deliveries() {
+        synchronized (this.lock) {
+            return this.deliveries;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if no more messages will be delivered
+     */
+    boolean isFinished() {
+        synchronized (this.lock) {
+            return this.finished;
+        }
+    }
+
+    /**
+     * Wait for a message to be buffered, another message to be delivered, or the consumer to finish.
+     * @param deliveriesSeen - the number of {@link #deliveries()} already seen
+     * @param timeoutMs - maximum time to wait in milliseconds
+     * @return <code>false</code> if none of these happened in time
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    boolean awaitProgress(int deliveriesSeen, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (this.lock) {
+            long remaining = timeoutMs;
+            while (this.msgQueue.isEmpty() && !this.finished && this.deliveries == deliveriesSeen) {
+                if (remaining <= 0) return false;
+                this.lock.wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Mark the consumer finished, waking any thread waiting in {@link #awaitProgress(int, long)}.
+     */
+    void finish() {
+        synchronized (this.lock) {
+            this.finished = true;
+            this.lock.notifyAll();
         }
     }
 
     @Override
     public void handleCancelOk(String consumerTag) {
-        this.latch.countDown();
+        this.finish();
     }
 
     @Override
     public void handleCancel(String consumerTag) {
-        this.latch.countDown();
+        this.finish();
+    }
+
+    @Override
+    public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+        this.finish();
     }
 
     @Override
@@ -64,16 +127,33 @@ class BrowsingConsumer extends DefaultConsumer {
                                byte[] body)
     throws IOException {
         if (this.messagesExpected==0) return;
+        RMQMessage selected = null;
         try {
-            RMQMessage msg = RMQMessage.convertMessage(this.session, this.dest,
-                new GetResponse(envelope, properties, body, --this.messagesExpected), this.receivingContextConsumer);
-            if (evaluator==null || evaluator.evaluate(msg.toHeaders()))
-                this.msgQueue.add(msg);
+            GetResponse response = new GetResponse(envelope, properties, body, --this.messagesExpected);
+            if (this.evaluator == null) {
+                selected = RMQMessage.convertMessage(this.session, this.dest, response, this.receivingContextConsumer);
+            } else {
+                // select on the published headers if we can, and only decode the messages selected
+                Map<String, Object> headers = this.dest.isAmqp() ? null : SelectableHeaders.of(properties.getHeaders());
+                if (headers == null) {
+                    RMQMessage msg = RMQMessage.convertMessage(this.session, this.dest, response, this.receivingContextConsumer);
+                    if (this.evaluator.evaluate(msg.toHeaders()))
+                        selected = msg;
+                } else if (this.evaluator.evaluate(headers)) {
+                    selected = RMQMessage.convertMessage(this.session, this.dest, response, this.receivingContextConsumer);
+                }
+            }
         } catch (JMSException e) {
             throw new IOException("Failure to convert message to JMS Message type.", e);
         }
+        synchronized (this.lock) {
+            if (selected != null) this.msgQueue.add(selected);
+            ++this.deliveries;
+            if (this.messagesExpected == 0) this.finished = true;
+            this.lock.notifyAll();
+        }
         if (this.messagesExpected == 0) {
             this.getChannel().basicCancel(consumerTag);
         }
     }
-}
\ No newline at end of file
+}
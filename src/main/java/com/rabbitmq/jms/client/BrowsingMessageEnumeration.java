@@ -3,43 +3,66 @@ package com.rabbitmq.jms.client;
 
 import java.util.Enumeration;
 import java.util.NoSuchElementException;
-import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.jms.JMSException;
 
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.jms.admin.RMQDestination;
 import com.rabbitmq.jms.parse.sql.SqlEvaluator;
 
+/**
+ * Enumeration of the messages on a queue, read as they are asked for.
+ * <p>
+ * The messages are consumed, without acknowledgement, on a browsing channel whose prefetch count is raised a page
+ * at a time, as the messages already delivered are taken from the enumeration. So at most a page of messages is held
+ * in memory, and the first message can be taken as soon as it is delivered. The browsing channel is returned to the
+ * session, which requeues the messages, when the enumeration is exhausted or {@link #close()}d.
+ * </p>
+ */
 class BrowsingMessageEnumeration implements Enumeration<RMQMessage> {
 
+    /** maximum time to wait for the next delivery */
     private static final int BROWSING_CONSUMER_TIMEOUT = 10000; // ms
-    private final java.util.Queue<RMQMessage> msgQueue;
+    /** number of messages the broker may deliver ahead of the enumeration */
+    static final int BROWSING_PAGE_SIZE = 100;
+
+    private final RMQSession session;
+    private final Channel channel;
+    private final BrowsingConsumer consumer; // null if there is nothing to browse
+    private final int messagesExpected;
+    private final int pageSize;
+    private int window = 0;                 // prefetch count of the browsing channel
+    private RMQMessage next = null;
+    private volatile boolean closed = false;
 
     public BrowsingMessageEnumeration(RMQSession session, RMQDestination dest, Channel channel, SqlEvaluator evaluator, int readMax,
-            ReceivingContextConsumer receivingContextConsumer) {
-        java.util.Queue<RMQMessage> msgQ = new ConcurrentLinkedQueue<RMQMessage>();
-        populateQueue(msgQ, channel, session, dest, evaluator, readMax, receivingContextConsumer);
-        this.msgQueue = msgQ;
+            ReceivingContextConsumer receivingContextConsumer) throws JMSException {
+        this(session, dest, channel, evaluator, readMax, BROWSING_PAGE_SIZE, receivingContextConsumer);
     }
 
-    private static void populateQueue(java.util.Queue<RMQMessage> msgQueue, Channel channel, RMQSession session, RMQDestination dest, SqlEvaluator evaluator,
-            int readMax, ReceivingContextConsumer receivingContextConsumer) {
-        try {
-            String destQueueName = dest.getQueueName();
-            int qCount = getNumberOfMessages(channel, destQueueName);
-            if (qCount > 0) { // we need to read them
-                int messagesExpected = (readMax<=0) ? qCount : Math.min(readMax, qCount);
-                channel.basicQos(messagesExpected); // limit subsequent consumers to the expected number of messages unacknowledged
-                BrowsingConsumer bc = new BrowsingConsumer(channel, session, dest, messagesExpected, msgQueue,
-                    evaluator, receivingContextConsumer);
-                String consumerTag = channel.basicConsume(destQueueName, bc);
-                if (bc.finishesInTime(BROWSING_CONSUMER_TIMEOUT))
-                    return;
-                else
-                    channel.basicCancel(consumerTag);
+    BrowsingMessageEnumeration(RMQSession session, RMQDestination dest, Channel channel, SqlEvaluator evaluator, int readMax,
+            int pageSize, ReceivingContextConsumer receivingContextConsumer) throws JMSException {
+        this.session = session;
+        this.channel = channel;
+        this.pageSize = pageSize;
+        String destQueueName = dest.getQueueName();
+        int qCount = getNumberOfMessages(channel, destQueueName);
+        this.messagesExpected = (readMax<=0) ? qCount : Math.min(readMax, qCount);
+        BrowsingConsumer bc = null;
+        if (this.messagesExpected > 0) { // we need to read them
+            try {
+                this.window = Math.min(pageSize, this.messagesExpected);
+                channel.basicQos(0, false);          // no limit for the consumer itself...
+                channel.basicQos(this.window, true); // ...but limit the messages unacknowledged on the channel
+                bc = new BrowsingConsumer(channel, session, dest, this.messagesExpected, evaluator, receivingContextConsumer);
+                channel.basicConsume(destQueueName, bc);
+            } catch (Exception e) {
+                // Ignore any errors;
+                bc = null;
             }
-        } catch(Exception e) {
-            // Ignore any errors;
         }
+        this.consumer = bc;
+        if (bc == null) this.close();
     }
 
     private static int getNumberOfMessages(Channel channel, String destQueueName) {
@@ -67,16 +90,58 @@ class BrowsingMessageEnumeration implements Enumeration<RMQMessage> {
     }
 
     @Override public boolean hasMoreElements() {
-        return !this.msgQueue.isEmpty();
-        }
+        if (this.next == null) this.next = this.fetch();
+        return this.next != null;
+    }
 
     @Override public RMQMessage nextElement() {
-        RMQMessage resp = this.msgQueue.poll();
-        if (null==resp) throw new NoSuchElementException();
+        if (!this.hasMoreElements()) throw new NoSuchElementException();
+        RMQMessage resp = this.next;
+        this.next = null;
         return resp;
     }
 
-    void clearQueue() {
-        this.msgQueue.clear();
+    /**
+     * @return the next message selected, or <code>null</code> if there are no more
+     */
+    private RMQMessage fetch() {
+        if (this.closed) return null;
+        try {
+            while (true) {
+                boolean finished = this.consumer.isFinished();
+                RMQMessage msg = this.consumer.poll();
+                if (msg != null) return msg;
+                if (finished || this.closed) break;
+                int deliveries = this.consumer.deliveries();
+                if (deliveries >= this.window && this.window < this.messagesExpected) {
+                    // all the messages allowed have been delivered and taken: allow another page
+                    this.window = Math.min(this.window + this.pageSize, this.messagesExpected);
+                    this.channel.basicQos(this.window, true);
+                }
+                if (!this.consumer.awaitProgress(deliveries, BROWSING_CONSUMER_TIMEOUT)) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // reset interrupted status
+        } catch (Exception e) {
+            // Ignore any errors; the enumeration ends
+        }
+        this.close();
+        return null;
+    }
+
+    /**
+     * Stop browsing: give back the browsing channel, which requeues the messages consumed. A thread waiting for
+     * the next message in {@link #hasMoreElements()} returns at once.
+     */
+    void close() {
+        if (this.closed) return;
+        this.closed = true;
+        String consumerTag = (this.consumer == null || this.consumer.isFinished()) ? null : this.consumer.getConsumerTag();
+        if (this.consumer != null) this.consumer.finish(); // wake a thread waiting in hasMoreElements()
+        this.session.closeBrowsingChannel(this.channel, consumerTag);
+    }
+
+    boolean isClosed() {
+        return this.closed;
     }
 }
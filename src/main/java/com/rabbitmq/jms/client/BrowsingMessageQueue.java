@@ -1,7 +1,9 @@
 /* Copyright (c) 2014-2018 Pivotal Software, Inc. All rights reserved. */
 package com.rabbitmq.jms.client;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 
 import javax.jms.JMSException;
 import javax.jms.QueueBrowser;
@@ -9,8 +11,7 @@ import javax.jms.QueueBrowser;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.jms.admin.RMQDestination;
 import com.rabbitmq.jms.parse.sql.SqlEvaluator;
-import com.rabbitmq.jms.parse.sql.SqlParser;
-import com.rabbitmq.jms.parse.sql.SqlTokenStream;
+import com.rabbitmq.jms.parse.sql.SqlSelectorCache;
 import com.rabbitmq.jms.util.RMQJMSSelectorException;
 
 /**
@@ -24,6 +25,7 @@ class BrowsingMessageQueue implements QueueBrowser {
     private final RMQSession session;
     private final int queueBrowserReadMax;
     private final ReceivingContextConsumer receivingContextConsumer;
+    private final List<BrowsingMessageEnumeration> enumerations = new ArrayList<BrowsingMessageEnumeration>(); // @GuardedBy(enumerations)
 
     public BrowsingMessageQueue(RMQSession session, RMQDestination dest, String selector,
             int queueBrowserReadMax, ReceivingContextConsumer receivingContextConsumer) throws JMSException {
@@ -37,7 +39,7 @@ class BrowsingMessageQueue implements QueueBrowser {
 
     private static final SqlEvaluator setEvaluator(String selector) throws JMSException {
         if (selector==null || selector.trim().isEmpty()) return null;
-        SqlEvaluator evaluator = new SqlEvaluator(new SqlParser(new SqlTokenStream(selector)), RMQSession.JMS_TYPE_IDENTS);
+        SqlEvaluator evaluator = SqlSelectorCache.sharedCache().get(selector, RMQSession.JMS_TYPE_IDENTS).evaluator();
         if (!evaluator.evaluatorOk())
             throw new RMQJMSSelectorException(evaluator.getErrorMessage());
         return evaluator;
@@ -56,15 +58,29 @@ class BrowsingMessageQueue implements QueueBrowser {
     @SuppressWarnings("rawtypes")
     public Enumeration getEnumeration() throws JMSException {
         Channel chan = this.session.getBrowsingChannel();
-        Enumeration e = new BrowsingMessageEnumeration(this.session, this.dest, chan, this.evaluator,
+        // the enumeration gives back the channel when it is exhausted, which requeues all the messages browsed
+        BrowsingMessageEnumeration e = new BrowsingMessageEnumeration(this.session, this.dest, chan, this.evaluator,
             this.queueBrowserReadMax, this.receivingContextConsumer);
-        session.closeBrowsingChannel(chan); // this should requeue all the messages browsed
+        synchronized (this.enumerations) {
+            this.enumerations.removeIf(BrowsingMessageEnumeration::isClosed);
+            if (!e.isClosed()) this.enumerations.add(e);
+        }
         return e;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Enumerations that are not exhausted are closed, which requeues the messages they browsed.
+     * </p>
+     */
     @Override
     public void close() throws JMSException {
-        //no-op
-        return;
+        synchronized (this.enumerations) {
+            for (BrowsingMessageEnumeration e : this.enumerations) {
+                e.close();
+            }
+            this.enumerations.clear();
+        }
     }
 }
@@ -0,0 +1,295 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+
+/**
+ * Reassembles the large messages a consumer receives as groups of chunk messages.
+ * <p>
+ * The chunks of a group are kept until the last one arrives. They are held in memory until the group is larger than
+ * {@link #SPILL_THRESHOLD} bytes, then written to a temporary file, so a large message is never held whole in memory.
+ * The chunks of several groups can be interleaved, when several producers send large messages to the same queue; the
+ * chunks of a group must all reach the same consumer, so a queue receiving large messages should have a single
+ * consumer.
+ * </p>
+ * <p>
+ * The chunks are not acknowledged until the whole message is, so a consumer must be able to receive all the chunks of a
+ * message without acknowledging them: a message with more chunks than the consumer's prefetch is rejected.
+ * </p>
+ *
+ * @see LargeMessageOutputStream
+ */
+final class ChunkAssembler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkAssembler.class);
+
+    /** Size above which the chunks of a group are written to a temporary file */
+    static final int SPILL_THRESHOLD = Integer.getInteger("com.rabbitmq.jms.client.message.chunkSpillThreshold", 8 * 1024 * 1024);
+
+    private final int spillThreshold;
+    private final Map<String, Chunks> groups = new HashMap<String, Chunks>(); // @GuardedBy(this)
+    /** Number of chunks held in the groups, not acknowledged */
+    private int held = 0; // @GuardedBy(this)
+
+    ChunkAssembler() {
+        this(SPILL_THRESHOLD);
+    }
+
+    ChunkAssembler(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * Adds a chunk to its group. Chunks which can no longer be part of a complete message are given to
+     * <code>rejected</code>: those of a group delivered again from its first chunk or missing a chunk, as they are
+     * replaced, and those of a group received without its first chunks. A group is also given up when the chunks held
+     * fill the <code>window</code>: the broker stops delivering to the consumer until some are acknowledged, so the
+     * last chunk would never arrive.
+     * @param response - a chunk, see {@link LargeMessageOutputStream#isChunk(Map)}
+     * @param window - the number of messages the broker delivers to the consumer without acknowledgement, 0 for no limit
+     * @param rejected - given the delivery tags of chunks to reject
+     * @return the chunks of the group, once the last one is added; <code>null</code> until then
+     */
+    Chunks add(GetResponse response, int window, Consumer<long[]> rejected) {
+        List<long[]> rejects = new ArrayList<long[]>(1);
+        Chunks chunks;
+        synchronized (this) {
+            chunks = this.add(response, window, rejects);
+        }
+        for (long[] dtags : rejects) {
+            rejected.accept(dtags);
+        }
+        return chunks;
+    }
+
+    private Chunks add(GetResponse response, int window, List<long[]> rejects) { // @GuardedBy(this)
+        Map<String, Object> headers = response.getProps().getHeaders();
+        String group = LargeMessageOutputStream.group(headers);
+        int index = LargeMessageOutputStream.index(headers);
+        boolean last = LargeMessageOutputStream.isLast(headers);
+        Chunks chunks = this.groups.get(group);
+        if (chunks != null && (index == 0 || index != chunks.nextIndex)) {
+            logger.warn("Large message {} delivered again, or missing chunk {}, the chunks received are rejected", group, chunks.nextIndex);
+            this.release(chunks, rejects);
+            chunks.discard();
+            chunks = null;
+        }
+        if (chunks == null) {
+            chunks = new Chunks(this.spillThreshold);
+            this.groups.put(group, chunks);
+            if (index != 0) chunks.broken("Chunk " + index + " of large message " + group + " received without the previous chunks", null);
+        }
+        chunks.add(response);
+        chunks.nextIndex = index + 1;
+        this.held++;
+        if (last) this.groups.remove(group);
+        if (chunks.isBroken()) {
+            this.release(chunks, rejects); // the following chunks of the group are rejected as they arrive
+            return null;
+        }
+        if (last) {
+            this.held -= chunks.count;
+            return chunks;
+        }
+        if (window > 0 && this.held >= window) {
+            chunks.broken("Large message " + group + " has more chunks than the " + window
+                          + " messages the consumer receives without acknowledging them", null);
+            this.release(chunks, rejects);
+        }
+        return null;
+    }
+
+    /**
+     * Gives up the delivery tags of the chunks of a group, to reject them.
+     */
+    private void release(Chunks chunks, List<long[]> rejects) { // @GuardedBy(this)
+        if (chunks.count == 0) return;
+        rejects.add(chunks.getDeliveryTags());
+        this.held -= chunks.count;
+        chunks.count = 0;
+    }
+
+    /**
+     * @return the number of groups waiting for chunks
+     */
+    synchronized int pendingGroups() {
+        return this.groups.size();
+    }
+
+    /**
+     * Discards the groups not received completely. Their chunks were not acknowledged, so the broker delivers them
+     * again when the channel closes or the session recovers.
+     */
+    synchronized void close() {
+        for (Iterator<Chunks> it = this.groups.values().iterator(); it.hasNext();) {
+            it.next().discard();
+            it.remove();
+        }
+        this.held = 0;
+    }
+
+    /**
+     * The chunks of a large message, in order.
+     */
+    static final class Chunks {
+        private final int spillThreshold;
+        private boolean broken = false;
+        private AMQP.BasicProperties properties;
+        private Envelope envelope;
+        private boolean redelivered = false;
+        private long[] deliveryTags = new long[8];
+        private int count = 0;
+        private int nextIndex = 0;
+        private long size = 0;
+
+        private List<byte[]> bodies = new ArrayList<byte[]>();
+        private Path file;
+        private OutputStream fileOut;
+
+        private Chunks(int spillThreshold) {
+            this.spillThreshold = spillThreshold;
+        }
+
+        private void add(GetResponse response) {
+            if (this.count == 0) this.properties = response.getProps();
+            this.envelope = response.getEnvelope();
+            this.redelivered |= response.getEnvelope().isRedeliver();
+            if (this.count == this.deliveryTags.length) this.deliveryTags = Arrays.copyOf(this.deliveryTags, this.count << 1);
+            this.deliveryTags[this.count++] = response.getEnvelope().getDeliveryTag();
+            if (this.broken) return; // only the delivery tags are kept, to reject the chunks
+            byte[] body = response.getBody();
+            this.size += body.length;
+            try {
+                if (this.file == null && this.size > this.spillThreshold) this.spill();
+                if (this.file == null) this.bodies.add(body);
+                else this.fileOut.write(body);
+            } catch (IOException x) {
+                this.broken("Cannot store chunk of large message in " + this.file, x);
+            }
+        }
+
+        private void broken(String reason, Exception x) {
+            logger.warn("{}, the message will be rejected", reason, x);
+            this.broken = true;
+            this.discard();
+        }
+
+        private void spill() throws IOException {
+            Path file = Files.createTempFile("rmq-jms-large-message", ".chunks"); // deleted by discard()
+            this.file = file;
+            this.fileOut = Files.newOutputStream(file);
+            for (byte[] body : this.bodies) this.fileOut.write(body);
+            this.bodies = null;
+        }
+
+        /**
+         * @return <code>true</code> if the first chunks of the group were not received, or a chunk could not be stored,
+         * so the message cannot be put back together
+         */
+        boolean isBroken() {
+            return this.broken;
+        }
+
+        /**
+         * @return the AMQP properties of the message, those of its first chunk
+         */
+        AMQP.BasicProperties getProperties() {
+            return this.properties;
+        }
+
+        /**
+         * @return the envelope of the last chunk
+         */
+        Envelope getEnvelope() {
+            return this.envelope;
+        }
+
+        boolean isRedelivered() {
+            return this.redelivered;
+        }
+
+        /**
+         * @return the delivery tags of the chunks, in order
+         */
+        long[] getDeliveryTags() {
+            return Arrays.copyOf(this.deliveryTags, this.count);
+        }
+
+        /**
+         * @return the size of the payload, in bytes
+         */
+        long size() {
+            return this.size;
+        }
+
+        /**
+         * @return a stream of the payload
+         * @throws IOException if the temporary file cannot be read
+         */
+        InputStream openStream() throws IOException {
+            if (this.file == null) {
+                List<InputStream> streams = new ArrayList<InputStream>(this.bodies.size());
+                for (byte[] body : this.bodies) streams.add(new ByteArrayInputStream(body));
+                return new SequenceInputStream(Collections.enumeration(streams));
+            }
+            this.fileOut.close();
+            return Files.newInputStream(this.file);
+        }
+
+        /**
+         * @return the payload, in one array
+         * @throws IOException if the payload is too large for an array, or the temporary file cannot be read
+         */
+        byte[] toByteArray() throws IOException {
+            if (this.size > Integer.MAX_VALUE - 8) throw new IOException("Large message of " + this.size + " bytes does not fit in an array");
+            byte[] payload = new byte[(int) this.size];
+            InputStream in = this.openStream();
+            try {
+                int pos = 0;
+                while (pos < payload.length) {
+                    int n = in.read(payload, pos, payload.length - pos);
+                    if (n < 0) throw new IOException("Large message truncated");
+                    pos += n;
+                }
+            } finally {
+                in.close();
+            }
+            return payload;
+        }
+
+        /**
+         * Releases the chunks, deleting the temporary file if any.
+         */
+        void discard() {
+            this.bodies = null;
+            if (this.file == null) return;
+            try {
+                if (this.fileOut != null) this.fileOut.close();
+                Files.deleteIfExists(this.file);
+            } catch (IOException x) {
+                logger.warn("Cannot delete temporary file {} of large message", this.file, x);
+            }
+        }
+    }
+}
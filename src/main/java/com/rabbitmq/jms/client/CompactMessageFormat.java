@@ -0,0 +1,573 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.client.message.RMQBytesMessage;
+import com.rabbitmq.jms.client.message.RMQMapMessage;
+import com.rabbitmq.jms.client.message.RMQObjectMessage;
+import com.rabbitmq.jms.client.message.RMQStreamMessage;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+
+/**
+ * The compact binary encoding of JMS messages, an alternative to the Java serialization of
+ * {@link RMQMessage#toByteArray()}.
+ * <p>
+ * A compact message starts with the byte {@link #MAGIC} and a version byte, which cannot be confused with the
+ * <code>ObjectOutputStream</code> stream header of the legacy encoding. Version 1 is laid out as:
+ * </p>
+ * <pre>
+ * MAGIC VERSION type-code [class-name] id-kind message-id
+ * count (rmq-property-code [name] value)*
+ * count (name value)*
+ * body
+ * </pre>
+ * <p>
+ * Counts and string lengths are unsigned varints, strings are UTF-8, and the JMS header properties are named by a
+ * one-byte code. A message ID that is a UUID is written as its 16 bytes, and the <code>JMSMessageID</code> derived
+ * from it is not repeated. Each value is a one-byte type tag followed by its encoding, integers as zig-zag varints. A
+ * destination is encoded by its name and kind, and only a property value that is neither a primitive nor one of our
+ * destinations falls back to Java serialization. The body is written by the message class,
+ * {@link RMQMessage#writeBody(ObjectOutput, ByteArrayOutputStream)}, on a {@link Output} which encodes primitives as
+ * a {@link DataOutputStream} does.
+ * </p>
+ * <p>
+ * Senders label compact messages with the AMQP content type {@link #CONTENT_TYPE}.
+ * </p>
+ */
+final class CompactMessageFormat {
+
+    /** AMQP content type of messages in the compact format */
+    static final String CONTENT_TYPE = "application/vnd.rabbitmq.jms.compact";
+
+    static final byte MAGIC = (byte) 0xC7;
+    static final byte VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /* message type codes */
+    private static final byte OTHER_MESSAGE = 0; // class name follows
+    private static final byte TEXT_MESSAGE = 1;
+    private static final byte BYTES_MESSAGE = 2;
+    private static final byte MAP_MESSAGE = 3;
+    private static final byte OBJECT_MESSAGE = 4;
+    private static final byte STREAM_MESSAGE = 5;
+
+    /* message ID kinds */
+    private static final byte STRING_ID = 0;
+    private static final byte UUID_ID = 1;
+
+    private static final String JMS_MESSAGE_ID_PREFIX = "ID:";
+
+    /* property name codes, index into RMQ_PROPERTY_NAMES; 0 means the name follows */
+    private static final String[] RMQ_PROPERTY_NAMES = {
+        null,
+        RMQMessage.JMS_MESSAGE_ID,
+        RMQMessage.JMS_MESSAGE_TIMESTAMP,
+        RMQMessage.JMS_MESSAGE_CORR_ID,
+        RMQMessage.JMS_MESSAGE_REPLY_TO,
+        RMQMessage.JMS_MESSAGE_DESTINATION,
+        RMQMessage.JMS_MESSAGE_REDELIVERED,
+        RMQMessage.JMS_MESSAGE_TYPE,
+        RMQMessage.JMS_MESSAGE_DELIVERY_MODE,
+        RMQMessage.JMS_MESSAGE_EXPIRATION,
+        RMQMessage.JMS_MESSAGE_PRIORITY,
+    };
+
+    private static final Map<String, Integer> RMQ_PROPERTY_CODES = new HashMap<String, Integer>();
+    static {
+        for (int i = 1; i < RMQ_PROPERTY_NAMES.length; i++) RMQ_PROPERTY_CODES.put(RMQ_PROPERTY_NAMES[i], i);
+    }
+
+    /* value type tags */
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte STRING = 9;
+    private static final byte CHAR = 10;
+    private static final byte BYTES = 11;
+    private static final byte JMS_DESTINATION = 12;
+    private static final byte AMQP_DESTINATION = 13;
+    private static final byte MESSAGE_ID = 14; // "ID:" followed by the message ID in the header
+    private static final byte SERIALIZED = 127;
+
+    private CompactMessageFormat() {
+    }
+
+    /**
+     * @param b - a message body
+     * @return <code>true</code> if the body is in the compact format
+     */
+    static boolean isCompact(byte[] b) {
+        return b != null && b.length >= 2 && b[0] == MAGIC;
+    }
+
+    /**
+     * Writes the header of a message: the format version, message type and message ID.
+     */
+    static void writeHeader(RMQMessage msg, String messageId, Output out) throws IOException {
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        byte code = typeCode(msg);
+        out.writeByte(code);
+        if (code == OTHER_MESSAGE) out.writeString(msg.getClass().getName());
+        UUID uuid = asUUID(messageId);
+        if (uuid != null) {
+            out.writeByte(UUID_ID);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            out.writeByte(STRING_ID);
+            out.writeNullableString(messageId);
+        }
+    }
+
+    /**
+     * @return the message ID, read after the header
+     */
+    static String readMessageId(Input in) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+        case UUID_ID:
+            return new UUID(in.readLong(), in.readLong()).toString();
+        case STRING_ID:
+            return in.readNullableString();
+        default:
+            throw new StreamCorruptedException("Unknown message ID kind " + kind);
+        }
+    }
+
+    /**
+     * @return the ID as a UUID, if it is the canonical form of one
+     */
+    private static UUID asUUID(String id) {
+        if (id == null || id.length() != 36
+         || id.charAt(8) != '-' || id.charAt(13) != '-' || id.charAt(18) != '-' || id.charAt(23) != '-') return null;
+        long msb = 0, lsb = 0;
+        for (int i = 0; i < 36; i++) {
+            if (i == 8 || i == 13 || i == 18 || i == 23) continue;
+            char c = id.charAt(i);
+            int digit = c >= '0' && c <= '9' ? c - '0' : c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+            if (digit < 0) return null; // not the canonical (lower case) form
+            if (i < 19) msb = (msb << 4) | digit;
+            else lsb = (lsb << 4) | digit;
+        }
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * Reads the header of a message, checking the format version.
+     * @return the message class name, or <code>null</code> if the message is of one of our types and
+     * {@link #newMessage} can create it
+     */
+    static String readHeader(Input in) throws IOException {
+        if (in.readByte() != MAGIC) throw new StreamCorruptedException("Not a compact JMS message");
+        byte version = in.readByte();
+        if (version != VERSION) throw new StreamCorruptedException("Unsupported compact JMS message version " + version);
+        in.typeCode = in.readByte();
+        return in.typeCode == OTHER_MESSAGE ? in.readString() : null;
+    }
+
+    /**
+     * @return a new message of the type read by {@link #readHeader}
+     */
+    static RMQMessage newMessage(Input in, List<String> trustedPackages) throws IOException {
+        switch (in.typeCode) {
+        case TEXT_MESSAGE:
+            return new RMQTextMessage();
+        case BYTES_MESSAGE:
+            return new RMQBytesMessage();
+        case MAP_MESSAGE:
+            return new RMQMapMessage();
+        case OBJECT_MESSAGE:
+            return new RMQObjectMessage(trustedPackages);
+        case STREAM_MESSAGE:
+            return new RMQStreamMessage();
+        default:
+            throw new StreamCorruptedException("Unknown compact JMS message type " + in.typeCode);
+        }
+    }
+
+    private static byte typeCode(RMQMessage msg) {
+        Class<?> c = msg.getClass();
+        if (c == RMQTextMessage.class) return TEXT_MESSAGE;
+        if (c == RMQBytesMessage.class) return BYTES_MESSAGE;
+        if (c == RMQMapMessage.class) return MAP_MESSAGE;
+        if (c == RMQObjectMessage.class) return OBJECT_MESSAGE;
+        if (c == RMQStreamMessage.class) return STREAM_MESSAGE;
+        return OTHER_MESSAGE;
+    }
+
+    static void writeProperties(String messageId, Map<String, Serializable> rmqProperties, Map<String, Serializable> userProperties,
+                                Output out) throws IOException {
+        out.writeVarint(rmqProperties.size());
+        for (Map.Entry<String, Serializable> e : rmqProperties.entrySet()) {
+            int code = rmqPropertyCode(e.getKey());
+            out.writeByte(code);
+            if (code == 0) out.writeString(e.getKey());
+            if (messageId != null && e.getValue() instanceof String && isMessageId((String) e.getValue(), messageId)) {
+                out.writeByte(MESSAGE_ID);
+            } else {
+                writeValue(e.getValue(), out);
+            }
+        }
+        out.writeVarint(userProperties.size());
+        for (Map.Entry<String, Serializable> e : userProperties.entrySet()) {
+            out.writeString(e.getKey());
+            writeValue(e.getValue(), out);
+        }
+    }
+
+    static void readProperties(String messageId, Input in, Map<String, Serializable> rmqProperties, Map<String, Serializable> userProperties)
+            throws IOException, ClassNotFoundException {
+        int count = in.readVarint();
+        for (int i = 0; i < count; i++) {
+            int code = in.readUnsignedByte();
+            String name;
+            if (code == 0) name = in.readString();
+            else if (code < RMQ_PROPERTY_NAMES.length) name = RMQ_PROPERTY_NAMES[code];
+            else throw new StreamCorruptedException("Unknown property code " + code);
+            byte tag = in.readByte();
+            if (tag == MESSAGE_ID) {
+                rmqProperties.put(name, JMS_MESSAGE_ID_PREFIX + messageId);
+            } else {
+                rmqProperties.put(name, readValue(tag, in));
+            }
+        }
+        count = in.readVarint();
+        for (int i = 0; i < count; i++) {
+            String name = in.readString();
+            userProperties.put(name, readValue(in));
+        }
+    }
+
+    private static boolean isMessageId(String value, String messageId) {
+        return value.length() == JMS_MESSAGE_ID_PREFIX.length() + messageId.length()
+            && value.startsWith(JMS_MESSAGE_ID_PREFIX) && value.endsWith(messageId);
+    }
+
+    private static int rmqPropertyCode(String name) {
+        Integer code = RMQ_PROPERTY_CODES.get(name);
+        return code == null ? 0 : code;
+    }
+
+    static void writeValue(Object value, Output out) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeVarlong(zigZag((Integer) value));
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeVarlong(zigZag((Long) value));
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeVarlong(zigZag((Short) value));
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) value);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeVarint(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof RMQDestination && writeDestination((RMQDestination) value, out)) {
+            // written
+        } else if (value instanceof Serializable) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            ObjectOutputStream oout = new ObjectOutputStream(bout);
+            oout.writeObject(value);
+            oout.flush();
+            out.writeByte(SERIALIZED);
+            out.writeVarint(bout.size());
+            bout.writeTo(out);
+        } else {
+            throw new NotSerializableException(value.getClass().getName());
+        }
+    }
+
+    static Serializable readValue(Input in) throws IOException, ClassNotFoundException {
+        return readValue(in.readByte(), in);
+    }
+
+    private static Serializable readValue(byte tag, Input in) throws IOException, ClassNotFoundException {
+        switch (tag) {
+        case NULL:
+            return null;
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case BYTE:
+            return in.readByte();
+        case SHORT:
+            return (short) unZigZag(in.readVarlong());
+        case INT:
+            return (int) unZigZag(in.readVarlong());
+        case LONG:
+            return unZigZag(in.readVarlong());
+        case FLOAT:
+            return in.readFloat();
+        case DOUBLE:
+            return in.readDouble();
+        case STRING:
+            return in.readString();
+        case CHAR:
+            return in.readChar();
+        case BYTES: {
+            byte[] bytes = new byte[in.readVarint()];
+            in.readFully(bytes);
+            return bytes;
+        }
+        case JMS_DESTINATION: {
+            int flags = in.readUnsignedByte();
+            return new RMQDestination(in.readString(), (flags & 1) != 0, (flags & 2) != 0);
+        }
+        case AMQP_DESTINATION:
+            return new RMQDestination(in.readNullableString(), in.readNullableString(), in.readNullableString(), in.readNullableString());
+        case SERIALIZED: {
+            byte[] bytes = new byte[in.readVarint()];
+            in.readFully(bytes);
+            WhiteListObjectInputStream oin = new WhiteListObjectInputStream(new ByteArrayInputStream(bytes), in.trustedPackages);
+            return (Serializable) oin.readObject();
+        }
+        default:
+            throw new StreamCorruptedException("Unknown value type " + tag);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the destination is written, <code>false</code> if it cannot be rebuilt from its
+     * name and kind and so must be serialized
+     */
+    private static boolean writeDestination(RMQDestination d, Output out) throws IOException {
+        if (!d.isAmqp()) {
+            if (d.getDestinationName() == null
+             || !d.equals(new RMQDestination(d.getDestinationName(), d.isQueue(), d.isTemporary()))) return false;
+            out.writeByte(JMS_DESTINATION);
+            out.writeByte((d.isQueue() ? 1 : 0) | (d.isTemporary() ? 2 : 0));
+            out.writeString(d.getDestinationName());
+        } else {
+            if (!d.isQueue() || d.isTemporary()) return false;
+            out.writeByte(AMQP_DESTINATION);
+            out.writeNullableString(d.getDestinationName());
+            out.writeNullableString(d.getAmqpExchangeName());
+            out.writeNullableString(d.getAmqpRoutingKey());
+            out.writeNullableString(d.getAmqpQueueName());
+        }
+        return true;
+    }
+
+    private static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unZigZag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * Writes a compact message to a {@link ByteArrayOutputStream}. Primitives are written as by
+     * {@link DataOutputStream}; Java serialization is not supported.
+     * <p>
+     * Writes are gathered in an unsynchronized buffer, rather than made byte by byte on the synchronized target, so
+     * the output must be {@link #flush flushed} before writing to the target directly.
+     * </p>
+     */
+    static final class Output extends DataOutputStream implements ObjectOutput {
+
+        Output(ByteArrayOutputStream target) {
+            super(target instanceof EncodeBuffer ? target : new Buffer(target)); // an EncodeBuffer is not synchronized
+        }
+
+        void writeVarint(int n) throws IOException {
+            this.writeVarlong(n & 0xFFFFFFFFL);
+        }
+
+        void writeVarlong(long n) throws IOException {
+            while ((n & ~0x7FL) != 0) {
+                this.out.write((int) ((n & 0x7F) | 0x80));
+                n >>>= 7;
+            }
+            this.out.write((int) n);
+        }
+
+        void writeString(String s) throws IOException {
+            byte[] bytes = s.getBytes(UTF8);
+            this.writeVarint(bytes.length);
+            this.out.write(bytes, 0, bytes.length);
+        }
+
+        void writeNullableString(String s) throws IOException {
+            if (s == null) {
+                this.writeVarint(0);
+            } else {
+                byte[] bytes = s.getBytes(UTF8);
+                this.writeVarint(bytes.length + 1);
+                this.out.write(bytes, 0, bytes.length);
+            }
+        }
+
+        @Override
+        public void writeObject(Object obj) throws IOException {
+            throw new NotSerializableException("Java serialization is not used in the compact message format");
+        }
+    }
+
+    /**
+     * An unsynchronized buffer in front of a {@link ByteArrayOutputStream}.
+     */
+    private static final class Buffer extends OutputStream {
+        private final ByteArrayOutputStream target;
+        private final byte[] buf = new byte[256];
+        private int count = 0;
+
+        Buffer(ByteArrayOutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) {
+            if (this.count == this.buf.length) this.flush();
+            this.buf[this.count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (len > this.buf.length - this.count) {
+                this.flush();
+                if (len > this.buf.length) {
+                    this.target.write(b, off, len);
+                    return;
+                }
+            }
+            System.arraycopy(b, off, this.buf, this.count, len);
+            this.count += len;
+        }
+
+        @Override
+        public void flush() {
+            if (this.count > 0) {
+                this.target.write(this.buf, 0, this.count);
+                this.count = 0;
+            }
+        }
+    }
+
+    /**
+     * The bytes of a received compact message: a {@link ByteArrayInputStream} which reads without synchronizing.
+     */
+    static final class Bytes extends ByteArrayInputStream {
+
+        Bytes(byte[] buf) {
+            super(buf);
+        }
+
+        @Override
+        public int read() {
+            return (this.pos < this.count) ? (this.buf[this.pos++] & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (this.pos >= this.count) return len == 0 ? 0 : -1;
+            int n = Math.min(len, this.count - this.pos);
+            System.arraycopy(this.buf, this.pos, b, off, n);
+            this.pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return this.count - this.pos;
+        }
+    }
+
+    /**
+     * Reads a compact message. The underlying stream must not be buffered, so a message body can read the remaining bytes
+     * directly from it.
+     */
+    static final class Input extends DataInputStream implements ObjectInput {
+        private final List<String> trustedPackages;
+        private byte typeCode;
+
+        Input(InputStream in, List<String> trustedPackages) {
+            super(in);
+            this.trustedPackages = trustedPackages;
+        }
+
+        int readVarint() throws IOException {
+            long n = this.readVarlong();
+            if (n > Integer.MAX_VALUE) throw new StreamCorruptedException("Length out of range " + n);
+            return (int) n;
+        }
+
+        long readVarlong() throws IOException {
+            long n = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = this.readUnsignedByte();
+                n |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return n;
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        String readString() throws IOException {
+            byte[] bytes = new byte[this.readVarint()];
+            this.readFully(bytes);
+            return new String(bytes, UTF8);
+        }
+
+        String readNullableString() throws IOException {
+            int length = this.readVarint();
+            if (length == 0) return null;
+            byte[] bytes = new byte[length - 1];
+            this.readFully(bytes);
+            return new String(bytes, UTF8);
+        }
+
+        @Override
+        public Object readObject() throws IOException {
+            throw new NotSerializableException("Java serialization is not used in the compact message format");
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import javax.jms.Message;
+
+/**
+ * Callback for the completion of an asynchronous send, like <code>javax.jms.CompletionListener</code> in JMS 2.0.
+ * <p>
+ * In a session with publisher confirms (see
+ * {@link com.rabbitmq.jms.admin.RMQConnectionFactory#setUsePublisherConfirms(boolean)}) a send completes when the
+ * broker confirms or rejects the message. The listeners of a session are called in the order the messages were sent,
+ * on a thread of the connection, and must not block or use the session.
+ * </p>
+ *
+ * @see RMQMessageProducer#send(Message, CompletionListener)
+ * @since 2.0.0
+ */
+public interface CompletionListener {
+
+    /**
+     * Called when the broker has taken responsibility for the message.
+     * @param message the message sent
+     */
+    void onCompletion(Message message);
+
+    /**
+     * Called when the message could not be sent: the broker rejected it, or the channel closed before the broker
+     * confirmed it.
+     * @param message the message sent
+     * @param exception the reason
+     */
+    void onException(Message message, Exception exception);
+}
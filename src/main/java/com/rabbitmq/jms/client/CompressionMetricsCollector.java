@@ -0,0 +1,41 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.admin.RMQDestination;
+
+/**
+ * Collects the sizes of the message payloads compressed and decompressed, to report the compression ratio.
+ * <p>
+ * Methods are called on the threads sending and receiving messages, so implementations must be thread-safe and
+ * quick.
+ * </p>
+ *
+ * @see com.rabbitmq.jms.admin.RMQConnectionFactory#setCompressionThreshold(int)
+ * @see com.rabbitmq.jms.admin.RMQConnectionFactory#setCompressionMetricsCollector(CompressionMetricsCollector)
+ * @since 2.0.0
+ */
+public interface CompressionMetricsCollector {
+
+    CompressionMetricsCollector NO_OP = new CompressionMetricsCollector() {
+    };
+
+    /**
+     * Called when the payload of a message sent is compressed. The payload is sent uncompressed if compression does
+     * not make it smaller, that is when <code>compressedSize &gt;= size</code>.
+     *
+     * @param destination    the destination of the message
+     * @param size           size of the payload, in bytes
+     * @param compressedSize size of the compressed payload, in bytes
+     */
+    default void compressed(RMQDestination destination, int size, int compressedSize) {
+    }
+
+    /**
+     * Called when the payload of a message received is decompressed.
+     *
+     * @param compressedSize size of the compressed payload, in bytes
+     * @param size           size of the payload, in bytes
+     */
+    default void decompressed(int compressedSize, int size) {
+    }
+}
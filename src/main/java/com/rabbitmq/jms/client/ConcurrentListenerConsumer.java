@@ -0,0 +1,318 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.JMSException;
+import javax.jms.MessageListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.jms.util.Abortable;
+import com.rabbitmq.jms.util.RMQNackException;
+import com.rabbitmq.jms.util.SequenceSet;
+import com.rabbitmq.jms.util.TimeTracker;
+
+/**
+ * Drives {@link MessageListener#onMessage(javax.jms.Message) onMessage} calls for a consumer on a bounded pool of
+ * threads, instead of one at a time on the session's delivery thread.
+ * <p>
+ * Messages with the same value of the <i>ordering property</i> (by default <code>JMSXGroupID</code>) are passed to the
+ * listener one at a time, in the order they were delivered; messages with different values, or without the property,
+ * may be processed in parallel. See {@link KeyOrderedExecutor}.
+ * </p>
+ * <p>
+ * The consumer subscribes on a channel of its own, so that it can acknowledge with <code>multiple=true</code>: only
+ * the completed messages below the oldest message still in progress are acknowledged, so no message is acknowledged
+ * before it has been processed, and a crash redelivers whatever was in progress. Messages rejected by the listener are
+ * negatively acknowledged individually, as soon as they complete.
+ * </p>
+ * <p>
+ * Each call to <code>onMessage</code> is bounded by the connection's <code>onMessageTimeoutMs</code>, enforced by the
+ * connection's {@link OnMessageWatchdog}.
+ * </p>
+ */
+class ConcurrentListenerConsumer extends DefaultConsumer implements Abortable {
+    private final Logger logger = LoggerFactory.getLogger(ConcurrentListenerConsumer.class);
+
+    /** Messages prefetched per thread when the connection does not set a channel QoS */
+    static final int PREFETCH_PER_THREAD = 2;
+
+    private final RMQMessageConsumer messageConsumer;
+    private final MessageListener messageListener;
+    private final String orderingProperty;
+    private final long terminationTimeoutMs;
+    private final boolean requeueOnMessageListenerException;
+    private final boolean requeueOnNackException;
+    private final ReceivingContextConsumer receivingContextConsumer;
+    private final KeyOrderedExecutor executor;
+    /** Reassembles the large messages received on the channel of this subscription */
+    private final ChunkAssembler chunkAssembler = new ChunkAssembler();
+    /** Number of messages the broker delivers to this subscription without acknowledgement */
+    private final int window;
+
+    /** One direct-call executor per pool thread, each with its own watch */
+    private final ThreadLocal<DeliveryExecutor> deliveryExecutor = new ThreadLocal<DeliveryExecutor>();
+    private final List<DeliveryExecutor> deliveryExecutors = new ArrayList<DeliveryExecutor>(); // @GuardedBy(itself)
+
+    private final Object ackLock = new Object();
+    /** Delivered, not yet processed */
+    private final SequenceSet inProgress = new SequenceSet(); // @GuardedBy(ackLock)
+    /** Processed successfully, not yet acknowledged */
+    private final SequenceSet completed = new SequenceSet();  // @GuardedBy(ackLock)
+    /** Chunks of large messages not received completely yet */
+    private final SequenceSet assembling = new SequenceSet(); // @GuardedBy(ackLock)
+
+    private volatile String consumerTag = null;
+    private volatile boolean rejecting = false;
+
+    /**
+     * @param messageConsumer - the consumer this subscription belongs to
+     * @param channel - channel of this subscription only, closed when this is aborted
+     * @param messageListener - listener to call
+     * @param concurrency - number of threads to call the listener on
+     * @param prefetch - number of messages the broker delivers on the channel without acknowledgement
+     * @param orderingProperty - name of the message property whose values must be processed in order
+     */
+    ConcurrentListenerConsumer(RMQMessageConsumer messageConsumer, Channel channel, MessageListener messageListener,
+                               int concurrency, int prefetch, String orderingProperty) {
+        super(channel);
+        RMQSession session = messageConsumer.getSession();
+        this.messageConsumer = messageConsumer;
+        this.messageListener = messageListener;
+        this.orderingProperty = orderingProperty;
+        this.terminationTimeoutMs = session.getConnection().getTerminationTimeout();
+        this.requeueOnMessageListenerException = session.willRequeueOnMessageListenerException();
+        this.requeueOnNackException = session.willRequeueOnNackException();
+        this.receivingContextConsumer = messageConsumer.getReceivingContextConsumer();
+        this.executor = new KeyOrderedExecutor(concurrency, "rabbitmq-jms-listener-");
+        this.window = prefetch;
+        this.rejecting = session.getConnection().isStopped();
+    }
+
+    @Override
+    public void handleDelivery(String consumerTag, Envelope envelope, BasicProperties properties, byte[] body) throws IOException {
+        logger.trace("consumerTag='{}' envelope='{}'", consumerTag, envelope);
+        final long dtag = envelope.getDeliveryTag();
+        if (this.rejecting) {
+            logger.debug("basicNack: dtag='{}'", dtag);
+            this.nack(dtag, true);
+            return;
+        }
+        GetResponse response = new GetResponse(envelope, properties, body, 0);
+        final RMQMessage message;
+        final long[] dtags;
+        Object key;
+        if (this.messageConsumer.isChunk(response)) {
+            synchronized (this.ackLock) {
+                this.assembling.add(dtag); // not acknowledged with later messages before the whole message is processed
+            }
+            ChunkAssembler.Chunks chunks = this.chunkAssembler.add(response, this.window, rejected -> this.rejected(rejected, false));
+            if (chunks == null) return;
+            dtags = chunks.getDeliveryTags();
+            try {
+                message = RMQMessage.convertChunkedMessage(this.messageConsumer.getSession(), chunks, this.receivingContextConsumer);
+                key = message.getObjectProperty(this.orderingProperty);
+            } catch (JMSException e) {
+                logger.error("Cannot convert large message (dTag={})", dtag, e);
+                this.rejected(dtags, this.requeueOnMessageListenerException);
+                return;
+            }
+            synchronized (this.ackLock) {
+                for (long chunkTag : dtags) {
+                    this.assembling.remove(chunkTag);
+                    this.inProgress.add(chunkTag);
+                }
+            }
+        } else {
+            try {
+                message = RMQMessage.convertMessage(this.messageConsumer.getSession(), this.messageConsumer.getDestination(),
+                    response, this.receivingContextConsumer);
+                key = message.getObjectProperty(this.orderingProperty);
+            } catch (JMSException e) {
+                logger.error("Cannot convert message (dTag={})", dtag, e);
+                this.nack(dtag, this.requeueOnMessageListenerException);
+                return;
+            }
+            dtags = new long[] { dtag };
+            synchronized (this.ackLock) {
+                this.inProgress.add(dtag);
+            }
+        }
+        this.executor.execute(key, new Runnable() {
+            @Override
+            public void run() {
+                process(message, dtags);
+            }
+        });
+    }
+
+    /**
+     * @param dtags - the delivery tag of the message, or those of its chunks for a large message
+     */
+    private void process(RMQMessage message, long[] dtags) {
+        try {
+            this.deliveryExecutor().deliverMessageWithProtection(message, this.messageListener);
+            this.completed(dtags);
+        } catch (RMQMessageListenerExecutionJMSException e) {
+            if (e.getCause() != null && e.getCause().getCause() instanceof RMQNackException) {
+                this.rejected(dtags, this.requeueOnNackException);
+            } else if (this.requeueOnMessageListenerException) {
+                this.rejected(dtags, true);
+            } else {
+                this.completed(dtags);
+            }
+        } catch (JMSException e) {
+            logger.error("Error while delivering message", e);
+            this.rejected(dtags, this.requeueOnMessageListenerException);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.rejected(dtags, true);
+        }
+    }
+
+    private DeliveryExecutor deliveryExecutor() {
+        DeliveryExecutor de = this.deliveryExecutor.get();
+        if (de == null) {
+            RMQConnection connection = this.messageConsumer.getSession().getConnection();
+            de = new DeliveryExecutor(connection.getOnMessageTimeoutMs(), connection.getOnMessageWatchdog());
+            synchronized (this.deliveryExecutors) {
+                this.deliveryExecutors.add(de);
+            }
+            this.deliveryExecutor.set(de);
+        }
+        return de;
+    }
+
+    /**
+     * Record a message as processed, and acknowledge every processed message older than the oldest one in progress.
+     */
+    private void completed(long[] dtags) {
+        synchronized (this.ackLock) {
+            for (long dtag : dtags) {
+                this.inProgress.remove(dtag);
+                this.completed.add(dtag);
+            }
+            this.acknowledgeCompleted();
+        }
+    }
+
+    private void rejected(long[] dtags, boolean requeue) {
+        synchronized (this.ackLock) {
+            for (long dtag : dtags) {
+                this.nack(dtag, requeue);
+                this.inProgress.remove(dtag);
+                this.assembling.remove(dtag);
+            }
+            this.acknowledgeCompleted(); // the oldest message in progress may have changed
+        }
+    }
+
+    private void acknowledgeCompleted() { // @GuardedBy(ackLock)
+        long ackTag;
+        if (this.inProgress.isEmpty()) {
+            this.ackLock.notifyAll(); // see waitForMessagesInProgress()
+        }
+        long oldest = this.inProgress.isEmpty() ? -1 : this.inProgress.first();
+        if (!this.assembling.isEmpty() && (oldest < 0 || this.assembling.first() < oldest)) {
+            oldest = this.assembling.first();
+        }
+        if (oldest < 0) {
+            ackTag = this.completed.last();
+        } else {
+            ackTag = this.completed.floor(oldest - 1);
+        }
+        if (ackTag < 0) return;
+        try {
+            this.getChannel().basicAck(ackTag, true);
+        } catch (Exception x) {
+            // the messages will be redelivered when the channel closes
+            logger.error("Cannot acknowledge messages received (dTag<={})", ackTag, x);
+        }
+        this.completed.removeUpTo(ackTag);
+    }
+
+    private void nack(long dtag, boolean requeue) {
+        try {
+            this.getChannel().basicNack(dtag, false, requeue);
+        } catch (Exception x) {
+            logger.warn("Cannot reject/requeue message received (dTag={})", dtag, x);
+        }
+    }
+
+    /**
+     * Wait, for up to the termination timeout, for the messages in progress to be processed.
+     */
+    private void waitForMessagesInProgress() {
+        TimeTracker tt = new TimeTracker(this.terminationTimeoutMs, TimeUnit.MILLISECONDS);
+        try {
+            synchronized (this.ackLock) {
+                while (!this.inProgress.isEmpty() && !tt.timedOut()) {
+                    tt.timedWait(this.ackLock);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void start() throws Exception {
+        String tag = RMQMessageConsumer.newConsumerTag();
+        this.rejecting = false;
+        this.consumerTag = tag;
+        this.messageConsumer.basicConsume(this.getChannel(), this, tag);
+    }
+
+    /**
+     * Cancel the subscription and wait for the messages in progress to be processed.
+     */
+    @Override
+    public void stop() {
+        this.rejecting = true;
+        String tag = this.consumerTag;
+        this.consumerTag = null;
+        if (tag != null) {
+            try {
+                logger.debug("basicCancel: consumerTag='{}'", tag);
+                this.getChannel().basicCancel(tag);
+            } catch (Exception e) {
+                logger.debug("basicCancel threw exception", e);
+            }
+        }
+        this.waitForMessagesInProgress();
+    }
+
+    /**
+     * Stop, and release the threads and channel. Messages not yet acknowledged are requeued by the channel closing.
+     */
+    @Override
+    public void abort() {
+        this.stop();
+        this.executor.shutdown();
+        synchronized (this.deliveryExecutors) {
+            for (DeliveryExecutor de : this.deliveryExecutors) {
+                de.close();
+            }
+            this.deliveryExecutors.clear();
+        }
+        this.chunkAssembler.close(); // the chunks received are requeued with the channel
+        try {
+            this.getChannel().close();
+        } catch (ShutdownSignalException x) {
+            // nothing to do
+        } catch (Exception x) {
+            logger.debug("Listener channel({}) failed to close", this.getChannel(), x);
+        }
+    }
+}
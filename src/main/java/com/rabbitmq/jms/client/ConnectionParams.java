@@ -80,6 +80,124 @@ public class ConnectionParams {
      */
     private ReceivingContextConsumer receivingContextConsumer;
 
+    /**
+     * Number of messages to prefetch for synchronous receive.
+     * 0 (the default) means messages are polled one at a time.
+     *
+     * @since 2.0.0
+     */
+    private int receivePrefetch = 0;
+
+    /**
+     * Number of acknowledgements to coalesce into one multiple acknowledgement
+     * in {@link javax.jms.Session#AUTO_ACKNOWLEDGE} and {@link javax.jms.Session#DUPS_OK_ACKNOWLEDGE} sessions.
+     * 0 (the default) means no coalescing for AUTO_ACKNOWLEDGE and a default batch size for DUPS_OK_ACKNOWLEDGE.
+     *
+     * @since 2.0.0
+     */
+    private int ackBatchSize = 0;
+
+    /**
+     * Maximum time in milliseconds a coalesced acknowledgement can be delayed.
+     *
+     * @since 2.0.0
+     */
+    private int ackBatchMaxDelayMs = RMQSession.DEFAULT_ACK_BATCH_MAX_DELAY_MS;
+
+    /**
+     * Whether {@link javax.jms.MessageListener#onMessage(Message)} is called directly on the
+     * delivering thread, with a connection-wide watchdog enforcing the timeout.
+     * Default is false.
+     *
+     * @since 2.0.0
+     */
+    private boolean directListenerDispatch = false;
+
+    /**
+     * Number of threads each consumer calls its {@link javax.jms.MessageListener} on.
+     * 0 or 1 (the default) means messages are passed to the listener one at a time.
+     *
+     * @since 2.0.0
+     */
+    private int listenerConcurrency = 0;
+
+    /**
+     * Message property whose values are processed in order when listeners are called concurrently.
+     *
+     * @since 2.0.0
+     */
+    private String listenerOrderingProperty = RMQSession.DEFAULT_LISTENER_ORDERING_PROPERTY;
+
+    /**
+     * Whether to call listeners and wait for messages on virtual threads, where the JVM supports them.
+     *
+     * @since 2.0.0
+     */
+    private boolean useVirtualThreads = false;
+
+    /**
+     * Whether received messages are decoded on first access rather than on receipt.
+     *
+     * @since 2.0.0
+     */
+    private boolean lazyMessageDecoding = false;
+
+    /**
+     * Whether non-transacted sessions publish with publisher confirms.
+     *
+     * @since 2.0.0
+     */
+    private boolean usePublisherConfirms = false;
+
+    /**
+     * Maximum number of unconfirmed messages per session, 0 for no limit.
+     *
+     * @since 2.0.0
+     */
+    private int maxUnconfirmedMessages = 0;
+
+    /**
+     * Whether messages are sent in the compact binary format.
+     *
+     * @since 2.0.0
+     */
+    private boolean useCompactMessageFormat = false;
+
+    /**
+     * Generates the IDs of the messages sent.
+     *
+     * @since 2.0.0
+     */
+    private MessageIdGenerator messageIdGenerator;
+
+    /**
+     * Payloads of messages sent larger than this are compressed; 0 for none.
+     *
+     * @since 2.0.0
+     */
+    private int compressionThreshold = 0;
+
+    /**
+     * Collects the sizes of the payloads compressed and decompressed.
+     *
+     * @since 2.0.0
+     */
+    private CompressionMetricsCollector compressionMetricsCollector;
+
+    /**
+     * Payloads of messages received decompressing to more than this are rejected; 0 for no limit.
+     *
+     * @since 2.0.0
+     */
+    private int maxDecompressedSize = PayloadCompression.DEFAULT_MAX_DECOMPRESSED_SIZE;
+
+    /**
+     * Payloads of messages sent larger than this are split into chunks of this size; 0 for none.
+     *
+     * @since 2.0.0
+     */
+    private int largeMessageChunkSize = 0;
+
     public Connection getRabbitConnection() {
         return rabbitConnection;
     }
@@ -187,4 +305,148 @@ public class ConnectionParams {
         this.requeueOnNackException = requeueOnNackException;
         return this;
     }
+
+    public int getReceivePrefetch() {
+        return receivePrefetch;
+    }
+
+    public ConnectionParams setReceivePrefetch(int receivePrefetch) {
+        this.receivePrefetch = receivePrefetch;
+        return this;
+    }
+
+    public int getAckBatchSize() {
+        return ackBatchSize;
+    }
+
+    public ConnectionParams setAckBatchSize(int ackBatchSize) {
+        this.ackBatchSize = ackBatchSize;
+        return this;
+    }
+
+    public int getAckBatchMaxDelayMs() {
+        return ackBatchMaxDelayMs;
+    }
+
+    public ConnectionParams setAckBatchMaxDelayMs(int ackBatchMaxDelayMs) {
+        this.ackBatchMaxDelayMs = ackBatchMaxDelayMs;
+        return this;
+    }
+
+    public boolean willDirectListenerDispatch() {
+        return directListenerDispatch;
+    }
+
+    public ConnectionParams setDirectListenerDispatch(boolean directListenerDispatch) {
+        this.directListenerDispatch = directListenerDispatch;
+        return this;
+    }
+
+    public int getListenerConcurrency() {
+        return listenerConcurrency;
+    }
+
+    public ConnectionParams setListenerConcurrency(int listenerConcurrency) {
+        this.listenerConcurrency = listenerConcurrency;
+        return this;
+    }
+
+    public String getListenerOrderingProperty() {
+        return listenerOrderingProperty;
+    }
+
+    public ConnectionParams setListenerOrderingProperty(String listenerOrderingProperty) {
+        this.listenerOrderingProperty = listenerOrderingProperty;
+        return this;
+    }
+
+    public boolean willUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public ConnectionParams setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+        return this;
+    }
+
+    public boolean willLazyMessageDecoding() {
+        return lazyMessageDecoding;
+    }
+
+    public ConnectionParams setLazyMessageDecoding(boolean lazyMessageDecoding) {
+        this.lazyMessageDecoding = lazyMessageDecoding;
+        return this;
+    }
+
+    public boolean willUsePublisherConfirms() {
+        return usePublisherConfirms;
+    }
+
+    public ConnectionParams setUsePublisherConfirms(boolean usePublisherConfirms) {
+        this.usePublisherConfirms = usePublisherConfirms;
+        return this;
+    }
+
+    public int getMaxUnconfirmedMessages() {
+        return maxUnconfirmedMessages;
+    }
+
+    public ConnectionParams setMaxUnconfirmedMessages(int maxUnconfirmedMessages) {
+        this.maxUnconfirmedMessages = maxUnconfirmedMessages;
+        return this;
+    }
+
+    public boolean willUseCompactMessageFormat() {
+        return useCompactMessageFormat;
+    }
+
+    public ConnectionParams setUseCompactMessageFormat(boolean useCompactMessageFormat) {
+        this.useCompactMessageFormat = useCompactMessageFormat;
+        return this;
+    }
+
+    public MessageIdGenerator getMessageIdGenerator() {
+        return messageIdGenerator;
+    }
+
+    public ConnectionParams setMessageIdGenerator(MessageIdGenerator messageIdGenerator) {
+        this.messageIdGenerator = messageIdGenerator;
+        return this;
+    }
+
+    public int getLargeMessageChunkSize() {
+        return largeMessageChunkSize;
+    }
+
+    public ConnectionParams setLargeMessageChunkSize(int largeMessageChunkSize) {
+        this.largeMessageChunkSize = largeMessageChunkSize;
+        return this;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public ConnectionParams setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    public CompressionMetricsCollector getCompressionMetricsCollector() {
+        return compressionMetricsCollector;
+    }
+
+    public ConnectionParams setCompressionMetricsCollector(CompressionMetricsCollector compressionMetricsCollector) {
+        this.compressionMetricsCollector = compressionMetricsCollector;
+        return this;
+    }
+
+    public int getMaxDecompressedSize() {
+        return maxDecompressedSize;
+    }
+
+    public ConnectionParams setMaxDecompressedSize(int maxDecompressedSize) {
+        this.maxDecompressedSize = maxDecompressedSize;
+        return this;
+    }
 }
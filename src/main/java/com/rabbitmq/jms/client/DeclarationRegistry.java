@@ -0,0 +1,131 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.jms.admin.RMQDestination;
+
+/**
+ * The exchanges, queues and bindings a connection has declared, so that each is declared once per connection rather
+ * than each time a session uses a new {@link RMQDestination} instance for the same destination.
+ * <p>
+ * Declarations are keyed by everything that makes them succeed or fail: the name and type of an exchange, the name of
+ * a queue, and whether they are durable, exclusive or auto-deleted. A declaration with other arguments is not found,
+ * so it is still made, and fails as before if it does not match the existing resource. The registry is shared by the
+ * sessions of a connection, and cleared when the connection is shut down, or a channel is closed by the broker, as
+ * the broker may then have lost or deleted resources.
+ * </p>
+ *
+ * @see RMQSession#declareDestinationIfNecessary(RMQDestination)
+ */
+final class DeclarationRegistry implements ShutdownListener, Consumer<RMQDestination> {
+
+    private final Set<Key> declared = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return <code>true</code> if the connection declared the resource
+     */
+    boolean contains(Key key) {
+        return this.declared.contains(key);
+    }
+
+    /**
+     * Record that the connection declared a resource.
+     */
+    void add(Key key) {
+        this.declared.add(key);
+    }
+
+    /**
+     * Forget the declarations of a queue and its bindings, once it is deleted.
+     */
+    void forgetQueue(String queueName) {
+        for (Iterator<Key> it = this.declared.iterator(); it.hasNext();) {
+            Key key = it.next();
+            if (key.kind != Key.EXCHANGE && key.name.equals(queueName)) it.remove();
+        }
+    }
+
+    /**
+     * Forget all declarations.
+     */
+    void clear() {
+        this.declared.clear();
+    }
+
+    /**
+     * @return the number of declarations recorded
+     */
+    int size() {
+        return this.declared.size();
+    }
+
+    /**
+     * Forget the declarations of a deleted destination.
+     * @see RMQDestination#delete()
+     */
+    @Override
+    public void accept(RMQDestination destination) {
+        if (destination.isQueue()) this.forgetQueue(destination.getAmqpQueueName());
+    }
+
+    /**
+     * Forget all declarations when the connection, or a channel, is closed other than by the application.
+     */
+    @Override
+    public void shutdownCompleted(ShutdownSignalException cause) {
+        if (cause.isHardError() || !cause.isInitiatedByApplication()) this.clear();
+    }
+
+    static Key exchange(String name, String type, boolean durable) {
+        return new Key(Key.EXCHANGE, name, type + (durable ? "/durable" : "/transient"));
+    }
+
+    static Key queue(String name, boolean durable, boolean exclusive, boolean autoDelete) {
+        return new Key(Key.QUEUE, name, (durable ? "durable" : "transient") + (exclusive ? "/exclusive" : "")
+                                        + (autoDelete ? "/auto-delete" : ""));
+    }
+
+    static Key binding(String queueName, String exchangeName, String routingKey) {
+        return new Key(Key.BINDING, queueName, exchangeName + '\u0000' + routingKey);
+    }
+
+    /**
+     * Identity of a declaration.
+     */
+    static final class Key {
+        private static final int EXCHANGE = 0;
+        private static final int QUEUE = 1;
+        private static final int BINDING = 2;
+
+        private final int kind;
+        /** Name of the exchange, or of the queue, or of the queue bound */
+        private final String name;
+        /** The rest of the identity of the declaration */
+        private final String detail;
+
+        private Key(int kind, String name, String detail) {
+            this.kind = kind;
+            this.name = name;
+            this.detail = detail;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return this.kind == other.kind && this.name.equals(other.name) && this.detail.equals(other.detail);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * this.kind + this.name.hashCode()) * 31 + this.detail.hashCode();
+        }
+    }
+}
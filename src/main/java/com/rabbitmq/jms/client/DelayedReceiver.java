@@ -1,11 +1,20 @@
 /* Copyright (c) 2013 Pivotal Software, Inc. All rights reserved. */
 package com.rabbitmq.jms.client;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.GetResponse;
 import com.rabbitmq.jms.util.TimeTracker;
 
@@ -15,6 +24,16 @@ import com.rabbitmq.jms.util.TimeTracker;
  * The blocking method <code>get()</code> only returns with <code>null</code> when either the Receiver is closed,
  * or the timeout expires.
  * </p>
+ * <p>
+ * By default messages are fetched one at a time with <code>basicGet</code>, polling at intervals while the queue is
+ * empty. When <i>prefetching</i> is enabled the receiver instead subscribes to the queue (lazily, on the first
+ * <code>get()</code>) and the broker pushes up to <code>batchingSize</code> messages into a local buffer; <code>get()</code>
+ * then returns from the buffer and waiting threads are woken as soon as a delivery arrives.
+ * </p>
+ * <p>
+ * Waits use a {@link ReentrantLock} rather than a monitor, so that a receiving virtual thread unmounts from its
+ * carrier while it waits.
+ * </p>
  */
 class DelayedReceiver {
 
@@ -22,19 +41,37 @@ class DelayedReceiver {
 
     private static final TimeTracker POLLING_INTERVAL = new TimeTracker(100, TimeUnit.MILLISECONDS); // one tenth of a second
 
-    @SuppressWarnings("unused")
     private final int batchingSize;
+    private final boolean prefetch;
     private final RMQMessageConsumer rmqMessageConsumer;
 
-    private final Object responseLock = new Object();
+    private final ReentrantLock responseLock = new ReentrantLock();
+    /** Signalled when a message is buffered or the receiver is aborted. */
+    private final Condition responseArrived = this.responseLock.newCondition();
     private boolean aborted = false; // @GuardedBy(responseLock)
 
+    /** Messages pushed by the broker and not yet handed out by {@link #get}. */
+    private final ArrayDeque<GetResponse> buffer = new ArrayDeque<GetResponse>(); // @GuardedBy(responseLock)
+    /** The subscription feeding {@link #buffer}, <code>null</code> when not subscribed. */
+    private PrefetchConsumer prefetchConsumer = null; // @GuardedBy(responseLock)
+
     /**
      * @param batchingSize - the intended limit of messages that can be pre-fetched.
      * @param rmqMessageConsumer - the JMS MessageConsumer we are serving.
      */
     public DelayedReceiver(int batchingSize, RMQMessageConsumer rmqMessageConsumer) {
+        this(batchingSize, false, rmqMessageConsumer);
+    }
+
+    /**
+     * @param batchingSize - the limit of messages that can be pre-fetched.
+     * @param prefetch - <code>true</code> to subscribe and buffer up to <code>batchingSize</code> messages,
+     *            <code>false</code> to poll with <code>basicGet</code>.
+     * @param rmqMessageConsumer - the JMS MessageConsumer we are serving.
+     */
+    public DelayedReceiver(int batchingSize, boolean prefetch, RMQMessageConsumer rmqMessageConsumer) {
         this.batchingSize = batchingSize;
+        this.prefetch = prefetch && batchingSize > 0;
         this.rmqMessageConsumer = rmqMessageConsumer;
     }
 
@@ -44,35 +81,193 @@ class DelayedReceiver {
      * @return message gotten, or <code>null</code> if timeout or connection closed.
      */
     public GetResponse get(TimeTracker tt) {
+        if (this.prefetch) return this.getPrefetched(tt);
+        this.responseLock.lock();
         try {
-            synchronized (this.responseLock) {
-                GetResponse resp = this.rmqMessageConsumer.getFromRabbitQueue();
-                if (resp != null) return resp;
-                while (!this.aborted && !tt.timedOut()) {
-                    resp = this.rmqMessageConsumer.getFromRabbitQueue();
-                    if (resp != null)
-                        break;
-                    new TimeTracker(POLLING_INTERVAL).timedWait(this.responseLock);
-                }
-                return resp;
+            GetResponse resp = this.rmqMessageConsumer.getFromRabbitQueue();
+            if (resp != null) return resp;
+            while (!this.aborted && !tt.timedOut()) {
+                resp = this.rmqMessageConsumer.getFromRabbitQueue();
+                if (resp != null)
+                    break;
+                new TimeTracker(POLLING_INTERVAL).timedAwait(this.responseArrived);
             }
-
+            return resp;
         } catch (InterruptedException e) {
             logger.warn("Get interrupted while buffer.poll-ing.", e);
             Thread.currentThread().interrupt();
             return null;
+        } finally {
+            this.responseLock.unlock();
+        }
+    }
+
+    /**
+     * Get the messages available now, without waiting: from the prefetch buffer if prefetching, otherwise by
+     * <code>basicGet</code> until the queue is empty.
+     * @param responses - list to add the messages to
+     * @param max - maximum number of messages to add
+     * @return the number of messages added
+     */
+    int drainTo(List<GetResponse> responses, int max) {
+        int count = 0;
+        this.responseLock.lock();
+        try {
+            while (count < max && !this.aborted) {
+                GetResponse resp = this.prefetch ? this.buffer.poll() : this.rmqMessageConsumer.getFromRabbitQueue();
+                if (resp == null) break;
+                responses.add(resp);
+                ++count;
+            }
+        } finally {
+            this.responseLock.unlock();
+        }
+        return count;
+    }
+
+    /**
+     * Take a message from the prefetch buffer, subscribing first if necessary, and waiting for a delivery if the buffer
+     * is empty.
+     */
+    private GetResponse getPrefetched(TimeTracker tt) {
+        this.responseLock.lock();
+        try {
+            if (!this.aborted) this.subscribe();
+            GetResponse resp = this.buffer.poll();
+            while (resp == null && !this.aborted && !tt.timedOut()) {
+                tt.timedAwait(this.responseArrived);
+                resp = this.buffer.poll();
+            }
+            return resp;
+        } catch (InterruptedException e) {
+            logger.warn("Get interrupted while waiting for prefetched message.", e);
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            this.responseLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of messages the broker pushes without acknowledgement, 0 if messages are polled with
+     * <code>basicGet</code>, without limit
+     */
+    int window() {
+        return this.prefetch ? this.batchingSize : 0;
+    }
+
+    /**
+     * Subscribe to the queue, unless already subscribed. The server limits the number of unacknowledged messages it
+     * pushes to this subscription to <code>batchingSize</code>, which bounds the buffer.
+     */
+    private void subscribe() {
+        // @GuardedBy(responseLock)
+        if (this.prefetchConsumer != null) return;
+        Channel channel = this.rmqMessageConsumer.getSession().getChannel();
+        PrefetchConsumer consumer = new PrefetchConsumer(channel, RMQMessageConsumer.newConsumerTag());
+        try {
+            channel.basicQos(this.batchingSize);  // applies to consumers subscribed after this call
+            try {
+                this.rmqMessageConsumer.basicConsume(consumer, consumer.consTag);
+            } finally {
+                int channelsQos = this.rmqMessageConsumer.getSession().getConnection().getChannelsQos();
+                channel.basicQos(channelsQos == RMQConnection.NO_CHANNEL_QOS ? 0 : channelsQos);
+            }
+            this.prefetchConsumer = consumer;
+        } catch (Exception e) { // includes unchecked exceptions, e.g. ShutdownSignalException
+            logger.error("basicConsume (consumerTag='{}') for prefetching receiver threw exception", consumer.consTag, e);
+        }
+    }
+
+    /**
+     * Cancel the subscription, if any, and requeue all buffered messages. A later {@link #get} subscribes again.
+     * Used when the consumer is switched to asynchronous delivery and when it is closed.
+     */
+    void cancel() {
+        this.responseLock.lock();
+        try {
+            PrefetchConsumer consumer = this.prefetchConsumer;
+            if (consumer == null) return;
+            this.prefetchConsumer = null;
+            consumer.cancelled = true;
+            try {
+                consumer.getChannel().basicCancel(consumer.consTag);
+            } catch (Exception e) {
+                logger.debug("basicCancel (consumerTag='{}') threw exception", consumer.consTag, e);
+            }
+            GetResponse resp;
+            while ((resp = this.buffer.poll()) != null) {
+                requeue(consumer.getChannel(), resp.getEnvelope().getDeliveryTag());
+            }
+        } finally {
+            this.responseLock.unlock();
+        }
+    }
+
+    private void requeue(Channel channel, long dtag) {
+        try {
+            channel.basicNack(dtag, false, true);
+        } catch (Exception e) {
+            logger.debug("basicNack (dtag='{}') of prefetched message threw exception", dtag, e);
         }
     }
 
     private void abort() {
-        synchronized(this.responseLock) {
+        this.responseLock.lock();
+        try {
             this.aborted = true;
-            this.responseLock.notifyAll();
+            this.responseArrived.signalAll();
+        } finally {
+            this.responseLock.unlock();
         }
     }
 
     public void close() {
         this.abort();
+        this.cancel();
     }
 
-}
\ No newline at end of file
+    /**
+     * Subscription that feeds the prefetch buffer and wakes any thread waiting in {@link DelayedReceiver#get}.
+     */
+    private class PrefetchConsumer extends DefaultConsumer {
+        private final String consTag;
+        private volatile boolean cancelled = false;
+
+        PrefetchConsumer(Channel channel, String consTag) {
+            super(channel);
+            this.consTag = consTag;
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
+            DelayedReceiver.this.responseLock.lock();
+            try {
+                if (this.cancelled) {
+                    // arrived after we cancelled: give it back
+                    requeue(this.getChannel(), envelope.getDeliveryTag());
+                    return;
+                }
+                // last parameter is remaining message count, which we don't know.
+                DelayedReceiver.this.buffer.add(new GetResponse(envelope, properties, body, 0));
+                DelayedReceiver.this.responseArrived.signalAll();
+            } finally {
+                DelayedReceiver.this.responseLock.unlock();
+            }
+        }
+
+        @Override
+        public void handleCancel(String consumerTag) {
+            logger.debug("prefetching receiver subscription cancelled by broker (consumerTag='{}')", consumerTag);
+            DelayedReceiver.this.responseLock.lock();
+            try {
+                if (DelayedReceiver.this.prefetchConsumer == this) {
+                    // buffered messages stay valid; the next get() subscribes again
+                    DelayedReceiver.this.prefetchConsumer = null;
+                }
+            } finally {
+                DelayedReceiver.this.responseLock.unlock();
+            }
+        }
+    }
+}
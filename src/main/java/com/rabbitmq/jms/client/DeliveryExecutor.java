@@ -5,6 +5,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -17,6 +18,10 @@ import com.rabbitmq.jms.util.RMQJMSException;
  * Class to deliver messages to the <code>onMessage()</code> callback. Handles execution on a different thread, timeout
  * if execution takes too long (set on instantiation), and interrupts execution on closure or timeout. Also serialises
  * calls. There is one instance of this executor per session.
+ * <p>
+ * If an {@link OnMessageWatchdog} is supplied, <code>onMessage()</code> is instead called directly on the delivering
+ * thread, and the watchdog interrupts it if it takes too long.
+ * </p>
  */
 public class DeliveryExecutor {
 
@@ -42,8 +47,36 @@ public class DeliveryExecutor {
     private ExecutorService onMessageExecutorService = null;
     private final Object lockOnMessageExecutorService = new Object();
 
+    /** Watch on direct <code>onMessage</code> calls; <code>null</code> if calls are made on the executor. */
+    private final OnMessageWatchdog.Watch watch;
+    private final OnMessageWatchdog watchdog;
+
+    /** Creates the executor thread; <code>null</code> for the default (platform) thread factory. */
+    private final ThreadFactory threadFactory;
+
     public DeliveryExecutor(long onMessageTimeoutMs) {
+        this(onMessageTimeoutMs, null);
+    }
+
+    /**
+     * @param onMessageTimeoutMs - timeout for onMessage executions
+     * @param watchdog - if not <code>null</code>, <code>onMessage</code> is called directly and timed by this watchdog
+     */
+    DeliveryExecutor(long onMessageTimeoutMs, OnMessageWatchdog watchdog) {
+        this(onMessageTimeoutMs, watchdog, null);
+    }
+
+    /**
+     * @param onMessageTimeoutMs - timeout for onMessage executions
+     * @param watchdog - if not <code>null</code>, <code>onMessage</code> is called directly and timed by this watchdog
+     * @param threadFactory - creates the thread <code>onMessage</code> is called on when there is no watchdog;
+     *            if <code>null</code> a default platform thread is used
+     */
+    DeliveryExecutor(long onMessageTimeoutMs, OnMessageWatchdog watchdog, ThreadFactory threadFactory) {
         this.onMessageTimeoutMs = onMessageTimeoutMs;
+        this.watchdog = watchdog;
+        this.watch = watchdog == null ? null : watchdog.register();
+        this.threadFactory = threadFactory;
     }
 
     /**
@@ -58,6 +91,10 @@ public class DeliveryExecutor {
      * @throws InterruptedException if executing thread is interrupted
      */
     public void deliverMessageWithProtection(RMQMessage rmqMessage, MessageListener messageListener) throws JMSException, InterruptedException {
+        if (this.watch != null) {
+            this.deliverMessageDirectly(rmqMessage, messageListener);
+            return;
+        }
         try {
             this.getExecutorService().submit(new CallOnMessage(rmqMessage, messageListener)).get(this.onMessageTimeoutMs, TimeUnit.MILLISECONDS);
         } catch (TimeoutException e) {
@@ -68,7 +105,31 @@ public class DeliveryExecutor {
         }
     }
 
+    /**
+     * Call <code>onMessage</code> on this thread. If the watchdog interrupts the call the outcome is the same as
+     * an executor timeout, except that we can only report it once <code>onMessage</code> has returned.
+     */
+    private void deliverMessageDirectly(RMQMessage rmqMessage, MessageListener messageListener) throws JMSException {
+        Throwable thrown = null;
+        this.watch.arm();
+        try {
+            messageListener.onMessage(rmqMessage);
+        } catch (Throwable t) {
+            thrown = t;
+        }
+        if (this.watch.disarm()) {
+            throw new RMQJMSException("onMessage took too long and was interrupted",
+                new TimeoutException(String.format("onMessage did not return within %d ms", this.onMessageTimeoutMs)));
+        }
+        if (thrown != null) {
+            throw new RMQMessageListenerExecutionJMSException("onMessage threw exception", thrown);
+        }
+    }
+
     public void close() {
+        if (this.watch != null) {
+            this.watchdog.unregister(this.watch);
+        }
         closeExecutorService(this.takeExecutorService());
     }
 
@@ -96,7 +157,9 @@ public class DeliveryExecutor {
     private ExecutorService getExecutorService() {
         synchronized (this.lockOnMessageExecutorService) {
             if (this.onMessageExecutorService == null) {
-                this.onMessageExecutorService = Executors.newSingleThreadExecutor();
+                this.onMessageExecutorService = this.threadFactory == null
+                    ? Executors.newSingleThreadExecutor()
+                    : Executors.newSingleThreadExecutor(this.threadFactory);
             }
             return this.onMessageExecutorService;
         }
@@ -0,0 +1,106 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * A reusable buffer for encoding the messages a session sends.
+ * <p>
+ * Messages are encoded into the buffer, and {@link #toByteArray()} hands out the only copy of the encoded message, of
+ * exactly the right size. When the buffer is {@link #reset() reset} for the next message its capacity is adjusted
+ * to the size of the messages recently encoded: it is grown at once, so a message is not copied as the buffer
+ * doubles, and shrinks back slowly after a large message. The capacity is never sized above
+ * {@link #MAX_RETAINED_SIZE}, and a buffer grown larger by a message is not kept between messages.
+ * </p>
+ * <p>
+ * Like the session it belongs to, a buffer must be used by one thread at a time; unlike
+ * {@link ByteArrayOutputStream} its methods are not synchronized.
+ * </p>
+ */
+final class EncodeBuffer extends ByteArrayOutputStream {
+
+    /** Largest buffer kept for the next message */
+    static final int MAX_RETAINED_SIZE = Integer.getInteger("com.rabbitmq.jms.client.message.maxRetainedBufferSize", 1024 * 1024);
+
+    private final int minimumSize;
+    /** Decaying maximum of the sizes of the messages encoded */
+    private int estimate;
+
+    EncodeBuffer() {
+        this(RMQMessage.DEFAULT_MESSAGE_BODY_SIZE);
+    }
+
+    EncodeBuffer(int minimumSize) {
+        super(minimumSize);
+        this.minimumSize = minimumSize;
+        this.estimate = minimumSize;
+    }
+
+    /**
+     * Empty the buffer, and size it for the next message.
+     */
+    @Override
+    public void reset() {
+        this.count = 0;
+        int target = this.targetCapacity();
+        if (this.buf.length < target || this.buf.length > 2 * target) {
+            this.buf = new byte[target];
+        }
+    }
+
+    /**
+     * @return a copy of the content of the buffer, which is then sized for messages of this size
+     */
+    @Override
+    public byte[] toByteArray() {
+        byte[] bytes = Arrays.copyOf(this.buf, this.count);
+        this.record(this.count);
+        if (this.buf.length > MAX_RETAINED_SIZE) {
+            this.buf = new byte[this.minimumSize];
+        }
+        return bytes;
+    }
+
+    @Override
+    public void write(int b) {
+        if (this.count == this.buf.length) this.grow(this.count + 1);
+        this.buf[this.count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        if (len > this.buf.length - this.count) this.grow(this.count + len);
+        System.arraycopy(b, off, this.buf, this.count, len);
+        this.count += len;
+    }
+
+    @Override
+    public int size() {
+        return this.count;
+    }
+
+    /** @return the current capacity of the buffer */
+    int capacity() {
+        return this.buf.length;
+    }
+
+    private void record(int size) {
+        size = Math.min(size, MAX_RETAINED_SIZE); // larger messages grow the buffer as they are written
+        // jump up to a larger size, decay by an eighth of the difference towards a smaller one
+        this.estimate = size >= this.estimate ? size : this.estimate - ((this.estimate - size) >> 3);
+    }
+
+    private int targetCapacity() {
+        long target = this.estimate + (this.estimate >> 3); // headroom for slightly larger messages
+        return (int) Math.max(Math.min(target, MAX_RETAINED_SIZE), this.minimumSize);
+    }
+
+    private void grow(int minCapacity) {
+        if (minCapacity < 0) throw new OutOfMemoryError();
+        int newCapacity = Math.max(this.buf.length << 1, minCapacity);
+        if (newCapacity < 0) newCapacity = minCapacity;
+        this.buf = Arrays.copyOf(this.buf, newCapacity);
+    }
+}
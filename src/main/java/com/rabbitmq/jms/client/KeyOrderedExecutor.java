@@ -0,0 +1,98 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks on a fixed pool of threads, keeping tasks with the same key in submission order.
+ * <p>
+ * Tasks with a <code>null</code> key may run on any free thread. For other keys, the first task submitted runs
+ * a <i>lane</i> on a pool thread, which also runs the tasks submitted with that key while it is busy; the lane is
+ * dropped when it runs out of tasks. Tasks with different keys therefore run in parallel, up to the size of the pool.
+ * </p>
+ */
+class KeyOrderedExecutor {
+
+    private final Logger logger = LoggerFactory.getLogger(KeyOrderedExecutor.class);
+
+    private final ExecutorService pool;
+    /** Pending tasks of the keys that have a lane running */
+    private final Map<Object, Queue<Runnable>> lanes = new HashMap<Object, Queue<Runnable>>(); // @GuardedBy(lanes)
+
+    /**
+     * @param threads - size of the pool
+     * @param threadNamePrefix - prefix of the names of the pool's threads
+     */
+    KeyOrderedExecutor(int threads, final String threadNamePrefix) {
+        this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, threadNamePrefix + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * @param key - tasks with equal keys are run one at a time, in order; <code>null</code> for no ordering
+     * @param task - to run
+     */
+    void execute(final Object key, final Runnable task) {
+        if (key == null) {
+            this.pool.execute(task);
+            return;
+        }
+        synchronized (this.lanes) {
+            Queue<Runnable> lane = this.lanes.get(key);
+            if (lane != null) {
+                lane.add(task);
+                return;
+            }
+            this.lanes.put(key, new ArrayDeque<Runnable>());
+        }
+        this.pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                runLane(key, task);
+            }
+        });
+    }
+
+    private void runLane(Object key, Runnable first) {
+        Runnable task = first;
+        while (task != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Task for key '{}' threw exception", key, e);
+            }
+            synchronized (this.lanes) {
+                Queue<Runnable> lane = this.lanes.get(key);
+                task = (lane == null) ? null : lane.poll();  // no lane after shutdown
+                if (task == null) this.lanes.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Stop the pool's threads; tasks not yet started are dropped.
+     */
+    void shutdown() {
+        this.pool.shutdownNow();
+        synchronized (this.lanes) {
+            this.lanes.clear();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.LongString;
+
+/**
+ * Publishes the payload of a large message as a group of chunk messages, each at most <code>chunkSize</code> bytes.
+ * <p>
+ * The bodies of the chunks, concatenated, are the payload the message would have been published with in one piece.
+ * Every chunk has the AMQP properties of the message, so that routing and selectors apply to all chunks alike, and
+ * headers identifying the group, the index of the chunk in the group, and the last chunk. Only one chunk is held in
+ * memory: a chunk is published when it is full and more is written, the last one when the stream is closed.
+ * </p>
+ * <p>
+ * Like the session it publishes on, a stream must be used by one thread at a time.
+ * </p>
+ *
+ * @see ChunkAssembler
+ */
+final class LargeMessageOutputStream extends OutputStream {
+
+    /** Header holding the ID of the group of chunks of a message */
+    static final String GROUP_HEADER = "rmq.jms.chunk.group";
+    /** Header holding the index of a chunk in its group, from 0 */
+    static final String INDEX_HEADER = "rmq.jms.chunk.index";
+    /** Header set to <code>true</code> on the last chunk of a group */
+    static final String LAST_HEADER = "rmq.jms.chunk.last";
+
+    /** Chunk size of {@link RMQMessageProducer#createLargeMessageOutputStream} if the session does not split messages */
+    static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private final RMQSession session;
+    private final String exchange;
+    private final String routingKey;
+    private final AMQP.BasicProperties properties;
+    private final RMQMessage message;
+    private final String group;
+    private final ChunkCompletion completion; // null if there is no completion listener
+
+    private final byte[] chunk;
+    private int count = 0;
+    private int index = 0;
+    private boolean closed = false;
+
+    /**
+     * @param session - session to publish on
+     * @param exchange - exchange to publish to
+     * @param routingKey - routing key to publish with
+     * @param properties - AMQP properties of the message, given to every chunk
+     * @param message - the message sent
+     * @param group - ID of the group of chunks, unique to the message
+     * @param chunkSize - maximum size of the body of a chunk
+     * @param completionListener - told when all the chunks have been sent, or one could not be; may be <code>null</code>
+     */
+    LargeMessageOutputStream(RMQSession session, String exchange, String routingKey, AMQP.BasicProperties properties,
+                             RMQMessage message, String group, int chunkSize, CompletionListener completionListener) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        this.session = session;
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.properties = properties;
+        this.message = message;
+        this.group = group;
+        this.completion = completionListener == null ? null : new ChunkCompletion(completionListener);
+        this.chunk = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.ensureOpen();
+        if (this.count == this.chunk.length) this.publish(false);
+        this.chunk[this.count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        this.ensureOpen();
+        while (len > 0) {
+            if (this.count == this.chunk.length) this.publish(false);
+            int n = Math.min(len, this.chunk.length - this.count);
+            System.arraycopy(b, off, this.chunk, this.count, n);
+            this.count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Publishes the last chunk. Nothing is published if the stream is already closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) return;
+        this.publish(true);
+        this.closed = true;
+        if (this.completion != null) this.completion.onCompletion(this.message); // all chunks published
+    }
+
+    /**
+     * @return the number of chunks published
+     */
+    int chunksPublished() {
+        return this.index;
+    }
+
+    private void publish(boolean last) throws IOException {
+        Map<String, Object> headers = this.properties.getHeaders() == null ?
+            new HashMap<String, Object>() : new HashMap<String, Object>(this.properties.getHeaders());
+        headers.put(GROUP_HEADER, this.group);
+        headers.put(INDEX_HEADER, this.index);
+        if (last) headers.put(LAST_HEADER, Boolean.TRUE);
+        AMQP.BasicProperties props = this.properties.builder().headers(headers).build();
+        try {
+            if (this.completion != null) this.completion.published();
+            this.session.publish(this.exchange, this.routingKey, props, Arrays.copyOf(this.chunk, this.count),
+                this.message, this.completion);
+        } catch (JMSException x) {
+            throw new IOException(x);
+        }
+        this.index++;
+        this.count = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.closed) throw new IOException("Large message stream closed");
+    }
+
+    /**
+     * @return <code>true</code> if the AMQP headers are those of a chunk of a large message
+     */
+    static boolean isChunk(Map<String, Object> headers) {
+        return headers != null && headers.containsKey(GROUP_HEADER);
+    }
+
+    /**
+     * @return the group of a chunk
+     */
+    static String group(Map<String, Object> headers) {
+        Object group = headers.get(GROUP_HEADER);
+        return group == null ? null : group.toString(); // strings arrive as LongString
+    }
+
+    /**
+     * @return the index of a chunk in its group
+     */
+    static int index(Map<String, Object> headers) {
+        Object index = headers.get(INDEX_HEADER);
+        return index instanceof Number ? ((Number) index).intValue() : Integer.parseInt(String.valueOf(index));
+    }
+
+    /**
+     * @return <code>true</code> if a chunk is the last of its group
+     */
+    static boolean isLast(Map<String, Object> headers) {
+        Object last = headers.get(LAST_HEADER);
+        return Boolean.TRUE.equals(last) || last instanceof LongString && Boolean.parseBoolean(last.toString());
+    }
+
+    /**
+     * Completes the send of the message once every chunk is sent, or fails it when the first chunk cannot be.
+     */
+    private static final class ChunkCompletion implements CompletionListener {
+        private final CompletionListener listener;
+        /** Chunks not yet confirmed, plus one until the stream is closed */
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicBoolean failed = new AtomicBoolean(false);
+
+        private ChunkCompletion(CompletionListener listener) {
+            this.listener = listener;
+        }
+
+        private void published() {
+            this.pending.incrementAndGet();
+        }
+
+        @Override
+        public void onCompletion(Message message) {
+            if (this.pending.decrementAndGet() == 0 && !this.failed.get()) {
+                this.listener.onCompletion(message);
+            }
+        }
+
+        @Override
+        public void onException(Message message, Exception exception) {
+            this.pending.decrementAndGet();
+            if (this.failed.compareAndSet(false, true)) {
+                this.listener.onException(message, exception);
+            }
+        }
+    }
+}
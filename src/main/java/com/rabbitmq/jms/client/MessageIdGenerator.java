@@ -0,0 +1,42 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Strategy to generate the IDs of the messages sent.
+ * <p>
+ * The <code>JMSMessageID</code> of a message is <code>"ID:"</code> followed by the generated ID. IDs must be unique
+ * across all the connections sending to the same destinations. A generator is shared by all the sessions of a
+ * connection, so it must be thread-safe.
+ * </p>
+ *
+ * @see com.rabbitmq.jms.admin.RMQConnectionFactory#setMessageIdGenerator(MessageIdGenerator)
+ * @since 2.0.0
+ */
+@FunctionalInterface
+public interface MessageIdGenerator {
+
+    /**
+     * Random UUIDs, drawn from the shared {@link SecureRandom} of {@link UUID#randomUUID()} for every message.
+     */
+    MessageIdGenerator RANDOM_UUID = () -> UUID.randomUUID().toString();
+
+    /**
+     * @return a new message ID, without the <code>"ID:"</code> prefix
+     */
+    String generate();
+
+    /**
+     * A generator combining a random prefix, drawn once, with a counter.
+     * <p>
+     * IDs are in the canonical form of a UUID: the random prefix is the first 64 bits, the counter, started at a
+     * random value, the last 64 bits. This is the default generator, one for each connection.
+     * </p>
+     * @return a new generator, with its own random prefix
+     */
+    static MessageIdGenerator sequential() {
+        return new SequentialMessageIdGenerator(new SecureRandom());
+    }
+}
@@ -53,6 +53,9 @@ class MessageListenerConsumer implements Consumer, Abortable {
 
     private final ReceivingContextConsumer receivingContextConsumer;
 
+    /** Number of messages the broker delivers to this consumer without acknowledgement, 0 for no limit */
+    private final int window;
+
     /**
      * Constructor
      *
@@ -73,6 +76,8 @@ class MessageListenerConsumer implements Consumer, Abortable {
         this.requeueOnMessageListenerException = requeueOnMessageListenerException;
         this.skipAck = messageConsumer.amqpAutoAck();
         this.receivingContextConsumer = receivingContextConsumer;
+        int channelsQos = messageConsumer.getSession().getConnection().getChannelsQos();
+        this.window = channelsQos == RMQConnection.NO_CHANNEL_QOS ? 0 : channelsQos;
     }
 
     private String getConsTag() {
@@ -124,13 +129,24 @@ class MessageListenerConsumer implements Consumer, Abortable {
             nack(dtag);
             return;
         }
+        if (!this.skipAck) this.messageConsumer.getSession().deliveryReceived(envelope.getDeliveryTag());
         /* Wrap the incoming message in a GetResponse */
         GetResponse response = new GetResponse(envelope, properties, body, 0); // last parameter is remaining message count, which we don't know.
         try {
             long dtag = envelope.getDeliveryTag();
             if (this.messageListener != null) {
-                RMQMessage msg = RMQMessage.convertMessage(this.messageConsumer.getSession(), this.messageConsumer.getDestination(),
-                        response, this.receivingContextConsumer);
+                RMQMessage msg;
+                long[] dtags;
+                if (this.messageConsumer.isChunk(response)) {
+                    ChunkAssembler.Chunks chunks = this.messageConsumer.assembleChunk(response, this.window);
+                    if (chunks == null) return; // acknowledged with the last chunk of the message
+                    dtags = chunks.getDeliveryTags();
+                    msg = RMQMessage.convertChunkedMessage(this.messageConsumer.getSession(), chunks, this.receivingContextConsumer);
+                } else {
+                    dtags = new long[] { dtag };
+                    msg = RMQMessage.convertMessage(this.messageConsumer.getSession(), this.messageConsumer.getDestination(),
+                            response, this.receivingContextConsumer);
+                }
                 boolean runtimeExceptionInListener = false;
                 try {
                     this.messageConsumer.getSession().deliverMessage(msg, this.messageListener);
@@ -138,9 +154,9 @@ class MessageListenerConsumer implements Consumer, Abortable {
                     if (e.getCause() instanceof RuntimeException) {
                         runtimeExceptionInListener = true;
                         if (e.getCause().getCause() instanceof RMQNackException) {
-                            nackOnNackException(dtag);
+                            nackOnNackException(dtags);
                         } else if (requeueOnMessageListenerException) {
-                            nack(dtag);
+                            nack(dtags);
                             this.abort();
                         }
                     } else {
@@ -148,7 +164,7 @@ class MessageListenerConsumer implements Consumer, Abortable {
                     }
                 }
                 if (!runtimeExceptionInListener) {
-                    dealWithAcknowledgments(dtag);
+                    dealWithAcknowledgments(dtags);
                 }
 //                if (this.requeueOnMessageListenerException) {
 //                    // requeuing in case of RuntimeException from the listener
@@ -195,21 +211,27 @@ class MessageListenerConsumer implements Consumer, Abortable {
         }
     }
 
-    private void nack(long dtag) {
+    private void nack(long... dtags) {
         if (!skipAck) {
-            this.messageConsumer.getSession().explicitNack(dtag);
+            for (long dtag : dtags) {
+                this.messageConsumer.getSession().explicitNack(dtag);
+            }
         }
     }
 
-    private void nackOnNackException(long dtag) {
+    private void nackOnNackException(long... dtags) {
         if (!skipAck) {
-            this.messageConsumer.getSession().explicitNackOnNackException(dtag);
+            for (long dtag : dtags) {
+                this.messageConsumer.getSession().explicitNackOnNackException(dtag);
+            }
         }
     }
 
-    private void dealWithAcknowledgments(long dtag) {
+    private void dealWithAcknowledgments(long... dtags) {
         if (!skipAck) {
-            this.messageConsumer.dealWithAcknowledgements(this.autoAck, dtag);
+            for (long dtag : dtags) {
+                this.messageConsumer.dealWithAcknowledgements(this.autoAck, dtag);
+            }
         }
     }
 
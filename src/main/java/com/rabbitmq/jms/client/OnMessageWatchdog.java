@@ -0,0 +1,124 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection-wide watchdog for <code>onMessage</code> calls made directly on the delivering thread.
+ * <p>
+ * Each session registers one {@link Watch}, which is armed before and disarmed after each <code>onMessage</code> call;
+ * this costs a few volatile writes and one uncontended lock, and allocates nothing. A single periodic task scans the
+ * armed watches and interrupts any thread that has overrun its deadline, so overruns are detected to within one
+ * <i>tick</i> (a tenth of the timeout, but no less than {@value #MIN_TICK_MS} ms).
+ * </p>
+ */
+class OnMessageWatchdog {
+
+    private final Logger logger = LoggerFactory.getLogger(OnMessageWatchdog.class);
+
+    private static final long MIN_TICK_MS = 10;
+
+    private final ScheduledExecutorService scheduler;
+    private final long timeoutNanos;
+    private final long tickMs;
+
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    private ScheduledFuture<?> scanTask = null; // @GuardedBy(this)
+
+    /**
+     * @param scheduler - runs the periodic scan
+     * @param onMessageTimeoutMs - how long <code>onMessage</code> may take, in milliseconds
+     */
+    OnMessageWatchdog(ScheduledExecutorService scheduler, long onMessageTimeoutMs) {
+        this.scheduler = scheduler;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(onMessageTimeoutMs);
+        this.tickMs = Math.max(MIN_TICK_MS, onMessageTimeoutMs / 10);
+    }
+
+    /**
+     * @return a new watch, scanned until it is {@link #unregister}ed
+     */
+    Watch register() {
+        Watch watch = new Watch();
+        this.watches.add(watch);
+        this.startScanning();
+        return watch;
+    }
+
+    void unregister(Watch watch) {
+        this.watches.remove(watch);
+    }
+
+    private synchronized void startScanning() {
+        if (this.scanTask == null) {
+            this.scanTask = this.scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    scan();
+                }
+            }, this.tickMs, this.tickMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scan() {
+        long now = System.nanoTime();
+        for (Watch watch : this.watches) {
+            if (watch.checkOverrun(now)) {
+                logger.debug("onMessage on thread {} overran its timeout and was interrupted", watch.thread);
+            }
+        }
+    }
+
+    /**
+     * Tracks the <code>onMessage</code> calls of one session, which are made one at a time.
+     */
+    final class Watch {
+        private volatile boolean armed = false;
+        private volatile long deadline;
+        private volatile Thread thread;
+        private boolean overrun = false; // @GuardedBy(this)
+
+        /**
+         * Arm the watch for a call on the current thread.
+         */
+        void arm() {
+            this.thread = Thread.currentThread();
+            this.deadline = System.nanoTime() + OnMessageWatchdog.this.timeoutNanos;
+            this.armed = true;
+        }
+
+        /**
+         * Disarm the watch; if the call overran, the interrupt sent to the current thread is cleared.
+         * @return <code>true</code> if the call overran its deadline and was interrupted
+         */
+        boolean disarm() {
+            boolean overran;
+            synchronized (this) {
+                this.armed = false;
+                overran = this.overrun;
+                this.overrun = false;
+            }
+            if (overran) Thread.interrupted(); // interrupt was sent before we took the lock
+            return overran;
+        }
+
+        private boolean checkOverrun(long now) {
+            if (!this.armed || now - this.deadline < 0) return false;
+            synchronized (this) {
+                if (this.armed && !this.overrun && now - this.deadline >= 0) {
+                    this.overrun = true;
+                    this.thread.interrupt();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.util.RMQJMSException;
+
+/**
+ * Compresses the payloads of messages sent above a size threshold, and decompresses the payloads received, with the
+ * <code>deflate</code> (zlib) format, signalled by the AMQP <code>content-encoding</code> property.
+ * <p>
+ * {@link Deflater}s and {@link Inflater}s hold native memory, so the connection keeps a bounded pool of each, shared
+ * by its sessions, rather than creating one per message. At most {@link #POOL_SIZE} of each are kept; others are
+ * ended when they are released.
+ * </p>
+ * <p>
+ * Payloads are not decompressed beyond a maximum size, so that a small payload cannot exhaust the memory of the
+ * consumer.
+ * </p>
+ */
+final class PayloadCompression {
+
+    /** Value of the AMQP <code>content-encoding</code> property of compressed payloads */
+    static final String DEFLATE = "deflate";
+
+    static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** Default maximum size of a decompressed payload */
+    static final int DEFAULT_MAX_DECOMPRESSED_SIZE = 64 * 1024 * 1024;
+
+    private final int threshold;
+    private final int maxDecompressedSize;
+    private final CompressionMetricsCollector metricsCollector;
+
+    private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private volatile boolean closed = false;
+
+    /**
+     * @param threshold - payloads larger than this number of bytes are compressed; <code>0</code> for none
+     * @param metricsCollector - told the sizes of the payloads compressed and decompressed; may be <code>null</code>
+     */
+    PayloadCompression(int threshold, CompressionMetricsCollector metricsCollector) {
+        this(threshold, DEFAULT_MAX_DECOMPRESSED_SIZE, metricsCollector);
+    }
+
+    /**
+     * @param threshold - payloads larger than this number of bytes are compressed; <code>0</code> for none
+     * @param maxDecompressedSize - payloads decompressing to more than this number of bytes are rejected;
+     *                            <code>0</code> for no limit
+     * @param metricsCollector - told the sizes of the payloads compressed and decompressed; may be <code>null</code>
+     */
+    PayloadCompression(int threshold, int maxDecompressedSize, CompressionMetricsCollector metricsCollector) {
+        this.threshold = Math.max(0, threshold);
+        this.maxDecompressedSize = maxDecompressedSize <= 0 ? Integer.MAX_VALUE - 8 : maxDecompressedSize;
+        this.metricsCollector = metricsCollector == null ? CompressionMetricsCollector.NO_OP : metricsCollector;
+    }
+
+    /**
+     * @return the threshold for messages sent to this destination: its own if set, else the connection's
+     */
+    int threshold(RMQDestination destination) {
+        Integer threshold = destination.getCompressionThreshold();
+        return threshold == null ? this.threshold : Math.max(0, threshold);
+    }
+
+    /**
+     * @param destination - destination of the message
+     * @param data - encoded payload of the message
+     * @return the compressed payload, or <code>null</code> if the payload is not above the destination's threshold or
+     * compression does not make it smaller
+     */
+    byte[] compress(RMQDestination destination, byte[] data) {
+        int threshold = this.threshold(destination);
+        if (threshold == 0 || data.length <= threshold) return null;
+        byte[] compressed = this.deflate(data);
+        this.metricsCollector.compressed(destination, data.length, compressed == null ? data.length : compressed.length);
+        return compressed;
+    }
+
+    /**
+     * @return the deflated data, or <code>null</code> if it would not be smaller
+     */
+    private byte[] deflate(byte[] data) {
+        Deflater deflater = this.deflaters.poll();
+        if (deflater == null) deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] out = new byte[data.length];
+            int size = 0;
+            while (!deflater.finished()) {
+                if (size == out.length) return null; // no smaller
+                size += deflater.deflate(out, size, out.length - size);
+            }
+            return size == out.length ? null : Arrays.copyOf(out, size);
+        } finally {
+            deflater.reset();
+            if (this.closed || !this.deflaters.offer(deflater)) deflater.end();
+        }
+    }
+
+    /**
+     * @param contentEncoding - the AMQP <code>content-encoding</code> of the message received
+     * @param data - the payload of the message received
+     * @return the payload, decompressed if the content encoding says it is compressed
+     * @throws DataFormatException if the payload is not in the format of its content encoding
+     * @throws RMQJMSException if the decompressed payload is larger than the maximum
+     */
+    byte[] decompress(String contentEncoding, byte[] data) throws DataFormatException, RMQJMSException {
+        if (!DEFLATE.equals(contentEncoding)) return data;
+        byte[] decompressed = this.inflate(data);
+        this.metricsCollector.decompressed(data.length, decompressed.length);
+        return decompressed;
+    }
+
+    private byte[] inflate(byte[] data) throws DataFormatException, RMQJMSException {
+        Inflater inflater = this.inflaters.poll();
+        if (inflater == null) inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] out = new byte[(int) Math.min(Math.max(64, (long) data.length << 2), this.maxDecompressedSize + 1L)];
+            int size = 0;
+            while (!inflater.finished()) {
+                if (size > this.maxDecompressedSize) {
+                    throw new RMQJMSException(String.format("Payload of %d bytes decompresses to more than %d bytes",
+                                                            data.length, this.maxDecompressedSize), null);
+                }
+                if (size == out.length) out = Arrays.copyOf(out, (int) Math.min((long) out.length << 1, this.maxDecompressedSize + 1L));
+                int n = inflater.inflate(out, size, out.length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated or unsupported deflate payload");
+                }
+                size += n;
+            }
+            return size == out.length ? out : Arrays.copyOf(out, size);
+        } finally {
+            inflater.reset();
+            if (this.closed || !this.inflaters.offer(inflater)) inflater.end();
+        }
+    }
+
+    /**
+     * Ends the pooled deflaters and inflaters; those in use are ended when released.
+     */
+    void close() {
+        this.closed = true;
+        Deflater deflater;
+        while ((deflater = this.deflaters.poll()) != null) deflater.end();
+        Inflater inflater;
+        while ((inflater = this.inflaters.poll()) != null) inflater.end();
+    }
+}
@@ -0,0 +1,241 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.jms.util.RMQJMSException;
+import com.rabbitmq.jms.util.SequenceSet;
+
+/**
+ * Tracks the messages published on a channel in confirm mode until the broker confirms them.
+ * <p>
+ * The publish sequence numbers not yet confirmed are held in a {@link SequenceSet}, so a <code>multiple</code>
+ * confirmation removes any number of them in one step. Each message sent is queued, in send order, with its
+ * {@link CompletionListener} (if any); listeners are called in that order once their message, and all the messages
+ * sent before it, are confirmed. A send waits while the number of unconfirmed messages is at the maximum.
+ * </p>
+ * <p>
+ * A message is recorded before it is published, and published without holding the lock the confirmations are handled
+ * under: a publication blocked by flow control does not hold up the connection thread delivering the confirmations.
+ * </p>
+ */
+class PublisherConfirms implements ConfirmListener, ShutdownListener {
+
+    private final Logger logger = LoggerFactory.getLogger(PublisherConfirms.class);
+
+    /** A send that completes once the message is published */
+    interface Publication {
+        void publish() throws IOException;
+    }
+
+    private final Channel channel;
+    private final int maxUnconfirmed;
+
+    /** Held while a message is published, so that messages are published in the order of their sequence numbers */
+    private final Object publishLock = new Object();
+    private final Object lock = new Object();
+    private final SequenceSet unconfirmed = new SequenceSet();           // @GuardedBy(lock)
+    private final SequenceSet rejected = new SequenceSet();              // @GuardedBy(lock)
+    private final ArrayDeque<Pending> pending = new ArrayDeque<Pending>(); // @GuardedBy(lock); in send order
+    private ShutdownSignalException closed = null;                       // @GuardedBy(lock)
+
+    /**
+     * @param channel - a channel in confirm mode
+     * @param maxUnconfirmed - maximum number of messages sent and not confirmed, 0 for no limit
+     */
+    PublisherConfirms(Channel channel, int maxUnconfirmed) {
+        this.channel = channel;
+        this.maxUnconfirmed = maxUnconfirmed;
+    }
+
+    /**
+     * Publish a message and track it until it is confirmed, first waiting if there are too many messages unconfirmed.
+     * @param message - the message published
+     * @param listener - called when the message is confirmed or rejected; may be <code>null</code>
+     * @param publication - publishes the message
+     * @throws JMSException if the channel is closed, or the wait is interrupted
+     * @throws IOException if the message cannot be published
+     */
+    void publish(Message message, CompletionListener listener, Publication publication) throws JMSException, IOException {
+        synchronized (this.publishLock) {
+            Pending entry;
+            synchronized (this.lock) {
+                while (this.closed == null && this.maxUnconfirmed > 0 && this.unconfirmed.size() >= this.maxUnconfirmed) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RMQJMSException("Interrupted waiting for publisher confirms", e);
+                    }
+                }
+                if (this.closed != null) throw new RMQJMSException("Channel closed", this.closed);
+                entry = new Pending(this.channel.getNextPublishSeqNo(), message, listener);
+                this.unconfirmed.add(entry.seqNo);
+                this.pending.addLast(entry);
+            }
+            boolean published = false;
+            try {
+                publication.publish();
+                published = true;
+            } finally {
+                this.published(entry, published);
+            }
+        }
+    }
+
+    /**
+     * Record the outcome of a publication: a message not published is forgotten, a message published while the
+     * channel closed is failed.
+     */
+    private void published(Pending entry, boolean published) {
+        ShutdownSignalException cause;
+        synchronized (this.lock) {
+            if (!published) {
+                this.unconfirmed.remove(entry.seqNo);
+                this.pending.removeLastOccurrence(entry);
+                this.lock.notifyAll();
+                return;
+            }
+            entry.published = true;
+            if (!entry.closedBeforePublished) return;
+            cause = this.closed;
+        }
+        entry.fail(new RMQJMSException("Channel closed before the message was confirmed", cause));
+    }
+
+    /**
+     * Wait until every message sent has been confirmed or rejected.
+     * @param timeoutMs - maximum time to wait in milliseconds
+     * @return <code>true</code> if there are no unconfirmed messages, <code>false</code> if the wait timed out
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    boolean awaitConfirms(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (this.lock) {
+            long remaining = timeoutMs;
+            while (!this.pending.isEmpty() && this.closed == null) {
+                if (remaining <= 0) return false;
+                this.lock.wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return this.pending.isEmpty();
+        }
+    }
+
+    /**
+     * @return the number of messages sent and not yet confirmed or rejected
+     */
+    int unconfirmedCount() {
+        synchronized (this.lock) {
+            return this.unconfirmed.size();
+        }
+    }
+
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) {
+        this.confirmed(deliveryTag, multiple, false);
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) {
+        this.confirmed(deliveryTag, multiple, true);
+    }
+
+    private void confirmed(long seqNo, boolean multiple, boolean nack) {
+        List<Pending> completed = new ArrayList<Pending>();
+        synchronized (this.lock) {
+            if (multiple) {
+                if (nack) {
+                    for (Pending p : this.pending) {
+                        if (p.seqNo > seqNo) break;
+                        if (this.unconfirmed.contains(p.seqNo)) this.rejected.add(p.seqNo);
+                    }
+                }
+                this.unconfirmed.removeUpTo(seqNo);
+            } else if (this.unconfirmed.remove(seqNo) && nack) {
+                this.rejected.add(seqNo);
+            }
+            // complete in send order
+            Pending head;
+            while ((head = this.pending.peekFirst()) != null && !this.unconfirmed.contains(head.seqNo)) {
+                this.pending.pollFirst();
+                head.rejected = this.rejected.remove(head.seqNo);
+                completed.add(head);
+            }
+            this.lock.notifyAll();
+        }
+        for (Pending p : completed) {
+            if (p.rejected) p.fail(new RMQJMSException("Message rejected by the broker", null));
+            else p.complete();
+        }
+    }
+
+    @Override
+    public void shutdownCompleted(ShutdownSignalException cause) {
+        List<Pending> failed;
+        synchronized (this.lock) {
+            this.closed = cause;
+            failed = new ArrayList<Pending>(this.pending.size());
+            for (Pending p : this.pending) {
+                if (p.published) failed.add(p);
+                else p.closedBeforePublished = true; // failed once published, or not published at all
+            }
+            this.pending.clear();
+            this.unconfirmed.clear();
+            this.rejected.clear();
+            this.lock.notifyAll();
+        }
+        for (Pending p : failed) {
+            p.fail(new RMQJMSException("Channel closed before the message was confirmed", cause));
+        }
+    }
+
+    private final class Pending {
+        private final long seqNo;
+        private final Message message;
+        private final CompletionListener listener;
+        private boolean rejected = false;
+        private boolean published = false;             // @GuardedBy(lock)
+        private boolean closedBeforePublished = false; // @GuardedBy(lock)
+
+        Pending(long seqNo, Message message, CompletionListener listener) {
+            this.seqNo = seqNo;
+            this.message = message;
+            this.listener = listener;
+        }
+
+        void complete() {
+            if (this.listener == null) return;
+            try {
+                this.listener.onCompletion(this.message);
+            } catch (RuntimeException e) {
+                logger.error("CompletionListener.onCompletion threw an exception", e);
+            }
+        }
+
+        void fail(Exception exception) {
+            if (this.listener == null) {
+                logger.warn("Message {} not confirmed: {}", this.seqNo, exception.getMessage());
+                return;
+            }
+            try {
+                this.listener.onException(this.message, exception);
+            } catch (RuntimeException e) {
+                logger.error("CompletionListener.onException threw an exception", e);
+            }
+        }
+    }
+}
@@ -7,6 +7,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
@@ -22,7 +25,9 @@ import org.slf4j.LoggerFactory;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.ShutdownListener;
 import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.jms.admin.RMQDestination;
 import com.rabbitmq.jms.util.RMQJMSException;
+import com.rabbitmq.jms.util.VirtualThreads;
 
 /**
  * Implementation of the {@link Connection}, {@link QueueConnection} and {@link TopicConnection} interfaces.
@@ -145,6 +150,127 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
 
     private final ReceivingContextConsumer receivingContextConsumer;
 
+    /**
+     * Number of messages to prefetch for synchronous receive, 0 to poll.
+     *
+     * @since 2.0.0
+     */
+    private final int receivePrefetch;
+
+    /**
+     * Number of acknowledgements to coalesce in sessions that acknowledge on receipt.
+     *
+     * @since 2.0.0
+     */
+    private final int ackBatchSize;
+
+    /**
+     * Maximum time in milliseconds a coalesced acknowledgement can be delayed.
+     *
+     * @since 2.0.0
+     */
+    private final int ackBatchMaxDelayMs;
+
+    /**
+     * Whether listeners are called directly on the delivering thread.
+     *
+     * @since 2.0.0
+     */
+    private final boolean directListenerDispatch;
+
+    /**
+     * Number of threads each consumer calls its listener on.
+     *
+     * @since 2.0.0
+     */
+    private final int listenerConcurrency;
+
+    /**
+     * Message property whose values are processed in order by concurrent listeners.
+     *
+     * @since 2.0.0
+     */
+    private final String listenerOrderingProperty;
+
+    /**
+     * Creates the threads sessions call listeners on; <code>null</code> for platform threads.
+     *
+     * @since 2.0.0
+     */
+    private final ThreadFactory listenerThreadFactory;
+
+    /**
+     * Whether received messages are decoded on first access.
+     *
+     * @since 2.0.0
+     */
+    private final boolean lazyMessageDecoding;
+
+    /**
+     * Whether non-transacted sessions publish with publisher confirms.
+     *
+     * @since 2.0.0
+     */
+    private final boolean usePublisherConfirms;
+
+    /**
+     * Maximum number of unconfirmed messages per session, 0 for no limit.
+     *
+     * @since 2.0.0
+     */
+    private final int maxUnconfirmedMessages;
+
+    /**
+     * Whether messages are sent in the compact binary format.
+     *
+     * @since 2.0.0
+     */
+    private final boolean useCompactMessageFormat;
+
+    /**
+     * Generates the IDs of the messages sent by the sessions of this connection.
+     *
+     * @since 2.0.0
+     */
+    private final MessageIdGenerator messageIdGenerator;
+
+    /**
+     * The exchanges, queues and bindings declared by the sessions of this connection.
+     *
+     * @since 2.0.0
+     */
+    private final DeclarationRegistry declarationRegistry = new DeclarationRegistry();
+
+    /**
+     * Compresses and decompresses the payloads of the messages of all sessions.
+     *
+     * @since 2.0.0
+     */
+    private final PayloadCompression payloadCompression;
+
+    /**
+     * Payloads of messages sent larger than this are split into chunks of this size; 0 for none.
+     *
+     * @since 2.0.0
+     */
+    private final int largeMessageChunkSize;
+
+    /**
+     * Times direct listener calls of all sessions; created on first use.
+     */
+    private OnMessageWatchdog onMessageWatchdog = null; // @GuardedBy(schedulerLock)
+
+    /**
+     * Timer for connection-wide housekeeping tasks, such as flushing coalesced acknowledgements; created on first use.
+     */
+    private ScheduledExecutorService scheduler = null; // @GuardedBy(schedulerLock)
+    private final Object schedulerLock = new Object();
+
+    /**
+     * Channels for browsing queues, reused by the sessions of this connection.
+     */
+    private final BrowsingChannelPool browsingChannelPool = new BrowsingChannelPool(() -> createRabbitChannel(false)); // not transactional
+
     /**
      * Classes in these packages can be transferred via ObjectMessage.
      *
@@ -173,6 +299,22 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
         this.amqpPropertiesCustomiser = connectionParams.getAmqpPropertiesCustomiser();
         this.sendingContextConsumer = connectionParams.getSendingContextConsumer();
         this.receivingContextConsumer = connectionParams.getReceivingContextConsumer();
+        this.receivePrefetch = connectionParams.getReceivePrefetch();
+        this.ackBatchSize = connectionParams.getAckBatchSize();
+        this.ackBatchMaxDelayMs = connectionParams.getAckBatchMaxDelayMs();
+        this.directListenerDispatch = connectionParams.willDirectListenerDispatch();
+        this.listenerConcurrency = connectionParams.getListenerConcurrency();
+        this.listenerOrderingProperty = connectionParams.getListenerOrderingProperty();
+        this.listenerThreadFactory = connectionParams.willUseVirtualThreads() ? virtualThreadFactory() : null;
+        this.lazyMessageDecoding = connectionParams.willLazyMessageDecoding();
+        this.usePublisherConfirms = connectionParams.willUsePublisherConfirms();
+        this.maxUnconfirmedMessages = connectionParams.getMaxUnconfirmedMessages();
+        this.useCompactMessageFormat = connectionParams.willUseCompactMessageFormat();
+        this.messageIdGenerator = connectionParams.getMessageIdGenerator() == null ?
+                MessageIdGenerator.sequential() : connectionParams.getMessageIdGenerator();
+        this.payloadCompression = new PayloadCompression(connectionParams.getCompressionThreshold(),
+                connectionParams.getMaxDecompressedSize(), connectionParams.getCompressionMetricsCollector());
+        this.largeMessageChunkSize = connectionParams.getLargeMessageChunkSize();
     }
 
     /**
@@ -211,6 +353,55 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
         return this.queueBrowserReadMax;
     }
 
+    /**
+     * @return the QoS setting for channels created by this connection, or {@link #NO_CHANNEL_QOS}
+     */
+    int getChannelsQos() {
+        return this.channelsQos;
+    }
+
+    /**
+     * @return the timer shared by the sessions of this connection; it runs on a single daemon thread
+     * and is shut down when the connection is closed
+     */
+    ScheduledExecutorService getScheduler() {
+        synchronized (this.schedulerLock) {
+            if (this.scheduler == null) {
+                this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "rabbitmq-jms-scheduler");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+            return this.scheduler;
+        }
+    }
+
+    /**
+     * @return the watchdog timing direct listener calls, running on the {@link #getScheduler() scheduler}
+     */
+    OnMessageWatchdog getOnMessageWatchdog() {
+        synchronized (this.schedulerLock) {
+            if (this.onMessageWatchdog == null) {
+                this.onMessageWatchdog = new OnMessageWatchdog(this.getScheduler(), this.onMessageTimeoutMs);
+            }
+            return this.onMessageWatchdog;
+        }
+    }
+
+    private void shutdownScheduler() {
+        synchronized (this.schedulerLock) {
+            if (this.scheduler != null) {
+                this.scheduler.shutdownNow();
+                this.scheduler = null;
+            }
+            this.onMessageWatchdog = null;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -232,6 +423,20 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
                 .setAmqpPropertiesCustomiser(this.amqpPropertiesCustomiser)
                 .setSendingContextConsumer(this.sendingContextConsumer)
                 .setReceivingContextConsumer(this.receivingContextConsumer)
+                .setReceivePrefetch(this.receivePrefetch)
+                .setAckBatchSize(this.ackBatchSize)
+                .setAckBatchMaxDelayMs(this.ackBatchMaxDelayMs)
+                .setDirectListenerDispatch(this.directListenerDispatch)
+                .setListenerConcurrency(this.listenerConcurrency)
+                .setListenerOrderingProperty(this.listenerOrderingProperty)
+                .setLazyMessageDecoding(this.lazyMessageDecoding)
+                .setUsePublisherConfirms(this.usePublisherConfirms)
+                .setMaxUnconfirmedMessages(this.maxUnconfirmedMessages)
+                .setUseCompactMessageFormat(this.useCompactMessageFormat)
+                .setMessageIdGenerator(this.messageIdGenerator)
+                .setPayloadCompression(this.payloadCompression)
+                .setDeclarationRegistry(this.declarationRegistry)
+                .setLargeMessageChunkSize(this.largeMessageChunkSize)
         );
         session.setTrustedPackages(this.trustedPackages);
         this.sessions.add(session);
@@ -379,6 +584,11 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
 
         closeAllSessions();
 
+        this.browsingChannelPool.close();
+        this.payloadCompression.close();
+
+        shutdownScheduler();
+
         try {
             this.rabbitConnection.close();
         } catch (ShutdownSignalException x) {
@@ -411,6 +621,13 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
         this.sessions.clear();
     }
 
+    /**
+     * @return the pool of channels for browsing queues
+     */
+    BrowsingChannelPool getBrowsingChannelPool() {
+        return this.browsingChannelPool;
+    }
+
     Channel createRabbitChannel(boolean transactional) throws IOException {
         Channel channel = this.rabbitConnection.createChannel();
         if (this.channelsQos != NO_CHANNEL_QOS) {
@@ -431,12 +648,13 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
     }
 
     /**
-     * @throws UnsupportedOperationException - optional method not implemented
+     * {@inheritDoc}
+     * @see RMQConnectionConsumer
      */
     @Override
     public ConnectionConsumer
     createConnectionConsumer(Topic topic, String messageSelector, ServerSessionPool sessionPool, int maxMessages) throws JMSException {
-        throw new UnsupportedOperationException();
+        return this.createConnectionConsumer((Destination) topic, messageSelector, sessionPool, maxMessages);
     }
 
     /**
@@ -448,29 +666,33 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
     }
 
     /**
-     * @throws UnsupportedOperationException - optional method not implemented
+     * {@inheritDoc}
+     * @see RMQConnectionConsumer
      */
     @Override
     public ConnectionConsumer createConnectionConsumer(Queue queue,
                                                        String messageSelector,
                                                        ServerSessionPool sessionPool,
                                                        int maxMessages) throws JMSException {
-        throw new UnsupportedOperationException();
+        return this.createConnectionConsumer((Destination) queue, messageSelector, sessionPool, maxMessages);
     }
 
     /**
-     * @throws UnsupportedOperationException - optional method not implemented
+     * {@inheritDoc}
+     * @see RMQConnectionConsumer
      */
     @Override
     public ConnectionConsumer createConnectionConsumer(Destination destination,
                                                        String messageSelector,
                                                        ServerSessionPool sessionPool,
                                                        int maxMessages) throws JMSException {
-        throw new UnsupportedOperationException();
+        illegalStateExceptionIfClosed();
+        return new RMQConnectionConsumer(this, (RMQDestination) destination, null, messageSelector, sessionPool, maxMessages);
     }
 
     /**
-     * @throws UnsupportedOperationException - optional method not implemented
+     * {@inheritDoc}
+     * @see RMQConnectionConsumer
      */
     @Override
     public ConnectionConsumer createDurableConnectionConsumer(Topic topic,
@@ -478,7 +700,8 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
                                                               String messageSelector,
                                                               ServerSessionPool sessionPool,
                                                               int maxMessages) throws JMSException {
-        throw new UnsupportedOperationException();
+        illegalStateExceptionIfClosed();
+        return new RMQConnectionConsumer(this, (RMQDestination) topic, subscriptionName, messageSelector, sessionPool, maxMessages);
     }
 
     /* Internal methods. */
@@ -498,6 +721,25 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
         }
     }
 
+    private ThreadFactory virtualThreadFactory() {
+        ThreadFactory factory = VirtualThreads.threadFactory("rabbitmq-jms-listener-");
+        if (factory == null) {
+            logger.info("Virtual threads are not supported by this JVM, using platform threads");
+        }
+        return factory;
+    }
+
+    /**
+     * @return the factory of threads sessions call listeners on, or <code>null</code> for default platform threads
+     */
+    ThreadFactory getListenerThreadFactory() {
+        return this.listenerThreadFactory;
+    }
+
+    int getOnMessageTimeoutMs() {
+        return this.onMessageTimeoutMs;
+    }
+
     long getTerminationTimeout() {
         return this.terminationTimeout;
     }
@@ -522,6 +764,7 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
     private class RMQConnectionShutdownListener implements ShutdownListener {
         @Override
         public void shutdownCompleted(ShutdownSignalException cause) {
+            declarationRegistry.clear(); // declared again on the recovered connection, if any
             if (null == exceptionListener.get() || cause.isInitiatedByApplication())
                 return; // Ignore this
             exceptionListener.get().onException(new RMQJMSException(String.format("error in %s, connection closed, with reason %s", cause.getReference(), cause.getReason()), cause));
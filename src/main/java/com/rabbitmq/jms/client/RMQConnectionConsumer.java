@@ -0,0 +1,314 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.jms.ConnectionConsumer;
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.MessageListener;
+import javax.jms.ServerSession;
+import javax.jms.ServerSessionPool;
+import javax.jms.Session;
+import javax.jms.Topic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.util.Abortable;
+import com.rabbitmq.jms.util.RMQNackException;
+import com.rabbitmq.jms.util.TimeTracker;
+
+/**
+ * The implementation of {@link ConnectionConsumer} in the RabbitMQ JMS Client, for use by application servers
+ * (JMS 1.1 §8.2).
+ * <p>
+ * A connection consumer subscribes to its destination on a session of its own. Each message delivered is loaded into
+ * a {@link ServerSession} taken from the pool, which is then {@link ServerSession#start() start}ed; the application
+ * server calls {@link RMQSession#run()} on the session, which passes the message to the session's
+ * {@link MessageListener}. The number of messages processed at once is therefore bounded by the size of the pool:
+ * when no server session is available, deliveries wait for one.
+ * </p>
+ * <p>
+ * Messages are acknowledged (or negatively acknowledged) on the connection consumer's channel once
+ * <code>onMessage</code> returns, following the rules for message listeners; acknowledgement is not part of any
+ * transaction of the server session. When <code>onMessage</code> throws a {@link RuntimeException} and the session
+ * does not requeue on listener exceptions, the message is left unacknowledged, as it is for a
+ * {@link MessageListener} set on a consumer.
+ * </p>
+ * <p>
+ * A single message is loaded into each server session: the <code>maxMessages</code> argument of
+ * {@link RMQConnection#createConnectionConsumer(javax.jms.Destination, String, ServerSessionPool, int)
+ * createConnectionConsumer} is accepted, as the specification allows, but ignored.
+ * </p>
+ */
+public class RMQConnectionConsumer implements ConnectionConsumer {
+    private final Logger logger = LoggerFactory.getLogger(RMQConnectionConsumer.class);
+
+    private final RMQConnection connection;
+    private final ServerSessionPool sessionPool;
+    private final int maxMessages; // ignored: one message is loaded into each server session
+    /** Session of our own, on which we subscribe and acknowledge */
+    private final RMQSession session;
+    private final RMQMessageConsumer messageConsumer;
+    private final ServerSessionLoader loader;
+
+    private final Object inFlightLock = new Object();
+    private int inFlight = 0; // @GuardedBy(inFlightLock)
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param connection - the connection this consumer belongs to
+     * @param destination - destination to consume from
+     * @param subscriptionName - name of the durable subscription, or <code>null</code> if not durable
+     * @param messageSelector - selector, or <code>null</code>
+     * @param sessionPool - pool of sessions to process messages
+     * @param maxMessages - maximum number of messages to load into a server session at once; ignored, one is loaded
+     * @throws JMSException if the subscription cannot be made
+     */
+    RMQConnectionConsumer(RMQConnection connection, RMQDestination destination, String subscriptionName, String messageSelector,
+                          ServerSessionPool sessionPool, int maxMessages) throws JMSException {
+        if (sessionPool == null) {
+            throw new IllegalStateException("ServerSessionPool must not be null");
+        }
+        this.connection = connection;
+        this.sessionPool = sessionPool;
+        this.maxMessages = maxMessages;
+        this.session = (RMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            this.messageConsumer = (RMQMessageConsumer) (subscriptionName == null
+                ? this.session.createConsumer(destination, messageSelector)
+                : this.session.createDurableSubscriber((Topic) destination, subscriptionName, messageSelector, false));
+            this.loader = new ServerSessionLoader();
+            this.messageConsumer.addSubscription(this.loader);
+        } catch (JMSException | RuntimeException e) {
+            this.session.close();
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ServerSessionPool getServerSessionPool() throws JMSException {
+        if (this.closed) throw new IllegalStateException("ConnectionConsumer is closed");
+        return this.sessionPool;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Cancels the subscription and waits (for up to the connection's termination timeout) for messages loaded into
+     * server sessions to be processed. Messages not yet acknowledged when the consumer's channel closes are
+     * requeued.
+     * </p>
+     */
+    @Override
+    public void close() throws JMSException {
+        if (this.closed) return;
+        this.closed = true;
+        logger.trace("close connection consumer({})", this);
+        this.loader.abort();
+        TimeTracker tt = new TimeTracker(this.connection.getTerminationTimeout(), TimeUnit.MILLISECONDS);
+        try {
+            synchronized (this.inFlightLock) {
+                while (this.inFlight > 0 && !tt.timedOut()) {
+                    tt.timedWait(this.inFlightLock);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.session.close();
+    }
+
+    /**
+     * Called by {@link RMQSession#run()} to process a message loaded into a server session.
+     *
+     * @param serverSession - the session running
+     * @param listener - the session's listener
+     * @param delivery - the message loaded
+     */
+    void deliver(RMQSession serverSession, MessageListener listener, Delivery delivery) {
+        long dtag = delivery.deliveryTag;
+        try {
+            if (listener == null) {
+                logger.debug("basicNack: dtag='{}' (null MessageListener on server session)", dtag);
+                this.nack(dtag);
+                return;
+            }
+            try {
+                serverSession.deliverMessage(delivery.message, listener);
+                this.ack(dtag);
+            } catch (RMQMessageListenerExecutionJMSException e) {
+                if (e.getCause() != null && e.getCause().getCause() instanceof RMQNackException) {
+                    this.nackOnNackException(dtag);
+                } else if (this.session.willRequeueOnMessageListenerException()) {
+                    this.nack(dtag);
+                }
+                // otherwise left unacknowledged, as by a MessageListenerConsumer: it is requeued when our channel closes
+            } catch (JMSException e) {
+                if (!(e.getCause() instanceof TimeoutException)) {
+                    logger.error("Error while delivering message", e);
+                }
+                this.nack(dtag);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.nack(dtag);
+            }
+        } finally {
+            this.deliveryDone();
+        }
+    }
+
+    private void ack(long dtag) {
+        try {
+            this.session.getChannel().basicAck(dtag, false);
+        } catch (Exception x) {
+            // the message will be redelivered when the channel closes
+            logger.error("Cannot acknowledge message received (dTag={})", dtag, x);
+        }
+    }
+
+    private void nack(long dtag) {
+        this.session.explicitNack(dtag);
+    }
+
+    private void nackOnNackException(long dtag) {
+        this.session.explicitNackOnNackException(dtag);
+    }
+
+    private void deliveryDone() {
+        synchronized (this.inFlightLock) {
+            if (--this.inFlight == 0) this.inFlightLock.notifyAll();
+        }
+    }
+
+    /**
+     * Load a message into a server session from the pool, and start the session.
+     */
+    private void load(Envelope envelope, BasicProperties properties, byte[] body) {
+        long dtag = envelope.getDeliveryTag();
+        synchronized (this.inFlightLock) {
+            ++this.inFlight;
+        }
+        boolean loaded = false;
+        try {
+            ServerSession serverSession = this.sessionPool.getServerSession(); // waits if none are free
+            Session jmsSession = serverSession.getSession();
+            if (!(jmsSession instanceof RMQSession)) {
+                logger.error("ServerSession({}) does not provide a RabbitMQ JMS session", serverSession);
+            } else {
+                RMQMessage message = RMQMessage.convertMessage(this.session, this.messageConsumer.getDestination(),
+                    new GetResponse(envelope, properties, body, 0), this.messageConsumer.getReceivingContextConsumer());
+                ((RMQSession) jmsSession).loadMessage(new Delivery(this, message, dtag));
+                loaded = true;
+                serverSession.start();
+            }
+        } catch (JMSException e) {
+            if (loaded) {
+                // run() may yet process it; if not the message is requeued when our channel closes
+                logger.error("Cannot start server session for message (dTag={})", dtag, e);
+                return;
+            }
+            logger.error("Cannot load message into a server session (dTag={})", dtag, e);
+        } finally {
+            if (!loaded) {
+                this.nack(dtag);
+                this.deliveryDone();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder("RMQConnectionConsumer{")
+            .append("session=").append(this.session)
+            .append(", maxMessages=").append(this.maxMessages)
+            .append('}').toString();
+    }
+
+    /**
+     * A message loaded into a server session, waiting for {@link RMQSession#run()}.
+     */
+    static final class Delivery {
+        private final RMQConnectionConsumer connectionConsumer;
+        private final RMQMessage message;
+        private final long deliveryTag;
+
+        Delivery(RMQConnectionConsumer connectionConsumer, RMQMessage message, long deliveryTag) {
+            this.connectionConsumer = connectionConsumer;
+            this.message = message;
+            this.deliveryTag = deliveryTag;
+        }
+
+        void deliverTo(RMQSession serverSession, MessageListener listener) {
+            this.connectionConsumer.deliver(serverSession, listener, this);
+        }
+    }
+
+    /**
+     * The RabbitMQ consumer of a connection consumer; it is stopped and started with the connection.
+     */
+    private final class ServerSessionLoader extends DefaultConsumer implements Abortable {
+        private volatile boolean rejecting = false;
+        private volatile String consumerTag = null;
+
+        ServerSessionLoader() {
+            super(RMQConnectionConsumer.this.session.getChannel());
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, BasicProperties properties, byte[] body) throws IOException {
+            logger.trace("consumerTag='{}' envelope='{}'", consumerTag, envelope);
+            if (this.rejecting) {
+                logger.debug("basicNack: dtag='{}'", envelope.getDeliveryTag());
+                RMQConnectionConsumer.this.session.explicitNack(envelope.getDeliveryTag());
+                return;
+            }
+            RMQConnectionConsumer.this.load(envelope, properties, body);
+        }
+
+        @Override
+        public void abort() {
+            this.rejecting = true;
+            this.cancel();
+        }
+
+        @Override
+        public void stop() {
+            this.rejecting = true;
+            this.cancel();
+        }
+
+        @Override
+        public void start() throws Exception {
+            if (RMQConnectionConsumer.this.closed) return;
+            String tag = RMQMessageConsumer.newConsumerTag();
+            this.rejecting = false;
+            this.consumerTag = tag;
+            RMQConnectionConsumer.this.messageConsumer.basicConsume(this, tag);
+        }
+
+        private void cancel() {
+            String tag = this.consumerTag;
+            this.consumerTag = null;
+            if (tag == null) return;
+            try {
+                logger.debug("basicCancel: consumerTag='{}'", tag);
+                this.getChannel().basicCancel(tag);
+            } catch (Exception e) {
+                logger.debug("basicCancel threw exception", e);
+            }
+        }
+    }
+}
@@ -14,7 +14,6 @@ import com.rabbitmq.jms.client.message.RMQTextMessage;
 import com.rabbitmq.jms.util.HexDisplay;
 import com.rabbitmq.jms.util.IteratorEnum;
 import com.rabbitmq.jms.util.RMQJMSException;
-import com.rabbitmq.jms.util.Util;
 import com.rabbitmq.jms.util.WhiteListObjectInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,10 +31,13 @@ import javax.jms.StreamMessage;
 import javax.jms.TextMessage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.io.PushbackInputStream;
 import java.io.Serializable;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -46,6 +48,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.zip.DataFormatException;
 
 /**
  * Base class for RMQ*Message classes. This is abstract and cannot be instantiated independently.
@@ -96,13 +99,13 @@ public abstract class RMQMessage implements Message, Cloneable {
      * {@link #toByteArray()}} and {@link #fromMessage(byte[], List)}.
      */
     private static final String PREFIX = "rmq.";
-    private static final String JMS_MESSAGE_ID = PREFIX + "jms.message.id";
-    private static final String JMS_MESSAGE_TIMESTAMP = PREFIX + "jms.message.timestamp";
-    private static final String JMS_MESSAGE_CORR_ID = PREFIX + "jms.message.correlation.id";
-    private static final String JMS_MESSAGE_REPLY_TO = PREFIX + "jms.message.reply.to";
-    private static final String JMS_MESSAGE_DESTINATION = PREFIX + "jms.message.destination";
-    private static final String JMS_MESSAGE_REDELIVERED = PREFIX + "jms.message.redelivered";
-    private static final String JMS_MESSAGE_TYPE = PREFIX + "jms.message.type";
+    static final String JMS_MESSAGE_ID = PREFIX + "jms.message.id";
+    static final String JMS_MESSAGE_TIMESTAMP = PREFIX + "jms.message.timestamp";
+    static final String JMS_MESSAGE_CORR_ID = PREFIX + "jms.message.correlation.id";
+    static final String JMS_MESSAGE_REPLY_TO = PREFIX + "jms.message.reply.to";
+    static final String JMS_MESSAGE_DESTINATION = PREFIX + "jms.message.destination";
+    static final String JMS_MESSAGE_REDELIVERED = PREFIX + "jms.message.redelivered";
+    static final String JMS_MESSAGE_TYPE = PREFIX + "jms.message.type";
 
     /**
      * Those needs to be checked in the producer
@@ -134,6 +137,13 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     private volatile boolean readonlyProperties=false;
     private volatile boolean readonlyBody=false;
+    /**
+     * The part of a received message not decoded yet, when decoding on first access.
+     * This is <code>null</code> for messages created locally and once a received message is fully decoded.
+     * @see #loadProperties()
+     * @see #loadBody()
+     */
+    private volatile transient EncodedMessage encoded = null;
 
     /**
      * Returns true if this message body is read only
@@ -192,6 +202,20 @@ public abstract class RMQMessage implements Message, Cloneable {
         this.rabbitDeliveryTag = rabbitDeliveryTag;
     }
 
+    /**
+     * The delivery tags of the chunks of a large message received in chunks, <code>null</code> for other messages.
+     * The delivery tag of the message is that of its last chunk.
+     * @see RMQSession#acknowledgeMessage(RMQMessage)
+     */
+    private volatile long[] chunkDeliveryTags = null;
+
+    /**
+     * @return the delivery tags of the chunks of a large message, <code>null</code> if not received in chunks
+     */
+    long[] getChunkDeliveryTags() {
+        return this.chunkDeliveryTags;
+    }
+
     /**
      * The Message must hold a reference to the session itself
      * So that it can ack itself. Ack belongs to the session
@@ -287,6 +311,8 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public String getJMSCorrelationID() throws JMSException {
+        EncodedMessage enc = this.encoded;
+        if (enc != null && enc.hasHeaderFields()) return enc.headerField("JMSCorrelationID");
         return this.getStringProperty(JMS_MESSAGE_CORR_ID);
     }
 
@@ -359,6 +385,8 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public String getJMSType() throws JMSException {
+        EncodedMessage enc = this.encoded;
+        if (enc != null && enc.hasHeaderFields()) return enc.headerField("JMSType");
         return this.getStringProperty(JMS_MESSAGE_TYPE);
     }
 
@@ -391,6 +419,11 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public int getJMSPriority() throws JMSException {
+        EncodedMessage enc = this.encoded;
+        if (enc != null && enc.hasHeaderFields()) {
+            String priority = enc.headerField("JMSPriority");
+            if (priority != null) return Integer.parseInt(priority);
+        }
         return this.getIntProperty(JMS_MESSAGE_PRIORITY);
     }
 
@@ -407,6 +440,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public final void clearProperties() throws JMSException {
+        this.loadProperties();
         this.userJmsProperties.clear();
         this.setReadOnlyProperties(false);
     }
@@ -416,6 +450,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public boolean propertyExists(String name) throws JMSException {
+        this.loadProperties();
         return this.userJmsProperties.containsKey(name) || this.rmqProperties.containsKey(name);
     }
 
@@ -566,6 +601,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public Object getObjectProperty(String name) throws JMSException {
+        this.loadProperties();
         if (name.startsWith(PREFIX))
             return this.rmqProperties.get(name);
         else
@@ -577,6 +613,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public Enumeration<?> getPropertyNames() throws JMSException {
+        this.loadProperties();
         return new IteratorEnum<String>(this.userJmsProperties.keySet().iterator());
     }
 
@@ -704,6 +741,7 @@ public abstract class RMQMessage implements Message, Cloneable {
                 }
             }
 
+            this.loadProperties(); // so that decoding does not overwrite the value set here
             if (name!=null && name.startsWith(PREFIX)) {
                 if (value==null) {
                     this.rmqProperties.remove(name);
@@ -774,6 +812,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public final void clearBody() throws JMSException {
+        loadBody();
         setReadOnlyBody(false);
         clearBodyInternal();
     }
@@ -825,6 +864,19 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     protected abstract void readAmqpBody(byte[] barr);
 
+    /**
+     * Invoked when a large message received in chunks is being transformed into a RMQMessage: the body is read from
+     * the stream as the application reads it, and the stream closed once it is read. Only messages which can read
+     * their body in this way implement this method.
+     *
+     * @param body - the stream of the body, positioned after the properties
+     * @param length - the length of the body, in bytes
+     * @throws IOException if the message cannot read its body from a stream
+     */
+    protected void readLargeBody(InputStream body, long length) throws IOException {
+        throw new IOException("Message class " + this.getClass().getName() + " cannot read a large body");
+    }
+
     /**
      * Generate the headers for this JMS message; these are the properties used in selection.
      * <p>
@@ -861,6 +913,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      * </blockquote>
      */
     Map<String, Object> toHeaders() throws IOException, JMSException {
+        this.loadProperties();
         Map<String, Object> hdrs = new HashMap<String, Object>();
 
         // set non-null user properties
@@ -897,8 +950,11 @@ public abstract class RMQMessage implements Message, Cloneable {
     }
 
     static RMQMessage convertJmsMessage(RMQSession session, GetResponse response, ReceivingContextConsumer receivingContextConsumer) throws JMSException {
+        if (session.willLazyMessageDecoding()) {
+            return convertJmsMessageLazily(session, response, receivingContextConsumer);
+        }
         // Deserialize the message payload from the byte[] body
-        RMQMessage message = fromMessage(response.getBody(), session.getTrustedPackages());
+        RMQMessage message = fromMessage(payload(session, response), session.getTrustedPackages());
 
         message.setSession(session);                                            // Insert session in received message for Message.acknowledge
         message.setJMSRedelivered(response.getEnvelope().isRedeliver());        // Set the redelivered flag
@@ -914,12 +970,263 @@ public abstract class RMQMessage implements Message, Cloneable {
         return message;
     }
 
+    /**
+     * Like {@link #convertJmsMessage(RMQSession, GetResponse, ReceivingContextConsumer)}, but only the message class
+     * and ID are decoded; the redelivered flag and reply-to are applied when the properties are decoded.
+     */
+    private static RMQMessage convertJmsMessageLazily(RMQSession session, GetResponse response, ReceivingContextConsumer receivingContextConsumer) throws JMSException {
+        try {
+            ByteArrayInputStream bin;
+            ObjectInput in;
+            RMQMessage message;
+            byte[] payload = payload(session, response);
+            if (CompactMessageFormat.isCompact(payload)) {
+                CompactMessageFormat.Bytes bytes = new CompactMessageFormat.Bytes(payload);
+                CompactMessageFormat.Input cin = new CompactMessageFormat.Input(bytes, session.getTrustedPackages());
+                bin = bytes;
+                message = instantiateCompactMessage(cin, session.getTrustedPackages());
+                in = cin;
+            } else {
+                bin = new ByteArrayInputStream(payload);
+                WhiteListObjectInputStream win = new WhiteListObjectInputStream(bin, session.getTrustedPackages());
+                message = instantiateRmqMessage(win.readUTF(), session.getTrustedPackages());
+                message.internalMessageID = readMessageId(win);
+                in = win;
+            }
+            message.encoded = new EncodedMessage(in, bin, response.getProps().getHeaders(),
+                response.getEnvelope().isRedeliver(), response.getProps().getReplyTo());
+
+            message.setSession(session);                                            // Insert session in received message for Message.acknowledge
+            message.setRabbitDeliveryTag(response.getEnvelope().getDeliveryTag());  // Insert delivery tag in received message for Message.acknowledge
+            message.setReadonly(true);                                              // Set readOnly - mandatory for received messages
+            receivingContextConsumer.accept(new ReceivingContext(message));
+
+            return message;
+        } catch (IOException x) {
+            throw new RMQJMSException(x);
+        }
+    }
+
+    /**
+     * Converts the chunks of a large message to a {@link RMQMessage}.
+     * <p>
+     * The body of an uncompressed {@link RMQBytesMessage} is read from the chunks as the application reads it, so it
+     * is never held whole in memory; other messages are decoded from the payload of the chunks put back together.
+     * </p>
+     *
+     * @param chunks - the chunks of the message, complete
+     * @return the JMS message corresponding to the chunks
+     * @throws JMSException if the message cannot be decoded
+     */
+    static RMQMessage convertChunkedMessage(RMQSession session, ChunkAssembler.Chunks chunks,
+                                           ReceivingContextConsumer receivingContextConsumer) throws JMSException {
+        RMQMessage message = null;
+        try {
+            if (chunks.getProperties().getContentEncoding() == null) {
+                message = fromLargeMessage(chunks, session.getTrustedPackages());
+            }
+            if (message == null) {
+                GetResponse response = new GetResponse(chunks.getEnvelope(), chunks.getProperties(), chunks.toByteArray(), 0);
+                chunks.discard();
+                message = fromMessage(payload(session, response), session.getTrustedPackages());
+            }
+        } catch (IOException x) {
+            chunks.discard();
+            throw new RMQJMSException(x);
+        } catch (ClassNotFoundException x) {
+            chunks.discard();
+            throw new RMQJMSException(x);
+        }
+        message.chunkDeliveryTags = chunks.getDeliveryTags();
+        message.setSession(session);                                            // Insert session in received message for Message.acknowledge
+        message.setJMSRedelivered(chunks.isRedelivered());                      // Set the redelivered flag
+        message.setRabbitDeliveryTag(chunks.getEnvelope().getDeliveryTag());    // Insert delivery tag of the last chunk for Message.acknowledge
+        message.setReadonly(true);                                              // Set readOnly - mandatory for received messages
+        setupReplyTo(message, chunks.getProperties().getReplyTo());
+        receivingContextConsumer.accept(new ReceivingContext(message));
+        return message;
+    }
+
+    /**
+     * Decodes the header and properties of a large {@link RMQBytesMessage} from its chunks, leaving the body to be read
+     * from them.
+     * @return the message, <code>null</code> if it is not a {@link RMQBytesMessage}
+     */
+    private static RMQMessage fromLargeMessage(final ChunkAssembler.Chunks chunks, List<String> trustedPackages)
+            throws IOException, ClassNotFoundException, RMQJMSException {
+        final InputStream raw = chunks.openStream();
+        PushbackInputStream pin = new PushbackInputStream(raw, 1);
+        CountingInputStream cin = new CountingInputStream(pin);
+        int first = pin.read();
+        if (first >= 0) pin.unread(first);
+        RMQMessage msg;
+        ObjectInput in;
+        if (first == (CompactMessageFormat.MAGIC & 0xFF)) {
+            CompactMessageFormat.Input input = new CompactMessageFormat.Input(cin, trustedPackages);
+            msg = instantiateCompactMessage(input, trustedPackages);
+            in = input;
+        } else {
+            WhiteListObjectInputStream win = new WhiteListObjectInputStream(cin, trustedPackages);
+            String clazz = win.readUTF();
+            msg = RMQBytesMessage.class.getName().equals(clazz) ? instantiateRmqMessage(clazz, trustedPackages) : null;
+            if (msg != null) msg.internalMessageID = readMessageId(win);
+            in = win;
+        }
+        if (!(msg instanceof RMQBytesMessage)) {
+            raw.close(); // decoded in one piece instead
+            return null;
+        }
+        readProperties(in, msg);
+        InputStream body = new FilterInputStream(cin) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    chunks.discard();
+                }
+            }
+        };
+        msg.readLargeBody(body, chunks.size() - cin.count);
+        return msg;
+    }
+
+    /**
+     * Counts the bytes read, to know how many remain for the body.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) this.count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) this.count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            this.count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * @return the body of the message received, decompressed if its AMQP <code>content-encoding</code> says so
+     * @throws RMQJMSException if the body cannot be decompressed
+     */
+    private static byte[] payload(RMQSession session, GetResponse response) throws RMQJMSException {
+        String contentEncoding = response.getProps() == null ? null : response.getProps().getContentEncoding();
+        if (contentEncoding == null) return response.getBody();
+        try {
+            return session.getPayloadCompression().decompress(contentEncoding, response.getBody());
+        } catch (DataFormatException x) {
+            throw new RMQJMSException(x);
+        }
+    }
+
+    /**
+     * Decodes the properties of a message received with decoding on first access, if not done yet.
+     * @throws JMSException if the properties cannot be decoded
+     */
+    protected final void loadProperties() throws JMSException {
+        EncodedMessage enc = this.encoded;
+        if (enc == null || enc.propertiesDecoded) return;
+        synchronized (enc) {
+            if (enc.propertiesDecoded) return;
+            try {
+                readProperties(enc.in, this);
+            } catch (IOException x) {
+                throw new RMQJMSException(x);
+            } catch (ClassNotFoundException x) {
+                throw new RMQJMSException(x);
+            }
+            enc.propertiesDecoded = true;
+        }
+        this.setJMSRedelivered(enc.redelivered);
+        setupReplyTo(this, enc.replyTo);
+    }
+
+    /**
+     * Decodes the body, and the properties, of a message received with decoding on first access, if not done yet.
+     * Message classes call this before reading their body.
+     * @throws JMSException if the message cannot be decoded
+     */
+    protected final void loadBody() throws JMSException {
+        EncodedMessage enc = this.encoded;
+        if (enc == null) return;
+        this.loadProperties();
+        synchronized (enc) {
+            if (this.encoded == null) return;
+            try {
+                this.readBody(enc.in, enc.bin);
+            } catch (IOException x) {
+                throw new RMQJMSException(x);
+            } catch (ClassNotFoundException x) {
+                throw new RMQJMSException(x);
+            }
+            this.encoded = null;
+        }
+    }
+
+    /**
+     * The undecoded remainder of a received message: its properties and body, positioned after the message ID.
+     */
+    private static final class EncodedMessage {
+        private final ObjectInput in;
+        private final ByteArrayInputStream bin;
+        /** AMQP headers; our senders set the selectable JMS header fields there, see {@link #toHeaders()} */
+        private final Map<String, Object> headers;
+        private final boolean redelivered;
+        private final String replyTo;
+        private volatile boolean propertiesDecoded = false;
+
+        private EncodedMessage(ObjectInput in, ByteArrayInputStream bin, Map<String, Object> headers, boolean redelivered, String replyTo) {
+            this.in = in;
+            this.bin = bin;
+            this.headers = headers;
+            this.redelivered = redelivered;
+            this.replyTo = replyTo;
+        }
+
+        /**
+         * @return <code>true</code> if header fields can be read from the AMQP headers: the properties have not been
+         * decoded (and so not modified) and the headers were set by a JMS sender
+         */
+        private boolean hasHeaderFields() {
+            return !this.propertiesDecoded && this.headers != null && this.headers.containsKey("JMSDeliveryMode");
+        }
+
+        /**
+         * @return the value of a header field in the AMQP headers, <code>null</code> if the sender did not set one
+         */
+        private String headerField(String name) {
+            Object value = this.headers.get(name);
+            return value == null ? null : value.toString(); // strings arrive as LongString
+        }
+    }
+
     private static RMQMessage convertAmqpMessage(RMQSession session, RMQDestination dest, GetResponse response, ReceivingContextConsumer receivingContextConsumer) throws JMSException {
         try {
             BasicProperties props = response.getProps();
 
             RMQMessage message = RMQMessage.isAmqpTextMessage(props.getHeaders()) ? new RMQTextMessage() : new RMQBytesMessage();
-            message = RMQMessage.fromAmqpMessage(response.getBody(), message);      // Deserialize the message payload from the byte[] body
+            /* the body is left as published unless the application compresses messages to the destination too */
+            byte[] body = props.getContentEncoding() != null && session.getPayloadCompression().threshold(dest) > 0
+                ? payload(session, response) : response.getBody();
+            message = RMQMessage.fromAmqpMessage(body, message); // Deserialize the message payload from the byte[] body
 
             message.setSession(session);                                            // Insert session in received message for Message.acknowledge
             message.setJMSRedelivered(response.getEnvelope().isRedeliver());        // Set the redelivered flag
@@ -1011,6 +1318,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      * </blockquote>
      */
     Map<String, Object> toAmqpHeaders() throws IOException, JMSException {
+        this.loadProperties();
         Map<String, Object> hdrs = new HashMap<String, Object>();
 
         // set non-null user properties
@@ -1054,7 +1362,18 @@ public abstract class RMQMessage implements Message, Cloneable {
      * @throws IOException if conversion fails
      */
     byte[] toAmqpByteArray() throws IOException, JMSException {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream(DEFAULT_MESSAGE_BODY_SIZE);
+        return this.toAmqpByteArray(new ByteArrayOutputStream(DEFAULT_MESSAGE_BODY_SIZE));
+    }
+
+    /**
+     * Generates an AMQP byte array body for this message, using the given buffer.
+     * @param bout buffer to write the body to; it is reset first, so it can be reused for several messages
+     * @return the body in a byte array
+     * @throws IOException if conversion fails
+     */
+    byte[] toAmqpByteArray(ByteArrayOutputStream bout) throws IOException, JMSException {
+        this.loadBody();
+        bout.reset();
         //invoke write body
         this.writeAmqpBody(bout);
         //flush and return
@@ -1070,12 +1389,23 @@ public abstract class RMQMessage implements Message, Cloneable {
      * @throws IOException if serialization fails
      */
     byte[] toByteArray() throws IOException, JMSException {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream(DEFAULT_MESSAGE_BODY_SIZE);
+        return this.toByteArray(new ByteArrayOutputStream(DEFAULT_MESSAGE_BODY_SIZE));
+    }
+
+    /**
+     * Generates a JMS byte array body for this message, using the given buffer.
+     * @param bout buffer to serialize the message to; it is reset first, so it can be reused for several messages
+     * @return the body in a byte array
+     * @throws IOException if serialization fails
+     */
+    byte[] toByteArray(ByteArrayOutputStream bout) throws IOException, JMSException {
+        this.loadBody();
+        bout.reset();
         ObjectOutputStream out = new ObjectOutputStream(bout);
         //write the class of the message so we can instantiate on the other end
         out.writeUTF(this.getClass().getName());
-        //write out message id
-        out.writeUTF(this.internalMessageID);
+        //write out message id, empty if there is none
+        out.writeUTF(this.internalMessageID == null ? "" : this.internalMessageID);
         //write our JMS properties
         out.writeInt(this.rmqProperties.size());
         for (Map.Entry<String, Serializable> entry : this.rmqProperties.entrySet()) {
@@ -1095,7 +1425,29 @@ public abstract class RMQMessage implements Message, Cloneable {
     }
 
     /**
-     * Deserializes a {@link RMQMessage} from a JMS generated byte array
+     * Generates a JMS byte array body for this message in the compact format, using the given buffer.
+     * This method invokes the {@link #writeBody(ObjectOutput, ByteArrayOutputStream)} method
+     * on the message subclass.
+     * @param bout buffer to encode the message to; it is reset first, so it can be reused for several messages
+     * @return the body in a byte array
+     * @throws IOException if encoding fails
+     * @see CompactMessageFormat
+     */
+    byte[] toCompactByteArray(ByteArrayOutputStream bout) throws IOException, JMSException {
+        this.loadBody();
+        bout.reset();
+        CompactMessageFormat.Output out = new CompactMessageFormat.Output(bout);
+        CompactMessageFormat.writeHeader(this, this.internalMessageID, out);
+        CompactMessageFormat.writeProperties(this.internalMessageID, this.rmqProperties, this.userJmsProperties, out);
+        out.flush();  // the body may write to the byte stream directly
+        this.writeBody(out, bout);
+        out.flush();
+        return bout.toByteArray();
+    }
+
+    /**
+     * Deserializes a {@link RMQMessage} from a JMS generated byte array, in either the compact or the
+     * Java serialization format.
      * This method invokes the {@link #readBody(ObjectInput, ByteArrayInputStream)} method
      * on the deserialized class
      * @param b - the message bytes
@@ -1104,6 +1456,9 @@ public abstract class RMQMessage implements Message, Cloneable {
      * @throws RMQJMSException if RJMS class-related errors occur
      */
     static RMQMessage fromMessage(byte[] b, List<String> trustedPackages) throws RMQJMSException {
+        if (CompactMessageFormat.isCompact(b)) {
+            return fromCompactMessage(b, trustedPackages);
+        }
         /* If we don't recognise the message format this throws an exception */
         try {
             ByteArrayInputStream bin = new ByteArrayInputStream(b);
@@ -1114,21 +1469,9 @@ public abstract class RMQMessage implements Message, Cloneable {
             RMQMessage msg = instantiateRmqMessage(clazz, trustedPackages);
 
             // read the message id
-            msg.internalMessageID = in.readUTF();
-            // read JMS properties
-            int propsize = in.readInt();
-            for (int i = 0; i < propsize; i++) {
-                String name = in.readUTF();
-                Object value = readPrimitive(in);
-                msg.rmqProperties.put(name, (Serializable) value);
-            }
-            //read custom properties
-            propsize = in.readInt();
-            for (int i = 0; i < propsize; i++) {
-                String name = in.readUTF();
-                Object value = readPrimitive(in);
-                msg.userJmsProperties.put(name, (Serializable) value);
-            }
+            msg.internalMessageID = readMessageId(in);
+            // read JMS and custom properties
+            readProperties(in, msg);
             // read the body of the message
             msg.readBody(in, bin);
             return msg;
@@ -1139,6 +1482,62 @@ public abstract class RMQMessage implements Message, Cloneable {
         }
     }
 
+    private static RMQMessage fromCompactMessage(byte[] b, List<String> trustedPackages) throws RMQJMSException {
+        try {
+            CompactMessageFormat.Bytes bin = new CompactMessageFormat.Bytes(b);
+            CompactMessageFormat.Input in = new CompactMessageFormat.Input(bin, trustedPackages);
+            RMQMessage msg = instantiateCompactMessage(in, trustedPackages);
+            CompactMessageFormat.readProperties(msg.internalMessageID, in, msg.rmqProperties, msg.userJmsProperties);
+            msg.readBody(in, bin);
+            return msg;
+        } catch (IOException x) {
+            throw new RMQJMSException(x);
+        } catch (ClassNotFoundException x) {
+            throw new RMQJMSException(x);
+        }
+    }
+
+    /**
+     * Reads the header of a compact message, up to and including the message ID.
+     * @return the message, with its ID set
+     */
+    private static RMQMessage instantiateCompactMessage(CompactMessageFormat.Input in, List<String> trustedPackages) throws IOException, RMQJMSException {
+        String clazz = CompactMessageFormat.readHeader(in);
+        RMQMessage msg = clazz == null ? CompactMessageFormat.newMessage(in, trustedPackages)
+                                       : instantiateRmqMessage(clazz, trustedPackages);
+        msg.internalMessageID = CompactMessageFormat.readMessageId(in);
+        return msg;
+    }
+
+    private static void readProperties(ObjectInput in, RMQMessage msg) throws IOException, ClassNotFoundException {
+        if (in instanceof CompactMessageFormat.Input) {
+            CompactMessageFormat.readProperties(msg.internalMessageID, (CompactMessageFormat.Input) in, msg.rmqProperties, msg.userJmsProperties);
+            return;
+        }
+        // read JMS properties
+        int propsize = in.readInt();
+        for (int i = 0; i < propsize; i++) {
+            String name = in.readUTF();
+            Object value = readPrimitive(in);
+            msg.rmqProperties.put(name, (Serializable) value);
+        }
+        //read custom properties
+        propsize = in.readInt();
+        for (int i = 0; i < propsize; i++) {
+            String name = in.readUTF();
+            Object value = readPrimitive(in);
+            msg.userJmsProperties.put(name, (Serializable) value);
+        }
+    }
+
+    /**
+     * @return the message ID written by {@link #toByteArray(ByteArrayOutputStream)}, <code>null</code> if empty
+     */
+    private static String readMessageId(ObjectInput in) throws IOException {
+        String id = in.readUTF();
+        return id.isEmpty() ? null : id;
+    }
+
     private static RMQMessage instantiateRmqMessage(String messageClass, List<String> trustedPackages) throws RMQJMSException {
         if(isRmqObjectMessageClass(messageClass)) {
             return instantiateRmqObjectMessageWithTrustedPackages(trustedPackages);
@@ -1266,11 +1665,29 @@ public abstract class RMQMessage implements Message, Cloneable {
     /**
      * Called when a message is sent so that each message is unique
      */
-    void generateInternalID() {
-        this.internalMessageID = Util.generateUUID("");
+    void generateInternalID() throws JMSException {
+        this.generateInternalID(MessageIdGenerator.RANDOM_UUID);
+    }
+
+    /**
+     * Called when a message is sent so that each message is unique
+     * @param generator - generates the ID
+     */
+    void generateInternalID(MessageIdGenerator generator) throws JMSException {
+        this.loadProperties();
+        this.internalMessageID = generator.generate();
         this.rmqProperties.put(JMS_MESSAGE_ID, "ID:" + this.internalMessageID);
     }
 
+    /**
+     * Called when a message is sent by a producer with message IDs disabled: the message has no ID.
+     */
+    void clearInternalID() throws JMSException {
+        this.loadProperties();
+        this.internalMessageID = null;
+        this.rmqProperties.remove(JMS_MESSAGE_ID);
+    }
+
 	/**
 	 * Utility method used to be able to write primitives and objects to a data
 	 * stream without keeping track of order and type.
@@ -1383,6 +1800,11 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public Object clone() throws CloneNotSupportedException {
+        try {
+            this.loadBody(); // a copy must not share the undecoded stream
+        } catch (JMSException e) {
+            throw new CloneNotSupportedException(e.getMessage());
+        }
         return super.clone();
     }
 
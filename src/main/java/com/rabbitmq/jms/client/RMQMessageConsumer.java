@@ -2,6 +2,8 @@
 package com.rabbitmq.jms.client;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -26,6 +28,7 @@ import com.rabbitmq.client.Consumer;
 import com.rabbitmq.client.GetResponse;
 import com.rabbitmq.client.ShutdownSignalException;
 import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.util.Abortable;
 import com.rabbitmq.jms.util.AbortableHolder;
 import com.rabbitmq.jms.util.AbortedException;
 import com.rabbitmq.jms.util.EntryExitManager;
@@ -35,7 +38,8 @@ import com.rabbitmq.jms.util.Util;
 /**
  * The implementation of {@link MessageConsumer} in the RabbitMQ JMS Client.
  * <p>
- * Single message {@link #receive receive()}s are implemented by abortable polling in {@link DelayedReceiver}.
+ * Single message {@link #receive receive()}s are implemented by abortable polling in {@link DelayedReceiver}, or,
+ * if a receive prefetch is configured, from a bounded buffer fed by a subscription.
  * </p>
  * <p>
  * {@link MessageListener#onMessage} calls are implemented with a more conventional {@link Consumer}.
@@ -48,6 +52,8 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
 
     private static final int DEFAULT_BATCHING_SIZE = 5;
     private static final long STOP_TIMEOUT_MS = 1000; // ONE SECOND
+    /** Limit on the list capacity allocated up front by {@link #receiveBatch} */
+    private static final int MAX_BATCH_PREALLOCATION = 256;
     /** The destination that this consumer belongs to */
     private final RMQDestination destination;
     /** The session that this consumer was created under */
@@ -56,14 +62,19 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
     private final String uuidTag;
     /** The selector used to filter messages consumed */
     private final String messageSelector;
-    /** The {@link Consumer} that we use to subscribe to Rabbit messages which drives {@link MessageListener#onMessage}. */
-    private final AtomicReference<MessageListenerConsumer> listenerConsumer = new AtomicReference<MessageListenerConsumer>();
+    /**
+     * The {@link Consumer} that we use to subscribe to Rabbit messages which drives {@link MessageListener#onMessage}:
+     * a {@link MessageListenerConsumer} or a {@link ConcurrentListenerConsumer}.
+     */
+    private final AtomicReference<Abortable> listenerConsumer = new AtomicReference<Abortable>();
     /** Entry and exit of application threads calling {@link #receive} are managed by an {@link EntryExitManager}. */
     private final EntryExitManager receiveManager = new EntryExitManager();
     /** We track things that need to be aborted (for a Connection.close()). Typically these are waits. */
     private final AbortableHolder abortables = new AbortableHolder();
     /** Is this consumer closed? This value can change to true, but never changes back. */
     private volatile boolean closed = false;
+    /** Reassembles large messages received in chunks. */
+    private final ChunkAssembler chunkAssembler = new ChunkAssembler();
     /** If this consumer is in the process of closing. */
     private volatile boolean closing = false;
     /** {@link MessageListener}, set by the user. */
@@ -97,17 +108,20 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
      *            unique name.
      * @param paused - true if the connection is {@link javax.jms.Connection#stop}ped, false otherwise.
      * @param requeueOnMessageListenerException true to requeue message on RuntimeException in listener, false otherwise
+     * @param receivePrefetch - number of messages to buffer for {@link #receive}; 0 means poll with <code>basicGet</code>.
      */
     RMQMessageConsumer(RMQSession session, RMQDestination destination, String uuidTag, boolean paused, String messageSelector, boolean requeueOnMessageListenerException,
-            ReceivingContextConsumer receivingContextConsumer) {
+            ReceivingContextConsumer receivingContextConsumer, int receivePrefetch) {
         this.session = session;
         this.destination = destination;
         this.uuidTag = uuidTag;
-        this.delayedReceiver = new DelayedReceiver(DEFAULT_BATCHING_SIZE, this);
+        this.autoAck = session.isAutoAck();
+        this.delayedReceiver = receivePrefetch > 0 && this.canPrefetch()
+            ? new DelayedReceiver(receivePrefetch, true, this)
+            : new DelayedReceiver(DEFAULT_BATCHING_SIZE, this);
         this.messageSelector = messageSelector;
         if (!paused)
             this.receiveManager.openGate();
-        this.autoAck = session.isAutoAck();
         this.requeueOnMessageListenerException = requeueOnMessageListenerException;
         this.receivingContextConsumer = receivingContextConsumer;
     }
@@ -147,10 +161,14 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
      * Dispose of any Rabbit Consumer that may be active and tracked.
      */
     private void removeListenerConsumer() {
-        MessageListenerConsumer listConsumer = this.listenerConsumer.getAndSet(null);
+        Abortable listConsumer = this.listenerConsumer.getAndSet(null);
         if (listConsumer != null) {
             this.abortables.remove(listConsumer);
-            listConsumer.stop();  // orderly stop
+            if (listConsumer instanceof ConcurrentListenerConsumer) {
+                ((ConcurrentListenerConsumer) listConsumer).abort(); // orderly stop, then release threads and channel
+            } else {
+                ((MessageListenerConsumer) listConsumer).stop();  // orderly stop
+            }
         }
     }
 
@@ -185,6 +203,8 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
         }
         logger.trace("setting MessageListener({})", messageListener);
         this.removeListenerConsumer();  // if there is any
+        if (messageListener != null)
+            this.delayedReceiver.cancel(); // give back messages prefetched for receive(), if any
         this.messageListener = messageListener;
         try {
             this.setNewListenerConsumer(messageListener); // if needed
@@ -202,8 +222,9 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
      */
     private void setNewListenerConsumer(MessageListener messageListener) throws Exception {
         if (messageListener != null) {
-            MessageListenerConsumer mlConsumer =
-              new MessageListenerConsumer(this,
+            Abortable mlConsumer = this.canListenConcurrently()
+              ? this.newConcurrentListenerConsumer(messageListener)
+              : new MessageListenerConsumer(this,
                                           getSession().getChannel(),
                                           messageListener,
                                           TimeUnit.MILLISECONDS.toNanos(this.session.getConnection()
@@ -221,6 +242,42 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
         }
     }
 
+    /**
+     * Add a subscription made on behalf of this consumer, such as that of a {@link RMQConnectionConsumer}. It is
+     * started now (unless the connection is stopped), stopped and started with the connection, and aborted when this
+     * consumer is closed.
+     *
+     * @param subscription - subscribes with {@link #basicConsume} when started
+     */
+    void addSubscription(Abortable subscription) throws JMSException {
+        this.abortables.add(subscription);
+        if (!this.getSession().getConnection().isStopped()) {
+            try {
+                subscription.start();
+            } catch (Exception e) {
+                this.abortables.remove(subscription);
+                throw new RMQJMSException("Error while starting consumer", e);
+            }
+        }
+    }
+
+    ReceivingContextConsumer getReceivingContextConsumer() {
+        return this.receivingContextConsumer;
+    }
+
+    private ConcurrentListenerConsumer newConcurrentListenerConsumer(MessageListener messageListener) throws IOException {
+        int concurrency = this.session.getListenerConcurrency();
+        RMQConnection connection = this.session.getConnection();
+        Channel channel = connection.createRabbitChannel(false);
+        int prefetch = connection.getChannelsQos();
+        if (prefetch == RMQConnection.NO_CHANNEL_QOS) {
+            prefetch = concurrency * ConcurrentListenerConsumer.PREFETCH_PER_THREAD;
+            channel.basicQos(prefetch);
+        }
+        return new ConcurrentListenerConsumer(this, channel, messageListener, concurrency, prefetch,
+            this.session.getListenerOrderingProperty());
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -269,6 +326,27 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
         return this.autoAck;
     }
 
+    /**
+     * Prefetching for {@link #receive} is only safe when each message is acknowledged as soon as it is received:
+     * otherwise the unacknowledged messages would use up the prefetch window, and a recover or rollback would
+     * redeliver messages that are still sitting in the buffer.
+     *
+     * @return <code>true</code> if this consumer's session acknowledges on receipt and is not transacted
+     */
+    private boolean canPrefetch() {
+        return this.autoAck && !this.session.getTransactedNoException() && !this.amqpAutoAck();
+    }
+
+    /**
+     * Listeners are called concurrently only if configured and if, as for prefetching, each message is acknowledged
+     * as soon as it is processed: the concurrent consumer acknowledges on a channel of its own.
+     *
+     * @return <code>true</code> if a listener set on this consumer is called on several threads
+     */
+    private boolean canListenConcurrently() {
+        return this.session.getListenerConcurrency() > 1 && this.canPrefetch();
+    }
+
     /**
      * Register a {@link Consumer} with the Rabbit API to receive messages
      *
@@ -278,13 +356,25 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
      * @see Channel#basicConsume(String, boolean, String, boolean, boolean, java.util.Map, Consumer)
      */
     void basicConsume(Consumer consumer, String consTag) throws IOException {
+        this.basicConsume(getSession().getChannel(), consumer, consTag);
+    }
+
+    /**
+     * Register a {@link Consumer} with the Rabbit API to receive messages on the given channel
+     *
+     * @param channel the channel to consume on
+     * @param consumer the Consumer being registered
+     * @param consTag the ConsumerTag to use for RabbitMQ callbacks
+     * @throws IOException from RabbitMQ calls
+     */
+    void basicConsume(Channel channel, Consumer consumer, String consTag) throws IOException {
         String name = rmqQueueName();
         // never ack async messages automatically, only when we can deliver them
         // to the actual consumer so we pass in false as the auto ack mode
         // we must support setMessageListener(null) while messages are arriving
         // and those message we NACK
         logger.debug("consuming from queue '{}' with tag '{}'", name, consTag);
-        getSession().getChannel()
+        channel
          .basicConsume(name, /* the name of the queue */
                        amqpAutoAck(), /* autoack is true only when listening on direct-reply-to, otherwise
                                * autoack is ALWAYS false, since we risk acking messages that are received
@@ -339,10 +429,13 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
                 return null; // timed out while stopped
             /* Try to receive a message, there's some time left! */
             try {
-                GetResponse resp = this.delayedReceiver.get(tt);
-                if (resp == null) return null; // nothing received in time or aborted
-                this.dealWithAcknowledgements(this.isAutoAck(), resp.getEnvelope().getDeliveryTag());
-                return RMQMessage.convertMessage(this.session, this.destination, resp, this.receivingContextConsumer);
+                RMQMessage message = null;
+                while (message == null) { // until the last chunk of a large message, if a chunk is received
+                    GetResponse resp = this.delayedReceiver.get(tt);
+                    if (resp == null) return null; // nothing received in time or aborted
+                    message = this.received(resp);
+                }
+                return message;
             } finally {
                 this.receiveManager.exit();
             }
@@ -358,6 +451,138 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
         }
     }
 
+    /**
+     * Receive up to <code>max</code> messages in one call. Waits, for up to <code>timeout</code> milliseconds, for the
+     * first message only, then adds the messages available without waiting: those prefetched, or (when polling) those
+     * the queue returns until it is empty.
+     * <p>
+     * This is equivalent to a {@link #receive(long)} followed by {@link #receiveNoWait()}s, but the checks, stopped
+     * connection gate and time tracking are done once per batch. Each message is acknowledged as
+     * for <code>receive</code>; in {@link Session#CLIENT_ACKNOWLEDGE} mode, {@link Message#acknowledge()} on the last
+     * message of the batch acknowledges the whole batch with one multiple acknowledgement.
+     * </p>
+     *
+     * @param max - maximum number of messages to receive; must be positive
+     * @param timeout - (in milliseconds) time to wait for the first message; zero means wait forever
+     * @return the messages received, in order; empty if none arrived in time or the consumer was closed
+     * @throws JMSException if the consumer is closed, or a listener is set on the session
+     */
+    public List<Message> receiveBatch(int max, long timeout) throws JMSException {
+        if (this.closed || this.closing)
+            throw new IllegalStateException("Consumer is closed or closing.");
+        if (max <= 0)
+            throw new IllegalArgumentException("Batch size must be positive: " + max);
+        logger.trace("receive batch(max={}, timeout={}ms)", max, timeout);
+        TimeTracker tt = timeout==0 ? new TimeTracker() : new TimeTracker(timeout, TimeUnit.MILLISECONDS);
+        if (!this.session.syncAllowed()) {
+            throw new IllegalStateException("A session may not receive() when a MessageListener is set. (See JMS 1.1 §4.4.6.)");
+        }
+        List<Message> messages = new ArrayList<Message>(Math.min(max, MAX_BATCH_PREALLOCATION));
+        this.numberOfReceives.incrementAndGet();
+        try {
+            if (!this.receiveManager.enter(tt))  // stopped?
+                return messages; // timed out while stopped
+            try {
+                List<GetResponse> responses = new ArrayList<GetResponse>(Math.min(max, MAX_BATCH_PREALLOCATION));
+                while (messages.isEmpty()) { // until the last chunk of a large message, if only chunks are received
+                    GetResponse first = this.delayedReceiver.get(tt);
+                    if (first == null) return messages; // nothing received in time or aborted
+                    responses.clear();
+                    responses.add(first);
+                    this.delayedReceiver.drainTo(responses, max - 1);
+                    if (!this.hasChunk(responses)) {
+                        for (GetResponse resp : responses) {
+                            this.dealWithAcknowledgements(this.isAutoAck(), resp.getEnvelope().getDeliveryTag());
+                        }
+                        for (GetResponse resp : responses) {
+                            messages.add(RMQMessage.convertMessage(this.session, this.destination, resp, this.receivingContextConsumer));
+                        }
+                    } else {
+                        for (GetResponse resp : responses) {
+                            RMQMessage message = this.received(resp);
+                            if (message != null) messages.add(message);
+                        }
+                    }
+                }
+                return messages;
+            } finally {
+                this.receiveManager.exit();
+            }
+        } catch (AbortedException e) {
+            /* If we were aborted (closed) we return what we have, too. */
+            return messages;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // reset interrupt status
+            return messages;
+        } finally {
+            this.numberOfReceives.decrementAndGet();
+        }
+    }
+
+    /**
+     * Acknowledges a message received, or records it as unacknowledged, and converts it. A chunk of a large message is
+     * added to its group; the message is acknowledged and converted once the last chunk is received.
+     * @return the message received, <code>null</code> if a chunk is received and the message is not complete yet
+     */
+    private RMQMessage received(GetResponse resp) throws JMSException {
+        if (!this.isChunk(resp)) {
+            this.dealWithAcknowledgements(this.isAutoAck(), resp.getEnvelope().getDeliveryTag());
+            return RMQMessage.convertMessage(this.session, this.destination, resp, this.receivingContextConsumer);
+        }
+        ChunkAssembler.Chunks chunks = this.assembleChunk(resp, this.delayedReceiver.window());
+        if (chunks == null) return null;
+        for (long dtag : chunks.getDeliveryTags()) {
+            this.dealWithAcknowledgements(this.isAutoAck(), dtag);
+        }
+        return RMQMessage.convertChunkedMessage(this.session, chunks, this.receivingContextConsumer);
+    }
+
+    private boolean hasChunk(List<GetResponse> responses) {
+        for (GetResponse resp : responses) {
+            if (this.isChunk(resp)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the message received is a chunk of a large message; messages from AMQP
+     * destinations are never chunks
+     */
+    boolean isChunk(GetResponse resp) {
+        return !this.destination.isAmqp() && resp.getProps() != null
+            && LargeMessageOutputStream.isChunk(resp.getProps().getHeaders());
+    }
+
+    /**
+     * Adds a chunk of a large message, received on the session's channel, to its group. Chunks which cannot be part
+     * of a complete message are rejected. The chunk is recorded as received by the session, so no coalesced
+     * acknowledgement of a later message covers it before the whole message is processed.
+     * @param window - the number of messages the broker delivers without acknowledgement, 0 for no limit
+     * @return the chunks of the message, once the last one is received; <code>null</code> until then
+     */
+    ChunkAssembler.Chunks assembleChunk(GetResponse resp, int window) {
+        if (!this.amqpAutoAck()) this.session.deliveryReceived(resp.getEnvelope().getDeliveryTag());
+        return this.chunkAssembler.add(resp, window, this::rejectChunks);
+    }
+
+    /**
+     * Rejects the chunks of a large message which cannot be put back together. They are not requeued: the message
+     * would still be broken.
+     */
+    private void rejectChunks(long[] dtags) {
+        for (long dtag : dtags) {
+            this.session.explicitReject(dtag);
+        }
+    }
+
+    /**
+     * Forgets the chunks received on the session's channel, once they are requeued by the session recovering or
+     * rolling back: their delivery tags are no longer valid.
+     */
+    void recovered() {
+        this.chunkAssembler.close();
+    }
+
     void dealWithAcknowledgements(boolean ack, long dtag) {
         if (ack) {
             this.session.explicitAck(dtag);
@@ -417,6 +642,7 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
 
         /* stop and remove any active subscription - waits for onMessage processing to finish */
         this.removeListenerConsumer();
+        this.chunkAssembler.close(); // discard large messages partly received, their chunks are not acknowledged
 
         try {
             this.abortables.abort(); // abort Consumers of both types that remain
@@ -9,6 +9,7 @@ import com.rabbitmq.jms.util.RMQJMSException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jms.BytesMessage;
 import javax.jms.Destination;
 import javax.jms.InvalidDestinationException;
 import javax.jms.JMSException;
@@ -19,6 +20,10 @@ import javax.jms.QueueSender;
 import javax.jms.Topic;
 import javax.jms.TopicPublisher;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 
 import static com.rabbitmq.jms.client.RMQMessage.JMS_MESSAGE_DELIVERY_MODE;
@@ -49,8 +54,8 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
     private int deliveryMode = Message.DEFAULT_DELIVERY_MODE;
     /**
      * Should we use message IDs or not.
-     * In this implementation, this flag is ignored and we will
-     * always use message IDs
+     * When this flag is set, no message ID is generated and
+     * messages are sent with a <code>null</code> JMSMessageID
      */
     private boolean disableMessageID = false;
     /**
@@ -74,6 +79,12 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
 
     private final SendingContextConsumer sendingContextConsumer;
 
+    /**
+     * Pre-built AMQP properties for the delivery modes, priorities, time-to-lives and reply-to queues this producer
+     * sends with.
+     */
+    private final BasicPropertiesTemplates propertiesTemplates = new BasicPropertiesTemplates();
+
     public RMQMessageProducer(RMQSession session, RMQDestination destination, boolean preferProducerMessageProperty,
                               BiFunction<AMQP.BasicProperties.Builder, Message, AMQP.BasicProperties.Builder> amqpPropertiesCustomiser,
                               SendingContextConsumer sendingContextConsumer) {
@@ -255,15 +266,166 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
         this.sendingStrategy.send(destination, message, deliveryMode, priority, timeToLive);
     }
 
-    private void internalSend(RMQDestination destination, Message message, int deliveryMode, int priority, long timeToLiveOrExpiration, MessageExpirationType messageExpirationType) throws JMSException {
+    /**
+     * Sends a message to the producer's destination, calling the listener when the send completes.
+     * <p>
+     * If the session uses publisher confirms, this returns once the message is published, and the listener is called
+     * when the broker confirms or rejects the message. Otherwise the listener is called before this returns.
+     * Like {@link #send(Message)}, this otherwise uses the producer's delivery mode, priority and time-to-live.
+     * </p>
+     * @param message the message to send
+     * @param completionListener called when the send completes
+     * @throws JMSException if the message cannot be sent
+     * @see com.rabbitmq.jms.admin.RMQConnectionFactory#setUsePublisherConfirms(boolean)
+     * @since 2.0.0
+     */
+    public void send(Message message, CompletionListener completionListener) throws JMSException {
+        this.sendingStrategy.send(this.destination, message, completionListener);
+    }
+
+    /**
+     * Sends a message to the producer's destination, calling the listener when the send completes.
+     * @param message the message to send
+     * @param deliveryMode the delivery mode to use
+     * @param priority the priority for this message
+     * @param timeToLive the message's lifetime (in milliseconds)
+     * @param completionListener called when the send completes
+     * @throws JMSException if the message cannot be sent
+     * @see #send(Message, CompletionListener)
+     * @since 2.0.0
+     */
+    public void send(Message message, int deliveryMode, int priority, long timeToLive, CompletionListener completionListener) throws JMSException {
+        this.sendingStrategy.send(this.destination, message, deliveryMode, priority, timeToLive, completionListener);
+    }
+
+    /**
+     * Sends a message to a destination, for an unidentified producer, calling the listener when the send completes.
+     * @param destination the destination to send this message to
+     * @param message the message to send
+     * @param completionListener called when the send completes
+     * @throws JMSException if the message cannot be sent
+     * @see #send(Message, CompletionListener)
+     * @since 2.0.0
+     */
+    public void send(Destination destination, Message message, CompletionListener completionListener) throws JMSException {
+        this.checkUnidentifiedMessageProducer(destination);
+        this.sendingStrategy.send(destination, message, completionListener);
+    }
+
+    /**
+     * Sends a message to a destination, for an unidentified producer, calling the listener when the send completes.
+     * @param destination the destination to send this message to
+     * @param message the message to send
+     * @param deliveryMode the delivery mode to use
+     * @param priority the priority for this message
+     * @param timeToLive the message's lifetime (in milliseconds)
+     * @param completionListener called when the send completes
+     * @throws JMSException if the message cannot be sent
+     * @see #send(Message, CompletionListener)
+     * @since 2.0.0
+     */
+    public void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive,
+                     CompletionListener completionListener) throws JMSException {
+        this.checkUnidentifiedMessageProducer(destination);
+        this.sendingStrategy.send(destination, message, deliveryMode, priority, timeToLive, completionListener);
+    }
+
+    /**
+     * Sends a batch of messages to a destination, publishing them one after the other.
+     * <p>
+     * This is equivalent to sending each message in turn, but the destination is checked (and declared if necessary)
+     * once.
+     * All the messages of a batch are given the same <code>JMSTimestamp</code>. If a message cannot be sent, the
+     * messages before it in the list have been sent.
+     * </p>
+     * @param destination the destination to send the messages to, or <code>null</code> for the producer's destination
+     * @param messages the messages to send, in order
+     * @throws JMSException if a message cannot be sent
+     * @since 2.0.0
+     */
+    public void sendBatch(Destination destination, List<? extends Message> messages) throws JMSException {
+        this.checkUnidentifiedMessageProducer(destination);
+        this.sendingStrategy.sendBatch(destination, messages, null);
+    }
+
+    /**
+     * Sends a batch of messages to a destination and waits until the broker has confirmed all of them.
+     * <p>
+     * If the session uses publisher confirms, this waits once, for the whole batch, rather than for each message.
+     * Otherwise the messages are complete once they are published and this does not wait.
+     * </p>
+     * @param destination the destination to send the messages to, or <code>null</code> for the producer's destination
+     * @param messages the messages to send, in order
+     * @param confirmTimeout maximum time to wait for the confirms, in milliseconds
+     * @throws JMSException if a message cannot be sent, if the broker rejects any message, or if the confirms do not
+     * arrive in time
+     * @see #sendBatch(Destination, List)
+     * @see com.rabbitmq.jms.admin.RMQConnectionFactory#setUsePublisherConfirms(boolean)
+     * @since 2.0.0
+     */
+    public void sendBatch(Destination destination, List<? extends Message> messages, long confirmTimeout) throws JMSException {
+        this.checkUnidentifiedMessageProducer(destination);
+        BatchCompletion completion = new BatchCompletion(messages.size());
+        this.sendingStrategy.sendBatch(destination, messages, completion);
+        completion.await(confirmTimeout);
+    }
+
+    private void internalSendBatch(RMQDestination destination, List<? extends Message> messages, boolean preferMessageProperty,
+                                   CompletionListener completionListener) throws JMSException {
+        logger.trace("send/publish batch of {} messages to destination({})", messages.size(), destination);
+
+        destination = this.targetDestination(destination);
+        if (messages.isEmpty())
+            return;
+        if (!destination.isAmqp())
+            this.session.declareDestinationIfNecessary(destination); // once for the whole batch
+
+        long currentTime = System.currentTimeMillis();
+        for (Message message : messages) {
+            int deliveryMode = preferMessageProperty && message.propertyExists(JMS_MESSAGE_DELIVERY_MODE) ? message.getJMSDeliveryMode() : getDeliveryMode();
+            int priority = preferMessageProperty && message.propertyExists(JMS_MESSAGE_PRIORITY) ? message.getJMSPriority() : getPriority();
+            if (preferMessageProperty && message.propertyExists(JMS_MESSAGE_EXPIRATION)) {
+                this.sendMessage(destination, message, deliveryMode, priority, message.getJMSExpiration(), MessageExpirationType.EXPIRATION,
+                                 currentTime, completionListener);
+            } else {
+                this.sendMessage(destination, message, deliveryMode, priority, getTimeToLive(), MessageExpirationType.TTL,
+                                 currentTime, completionListener);
+            }
+        }
+    }
+
+    private void internalSend(RMQDestination destination, Message message, int deliveryMode, int priority, long timeToLiveOrExpiration, MessageExpirationType messageExpirationType,
+                              CompletionListener completionListener) throws JMSException {
         logger.trace("send/publish message({}) to destination({}) with properties deliveryMode({}), priority({}), timeToLive({})", message, destination, deliveryMode, priority, timeToLiveOrExpiration);
 
-        this.sendingContextConsumer.accept(new SendingContext(destination, message));
+        destination = this.targetDestination(destination);
+        if (!destination.isAmqp())
+            this.session.declareDestinationIfNecessary(destination);
+        this.sendMessage(destination, message, deliveryMode, priority, timeToLiveOrExpiration, messageExpirationType,
+                         System.currentTimeMillis(), completionListener);
+    }
 
+    /**
+     * @return the destination to send to: the one supplied, or else the producer's
+     * @throws InvalidDestinationException if there is neither
+     */
+    private RMQDestination targetDestination(RMQDestination destination) throws InvalidDestinationException {
         if (destination == null)
             destination = this.destination;
         if (destination == null)
             throw new InvalidDestinationException("No destination supplied, or implied.");
+        return destination;
+    }
+
+    /**
+     * Sends one message, of a single send or of a batch, to a destination declared if necessary: sets the JMS headers
+     * of the message, then encodes and publishes it.
+     * @param currentTime - the <code>JMSTimestamp</code> of the message, the time its expiration is computed from
+     */
+    private void sendMessage(RMQDestination destination, Message message, int deliveryMode, int priority, long timeToLiveOrExpiration,
+                             MessageExpirationType messageExpirationType, long currentTime, CompletionListener completionListener) throws JMSException {
+        this.sendingContextConsumer.accept(new SendingContext(destination, message));
+
         if (deliveryMode != javax.jms.DeliveryMode.PERSISTENT)
             deliveryMode = javax.jms.DeliveryMode.NON_PERSISTENT;
 
@@ -271,7 +433,6 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
         RMQMessage rmqMessage = RMQMessage.normalise(message);
 
         /* Set known JMS message properties that need to be set during this call */
-        long currentTime = System.currentTimeMillis();
         long expiration;
         long ttl;
         if (messageExpirationType == MessageExpirationType.TTL) {
@@ -287,17 +448,29 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
         rmqMessage.setJMSExpiration(expiration);
         rmqMessage.setJMSDestination(destination);
         rmqMessage.setJMSTimestamp(currentTime);
-        rmqMessage.generateInternalID();
+        this.generateMessageId(rmqMessage);
 
         /* Now send it */
         if (destination.isAmqp()) {
-            sendAMQPMessage(destination, rmqMessage, deliveryMode, priority, ttl);
+            sendAMQPMessage(destination, rmqMessage, deliveryMode, priority, ttl, completionListener);
+        } else {
+            sendJMSMessage(destination, rmqMessage, deliveryMode, priority, ttl, completionListener);
+        }
+    }
+
+    /**
+     * Gives the message a new ID, or none if message IDs are disabled.
+     */
+    private void generateMessageId(RMQMessage rmqMessage) throws JMSException {
+        if (this.disableMessageID) {
+            rmqMessage.clearInternalID();
         } else {
-            sendJMSMessage(destination, rmqMessage, deliveryMode, priority, ttl);
+            rmqMessage.generateInternalID(this.session.getMessageIdGenerator());
         }
     }
 
-    private void sendAMQPMessage(RMQDestination destination, RMQMessage msg, int deliveryMode, int priority, long timeToLive) throws JMSException {
+    private void sendAMQPMessage(RMQDestination destination, RMQMessage msg, int deliveryMode, int priority, long timeToLive,
+                                 CompletionListener completionListener) throws JMSException {
         if (!destination.amqpWritable()) {
             this.logger.error("Cannot write to AMQP destination {}", destination);
             throw new RMQJMSException("Cannot write to AMQP destination", new UnsupportedOperationException("MessageProducer.send to undefined AMQP resource"));
@@ -305,22 +478,17 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
 
         if (msg instanceof RMQBytesMessage || msg instanceof RMQTextMessage) {
             try {
-                AMQP.BasicProperties.Builder bob = new AMQP.BasicProperties.Builder();
-                bob.contentType("application/json");
-                bob.deliveryMode(RMQMessage.rmqDeliveryMode(deliveryMode));
-                bob.priority(priority);
-                bob.expiration(rmqExpiration(timeToLive));
+                AMQP.BasicProperties.Builder bob = this.propertiesTemplates.builder(deliveryMode, priority, timeToLive, replyTo(msg));
                 bob.headers(msg.toAmqpHeaders());
                 bob.correlationId(msg.getJMSCorrelationID());
-                setReplyToProperty(bob, msg);
 
 //                maybeSetReplyToPropertyToDirectReplyTo(bob, msg);
 
                 bob = amqpPropertiesCustomiser.apply(bob, msg);
 
-                byte[] data = msg.toAmqpByteArray();
+                byte[] data = this.compress(destination, msg.toAmqpByteArray(this.session.getEncodeBuffer()), bob);
 
-                this.session.getChannel().basicPublish(destination.getAmqpExchangeName(), destination.getAmqpRoutingKey(), bob.build(), data);
+                this.session.publish(destination.getAmqpExchangeName(), destination.getAmqpRoutingKey(), bob.build(), data, msg, completionListener);
             } catch (IOException x) {
                 throw new RMQJMSException(x);
             }
@@ -331,33 +499,148 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
     }
 
     // protected for testing
-    protected void sendJMSMessage(RMQDestination destination, RMQMessage msg, int deliveryMode, int priority, long timeToLive) throws JMSException {
-        this.session.declareDestinationIfNecessary(destination);
+    protected void sendJMSMessage(RMQDestination destination, RMQMessage msg, int deliveryMode, int priority, long timeToLive,
+                                  CompletionListener completionListener) throws JMSException {
         try {
-            AMQP.BasicProperties.Builder bob = new AMQP.BasicProperties.Builder();
-            bob.contentType("application/json");
-            bob.deliveryMode(RMQMessage.rmqDeliveryMode(deliveryMode));
-            bob.priority(priority);
-            bob.expiration(rmqExpiration(timeToLive));
-            bob.headers(msg.toHeaders());
-            bob.correlationId(msg.getJMSCorrelationID());
-            setReplyToProperty(bob, msg);
+            AMQP.BasicProperties.Builder bob = this.propertiesTemplates.builder(deliveryMode, priority, timeToLive, replyTo(msg));
 
 //            maybeSetReplyToPropertyToDirectReplyTo(bob, msg);
 
-            byte[] data = msg.toByteArray();
+            byte[] data = this.compress(destination, this.encodeJMSMessage(msg, bob), bob);
 
-            this.session.getChannel().basicPublish(destination.getAmqpExchangeName(), destination.getAmqpRoutingKey(), bob.build(), data);
+            this.publishJMSMessage(destination, bob.build(), data, msg, completionListener);
         } catch (IOException x) {
             throw new RMQJMSException(x);
         }
     }
 
-    private static void setReplyToProperty(AMQP.BasicProperties.Builder builder, RMQMessage msg) throws JMSException {
+    /**
+     * Encodes a message for a JMS destination, in the session's wire format, and sets its JMS headers on the AMQP
+     * properties.
+     * @return the payload of the message
+     */
+    private byte[] encodeJMSMessage(RMQMessage msg, AMQP.BasicProperties.Builder bob) throws IOException, JMSException {
+        bob.headers(msg.toHeaders());
+        bob.correlationId(msg.getJMSCorrelationID());
+        if (this.session.willUseCompactMessageFormat()) {
+            bob.contentType(CompactMessageFormat.CONTENT_TYPE);
+            return msg.toCompactByteArray(this.session.getEncodeBuffer());
+        }
+        return msg.toByteArray(this.session.getEncodeBuffer());
+    }
+
+    /**
+     * Publishes the payload of a message to a JMS destination: in one piece, or, if it is larger than the session's
+     * chunk size, as a group of chunks.
+     */
+    private void publishJMSMessage(RMQDestination destination, AMQP.BasicProperties props, byte[] data, RMQMessage msg,
+                                   CompletionListener completionListener) throws IOException, JMSException {
+        int chunkSize = this.session.getLargeMessageChunkSize();
+        if (chunkSize <= 0 || data.length <= chunkSize) {
+            this.session.publish(destination.getAmqpExchangeName(), destination.getAmqpRoutingKey(), props, data, msg, completionListener);
+            return;
+        }
+        OutputStream out = new LargeMessageOutputStream(this.session, destination.getAmqpExchangeName(), destination.getAmqpRoutingKey(),
+            props, msg, this.chunkGroup(msg), chunkSize, completionListener);
+        out.write(data);
+        out.close();
+    }
+
+    /**
+     * @return the ID of the group of chunks of a large message: its message ID, or a new ID if message IDs are disabled
+     */
+    private String chunkGroup(RMQMessage msg) throws JMSException {
+        String messageId = msg.getJMSMessageID();
+        return messageId == null ? this.session.getMessageIdGenerator().generate() : messageId;
+    }
+
+    /**
+     * Starts sending a large {@link BytesMessage} to the producer's destination, returning a stream to write the rest
+     * of its body to.
+     * @param message the message to send, with the start of its body, if any
+     * @return the stream to write the rest of the body to; the message is sent when the stream is closed
+     * @throws JMSException if the message cannot be sent
+     * @see #createLargeMessageOutputStream(Destination, BytesMessage)
+     * @since 2.0.0
+     */
+    public OutputStream createLargeMessageOutputStream(BytesMessage message) throws JMSException {
+        return this.createLargeMessageOutputStream(null, message);
+    }
+
+    /**
+     * Starts sending a large {@link BytesMessage}, for an unidentified producer, returning a stream to write the rest
+     * of its body to.
+     * <p>
+     * The message is published as a group of chunks, each the size set with
+     * {@link com.rabbitmq.jms.admin.RMQConnectionFactory#setLargeMessageChunkSize(int)}, or 1 MiB if that is not set.
+     * A chunk is published when it is full, so the body is never held whole in memory; the last chunk is published
+     * when the stream is closed. A consumer of this client puts the message back together, and reads the body from
+     * the chunks as it reads the message. The message is sent with the producer's delivery mode, priority and
+     * time-to-live, and is not compressed.
+     * </p>
+     * <p>
+     * Like the session, the stream must be used by one thread at a time; no other message should be sent on the
+     * session until it is closed.
+     * </p>
+     * @param destination the destination to send the message to, or <code>null</code> for the producer's destination
+     * @param message the message to send, with the start of its body, if any
+     * @return the stream to write the rest of the body to; the message is sent when the stream is closed
+     * @throws JMSException if the message cannot be sent
+     * @since 2.0.0
+     */
+    public OutputStream createLargeMessageOutputStream(Destination destination, BytesMessage message) throws JMSException {
+        this.checkUnidentifiedMessageProducer(destination);
+        RMQDestination rmqDestination = destination == null ? this.destination : (RMQDestination) destination;
+        if (rmqDestination == null)
+            throw new InvalidDestinationException("No destination supplied, or implied.");
+        if (rmqDestination.isAmqp())
+            throw new RMQJMSException("Cannot send a large message to AMQP destination", new UnsupportedOperationException("Large messages to AMQP resource"));
+        this.sendingContextConsumer.accept(new SendingContext(rmqDestination, message));
+
+        RMQMessage rmqMessage = RMQMessage.normalise(message);
+        long currentTime = System.currentTimeMillis();
+        rmqMessage.setJMSDeliveryMode(this.deliveryMode);
+        rmqMessage.setJMSPriority(this.priority);
+        rmqMessage.setJMSExpiration(this.ttl == 0L ? 0L : currentTime + this.ttl);
+        rmqMessage.setJMSDestination(rmqDestination);
+        rmqMessage.setJMSTimestamp(currentTime);
+        this.generateMessageId(rmqMessage);
+
+        this.session.declareDestinationIfNecessary(rmqDestination);
+        try {
+            AMQP.BasicProperties.Builder bob = this.propertiesTemplates.builder(this.deliveryMode, this.priority, this.ttl, replyTo(rmqMessage));
+            byte[] prefix = this.encodeJMSMessage(rmqMessage, bob); // the message, with the start of its body
+            int chunkSize = this.session.getLargeMessageChunkSize();
+            OutputStream out = new LargeMessageOutputStream(this.session, rmqDestination.getAmqpExchangeName(), rmqDestination.getAmqpRoutingKey(),
+                bob.build(), rmqMessage, this.chunkGroup(rmqMessage), chunkSize > 0 ? chunkSize : LargeMessageOutputStream.DEFAULT_CHUNK_SIZE, null);
+            out.write(prefix);
+            return out;
+        } catch (IOException x) {
+            throw new RMQJMSException(x);
+        }
+    }
+
+    /**
+     * Compresses the payload if it is larger than the destination's compression threshold, and sets the AMQP
+     * <code>content-encoding</code> property accordingly.
+     * @return the payload to publish
+     */
+    private byte[] compress(RMQDestination destination, byte[] data, AMQP.BasicProperties.Builder bob) {
+        byte[] compressed = this.session.getPayloadCompression().compress(destination, data);
+        if (compressed == null) return data;
+        bob.contentEncoding(PayloadCompression.DEFLATE);
+        return compressed;
+    }
+
+    /**
+     * @return the AMQP <code>reply-to</code> property for the message's <code>JMSReplyTo</code> header, if any
+     */
+    private static String replyTo(RMQMessage msg) throws JMSException {
         if (msg.getJMSReplyTo() != null && msg.getJMSReplyTo() instanceof RMQDestination) {
             RMQDestination replyTo = (RMQDestination) msg.getJMSReplyTo();
-            builder.replyTo(replyTo.getAmqpQueueName());
+            return replyTo.getAmqpQueueName();
         }
+        return null;
     }
 
     /**
@@ -383,26 +666,6 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
         }
     }
 
-    /** This is dictated by `erlang:send_after' on which rabbitmq depends to implement TTL:
-     * <br/><code>-define(MAX_EXPIRY_TIMER, 4294967295)</code>.
-     */
-    private static final long MAX_TTL = 4294967295L;
-
-    /**
-     * Convert long time-to-live to String time-to-live for amqp protocol.
-     * Constrain to limits: <code>0 &LT;= ttl &LT;= MAX_TTL</code>.
-     * @param ttl JMS time-to-live long integer
-     * @return RabbitMQ message expiration setting (null if expiration==0L)
-     */
-    private static final String rmqExpiration(long ttl) {
-        if (ttl == 0L) return null;
-
-        return String.valueOf( ttl < 0L      ? 0L
-                : ttl > MAX_TTL ? MAX_TTL
-                :                 ttl
-        );
-    }
-
     /**
      * {@inheritDoc}
      */
@@ -476,6 +739,12 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
 
         void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive) throws JMSException;
 
+        void send(Destination destination, Message message, CompletionListener completionListener) throws JMSException;
+
+        void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive, CompletionListener completionListener) throws JMSException;
+
+        void sendBatch(Destination destination, List<? extends Message> messages, CompletionListener completionListener) throws JMSException;
+
     }
 
     /**
@@ -486,12 +755,28 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
 
         @Override
         public void send(Destination destination, Message message) throws JMSException {
-            internalSend((RMQDestination) destination, message, getDeliveryMode(), getPriority(), getTimeToLive(), MessageExpirationType.TTL);
+            send(destination, message, null);
         }
 
         @Override
         public void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive) throws JMSException {
-            internalSend((RMQDestination) destination, message, deliveryMode, priority, timeToLive, MessageExpirationType.TTL);
+            send(destination, message, deliveryMode, priority, timeToLive, null);
+        }
+
+        @Override
+        public void send(Destination destination, Message message, CompletionListener completionListener) throws JMSException {
+            internalSend((RMQDestination) destination, message, getDeliveryMode(), getPriority(), getTimeToLive(), MessageExpirationType.TTL,
+                completionListener);
+        }
+
+        @Override
+        public void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive, CompletionListener completionListener) throws JMSException {
+            internalSend((RMQDestination) destination, message, deliveryMode, priority, timeToLive, MessageExpirationType.TTL, completionListener);
+        }
+
+        @Override
+        public void sendBatch(Destination destination, List<? extends Message> messages, CompletionListener completionListener) throws JMSException {
+            internalSendBatch((RMQDestination) destination, messages, false, completionListener);
         }
 
     }
@@ -504,16 +789,32 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
 
         @Override
         public void send(Destination destination, Message message) throws JMSException {
+            send(destination, message, null);
+        }
+
+        @Override
+        public void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive) throws JMSException {
+            send(destination, message, deliveryMode, priority, timeToLive, null);
+        }
+
+        @Override
+        public void send(Destination destination, Message message, CompletionListener completionListener) throws JMSException {
             internalSend((RMQDestination) destination, message,
                     message.propertyExists(JMS_MESSAGE_DELIVERY_MODE) ? message.getJMSDeliveryMode() : getDeliveryMode(),
                     message.propertyExists(JMS_MESSAGE_PRIORITY) ? message.getJMSPriority() : getPriority(),
                     message.propertyExists(JMS_MESSAGE_EXPIRATION) ? message.getJMSExpiration() : getTimeToLive(),
-                    message.propertyExists(JMS_MESSAGE_EXPIRATION) ? MessageExpirationType.EXPIRATION : MessageExpirationType.TTL);
+                    message.propertyExists(JMS_MESSAGE_EXPIRATION) ? MessageExpirationType.EXPIRATION : MessageExpirationType.TTL,
+                    completionListener);
         }
 
         @Override
-        public void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive) throws JMSException {
-            internalSend((RMQDestination) destination, message, deliveryMode, priority, timeToLive, MessageExpirationType.TTL);
+        public void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive, CompletionListener completionListener) throws JMSException {
+            internalSend((RMQDestination) destination, message, deliveryMode, priority, timeToLive, MessageExpirationType.TTL, completionListener);
+        }
+
+        @Override
+        public void sendBatch(Destination destination, List<? extends Message> messages, CompletionListener completionListener) throws JMSException {
+            internalSendBatch((RMQDestination) destination, messages, true, completionListener);
         }
 
     }
@@ -522,4 +823,41 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
         TTL, EXPIRATION
     }
 
+    /**
+     * Counts down the messages of a batch as they complete, so the sender waits once for the whole batch.
+     */
+    private static final class BatchCompletion implements CompletionListener {
+        private final CountDownLatch remaining;
+        private volatile Exception failure = null;
+        private volatile int failed = 0;
+
+        BatchCompletion(int size) {
+            this.remaining = new CountDownLatch(size);
+        }
+
+        @Override
+        public void onCompletion(Message message) {
+            this.remaining.countDown();
+        }
+
+        @Override
+        public synchronized void onException(Message message, Exception exception) {
+            if (this.failure == null) this.failure = exception;
+            this.failed++;
+            this.remaining.countDown();
+        }
+
+        void await(long timeout) throws JMSException {
+            try {
+                if (!this.remaining.await(timeout, TimeUnit.MILLISECONDS))
+                    throw new RMQJMSException("Timed out waiting for publisher confirms", null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RMQJMSException("Interrupted waiting for publisher confirms", e);
+            }
+            if (this.failure != null)
+                throw new RMQJMSException(this.failed + " message(s) of the batch not confirmed", this.failure);
+        }
+    }
+
 }
\ No newline at end of file
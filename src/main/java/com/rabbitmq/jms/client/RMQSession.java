@@ -10,8 +10,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeoutException;
 import java.util.function.BiFunction;
 
@@ -55,12 +54,11 @@ import com.rabbitmq.jms.client.message.RMQObjectMessage;
 import com.rabbitmq.jms.client.message.RMQStreamMessage;
 import com.rabbitmq.jms.client.message.RMQTextMessage;
 import com.rabbitmq.jms.parse.sql.SqlCompiler;
-import com.rabbitmq.jms.parse.sql.SqlEvaluator;
 import com.rabbitmq.jms.parse.sql.SqlExpressionType;
-import com.rabbitmq.jms.parse.sql.SqlParser;
-import com.rabbitmq.jms.parse.sql.SqlTokenStream;
+import com.rabbitmq.jms.parse.sql.SqlSelectorCache;
 import com.rabbitmq.jms.util.RMQJMSException;
 import com.rabbitmq.jms.util.RMQJMSSelectorException;
+import com.rabbitmq.jms.util.SequenceSet;
 import com.rabbitmq.jms.util.Util;
 
 /**
@@ -134,6 +132,100 @@ public class RMQSession implements Session, QueueSession, TopicSession {
 
     private final ReceivingContextConsumer receivingContextConsumer;
 
+    /**
+     * Number of messages to prefetch for synchronous receive, 0 to poll.
+     *
+     * @since 2.0.0
+     */
+    private final int receivePrefetch;
+
+    /**
+     * Number of threads each consumer calls its listener on; 0 or 1 for one at a time.
+     *
+     * @since 2.0.0
+     */
+    private final int listenerConcurrency;
+
+    /**
+     * Message property whose values are processed in order by concurrent listeners.
+     *
+     * @since 2.0.0
+     */
+    private final String listenerOrderingProperty;
+
+    /**
+     * Whether received messages are decoded on first access.
+     *
+     * @since 2.0.0
+     */
+    private final boolean lazyMessageDecoding;
+
+    /**
+     * Whether messages are sent in the compact binary format.
+     *
+     * @since 2.0.0
+     */
+    private final boolean useCompactMessageFormat;
+
+    /**
+     * Generates the IDs of the messages sent.
+     *
+     * @since 2.0.0
+     */
+    private final MessageIdGenerator messageIdGenerator;
+
+    /**
+     * Compresses the payloads of messages sent, and decompresses those received.
+     *
+     * @since 2.0.0
+     */
+    private final PayloadCompression payloadCompression;
+
+    /**
+     * The exchanges, queues and bindings declared by the sessions of the connection.
+     *
+     * @since 2.0.0
+     */
+    private final DeclarationRegistry declarationRegistry;
+
+    /**
+     * Payloads of messages sent larger than this are split into chunks of this size; 0 for none.
+     *
+     * @since 2.0.0
+     */
+    private final int largeMessageChunkSize;
+
+    /**
+     * Tracks the messages published until the broker confirms them; <code>null</code> if the session does not use
+     * publisher confirms.
+     *
+     * @since 2.0.0
+     */
+    private final PublisherConfirms publisherConfirms;
+
+    /**
+     * Buffer the messages sent by the producers of this session are encoded into.
+     *
+     * @since 2.0.0
+     */
+    private final EncodeBuffer encodeBuffer = new EncodeBuffer();
+
+    /** Default message property whose values are processed in order by concurrent listeners. */
+    public static final String DEFAULT_LISTENER_ORDERING_PROPERTY = RMQConnectionMetaData.JMSX_GROUP_ID_LABEL;
+
+    /** Default number of acknowledgements coalesced in {@link Session#DUPS_OK_ACKNOWLEDGE} sessions. */
+    public static final int DEFAULT_DUPS_OK_ACK_BATCH_SIZE = 50;
+    /** Default maximum delay, in milliseconds, of a coalesced acknowledgement. */
+    public static final int DEFAULT_ACK_BATCH_MAX_DELAY_MS = 100;
+
+    /**
+     * Coalesces acknowledgements of messages received;
+     * <code>null</code> if each message is acknowledged individually.
+     *
+     * @since 2.0.0
+     */
+    private final AckAccumulator ackAccumulator;
+
     /**
      * The main RabbitMQ channel we use under the hood
      */
@@ -146,6 +238,10 @@ public class RMQSession implements Session, QueueSession, TopicSession {
      * The message listener for this session.
      */
     private volatile MessageListener messageListener;
+    /**
+     * Messages loaded by connection consumers, waiting for {@link #run()}.
+     */
+    private final ConcurrentLinkedQueue<RMQConnectionConsumer.Delivery> loadedMessages = new ConcurrentLinkedQueue<RMQConnectionConsumer.Delivery>();
     /**
      * A list of all the producers created by this session.
      * When a producer is closed, it will be removed from this list
@@ -160,8 +256,9 @@ public class RMQSession implements Session, QueueSession, TopicSession {
      * We keep an ordered set of the message tags (acknowledgement tags) for all messages received and unacknowledged.
      * Each message acknowledgement must ACK all (unacknowledged) messages received up to this point, and
      * we must never acknowledge a message more than once (nor acknowledge a message that doesn't exist).
+     * Delivery tags increase on a channel, so a {@link SequenceSet} holds them without boxing.
      */
-    private final SortedSet<Long> unackedMessageTags = Collections.synchronizedSortedSet(new TreeSet<Long>());
+    private final SequenceSet unackedMessageTags = new SequenceSet(); // @GuardedBy(unackedMessageTags)
 
     /**
      * List of all our durable subscriptions so we can track them
@@ -257,7 +354,9 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         this.connection = sessionParams.getConnection();
         this.transacted = sessionParams.isTransacted();
         this.subscriptions = sessionParams.getSubscriptions();
-        this.deliveryExecutor = new DeliveryExecutor(sessionParams.getOnMessageTimeoutMs());
+        this.deliveryExecutor = sessionParams.willDirectListenerDispatch()
+            ? new DeliveryExecutor(sessionParams.getOnMessageTimeoutMs(), sessionParams.getConnection().getOnMessageWatchdog())
+            : new DeliveryExecutor(sessionParams.getOnMessageTimeoutMs(), null, sessionParams.getConnection().getListenerThreadFactory());
         this.preferProducerMessageProperty = sessionParams.willPreferProducerMessageProperty();
         this.requeueOnMessageListenerException = sessionParams.willRequeueOnMessageListenerException();
         this.requeueOnNackException = sessionParams.willRequeueOnNackException();
@@ -266,6 +365,19 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         this.sendingContextConsumer = sessionParams.getSendingContextConsumer();
         this.receivingContextConsumer = sessionParams.getReceivingContextConsumer() == null ?
                 ReceivingContextConsumer.NO_OP : sessionParams.getReceivingContextConsumer();
+        this.receivePrefetch = sessionParams.getReceivePrefetch();
+        this.listenerConcurrency = sessionParams.getListenerConcurrency();
+        this.listenerOrderingProperty = sessionParams.getListenerOrderingProperty() == null ?
+                DEFAULT_LISTENER_ORDERING_PROPERTY : sessionParams.getListenerOrderingProperty();
+        this.lazyMessageDecoding = sessionParams.willLazyMessageDecoding();
+        this.useCompactMessageFormat = sessionParams.willUseCompactMessageFormat();
+        this.messageIdGenerator = sessionParams.getMessageIdGenerator() == null ?
+                MessageIdGenerator.sequential() : sessionParams.getMessageIdGenerator();
+        this.payloadCompression = sessionParams.getPayloadCompression() == null ?
+                new PayloadCompression(0, null) : sessionParams.getPayloadCompression();
+        this.declarationRegistry = sessionParams.getDeclarationRegistry() == null ?
+                new DeclarationRegistry() : sessionParams.getDeclarationRegistry();
+        this.largeMessageChunkSize = sessionParams.getLargeMessageChunkSize();
 
         if (transacted) {
             this.acknowledgeMode = Session.SESSION_TRANSACTED;
@@ -279,9 +391,51 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         }
         try {
             this.channel = connection.createRabbitChannel(transacted);
+            this.channel.addShutdownListener(this.declarationRegistry); // the broker closed the channel: declare again
         } catch (Exception x) { // includes unchecked exceptions, e.g. ShutdownSignalException
             throw new RMQJMSException(x);
         }
+        this.publisherConfirms = (sessionParams.willUsePublisherConfirms() && !transacted)
+            ? publisherConfirms(this.channel, sessionParams.getMaxUnconfirmedMessages())
+            : null;
+        int ackBatchSize = ackBatchSize(sessionParams);
+        this.ackAccumulator = ackBatchSize > 1
+            ? new AckAccumulator(this.channel, ackBatchSize, sessionParams.getAckBatchMaxDelayMs(), this.connection.getScheduler())
+            : null;
+    }
+
+    private static PublisherConfirms publisherConfirms(Channel channel, int maxUnconfirmedMessages) throws JMSException {
+        try {
+            channel.confirmSelect();
+        } catch (Exception x) { // includes unchecked exceptions, e.g. ShutdownSignalException
+            throw new RMQJMSException("Cannot put channel in confirm mode", x);
+        }
+        PublisherConfirms confirms = new PublisherConfirms(channel, maxUnconfirmedMessages);
+        channel.addConfirmListener(confirms);
+        channel.addShutdownListener(confirms);
+        return confirms;
+    }
+
+    /**
+     * Acknowledgements can be coalesced only in non-transacted sessions that acknowledge on receipt, and not when
+     * messages are prefetched for receive (a multiple acknowledgement would cover messages still in the buffer).
+     * The batch must also fit in the channel QoS window, or no more messages would be delivered.
+     *
+     * @return the number of acknowledgements to coalesce, 1 or less meaning none
+     */
+    private int ackBatchSize(SessionParams sessionParams) {
+        if (this.transacted || this.receivePrefetch > 0) return 0;
+        int batchSize;
+        if (this.acknowledgeMode == Session.DUPS_OK_ACKNOWLEDGE) {
+            batchSize = sessionParams.getAckBatchSize() > 0 ? sessionParams.getAckBatchSize() : DEFAULT_DUPS_OK_ACK_BATCH_SIZE;
+        } else if (this.acknowledgeMode == Session.AUTO_ACKNOWLEDGE) {
+            batchSize = sessionParams.getAckBatchSize();
+        } else {
+            return 0;
+        }
+        int channelsQos = this.connection.getChannelsQos();
+        if (channelsQos > 0) batchSize = Math.min(batchSize, channelsQos);
+        return batchSize;
     }
 
     /**
@@ -399,7 +553,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
      *
      * @return true if this session is transacted
      */
-    private boolean getTransactedNoException() {
+    boolean getTransactedNoException() {
         return this.transacted;
     }
 
@@ -491,6 +645,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                 this.channel.txRollback();
                 // requeue all unacknowledged messages (not automatically done by RabbitMQ)
                 this.channel.basicRecover(true); // requeue
+                this.chunksRequeued();
             } catch (IOException x) {
                 this.logger.error("RabbitMQ exception on channel.txRollback() or channel.basicRecover(true) in session {}",
                         this, x);
@@ -501,7 +656,20 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         }
     }
 
+    /**
+     * Tell the consumers that the chunks of large messages they received on the channel are requeued.
+     */
+    private void chunksRequeued() {
+        for (RMQMessageConsumer consumer : this.consumers) {
+            consumer.recovered();
+        }
+    }
+
     void explicitAck(long deliveryTag) {
+        if (this.ackAccumulator != null) {
+            this.ackAccumulator.ack(deliveryTag);
+            return;
+        }
         if (this.enterCommittingBlock()) {
             try {
                 this.channel.basicAck(deliveryTag, false);
@@ -516,7 +684,102 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         }
     }
 
+    /**
+     * Record a message received on the session channel, before it is processed: no coalesced acknowledgement covers
+     * it until it is acknowledged or rejected, so a message left unacknowledged is not acknowledged by accident.
+     */
+    void deliveryReceived(long deliveryTag) {
+        if (this.ackAccumulator != null) {
+            this.ackAccumulator.delivered(deliveryTag);
+        }
+    }
+
+    private void deliveryRejected(long deliveryTag) {
+        if (this.ackAccumulator != null) {
+            this.ackAccumulator.rejected(deliveryTag);
+        }
+    }
+
+    /**
+     * Send any coalesced acknowledgements still pending.
+     */
+    void flushPendingAcks() {
+        if (this.ackAccumulator != null) {
+            this.ackAccumulator.flush();
+        }
+    }
+
+    boolean willRequeueOnMessageListenerException() {
+        return this.requeueOnMessageListenerException;
+    }
+
+    boolean willRequeueOnNackException() {
+        return this.requeueOnNackException;
+    }
+
+    int getListenerConcurrency() {
+        return this.listenerConcurrency;
+    }
+
+    String getListenerOrderingProperty() {
+        return this.listenerOrderingProperty;
+    }
+
+    boolean willLazyMessageDecoding() {
+        return this.lazyMessageDecoding;
+    }
+
+    boolean willUseCompactMessageFormat() {
+        return this.useCompactMessageFormat;
+    }
+
+    MessageIdGenerator getMessageIdGenerator() {
+        return this.messageIdGenerator;
+    }
+
+    PayloadCompression getPayloadCompression() {
+        return this.payloadCompression;
+    }
+
+    int getLargeMessageChunkSize() {
+        return this.largeMessageChunkSize;
+    }
+
+    /**
+     * @return the buffer to encode messages sent in this session into
+     */
+    EncodeBuffer getEncodeBuffer() {
+        return this.encodeBuffer;
+    }
+
+    /**
+     * Publish a message on the session channel.
+     * <p>
+     * With publisher confirms, the listener is called when the broker confirms or rejects the message; otherwise it is
+     * called once the message is published.
+     * </p>
+     * @param listener - called when the send completes; may be <code>null</code>
+     */
+    void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body, Message message,
+                 CompletionListener listener) throws IOException, JMSException {
+        if (this.publisherConfirms != null) {
+            this.publisherConfirms.publish(message, listener,
+                () -> this.channel.basicPublish(exchange, routingKey, props, body));
+        } else {
+            this.channel.basicPublish(exchange, routingKey, props, body);
+            if (listener != null) listener.onCompletion(message);
+        }
+    }
+
+    /**
+     * @return the tracker of published messages, <code>null</code> if the session does not use publisher confirms
+     */
+    PublisherConfirms getPublisherConfirms() {
+        return this.publisherConfirms;
+    }
+
     void explicitNack(long deliveryTag) {
+        this.flushPendingAcks();
         if (this.enterCommittingBlock()) {
             try {
                 this.channel.basicNack(deliveryTag, false, requeueOnMessageListenerException);
@@ -528,9 +791,29 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                 this.leaveCommittingBlock();
             }
         }
+        this.deliveryRejected(deliveryTag);
+    }
+
+    /**
+     * Reject a message received without requeuing it: it is dead-lettered, if the queue has a dead letter exchange,
+     * or dropped.
+     */
+    void explicitReject(long deliveryTag) {
+        this.flushPendingAcks();
+        if (this.enterCommittingBlock()) {
+            try {
+                this.channel.basicNack(deliveryTag, false, false);
+            } catch (Exception x) {
+                this.logger.warn("Cannot reject message received (dTag={})", deliveryTag, x);
+            } finally {
+                this.leaveCommittingBlock();
+            }
+        }
+        this.deliveryRejected(deliveryTag);
     }
 
     void explicitNackOnNackException(long deliveryTag) {
+        this.flushPendingAcks();
         if (this.enterCommittingBlock()) {
             try {
                 this.channel.basicNack(deliveryTag, false, requeueOnNackException);
@@ -542,6 +825,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                 this.leaveCommittingBlock();
             }
         }
+        this.deliveryRejected(deliveryTag);
     }
 
     /**
@@ -561,6 +845,9 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                 // close consumers first (to prevent requeues being consumed)
                 closeAllConsumers();
 
+                // acknowledge what has been consumed
+                this.flushPendingAcks();
+
                 // rollback anything not committed already
                 if (this.getTransactedNoException()) {
                     this.rollback();
@@ -580,6 +867,9 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                     this.commit();
                 }
 
+                // wait for sends to complete
+                this.awaitPublisherConfirms();
+
                 this.closeRabbitChannels();
 
             } finally {
@@ -588,6 +878,16 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         }
     }
 
+    private void awaitPublisherConfirms() {
+        if (this.publisherConfirms == null) return;
+        try {
+            if (!this.publisherConfirms.awaitConfirms(this.connection.getTerminationTimeout()))
+                this.logger.warn("Session {} closed with {} messages not confirmed", this, this.publisherConfirms.unconfirmedCount());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void closeAllConsumers() {
         //close all consumers created by this session
         for (RMQMessageConsumer consumer : this.consumers) {
@@ -638,6 +938,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         if (getTransactedNoException()) {
             throw new javax.jms.IllegalStateException("Session is transacted.");
         } else {
+            this.flushPendingAcks();
             synchronized (this.unackedMessageTags) {
                 /* If we have messages to recover */
                 if (!this.unackedMessageTags.isEmpty()) {
@@ -647,6 +948,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                         logger.warn("basicRecover on channel({}) failed", this.channel, x);
                         throw new RMQJMSException(x);
                     }
+                    this.chunksRequeued();
                     this.unackedMessageTags.clear();
                 }
             }
@@ -664,20 +966,37 @@ public class RMQSession implements Session, QueueSession, TopicSession {
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The listener receives the messages loaded into this session by a {@link RMQConnectionConsumer}.
+     * </p>
      */
     @Override
     public void setMessageListener(MessageListener listener) throws JMSException {
-        // not implemented
-        throw new UnsupportedOperationException();
+        illegalStateExceptionIfClosed();
+        this.messageListener = listener;
+    }
+
+    /**
+     * Load a message to be passed to this session's {@link MessageListener} by {@link #run()}.
+     * @param delivery - the message loaded by a {@link RMQConnectionConsumer}
+     */
+    void loadMessage(RMQConnectionConsumer.Delivery delivery) {
+        this.loadedMessages.add(delivery);
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Delivers the messages loaded into this session by a {@link RMQConnectionConsumer} to its
+     * {@link MessageListener}, one at a time.
+     * </p>
      */
     @Override
     public void run() {
-        //this will not be implemented
-        throw new UnsupportedOperationException();
+        RMQConnectionConsumer.Delivery delivery;
+        while ((delivery = this.loadedMessages.poll()) != null) {
+            delivery.deliverTo(this, this.messageListener);
+        }
     }
 
     /**
@@ -774,14 +1093,14 @@ public class RMQSession implements Session, QueueSession, TopicSession {
             }
         }
         RMQMessageConsumer consumer = new RMQMessageConsumer(this, dest, consumerTag, getConnection().isStopped(),
-                jmsSelector, this.requeueOnMessageListenerException, this.receivingContextConsumer);
+                jmsSelector, this.requeueOnMessageListenerException, this.receivingContextConsumer, this.receivePrefetch);
         this.consumers.add(consumer);
         return consumer;
     }
 
     private void bindSelectorQueue(RMQDestination dest, String jmsSelector, String queueName, String selectionExchange)
             throws InvalidSelectorException, IOException {
-        SqlCompiler compiler = new SqlCompiler(new SqlEvaluator(new SqlParser(new SqlTokenStream(jmsSelector)), JMS_TYPE_IDENTS));
+        SqlCompiler compiler = SqlSelectorCache.sharedCache().get(jmsSelector, JMS_TYPE_IDENTS).compiler();
         if (compiler.compileOk()) {
             Map<String, Object> args = new HashMap<String, Object>(5);
             args.put(RJMS_COMPILED_SELECTOR_ARG, (Object) compiler.compile());
@@ -917,9 +1236,10 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         Map<String, Object> options = null; //new HashMap<String,Object>();
 
         if (dest.isQueue()) {
+            DeclarationRegistry.Key exchange = DeclarationRegistry.exchange(exchangeName, exchangeType, durable);
             if (dest.noNeedToDeclareExchange()) {
                 logger.warn("no need to declare built-in exchange for queue destination '{}'", dest);
-            } else {
+            } else if (!this.declarationRegistry.contains(exchange)) {
                 logger.trace("declare RabbitMQ exchange for queue destinations '{}'", dest);
                 try {
                     this.channel.exchangeDeclare(exchangeName, exchangeType, durable,
@@ -929,6 +1249,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                 } catch (Exception x) {
                     throw new RMQJMSException(x);
                 }
+                this.declarationRegistry.add(exchange);
             }
         }
 
@@ -938,6 +1259,18 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         boolean autoDelete = cleanUpServerNamedQueuesForNonDurableTopics ?
                 !durable && queueNameOverride != null && !dest.isQueue() : false;
 
+        /* only the destination's own queue is recorded, subscription queues are declared once by their consumer */
+        DeclarationRegistry.Key queue = queueNameOverride == null && !autoDelete
+                ? DeclarationRegistry.queue(queueName, durable, exclusive, autoDelete) : null;
+        DeclarationRegistry.Key binding = queue != null && bind
+                ? DeclarationRegistry.binding(queueName, exchangeName, queueName) : null;
+        if (queue != null && this.declarationRegistry.contains(queue)
+            && (binding == null || this.declarationRegistry.contains(binding))) {
+            dest.setDeclared(true);
+            dest.addDeletionListener(this.declarationRegistry);
+            return;
+        }
+
         try { /* Declare the queue to RabbitMQ -- this creates it if it doesn't already exist */
             this.logger.debug("declare RabbitMQ queue name({}), durable({}), exclusive({}), auto-delete({}), properties({})",
                     queueName, durable, exclusive, false, options);
@@ -967,7 +1300,12 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                 throw new RMQJMSException(x);
             }
         }
+        if (queue != null) {
+            this.declarationRegistry.add(queue);
+            if (binding != null) this.declarationRegistry.add(binding);
+        }
         dest.setDeclared(true);
+        dest.addDeletionListener(this.declarationRegistry);
     }
 
 
@@ -989,9 +1327,10 @@ public class RMQSession implements Session, QueueSession, TopicSession {
      * @throws JMSException
      */
     private void declareTopic(RMQDestination dest) throws JMSException {
+        DeclarationRegistry.Key exchange = DeclarationRegistry.exchange(dest.getAmqpExchangeName(), dest.amqpExchangeType(), !dest.isTemporary());
         if (dest.noNeedToDeclareExchange()) {
             logger.warn("no need to declare built-in exchange for topic destination '{}'", dest);
-        } else {
+        } else if (!this.declarationRegistry.contains(exchange)) {
             logger.trace("declare RabbitMQ exchange for topic destination '{}'", dest);
             try {
                 this.channel.exchangeDeclare(/* the name of the exchange */
@@ -1010,6 +1349,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
             } catch (IOException x) {
                 throw new RMQJMSException(x);
             }
+            this.declarationRegistry.add(exchange);
         }
         dest.setDeclared(true);
     }
@@ -1082,7 +1422,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     }
 
     /**
-     * Get a (new) channel for queue browsing.
+     * Get a channel for queue browsing from the connection's pool.
      *
      * @return channel for browsing queues
      * @throws JMSException if channel not available
@@ -1090,7 +1430,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     Channel getBrowsingChannel() throws JMSException {
         try {
             synchronized (this.bcLock) {
-                Channel chan = this.getConnection().createRabbitChannel(false); // not transactional
+                Channel chan = this.getConnection().getBrowsingChannelPool().borrow();
                 this.browsingChannels.add(chan);
                 return chan;
             }
@@ -1117,14 +1457,15 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     }
 
     /**
-     * Close a specific browsing channel.
+     * Return a specific browsing channel to the connection's pool, which requeues the messages browsed.
+     * @param chan - the browsing channel
+     * @param consumerTag - the tag of the browsing consumer on the channel, if any
      */
-    void closeBrowsingChannel(Channel chan) {
+    void closeBrowsingChannel(Channel chan, String consumerTag) {
         try {
             synchronized (this.bcLock) {
                 if (this.browsingChannels.remove(chan)) {
-                    if (chan.isOpen())
-                        chan.close();
+                    this.getConnection().getBrowsingChannelPool().release(chan, consumerTag);
                 }
             }
         } catch (Exception e) {
@@ -1162,6 +1503,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
             if (name != null && this.subscriptions.remove(name) != null) {
                 // remove the queue
                 this.channel.queueDelete(name);
+                this.declarationRegistry.forgetQueue(name);
             } else {
                 logger.warn("Cannot unsubscribe subscription named '{}'", name);
             }
@@ -1324,7 +1666,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
 
         boolean individualAck = this.getIndividualAck();
         boolean groupAck = true;  // This assumption is new in RJMS 1.2.0 and is consistent with other implementations. It allows a form of group acknowledge.
-        if (!isAutoAck() && !this.unackedMessageTags.isEmpty()) {
+        if (!isAutoAck()) {
             /**
              * Per JMS specification of {@link Message#acknowledge()}, <i>if we ack the last message in a group, we will ack all the ones prior received</i>.
              * <p>But, JMS spec 11.2.21 says:</p>
@@ -1336,6 +1678,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
              * </p>
              */
             synchronized (this.unackedMessageTags) {
+                if (this.unackedMessageTags.isEmpty()) return;
                 try {
                     if (individualAck) {
                         long messageTag = message.getRabbitDeliveryTag();
@@ -1343,16 +1686,25 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                         /* ACK a single message */
                         this.getChannel().basicAck(messageTag, false); // we ack the single message with this tag
                         this.unackedMessageTags.remove(messageTag);
+                        long[] chunkTags = message.getChunkDeliveryTags();
+                        if (chunkTags != null) { // and the other chunks of a large message
+                            for (long chunkTag : chunkTags) {
+                                if (this.unackedMessageTags.contains(chunkTag)) {
+                                    this.getChannel().basicAck(chunkTag, false);
+                                    this.unackedMessageTags.remove(chunkTag);
+                                }
+                            }
+                        }
                     } else if (groupAck) {
                         long messageTag = message.getRabbitDeliveryTag();
-                        /** The tags that precede the given one, and the given one, if unacknowledged */
-                        SortedSet<Long> previousTags = this.unackedMessageTags.headSet(messageTag + 1);
-                        if (previousTags.isEmpty()) return; // no message to acknowledge
+                        /** The latest unacknowledged tag that precedes the given one, or the given one */
+                        long previousTag = this.unackedMessageTags.floor(messageTag);
+                        if (previousTag < 0) return; // no message to acknowledge
                         /* ack multiple message up until the existing tag */
-                        this.getChannel().basicAck(previousTags.last(), // we ack the latest one (which might be this one, but might not be)
+                        this.getChannel().basicAck(previousTag, // we ack the latest one (which might be this one, but might not be)
                                 true);               // and everything prior to that
                         // now remove all the tags <= messageTag
-                        previousTags.clear();
+                        this.unackedMessageTags.removeUpTo(messageTag);
                     } else {
                         // this block is no longer possible (groupAck == true) after RJMS 1.2.0
                         this.getChannel().basicAck(this.unackedMessageTags.last(), // we ack the highest tag
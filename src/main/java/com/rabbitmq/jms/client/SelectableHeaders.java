@@ -0,0 +1,63 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.rabbitmq.client.LongString;
+
+/**
+ * The selectable headers of a received JMS message, read from the AMQP headers it was published with.
+ * <p>
+ * A JMS message is published with {@link RMQMessage#toHeaders()} as its AMQP headers, so a selector can be evaluated
+ * against these without decoding the message. This is a read-only view of the AMQP headers in which strings (which
+ * arrive as {@link LongString}s) appear as {@link String}s; only {@link #get(Object)} is expected to be used often.
+ * </p>
+ */
+final class SelectableHeaders extends AbstractMap<String, Object> {
+
+    private final Map<String, Object> amqpHeaders;
+
+    private SelectableHeaders(Map<String, Object> amqpHeaders) {
+        this.amqpHeaders = amqpHeaders;
+    }
+
+    /**
+     * @param amqpHeaders - the AMQP headers of a received message
+     * @return the selectable headers, or <code>null</code> if the message was not published with them
+     */
+    static Map<String, Object> of(Map<String, Object> amqpHeaders) {
+        if (amqpHeaders == null || !amqpHeaders.containsKey("JMSDeliveryMode")) return null;
+        return new SelectableHeaders(amqpHeaders);
+    }
+
+    private static Object selectable(Object value) {
+        return value instanceof LongString ? value.toString() : value;
+    }
+
+    @Override
+    public Object get(Object key) {
+        return selectable(this.amqpHeaders.get(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.amqpHeaders.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return this.amqpHeaders.size();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Map<String, Object> copy = new HashMap<String, Object>(this.amqpHeaders.size() * 2);
+        for (Entry<String, Object> e : this.amqpHeaders.entrySet()) {
+            copy.put(e.getKey(), selectable(e.getValue()));
+        }
+        return copy.entrySet();
+    }
+}
@@ -0,0 +1,60 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link MessageIdGenerator} combining a random prefix with a counter, in the canonical form of a UUID.
+ * <p>
+ * The random bits are drawn once, so generating an ID takes an atomic increment and the formatting of 64 bits into
+ * a single <code>char</code> array.
+ * </p>
+ *
+ * @see MessageIdGenerator#sequential()
+ */
+final class SequentialMessageIdGenerator implements MessageIdGenerator {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final int LENGTH = 36;
+    /** Length of the prefix: the first 64 bits and their three dashes */
+    private static final int PREFIX_LENGTH = 19;
+
+    private final char[] prefix = new char[PREFIX_LENGTH];
+    private final AtomicLong counter;
+
+    SequentialMessageIdGenerator(Random random) {
+        long msb = random.nextLong();
+        int pos = hex(msb >>> 32, 8, this.prefix, 0);
+        this.prefix[pos++] = '-';
+        pos = hex(msb >>> 16, 4, this.prefix, pos);
+        this.prefix[pos++] = '-';
+        pos = hex(msb, 4, this.prefix, pos);
+        this.prefix[pos] = '-';
+        this.counter = new AtomicLong(random.nextLong());
+    }
+
+    @Override
+    public String generate() {
+        long lsb = this.counter.getAndIncrement();
+        char[] id = new char[LENGTH];
+        System.arraycopy(this.prefix, 0, id, 0, PREFIX_LENGTH);
+        int pos = hex(lsb >>> 48, 4, id, PREFIX_LENGTH);
+        id[pos++] = '-';
+        hex(lsb, 12, id, pos);
+        return new String(id);
+    }
+
+    /**
+     * Writes the low <code>digits</code> hexadecimal digits of <code>value</code>.
+     * @return the position after the digits
+     */
+    private static int hex(long value, int digits, char[] dest, int pos) {
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            dest[i] = HEX_DIGITS[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        return pos + digits;
+    }
+}
@@ -76,6 +76,112 @@ public class SessionParams {
      */
     private ReceivingContextConsumer receivingContextConsumer;
 
+    /**
+     * Number of messages to prefetch for synchronous receive.
+     * 0 (the default) means messages are polled one at a time.
+     *
+     * @since 2.0.0
+     */
+    private int receivePrefetch = 0;
+
+    /**
+     * Number of acknowledgements to coalesce into one multiple acknowledgement
+     * in {@link javax.jms.Session#AUTO_ACKNOWLEDGE} and {@link javax.jms.Session#DUPS_OK_ACKNOWLEDGE} sessions.
+     * 0 (the default) means no coalescing for AUTO_ACKNOWLEDGE and a default batch size for DUPS_OK_ACKNOWLEDGE.
+     *
+     * @since 2.0.0
+     */
+    private int ackBatchSize = 0;
+
+    /**
+     * Maximum time in milliseconds a coalesced acknowledgement can be delayed.
+     *
+     * @since 2.0.0
+     */
+    private int ackBatchMaxDelayMs = RMQSession.DEFAULT_ACK_BATCH_MAX_DELAY_MS;
+
+    /**
+     * Whether {@link javax.jms.MessageListener#onMessage(Message)} is called directly on the
+     * delivering thread, with a connection-wide watchdog enforcing the timeout.
+     * Default is false.
+     *
+     * @since 2.0.0
+     */
+    private boolean directListenerDispatch = false;
+
+    /**
+     * Number of threads each consumer calls its {@link javax.jms.MessageListener} on.
+     * 0 or 1 (the default) means messages are passed to the listener one at a time.
+     *
+     * @since 2.0.0
+     */
+    private int listenerConcurrency = 0;
+
+    /**
+     * Message property whose values are processed in order when listeners are called concurrently.
+     *
+     * @since 2.0.0
+     */
+    private String listenerOrderingProperty = RMQSession.DEFAULT_LISTENER_ORDERING_PROPERTY;
+
+    /**
+     * Whether received messages are decoded on first access rather than on receipt.
+     * Default is false.
+     *
+     * @since 2.0.0
+     */
+    private boolean lazyMessageDecoding = false;
+
+    /**
+     * Whether the session publishes with publisher confirms, if it is not transacted.
+     * Default is false.
+     *
+     * @since 2.0.0
+     */
+    private boolean usePublisherConfirms = false;
+
+    /**
+     * Maximum number of unconfirmed messages, 0 for no limit.
+     *
+     * @since 2.0.0
+     */
+    private int maxUnconfirmedMessages = 0;
+
+    /**
+     * Whether messages are sent in the compact binary format.
+     *
+     * @since 2.0.0
+     */
+    private boolean useCompactMessageFormat = false;
+
+    /**
+     * Generates the IDs of the messages sent.
+     *
+     * @since 2.0.0
+     */
+    private MessageIdGenerator messageIdGenerator;
+
+    /**
+     * Compresses and decompresses payloads; shared by the sessions of a connection.
+     *
+     * @since 2.0.0
+     */
+    private PayloadCompression payloadCompression;
+
+    /**
+     * Declarations made by the sessions of the connection; shared by the sessions of a connection.
+     *
+     * @since 2.0.0
+     */
+    private DeclarationRegistry declarationRegistry;
+
+    /**
+     * Payloads of messages sent larger than this are split into chunks of this size; 0 for none.
+     *
+     * @since 2.0.0
+     */
+    private int largeMessageChunkSize = 0;
+
     public RMQConnection getConnection() {
         return connection;
     }
@@ -183,4 +289,130 @@ public class SessionParams {
         this.requeueOnNackException = requeueOnNackException;
         return this;
     }
+
+    public int getReceivePrefetch() {
+        return receivePrefetch;
+    }
+
+    public SessionParams setReceivePrefetch(int receivePrefetch) {
+        this.receivePrefetch = receivePrefetch;
+        return this;
+    }
+
+    public int getAckBatchSize() {
+        return ackBatchSize;
+    }
+
+    public SessionParams setAckBatchSize(int ackBatchSize) {
+        this.ackBatchSize = ackBatchSize;
+        return this;
+    }
+
+    public int getAckBatchMaxDelayMs() {
+        return ackBatchMaxDelayMs;
+    }
+
+    public SessionParams setAckBatchMaxDelayMs(int ackBatchMaxDelayMs) {
+        this.ackBatchMaxDelayMs = ackBatchMaxDelayMs;
+        return this;
+    }
+
+    public boolean willDirectListenerDispatch() {
+        return directListenerDispatch;
+    }
+
+    public SessionParams setDirectListenerDispatch(boolean directListenerDispatch) {
+        this.directListenerDispatch = directListenerDispatch;
+        return this;
+    }
+
+    public int getListenerConcurrency() {
+        return listenerConcurrency;
+    }
+
+    public SessionParams setListenerConcurrency(int listenerConcurrency) {
+        this.listenerConcurrency = listenerConcurrency;
+        return this;
+    }
+
+    public String getListenerOrderingProperty() {
+        return listenerOrderingProperty;
+    }
+
+    public SessionParams setListenerOrderingProperty(String listenerOrderingProperty) {
+        this.listenerOrderingProperty = listenerOrderingProperty;
+        return this;
+    }
+
+    public boolean willLazyMessageDecoding() {
+        return lazyMessageDecoding;
+    }
+
+    public SessionParams setLazyMessageDecoding(boolean lazyMessageDecoding) {
+        this.lazyMessageDecoding = lazyMessageDecoding;
+        return this;
+    }
+
+    public boolean willUsePublisherConfirms() {
+        return usePublisherConfirms;
+    }
+
+    public SessionParams setUsePublisherConfirms(boolean usePublisherConfirms) {
+        this.usePublisherConfirms = usePublisherConfirms;
+        return this;
+    }
+
+    public int getMaxUnconfirmedMessages() {
+        return maxUnconfirmedMessages;
+    }
+
+    public SessionParams setMaxUnconfirmedMessages(int maxUnconfirmedMessages) {
+        this.maxUnconfirmedMessages = maxUnconfirmedMessages;
+        return this;
+    }
+
+    public boolean willUseCompactMessageFormat() {
+        return useCompactMessageFormat;
+    }
+
+    public SessionParams setUseCompactMessageFormat(boolean useCompactMessageFormat) {
+        this.useCompactMessageFormat = useCompactMessageFormat;
+        return this;
+    }
+
+    public MessageIdGenerator getMessageIdGenerator() {
+        return messageIdGenerator;
+    }
+
+    public SessionParams setMessageIdGenerator(MessageIdGenerator messageIdGenerator) {
+        this.messageIdGenerator = messageIdGenerator;
+        return this;
+    }
+
+    public int getLargeMessageChunkSize() {
+        return largeMessageChunkSize;
+    }
+
+    public SessionParams setLargeMessageChunkSize(int largeMessageChunkSize) {
+        this.largeMessageChunkSize = largeMessageChunkSize;
+        return this;
+    }
+
+    PayloadCompression getPayloadCompression() {
+        return payloadCompression;
+    }
+
+    SessionParams setPayloadCompression(PayloadCompression payloadCompression) {
+        this.payloadCompression = payloadCompression;
+        return this;
+    }
+
+    DeclarationRegistry getDeclarationRegistry() {
+        return declarationRegistry;
+    }
+
+    SessionParams setDeclarationRegistry(DeclarationRegistry declarationRegistry) {
+        this.declarationRegistry = declarationRegistry;
+        return this;
+    }
 }
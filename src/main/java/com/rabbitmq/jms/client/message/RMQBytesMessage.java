@@ -5,6 +5,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.Serializable;
@@ -39,6 +40,14 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
     /** The stream we write structured and unstructured data to */
     private transient RMQByteArrayOutputStream bout;
 
+    /**
+     * The body of a large message received in chunks, until it is first read; <code>null</code> for other messages.
+     * @see #getBodyInputStream()
+     */
+    private volatile transient InputStream largeBody;
+    /** The length of {@link #largeBody} */
+    private volatile transient long largeBodyLength;
+
     /** Instantiates a new, writable RMQBytesMessage */
     public RMQBytesMessage() {
         this(false);
@@ -61,6 +70,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public boolean readBoolean() throws JMSException {
+        this.loadBytes();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (this.pos + Bits.NUM_BYTES_IN_BOOLEAN > this.buf.length)
@@ -73,6 +83,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public byte readByte() throws JMSException {
+        this.loadBytes();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (this.pos + 1 > this.buf.length)
@@ -85,6 +96,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public int readUnsignedByte() throws JMSException {
+        this.loadBytes();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (this.pos + 1 > this.buf.length)
@@ -97,6 +109,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public short readShort() throws JMSException {
+        this.loadBytes();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (this.pos + Bits.NUM_BYTES_IN_SHORT > this.buf.length)
@@ -111,6 +124,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public int readUnsignedShort() throws JMSException {
+        this.loadBytes();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (this.pos + Bits.NUM_BYTES_IN_SHORT > this.buf.length)
@@ -125,6 +139,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public char readChar() throws JMSException {
+        this.loadBytes();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (this.pos + Bits.NUM_BYTES_IN_CHAR > this.buf.length)
@@ -139,6 +154,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public int readInt() throws JMSException {
+        this.loadBytes();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (this.pos + Bits.NUM_BYTES_IN_INT > this.buf.length)
@@ -153,6 +169,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public long readLong() throws JMSException {
+        this.loadBytes();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (this.pos + Bits.NUM_BYTES_IN_LONG > this.buf.length)
@@ -167,6 +184,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public float readFloat() throws JMSException {
+        this.loadBytes();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (this.pos + Bits.NUM_BYTES_IN_FLOAT > this.buf.length)
@@ -181,6 +199,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public double readDouble() throws JMSException {
+        this.loadBytes();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (this.pos + Bits.NUM_BYTES_IN_DOUBLE > this.buf.length)
@@ -195,6 +214,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public String readUTF() throws JMSException {
+        this.loadBytes();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         int posOfUtfItem = this.pos;
@@ -230,6 +250,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public int readBytes(byte[] value, int length) throws JMSException {
+        this.loadBytes();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (length<0 || length>value.length) {
@@ -378,6 +399,8 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public void reset() throws JMSException {
+        this.loadBody();
+        if (this.largeBody != null) return; // not read yet
         if (this.reading) {
             //if we already are reading, all we want to do is reset to the
             //beginning of the stream
@@ -399,38 +422,76 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public long getBodyLength() throws JMSException {
+        this.loadBody();
+        if (this.largeBody != null) return this.largeBodyLength;
+        this.loadBytes();
         return this.reading ? this.buf.length : this.bout.size();
     }
 
+    /**
+     * Returns a stream of the unread part of the body of a received message.
+     * <p>
+     * The body of a large message received in chunks is read from the chunks as the stream is read, so it is not held
+     * in memory; it must be obtained before any other read of the body, which then finds the body empty, and should
+     * be closed to release the chunks. The body of other messages is already in memory, and the stream reads it without
+     * copying, from the current position; reading the stream does not move the position of the other read methods.
+     * </p>
+     *
+     * @return a stream of the body
+     * @throws JMSException if the message cannot be decoded
+     * @throws MessageNotReadableException if the message is in write-only mode
+     * @since 2.0.0
+     */
+    public InputStream getBodyInputStream() throws JMSException {
+        this.loadBody();
+        if (!this.reading)
+            throw new MessageNotReadableException(NOT_READABLE);
+        synchronized (this) {
+            InputStream body = this.largeBody;
+            if (body != null) {
+                this.largeBody = null; // the body is consumed by the stream
+                return body;
+            }
+        }
+        return new ByteArrayInputStream(this.buf, this.pos, this.buf.length - this.pos);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void clearBodyInternal() throws JMSException {
+        this.closeLargeBody();
         this.bout = new RMQByteArrayOutputStream(DEFAULT_MESSAGE_BODY_SIZE);
         this.pos = 0;
         this.buf = null;
         this.reading = false;
     }
 
-    private byte[] getByteArray() {
-        if (reading) return this.buf;
-        else return this.bout.toByteArray();
-    }
-
     /**
      * {@inheritDoc}
      */
     @Override
     protected void writeBody(ObjectOutput oOut, ByteArrayOutputStream bout) throws IOException {
-        byte[] buf = getByteArray();
-        bout.write(buf);
+        writeByteArray(bout);
     }
 
     @Override
     protected void writeAmqpBody(ByteArrayOutputStream baos) throws IOException {
-        byte[] buf = getByteArray();
-        baos.write(buf);
+        writeByteArray(baos);
+    }
+
+    /** Writes the body without copying it first */
+    private void writeByteArray(ByteArrayOutputStream out) throws IOException {
+        if (this.largeBody != null) {
+            try {
+                this.loadBytes();
+            } catch (JMSException x) {
+                throw new IOException(x);
+            }
+        }
+        if (reading) out.write(this.buf, 0, this.buf.length);
+        else this.bout.writeTo(out);
     }
 
     /**
@@ -446,6 +507,50 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
         this.pos = 0;
     }
 
+    @Override
+    protected void readLargeBody(InputStream body, long length) {
+        this.largeBody = body;
+        this.largeBodyLength = length;
+        this.buf = new byte[0]; // until the body is read
+        this.reading = true;
+        this.pos = 0;
+    }
+
+    /**
+     * Decodes the body, and reads the body of a large message into memory, if not done yet.
+     * @throws JMSException if the body cannot be decoded or read
+     */
+    private void loadBytes() throws JMSException {
+        this.loadBody();
+        if (this.largeBody == null) return;
+        synchronized (this) {
+            InputStream body = this.largeBody;
+            if (body == null) return;
+            if (this.largeBodyLength > Integer.MAX_VALUE - 8)
+                throw new RMQJMSException("Body of " + this.largeBodyLength + " bytes too large to read into memory, use getBodyInputStream()", null);
+            try {
+                byte[] bytes = new byte[(int) this.largeBodyLength];
+                new DataInputStream(body).readFully(bytes);
+                this.buf = bytes;
+            } catch (IOException x) {
+                throw new RMQJMSException(x);
+            } finally {
+                this.closeLargeBody();
+            }
+        }
+    }
+
+    private void closeLargeBody() {
+        InputStream body = this.largeBody;
+        this.largeBody = null;
+        if (body == null) return;
+        try {
+            body.close();
+        } catch (IOException x) {
+            logger.warn("Cannot close the body of a large message", x);
+        }
+    }
+
     @Override
     protected void readAmqpBody(byte[] barr) {
         this.buf = barr;
@@ -30,7 +30,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public boolean getBoolean(String name) throws JMSException {
-        Object o = this.data.get(name);
+        Object o = this.getItem(name);
         if (o == null)
             return false;
         else if (o instanceof Boolean)
@@ -43,7 +43,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public byte getByte(String name) throws JMSException {
-        Object o = this.data.get(name);
+        Object o = this.getItem(name);
         if (o == null)
             throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "byte"));
         else if (o instanceof Byte)
@@ -56,7 +56,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public short getShort(String name) throws JMSException {
-        Object o = this.data.get(name);
+        Object o = this.getItem(name);
         if (o == null)
             throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "short"));
         else if (o instanceof Byte)
@@ -71,7 +71,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public char getChar(String name) throws JMSException {
-        Object o = this.data.get(name);
+        Object o = this.getItem(name);
         if (o == null)
             throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "char"));
         else if (o instanceof Character)
@@ -82,7 +82,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public int getInt(String name) throws JMSException {
-        Object o = this.data.get(name);
+        Object o = this.getItem(name);
         if (o == null)
             throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "int"));
         else if (o instanceof Byte)
@@ -99,7 +99,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public long getLong(String name) throws JMSException {
-        Object o = this.data.get(name);
+        Object o = this.getItem(name);
         if (o == null)
             throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "long"));
         else if (o instanceof Byte)
@@ -118,7 +118,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public float getFloat(String name) throws JMSException {
-        Object o = this.data.get(name);
+        Object o = this.getItem(name);
         if (o == null)
             throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "float"));
         else if (o instanceof Float) {
@@ -131,7 +131,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public double getDouble(String name) throws JMSException {
-        Object o = this.data.get(name);
+        Object o = this.getItem(name);
         if (o == null)
             throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "double"));
         else if (o instanceof Float)
@@ -146,7 +146,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public String getString(String name) throws JMSException {
-        Object o = this.data.get(name);
+        Object o = this.getItem(name);
         if (o == null)
             return null;
         else if (o instanceof String)
@@ -159,7 +159,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public byte[] getBytes(String name) throws JMSException {
-        Object o = this.data.get(name);
+        Object o = this.getItem(name);
         if (o == null) {
             return null;
         } else if (o instanceof byte[]) {
@@ -173,7 +173,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public Object getObject(String name) throws JMSException {
-        Object o = this.data.get(name);
+        Object o = this.getItem(name);
         if (o == null) {
             return null;
         } else if (o instanceof byte[]) {
@@ -185,6 +185,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public Enumeration<String> getMapNames() throws JMSException {
+        this.loadBody();
         return new IteratorEnum<String>(this.data.keySet().iterator());
     }
 
@@ -286,9 +287,15 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
 
     @Override
     public boolean itemExists(String name) throws JMSException {
+        this.loadBody();
         return this.data.containsKey(name);
     }
 
+    private Object getItem(String name) throws JMSException {
+        this.loadBody();
+        return this.data.get(name);
+    }
+
     @Override
     public void clearBodyInternal() throws JMSException {
         this.data.clear();
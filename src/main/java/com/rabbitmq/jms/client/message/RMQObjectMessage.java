@@ -65,6 +65,7 @@ public class RMQObjectMessage extends RMQMessage implements ObjectMessage {
     }
 
     public Serializable getObject(List<String> trustedPackages) throws JMSException {
+        this.loadBody();
         if (buf == null) {
             return null;
         } else {
@@ -70,6 +70,7 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
     }
 
     private Object readPrimitiveType(Class<?> type) throws JMSException {
+        this.loadBody();
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (this.readbuf!=null) {
@@ -439,6 +440,7 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void reset() throws JMSException {
+        this.loadBody();
         this.readbuf = null;
 
         if (this.reading) {
@@ -36,6 +36,7 @@ public class RMQTextMessage extends RMQMessage implements TextMessage {
      */
     @Override
     public String getText() throws JMSException {
+        this.loadBody();
         return this.text;
     }
 
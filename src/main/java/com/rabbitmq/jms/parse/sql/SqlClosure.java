@@ -0,0 +1,652 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.parse.sql;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled SQL (selector) expression: an immutable tree of closures built once from a type-checked
+ * {@link SqlParseTree} by {@link #compile(SqlParseTree)}.
+ * <p>
+ * A closure holds no evaluation state, so one instance can evaluate expressions on many threads at once.
+ * Logical operators short-circuit and work on the three-valued <i>truth</i> of their operands
+ * ({@link #TRUE}, {@link #FALSE} or {@link #UNKNOWN}) without boxing; comparisons and arithmetic work
+ * on primitive values, and only the results of arithmetic operators are boxed.
+ * </p>
+ * <p>
+ * Compilation also optimises the expression: subexpressions without identifiers are evaluated once
+ * (constant folding), <code>LIKE</code> patterns given as literals are translated once, and to plain
+ * string comparisons where the pattern allows, and <code>IN</code> lists are hashed.
+ * </p>
+ * <p>
+ * As in the JMS specification, the <code>UNKNOWN</code> value is represented by <code><b>null</b></code>.
+ * </p>
+ */
+abstract class SqlClosure {
+
+    static final int TRUE = 1;
+    static final int FALSE = 0;
+    static final int UNKNOWN = -1;
+
+    /**
+     * @param env - the values of the identifiers
+     * @return the value of the expression in <code>env</code>, <code>null</code> if unknown
+     */
+    abstract Object value(Map<String, Object> env);
+
+    /**
+     * @param env - the values of the identifiers
+     * @return the truth of the expression in <code>env</code>: {@link #TRUE}, {@link #FALSE} or {@link #UNKNOWN}
+     */
+    int truth(Map<String, Object> env) {
+        return truthOf(this.value(env));
+    }
+
+    /**
+     * Compile a type-checked parse tree.
+     * @param tree - parse tree with expression types set
+     * @return the closure evaluating the tree
+     */
+    static SqlClosure compile(SqlParseTree tree) {
+        SqlTreeNode node = tree.getNode();
+        SqlParseTree[] children = tree.getChildren();
+        switch (node.treeType()) {
+        case CONJUNCTION:   return fold(and(compile(children[0]), compile(children[1])));
+        case DISJUNCTION:   return fold(or(compile(children[0]), compile(children[1])));
+
+        case LEAF:          return leaf(node.value());
+
+        case LIST:          return new Constant(node.value().getList());
+
+        // not folded: LIKE looks into literal patterns
+        case PATTERN1:      return new LikePattern(compile(children[0]), null);
+        case PATTERN2:      return new LikePattern(compile(children[0]), compile(children[1]));
+
+        case POSTFIXUNARYOP:
+        case PREFIXUNARYOP:
+        case TERNARYOP:
+        case BINARYOP:      return fold(operation(node.value().type(), compileAll(children)));
+
+        default:            return Constant.NULL;
+        }
+    }
+
+    /**
+     * @return a constant with the value of the closure if it does not depend on identifiers, else the closure itself
+     */
+    private static SqlClosure fold(SqlClosure closure) {
+        return closure.isConstant() ? new Constant(closure.value(null)) : closure;
+    }
+
+    /**
+     * @return <code>true</code> if the value of this closure does not depend on the environment
+     */
+    boolean isConstant() {
+        return false;
+    }
+
+    private static boolean allConstant(SqlClosure... closures) {
+        for (SqlClosure closure : closures) if (!closure.isConstant()) return false;
+        return true;
+    }
+
+    private static SqlClosure and(SqlClosure left, SqlClosure right) {
+        if (left.isConstant() && left.truth(null) == FALSE) return left;
+        if (right.isConstant() && right.truth(null) == FALSE) return right;
+        return new And(left, right);
+    }
+
+    private static SqlClosure or(SqlClosure left, SqlClosure right) {
+        if (left.isConstant() && left.truth(null) == TRUE) return left;
+        if (right.isConstant() && right.truth(null) == TRUE) return right;
+        return new Or(left, right);
+    }
+
+    private static SqlClosure like(boolean negated, SqlClosure operand, SqlClosure pattern) {
+        if (pattern instanceof LikePattern && ((LikePattern) pattern).isLiteral()) {
+            LikePattern p = (LikePattern) pattern;
+            Object escape = p.escape == null ? null : p.escape.value(null);
+            return new LiteralLike(negated, operand, (String) p.pattern.value(null), escapeChar(escape));
+        }
+        return new Like(negated, operand, pattern);
+    }
+
+    private static SqlClosure in(boolean negated, SqlClosure operand, SqlClosure list) {
+        Object values = list.isConstant() ? list.value(null) : null;
+        if (!(values instanceof List)) return Constant.NULL; // lists are always literals
+        return new In(negated, operand, new HashSet<Object>((List<?>) values));
+    }
+
+    private static SqlClosure[] compileAll(SqlParseTree[] trees) {
+        SqlClosure[] closures = new SqlClosure[trees.length];
+        for (int i = 0; i < trees.length; ++i) closures[i] = compile(trees[i]);
+        return closures;
+    }
+
+    private static SqlClosure leaf(SqlToken value) {
+        switch (value.type()) {
+        case TRUE:   return new Constant(Boolean.TRUE);
+        case FALSE:  return new Constant(Boolean.FALSE);
+        case FLOAT:  return new Constant(value.getFloat());
+        case HEX:    return new Constant(value.getHex());
+        case INT:    return new Constant(value.getLong());
+        case LIST:   return new Constant(value.getList());
+        case IDENT:  return new Identifier(value.getIdent());
+        case STRING: return new Constant(value.getString());
+        default:     return Constant.NULL;
+        }
+    }
+
+    private static SqlClosure operation(SqlTokenType op, SqlClosure[] cs) {
+        switch (op) {
+        case NOT_BETWEEN:   return new Between(true, cs[0], cs[1], cs[2]);
+        case BETWEEN:       return new Between(false, cs[0], cs[1], cs[2]);
+
+        case CMP_EQ:
+        case CMP_NEQ:
+        case CMP_GT:
+        case CMP_LTEQ:
+        case CMP_LT:
+        case CMP_GTEQ:      return new Comparison(op, cs[0], cs[1]);
+
+        case IN:            return in(false, cs[0], cs[1]);
+        case NOT_IN:        return in(true, cs[0], cs[1]);
+
+        case LIKE:          return like(false, cs[0], cs[1]);
+        case NOT_LIKE:      return like(true, cs[0], cs[1]);
+
+        case NULL:          return new IsNull(false, cs[0]);
+        case NOT_NULL:      return new IsNull(true, cs[0]);
+
+        // OP_MINUS and OP_PLUS may be unary prefix or binary ops:
+        case OP_MINUS:      return (cs.length > 1 ? new Arithmetic(op, cs[0], cs[1]) : new Arithmetic(op, new Constant(0L), cs[0]));
+        case OP_PLUS:       return (cs.length > 1 ? new Arithmetic(op, cs[0], cs[1]) : new Arithmetic(op, cs[0], new Constant(0L)));
+        case OP_MULT:
+        case OP_DIV:        return new Arithmetic(op, cs[0], cs[1]);
+
+        case NOT:           return new Not(cs[0]);
+
+        default:            return Constant.NULL;
+        }
+    }
+
+    /**
+     * Translate a <code>LIKE</code> pattern to a regular expression: <code>_</code> matches any character,
+     * <code>%</code> any sequence of characters, and the character following the escape character matches itself.
+     * @param pattern - <code>LIKE</code> pattern
+     * @param escape - escape character, or <code>null</code> for none
+     * @return compiled regular expression
+     */
+    static Pattern likePattern(String pattern, Character escape) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        boolean escaped = false;
+        for (int i = 0; i < pattern.length(); ++i) {
+            char ch = pattern.charAt(i);
+            if (escaped) {
+                literal.append(ch);
+                escaped = false;
+            } else if (escape != null && ch == escape) {
+                escaped = true;
+            } else if (ch == '_' || ch == '%') {
+                appendLiteral(regex, literal);
+                regex.append(ch == '_' ? "." : ".*");
+            } else {
+                literal.append(ch);
+            }
+        }
+        appendLiteral(regex, literal);
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static Character escapeChar(Object escape) {
+        return (escape instanceof String && ((String) escape).length() > 0) ? ((String) escape).charAt(0) : null;
+    }
+
+    private static void appendLiteral(StringBuilder regex, StringBuilder literal) {
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    static int truthOf(Object o) {
+        return (o instanceof Boolean) ? ((Boolean) o ? TRUE : FALSE) : UNKNOWN;
+    }
+
+    static int truthOf(boolean b) {
+        return b ? TRUE : FALSE;
+    }
+
+    static Boolean booleanOf(int truth) {
+        return truth == UNKNOWN ? null : Boolean.valueOf(truth == TRUE);
+    }
+
+    static int not(int truth) {
+        return truth == UNKNOWN ? UNKNOWN : TRUE - truth;
+    }
+
+    static boolean isLong(Object o) {
+        return o instanceof Long || o instanceof Integer;
+    }
+
+    static boolean isDouble(Object o) {
+        return o instanceof Double || o instanceof Float;
+    }
+
+    static long toLong(Object o) {
+        // isLong(o) is true
+        return ((Number) o).longValue();
+    }
+
+    static double toDouble(Object o) {
+        // isLong(o) or isDouble(o) is true
+        return ((Number) o).doubleValue();
+    }
+
+    /**
+     * @return the truth of <code>o1 &gt; o2</code>; unknown unless both are numbers
+     */
+    static int greaterThan(Object o1, Object o2) {
+        if (isLong(o1) && isLong(o2)) return truthOf(toLong(o1) > toLong(o2));
+        if ((isLong(o1) || isDouble(o1)) && (isLong(o2) || isDouble(o2))) return truthOf(toDouble(o1) > toDouble(o2));
+        return UNKNOWN;
+    }
+
+    /**
+     * @return the truth of <code>o1 = o2</code>; unknown if either is unknown, false if they are of incomparable types
+     */
+    static int equal(Object o1, Object o2) {
+        if (o1 == null || o2 == null) return UNKNOWN;
+        if (o1 instanceof String) return truthOf(o1.equals(o2));
+        if (o1 instanceof Boolean && o2 instanceof Boolean) return truthOf(o1.equals(o2));
+        if (isLong(o1) && isLong(o2)) return truthOf(toLong(o1) == toLong(o2));
+        if ((isLong(o1) || isDouble(o1)) && (isLong(o2) || isDouble(o2))) return truthOf(toDouble(o1) == toDouble(o2));
+        return FALSE;
+    }
+
+    /** A literal value */
+    static final class Constant extends SqlClosure {
+        static final Constant NULL = new Constant(null);
+
+        private final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+
+        @Override
+        Object value(Map<String, Object> env) {
+            return this.value;
+        }
+    }
+
+    /** The value of an identifier in the environment */
+    static final class Identifier extends SqlClosure {
+        private final String name;
+
+        Identifier(String name) {
+            this.name = name;
+        }
+
+        @Override
+        Object value(Map<String, Object> env) {
+            return env == null ? null : env.get(this.name);
+        }
+    }
+
+    /** A boolean expression; its value is derived from its truth */
+    abstract static class Predicate extends SqlClosure {
+        @Override
+        final Object value(Map<String, Object> env) {
+            return booleanOf(this.truth(env));
+        }
+
+        @Override
+        abstract int truth(Map<String, Object> env);
+    }
+
+    static final class And extends Predicate {
+        private final SqlClosure left, right;
+
+        And(SqlClosure left, SqlClosure right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean isConstant() {
+            return allConstant(this.left, this.right);
+        }
+
+        @Override
+        int truth(Map<String, Object> env) {
+            int l = this.left.truth(env);
+            if (l == FALSE) return FALSE;
+            int r = this.right.truth(env);
+            if (r == FALSE) return FALSE;
+            return (l == TRUE && r == TRUE) ? TRUE : UNKNOWN;
+        }
+    }
+
+    static final class Or extends Predicate {
+        private final SqlClosure left, right;
+
+        Or(SqlClosure left, SqlClosure right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean isConstant() {
+            return allConstant(this.left, this.right);
+        }
+
+        @Override
+        int truth(Map<String, Object> env) {
+            int l = this.left.truth(env);
+            if (l == TRUE) return TRUE;
+            int r = this.right.truth(env);
+            if (r == TRUE) return TRUE;
+            return (l == FALSE && r == FALSE) ? FALSE : UNKNOWN;
+        }
+    }
+
+    static final class Not extends Predicate {
+        private final SqlClosure operand;
+
+        Not(SqlClosure operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean isConstant() {
+            return this.operand.isConstant();
+        }
+
+        @Override
+        int truth(Map<String, Object> env) {
+            return not(this.operand.truth(env));
+        }
+    }
+
+    static final class Comparison extends Predicate {
+        private final SqlTokenType op;
+        private final SqlClosure left, right;
+
+        Comparison(SqlTokenType op, SqlClosure left, SqlClosure right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean isConstant() {
+            return allConstant(this.left, this.right);
+        }
+
+        @Override
+        int truth(Map<String, Object> env) {
+            Object l = this.left.value(env);
+            Object r = this.right.value(env);
+            switch (this.op) {
+            case CMP_EQ:    return equal(l, r);
+            case CMP_NEQ:   return not(equal(l, r));
+            case CMP_GT:    return greaterThan(l, r);
+            case CMP_LTEQ:  return not(greaterThan(l, r));
+            case CMP_LT:    return greaterThan(r, l);
+            case CMP_GTEQ:  return not(greaterThan(r, l));
+            default:        return UNKNOWN;
+            }
+        }
+    }
+
+    static final class Between extends Predicate {
+        private final boolean negated;
+        private final SqlClosure operand, lower, upper;
+
+        Between(boolean negated, SqlClosure operand, SqlClosure lower, SqlClosure upper) {
+            this.negated = negated;
+            this.operand = operand;
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        @Override
+        boolean isConstant() {
+            return allConstant(this.operand, this.lower, this.upper);
+        }
+
+        @Override
+        int truth(Map<String, Object> env) {
+            Object o = this.operand.value(env);
+            // not between is (lower > o) or (o > upper)
+            int notBetween = greaterThan(this.lower.value(env), o);
+            if (notBetween != TRUE) {
+                int above = greaterThan(o, this.upper.value(env));
+                if (above == TRUE) notBetween = TRUE;
+                else if (notBetween == FALSE && above == FALSE) notBetween = FALSE;
+                else notBetween = UNKNOWN;
+            }
+            return this.negated ? notBetween : not(notBetween);
+        }
+    }
+
+    /** Membership of a literal list, hashed */
+    static final class In extends Predicate {
+        private final boolean negated;
+        private final SqlClosure operand;
+        private final Set<Object> values;
+
+        In(boolean negated, SqlClosure operand, Set<Object> values) {
+            this.negated = negated;
+            this.operand = operand;
+            this.values = values;
+        }
+
+        @Override
+        boolean isConstant() {
+            return this.operand.isConstant();
+        }
+
+        @Override
+        int truth(Map<String, Object> env) {
+            Object o = this.operand.value(env);
+            if (!(o instanceof String)) return UNKNOWN;
+            int in = truthOf(this.values.contains(o));
+            return this.negated ? not(in) : in;
+        }
+    }
+
+    static final class Like extends Predicate {
+        private final boolean negated;
+        private final SqlClosure operand, pattern;
+
+        Like(boolean negated, SqlClosure operand, SqlClosure pattern) {
+            this.negated = negated;
+            this.operand = operand;
+            this.pattern = pattern;
+        }
+
+        @Override
+        boolean isConstant() {
+            return allConstant(this.operand, this.pattern);
+        }
+
+        @Override
+        int truth(Map<String, Object> env) {
+            Object o = this.operand.value(env);
+            if (!(o instanceof String)) return UNKNOWN;
+            Object p = this.pattern.value(env);
+            if (!(p instanceof Pattern)) return UNKNOWN;
+            int like = truthOf(((Pattern) p).matcher((String) o).matches());
+            return this.negated ? not(like) : like;
+        }
+    }
+
+    /** The regular expression for a <code>LIKE</code> pattern and optional escape character */
+    static final class LikePattern extends SqlClosure {
+        private final SqlClosure pattern, escape;
+
+        LikePattern(SqlClosure pattern, SqlClosure escape) {
+            this.pattern = pattern;
+            this.escape = escape;
+        }
+
+        /**
+         * @return <code>true</code> if the pattern and escape character are known at compile time
+         */
+        boolean isLiteral() {
+            return this.pattern.isConstant() && this.pattern.value(null) instanceof String
+                && (this.escape == null || this.escape.isConstant());
+        }
+
+        @Override
+        Object value(Map<String, Object> env) {
+            Object p = this.pattern.value(env);
+            if (!(p instanceof String)) return null;
+            return likePattern((String) p, escapeChar(this.escape == null ? null : this.escape.value(env)));
+        }
+    }
+
+    /**
+     * <code>LIKE</code> with a literal pattern, translated at compile time. Patterns with <code>%</code> only
+     * at either end are matched by string comparisons; other patterns by a precompiled regular expression.
+     */
+    static final class LiteralLike extends Predicate {
+        private static final int EQUALS = 0, STARTS_WITH = 1, ENDS_WITH = 2, CONTAINS = 3, REGEX = 4;
+
+        private final boolean negated;
+        private final SqlClosure operand;
+        private final int shape;
+        private final String literal;
+        private final Pattern regex;
+
+        LiteralLike(boolean negated, SqlClosure operand, String pattern, Character escape) {
+            this.negated = negated;
+            this.operand = operand;
+            // unescape the pattern, noting where the wildcards are
+            StringBuilder chars = new StringBuilder();
+            BitSet wildcards = new BitSet();
+            boolean escaped = false;
+            for (int i = 0; i < pattern.length(); ++i) {
+                char ch = pattern.charAt(i);
+                if (escaped) {
+                    escaped = false;
+                } else if (escape != null && ch == escape) {
+                    escaped = true;
+                    continue;
+                } else if (ch == '_' || ch == '%') {
+                    wildcards.set(chars.length());
+                }
+                chars.append(ch);
+            }
+            int start = 0, end = chars.length();
+            while (start < end && wildcards.get(start) && chars.charAt(start) == '%') ++start;
+            while (end > start && wildcards.get(end - 1) && chars.charAt(end - 1) == '%') --end;
+            int inner = wildcards.nextSetBit(start);
+            if (inner >= 0 && inner < end) {
+                this.shape = REGEX;
+                this.literal = null;
+                this.regex = likePattern(pattern, escape);
+            } else {
+                boolean leading = start > 0, trailing = end < chars.length();
+                this.shape = leading ? (trailing ? CONTAINS : ENDS_WITH) : (trailing ? STARTS_WITH : EQUALS);
+                this.literal = chars.substring(start, end);
+                this.regex = null;
+            }
+        }
+
+        @Override
+        boolean isConstant() {
+            return this.operand.isConstant();
+        }
+
+        @Override
+        int truth(Map<String, Object> env) {
+            Object o = this.operand.value(env);
+            if (!(o instanceof String)) return UNKNOWN;
+            String s = (String) o;
+            boolean like;
+            switch (this.shape) {
+            case EQUALS:        like = s.equals(this.literal);              break;
+            case STARTS_WITH:   like = s.startsWith(this.literal);          break;
+            case ENDS_WITH:     like = s.endsWith(this.literal);            break;
+            case CONTAINS:      like = s.contains(this.literal);            break;
+            default:            like = this.regex.matcher(s).matches();     break;
+            }
+            return truthOf(like != this.negated);
+        }
+    }
+
+    static final class IsNull extends Predicate {
+        private final boolean negated;
+        private final SqlClosure operand;
+
+        IsNull(boolean negated, SqlClosure operand) {
+            this.negated = negated;
+            this.operand = operand;
+        }
+
+        @Override
+        boolean isConstant() {
+            return this.operand.isConstant();
+        }
+
+        @Override
+        int truth(Map<String, Object> env) {
+            return truthOf((this.operand.value(env) == null) != this.negated);
+        }
+    }
+
+    static final class Arithmetic extends SqlClosure {
+        private final SqlTokenType op;
+        private final SqlClosure left, right;
+
+        Arithmetic(SqlTokenType op, SqlClosure left, SqlClosure right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean isConstant() {
+            return allConstant(this.left, this.right);
+        }
+
+        @Override
+        Object value(Map<String, Object> env) {
+            Object l = this.left.value(env);
+            if (!isLong(l) && !isDouble(l)) return null;
+            Object r = this.right.value(env);
+            if (!isLong(r) && !isDouble(r)) return null;
+            if (isLong(l) && isLong(r)) {
+                long a = toLong(l), b = toLong(r);
+                switch (this.op) {
+                case OP_PLUS:   return a + b;
+                case OP_MINUS:  return a - b;
+                case OP_MULT:   return a * b;
+                case OP_DIV:    return b == 0 ? null : a / b;
+                default:        return null;
+                }
+            }
+            double a = toDouble(l), b = toDouble(r);
+            switch (this.op) {
+            case OP_PLUS:   return a + b;
+            case OP_MINUS:  return a - b;
+            case OP_MULT:   return a * b;
+            case OP_DIV:    return a / b;
+            default:        return null;
+            }
+        }
+    }
+}
@@ -1,19 +1,21 @@
 /* Copyright (c) 2014 Pivotal Software, Inc. All rights reserved. */
 package com.rabbitmq.jms.parse.sql;
 
-import static com.rabbitmq.jms.parse.ParseTreeTraverser.traverse;
-
 import java.util.Map;
 
 import com.rabbitmq.jms.parse.Evaluator;
 
 /**
  * A boolean evaluator for JMS Sql selector expressions.
- *
+ * <p>
+ * The type-checked expression is compiled once to a {@link SqlClosure}, so {@link #evaluate(Map)}
+ * does not walk the parse tree and can be called on many threads at once.
+ * </p>
  */
 public class SqlEvaluator implements Evaluator {
 
     private final SqlParseTree typedParseTree;
+    private final SqlClosure expression;
     private final String errorMessage;
     private final boolean evaluatorOk;
 
@@ -22,14 +24,17 @@ public class SqlEvaluator implements Evaluator {
             SqlParseTree parseTree = parser.parse();
             if (this.evaluatorOk = canBeBool(SqlTypeChecker.deriveExpressionType(parseTree, identTypes))) {
                 this.typedParseTree = parseTree;
+                this.expression = SqlClosure.compile(parseTree);
                 this.errorMessage = null;
             } else {
                 this.errorMessage = "Type error in expression";
                 this.typedParseTree = null;
+                this.expression = null;
             }
         } else {
            this.evaluatorOk = false;
            this.typedParseTree = null;
+           this.expression = null;
            this.errorMessage = parser.getErrorMessage();
         }
     }
@@ -40,15 +45,7 @@ public class SqlEvaluator implements Evaluator {
 
     @Override
     public boolean evaluate(Map<String, Object> env) {
-        if (this.evaluatorOk){
-            SqlEvaluatorVisitor eVisitor = new SqlEvaluatorVisitor(env);
-            if (traverse(this.typedParseTree, eVisitor)) {
-                Object val = this.typedParseTree.getNode().getExpValue().getValue();
-                if (val != null && val instanceof Boolean)
-                    return (Boolean) val;
-            }
-        }
-        return false;
+        return this.evaluatorOk && this.expression.truth(env) == SqlClosure.TRUE;
     }
 
     /**
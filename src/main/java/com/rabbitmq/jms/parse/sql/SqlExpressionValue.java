@@ -5,8 +5,8 @@ import java.util.List;
 
 /**
  * A selector expression value in a parse tree. This object holds the
- * expression value and the expression type for both the {@link SqlCompiler}
- * and {@link SqlEvaluator} visitors. The type and value are both settable and gettable.
+ * expression value and the expression type set by the {@link SqlTypeSetterVisitor}.
+ * The type and value are both settable and gettable.
  * <p>
  *
  * </p>
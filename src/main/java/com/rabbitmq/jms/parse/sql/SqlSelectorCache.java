@@ -0,0 +1,211 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.parse.sql;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of compiled selector expressions, shared by all the sessions in the process.
+ * <p>
+ * An entry holds the type-checked parse tree, the {@link SqlEvaluator} and the {@link SqlCompiler} (with the Erlang
+ * selector term for topic selector exchanges) for a selector string and a map of identifier types. All of these are
+ * immutable once built, so one entry may be used by any number of consumers and browsers at once. Invalid selectors
+ * are cached too: their evaluator and compiler carry the error.
+ * </p>
+ * <p>
+ * The cache holds at most <code>maxEntries</code> entries and at most <code>maxWeight</code> (estimated) bytes;
+ * the least recently used entries are evicted first. An expression too heavy to cache on its own is compiled and
+ * returned, but not kept. Lookups and updates take a short lock; selectors are compiled outside it, so two threads
+ * missing on the same selector at once may both compile it.
+ * </p>
+ * <p>
+ * The shared cache is sized by the system properties <code>rabbit.jms.selectorCacheMaxEntries</code> (default
+ * {@value #DEFAULT_MAX_ENTRIES}) and <code>rabbit.jms.selectorCacheMaxWeight</code> (default
+ * {@value #DEFAULT_MAX_WEIGHT} bytes); setting either to zero disables caching.
+ * </p>
+ */
+public final class SqlSelectorCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 1024;
+    static final long DEFAULT_MAX_WEIGHT = 4L * 1024 * 1024;
+
+    /** rough size of an entry without its strings or parse tree */
+    private static final int ENTRY_OVERHEAD = 256;
+    /** rough size of a parse tree node, its {@link SqlTreeNode} and {@link SqlClosure} */
+    private static final int NODE_WEIGHT = 128;
+
+    private static final SqlSelectorCache SHARED = new SqlSelectorCache(
+        Math.max(0, Integer.getInteger("rabbit.jms.selectorCacheMaxEntries", DEFAULT_MAX_ENTRIES)),
+        Math.max(0L, Long.getLong("rabbit.jms.selectorCacheMaxWeight", DEFAULT_MAX_WEIGHT)));
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Object lock = new Object();
+    private final LinkedHashMap<Key, CompiledSelector> entries = new LinkedHashMap<Key, CompiledSelector>(16, 0.75f, true); // @GuardedBy(lock)
+    private long weight = 0L; // @GuardedBy(lock)
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries - maximum number of entries held
+     * @param maxWeight - maximum estimated size in bytes of the entries held
+     */
+    public SqlSelectorCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * @return the cache shared by all sessions in this process
+     */
+    public static SqlSelectorCache sharedCache() {
+        return SHARED;
+    }
+
+    /**
+     * Look up a selector expression, compiling and caching it if it is not already cached.
+     * @param selector - the selector expression
+     * @param identTypes - the types of identifiers (which must not change afterwards)
+     * @return the compiled selector; check {@link SqlEvaluator#evaluatorOk()} and {@link SqlCompiler#compileOk()}
+     */
+    public CompiledSelector get(String selector, Map<String, SqlExpressionType> identTypes) {
+        Key key = new Key(selector, identTypes);
+        CompiledSelector compiled;
+        synchronized (this.lock) {
+            compiled = this.entries.get(key);
+        }
+        if (compiled != null) {
+            this.hits.incrementAndGet();
+            return compiled;
+        }
+        this.misses.incrementAndGet();
+        compiled = new CompiledSelector(selector, identTypes);
+        if (compiled.weight <= this.maxWeight && this.maxEntries > 0) {
+            synchronized (this.lock) {
+                CompiledSelector previous = this.entries.put(key, compiled);
+                if (previous != null) this.weight -= previous.weight;
+                this.weight += compiled.weight;
+                evict();
+            }
+        }
+        return compiled;
+    }
+
+    private void evict() { // @GuardedBy(lock)
+        Iterator<CompiledSelector> lru = this.entries.values().iterator();
+        while (lru.hasNext() && (this.entries.size() > this.maxEntries || this.weight > this.maxWeight)) {
+            this.weight -= lru.next().weight;
+            lru.remove();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove all the entries; the counters are not reset.
+     */
+    public void clear() {
+        synchronized (this.lock) {
+            this.entries.clear();
+            this.weight = 0L;
+        }
+    }
+
+    /** @return the number of entries held */
+    public int size() {
+        synchronized (this.lock) {
+            return this.entries.size();
+        }
+    }
+
+    /** @return the estimated size in bytes of the entries held */
+    public long weight() {
+        synchronized (this.lock) {
+            return this.weight;
+        }
+    }
+
+    /** @return the number of lookups that found a cached entry */
+    public long hitCount() {
+        return this.hits.get();
+    }
+
+    /** @return the number of lookups that compiled the selector */
+    public long missCount() {
+        return this.misses.get();
+    }
+
+    /** @return the number of entries evicted to keep within the limits */
+    public long evictionCount() {
+        return this.evictions.get();
+    }
+
+    /**
+     * The results of compiling a selector expression once.
+     */
+    public static final class CompiledSelector {
+        private final SqlEvaluator evaluator;
+        private final SqlCompiler compiler;
+        private final long weight;
+
+        CompiledSelector(String selector, Map<String, SqlExpressionType> identTypes) {
+            this.evaluator = new SqlEvaluator(new SqlParser(new SqlTokenStream(selector)), identTypes);
+            this.compiler = new SqlCompiler(this.evaluator);
+            long w = ENTRY_OVERHEAD + 2L * selector.length();
+            if (this.evaluator.typedParseTree() != null) w += NODE_WEIGHT * countNodes(this.evaluator.typedParseTree());
+            if (this.compiler.compileOk()) w += 2L * this.compiler.compile().length();
+            this.weight = w;
+        }
+
+        private static long countNodes(SqlParseTree tree) {
+            long count = 1;
+            for (SqlParseTree child : tree.getChildren()) count += countNodes(child);
+            return count;
+        }
+
+        /** @return the evaluator for client-side selection */
+        public SqlEvaluator evaluator() {
+            return this.evaluator;
+        }
+
+        /** @return the compiler holding the Erlang selector term for topic selector exchanges */
+        public SqlCompiler compiler() {
+            return this.compiler;
+        }
+
+        /** @return the estimated size of this entry in bytes */
+        long weight() {
+            return this.weight;
+        }
+    }
+
+    private static final class Key {
+        private final String selector;
+        private final Map<String, SqlExpressionType> identTypes;
+        private final int hash;
+
+        Key(String selector, Map<String, SqlExpressionType> identTypes) {
+            this.selector = selector;
+            this.identTypes = identTypes;
+            this.hash = 31 * selector.hashCode() + identTypes.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return this.hash == other.hash
+                && this.selector.equals(other.selector)
+                && (this.identTypes == other.identTypes || this.identTypes.equals(other.identTypes));
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.parse.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.rabbitmq.jms.parse.Multiples.Pair;
+
+/**
+ * Single-pass lexical scanner for SQL selector expressions.
+ * <p>
+ * The scanner dispatches on a table of character classes and recognises each token in one scan of its characters.
+ * It produces exactly the tokens, and leaves exactly the residue, of matching the {@link SqlTokenType} patterns
+ * in turn (see {@link SqlTokenStream#tokenizeWithPatterns(CharSequence)}), including their quirks:
+ * </p>
+ * <ul>
+ * <li>the first token type that matches wins, not the longest match, so for example <code>0x1F</code> scans as the
+ * integer <code>0</code> followed by the identifier <code>x1F</code>;</li>
+ * <li>keywords are whole words and case-insensitive in ASCII only, and <code>IS</code> not followed by
+ * <code>NULL</code> or <code>NOT NULL</code> is an identifier;</li>
+ * <li>a string literal ends at the last quote it can end at if it is not closed.</li>
+ * </ul>
+ */
+final class SqlTokenScanner {
+
+    private static final byte OTHER = 0, SPACE = 1, LETTER = 2, DIGIT = 3, IDENT_PART = 4, QUOTE = 5, SYMBOL = 6;
+
+    /** Class of each ASCII character; others are {@link #OTHER} */
+    private static final byte[] CHAR_CLASS = new byte[128];
+    static {
+        for (char c = 'a'; c <= 'z'; c++) CHAR_CLASS[c] = LETTER;
+        for (char c = 'A'; c <= 'Z'; c++) CHAR_CLASS[c] = LETTER;
+        CHAR_CLASS['_'] = LETTER;
+        CHAR_CLASS['$'] = LETTER;
+        for (char c = '0'; c <= '9'; c++) CHAR_CLASS[c] = DIGIT;
+        CHAR_CLASS['.'] = IDENT_PART;
+        for (char c : " \t\n\u000B\f\r".toCharArray()) CHAR_CLASS[c] = SPACE;
+        CHAR_CLASS['\''] = QUOTE;
+        for (char c : "=<>+-*/,()".toCharArray()) CHAR_CLASS[c] = SYMBOL;
+    }
+
+    private final CharSequence cseq;
+    private final int length;
+    private final List<SqlToken> tokens = new ArrayList<SqlToken>();
+
+    private SqlTokenScanner(CharSequence cseq) {
+        this.cseq = cseq;
+        this.length = cseq.length();
+    }
+
+    /**
+     * @param cseq - the character sequence to tokenise
+     * @return a {@link List} of the tokens <i>and</i> the remaining (unmatched) character sequence (residue)
+     */
+    static Pair<List<SqlToken>, CharSequence> tokenize(CharSequence cseq) {
+        SqlTokenScanner scanner = new SqlTokenScanner(cseq);
+        int pos = 0;
+        int next;
+        while (pos < scanner.length && (next = scanner.scanToken(pos)) > pos) {
+            pos = next;
+        }
+        return new Pair<List<SqlToken>, CharSequence>(scanner.tokens, cseq.subSequence(pos, scanner.length));
+    }
+
+    private byte charClass(int pos) {
+        if (pos >= this.length) return OTHER;
+        char ch = this.cseq.charAt(pos);
+        return ch < 128 ? CHAR_CLASS[ch] : OTHER;
+    }
+
+    /**
+     * Scan one token (or whitespace) at <code>pos</code>.
+     * @return the position after the token; <code>pos</code> if there is no token there
+     */
+    private int scanToken(int pos) {
+        switch (charClass(pos)) {
+        case SPACE:     return skipSpace(pos);
+        case LETTER:    return scanWord(pos);
+        case DIGIT:     return scanNumber(pos);
+        case QUOTE:     return scanString(pos);
+        case SYMBOL:    return scanSymbol(pos);
+        default:        return pos;
+        }
+    }
+
+    private int skipSpace(int pos) {
+        while (charClass(pos) == SPACE) pos++;
+        return pos;
+    }
+
+    private int wordEnd(int pos) {
+        byte cc;
+        while ((cc = charClass(pos)) == LETTER || cc == DIGIT || cc == IDENT_PART) pos++;
+        return pos;
+    }
+
+    private boolean wordIs(int start, int end, String keyword) {
+        if (end - start != keyword.length()) return false;
+        for (int i = 0; i < keyword.length(); i++) {
+            if ((this.cseq.charAt(start + i) | 0x20) != keyword.charAt(i)) return false; // letters only: ASCII case folding
+        }
+        return true;
+    }
+
+    /**
+     * A keyword, keyword sequence or identifier.
+     */
+    private int scanWord(int start) {
+        int end = wordEnd(start);
+        SqlTokenType type = keyword(start, end);
+        int tokenEnd = end;
+        if (wordIs(start, end, "not")) {
+            int w2 = nextWordStart(end);
+            if (w2 > end) {
+                int e2 = wordEnd(w2);
+                if (wordIs(w2, e2, "like"))         { type = SqlTokenType.NOT_LIKE;    tokenEnd = e2; }
+                else if (wordIs(w2, e2, "in"))      { type = SqlTokenType.NOT_IN;      tokenEnd = e2; }
+                else if (wordIs(w2, e2, "between")) { type = SqlTokenType.NOT_BETWEEN; tokenEnd = e2; }
+            }
+        } else if (wordIs(start, end, "is")) {
+            type = SqlTokenType.IDENT;
+            int w2 = nextWordStart(end);
+            if (w2 > end) {
+                int e2 = wordEnd(w2);
+                if (wordIs(w2, e2, "null")) {
+                    type = SqlTokenType.NULL;
+                    tokenEnd = e2;
+                } else if (wordIs(w2, e2, "not")) {
+                    int w3 = nextWordStart(e2);
+                    int e3 = wordEnd(w3);
+                    if (w3 > e2 && wordIs(w3, e3, "null")) {
+                        type = SqlTokenType.NOT_NULL;
+                        tokenEnd = e3;
+                    }
+                }
+            }
+        }
+        this.tokens.add(new SqlToken(type, this.cseq.subSequence(start, tokenEnd).toString()));
+        return tokenEnd;
+    }
+
+    /**
+     * @return the start of the word after the whitespace at <code>pos</code>, or <code>pos</code> if there is no
+     * whitespace or the whitespace is not followed by a letter
+     */
+    private int nextWordStart(int pos) {
+        int w = skipSpace(pos);
+        return (w > pos && charClass(w) == LETTER) ? w : pos;
+    }
+
+    private SqlTokenType keyword(int start, int end) {
+        switch (end - start) {
+        case 2:
+            if (wordIs(start, end, "in"))       return SqlTokenType.IN;
+            if (wordIs(start, end, "or"))       return SqlTokenType.OR;
+            break;
+        case 3:
+            if (wordIs(start, end, "and"))      return SqlTokenType.AND;
+            if (wordIs(start, end, "not"))      return SqlTokenType.NOT;
+            break;
+        case 4:
+            if (wordIs(start, end, "like"))     return SqlTokenType.LIKE;
+            if (wordIs(start, end, "true"))     return SqlTokenType.TRUE;
+            break;
+        case 5:
+            if (wordIs(start, end, "false"))    return SqlTokenType.FALSE;
+            break;
+        case 6:
+            if (wordIs(start, end, "escape"))   return SqlTokenType.ESCAPE;
+            break;
+        case 7:
+            if (wordIs(start, end, "between"))  return SqlTokenType.BETWEEN;
+            break;
+        default:
+            break;
+        }
+        return SqlTokenType.IDENT;
+    }
+
+    private int digitsEnd(int pos) {
+        while (charClass(pos) == DIGIT) pos++;
+        return pos;
+    }
+
+    private boolean charIs(int pos, char lower) {
+        return pos < this.length && (this.cseq.charAt(pos) | 0x20) == lower && charClass(pos) == LETTER;
+    }
+
+    private boolean charIs(int pos, char c1, char c2) {
+        if (pos >= this.length) return false;
+        char ch = this.cseq.charAt(pos);
+        return ch == c1 || ch == c2;
+    }
+
+    /**
+     * @return the end of an exponent (<code>[Ee][-+]?[0-9]+</code>) at <code>pos</code>, or <code>pos</code> if there is none
+     */
+    private int exponentEnd(int pos) {
+        if (!charIs(pos, 'e')) return pos;
+        int p = pos + 1;
+        if (charIs(p, '-', '+')) p++;
+        int end = digitsEnd(p);
+        return end > p ? end : pos;
+    }
+
+    /**
+     * A float, or else an integer; the alternatives of the {@link SqlTokenType#FLOAT} pattern are tried in order.
+     */
+    private int scanNumber(int start) {
+        int intEnd = digitsEnd(start);
+        int end = floatSuffixEnd(intEnd);
+        SqlTokenType type = end > intEnd ? SqlTokenType.FLOAT : SqlTokenType.INT;
+        this.tokens.add(new SqlToken(type, this.cseq.subSequence(start, end).toString()));
+        return end;
+    }
+
+    private int floatSuffixEnd(int pos) {
+        boolean dot = pos < this.length && this.cseq.charAt(pos) == '.';
+        int fractionEnd = dot ? digitsEnd(pos + 1) : pos;
+        // \.[0-9]+[Ee][-+]?[0-9]+
+        if (dot && fractionEnd > pos + 1) {
+            int end = exponentEnd(fractionEnd);
+            if (end > fractionEnd) return end;
+        }
+        // \.([Ee][-+]?[0-9]+) | [Ee][-+]?[0-9]+
+        if (dot) {
+            int end = exponentEnd(pos + 1);
+            if (end > pos + 1) return end;
+        } else {
+            int end = exponentEnd(pos);
+            if (end > pos) return end;
+        }
+        // (\.[0-9]*)?[fFdD]
+        if (charIs(fractionEnd, 'f') || charIs(fractionEnd, 'd')) return fractionEnd + 1;
+        // \.[0-9]*
+        return fractionEnd;
+    }
+
+    /**
+     * A string literal: <code>'([^']|'')*'</code>; when not properly closed, it ends at the last doubled quote.
+     */
+    private int scanString(int start) {
+        int lastClose = -1;
+        int pos = start + 1;
+        while (pos < this.length) {
+            if (this.cseq.charAt(pos) == '\'') {
+                if (pos + 1 < this.length && this.cseq.charAt(pos + 1) == '\'') {
+                    lastClose = pos + 1; // could close here
+                    pos += 2;
+                } else {
+                    lastClose = pos + 1;
+                    break;
+                }
+            } else {
+                pos++;
+            }
+        }
+        if (lastClose < 0) return start;
+        this.tokens.add(new SqlToken(SqlTokenType.STRING, this.cseq.subSequence(start, lastClose).toString()));
+        return lastClose;
+    }
+
+    private int scanSymbol(int start) {
+        char ch = this.cseq.charAt(start);
+        char next = start + 1 < this.length ? this.cseq.charAt(start + 1) : 0;
+        SqlTokenType type;
+        int len = 1;
+        switch (ch) {
+        case '=':   type = SqlTokenType.CMP_EQ; break;
+        case '<':   if (next == '>')      { type = SqlTokenType.CMP_NEQ;  len = 2; }
+                    else if (next == '=') { type = SqlTokenType.CMP_LTEQ; len = 2; }
+                    else                    type = SqlTokenType.CMP_LT;
+                    break;
+        case '>':   if (next == '=')      { type = SqlTokenType.CMP_GTEQ; len = 2; }
+                    else                    type = SqlTokenType.CMP_GT;
+                    break;
+        case '+':   type = SqlTokenType.OP_PLUS;  break;
+        case '-':   type = SqlTokenType.OP_MINUS; break;
+        case '*':   type = SqlTokenType.OP_MULT;  break;
+        case '/':   type = SqlTokenType.OP_DIV;   break;
+        case ',':   type = SqlTokenType.COMMA;    break;
+        case '(':   type = SqlTokenType.LP;       break;
+        default:    type = SqlTokenType.RP;       break;
+        }
+        this.tokens.add(new SqlToken(type, this.cseq.subSequence(start, start + len).toString()));
+        return start + len;
+    }
+}
@@ -35,11 +35,11 @@ public class SqlTokenStream implements TokenStream<SqlToken, Integer> {
      * and return most of the original sequence in {@link #getResidue()}.
      * </p>
      * @see SqlTokenType
-     * @see #tokenize(CharSequence)
+     * @see SqlTokenScanner
      * @param cseq - the sequence of characters (for example a {@link String}) which is tokenized
      */
     public SqlTokenStream(CharSequence cseq) {
-        Pair<List<SqlToken>, CharSequence> result = tokenize(cseq);
+        Pair<List<SqlToken>, CharSequence> result = SqlTokenScanner.tokenize(cseq);
         this.tokenSequence = result.left();
         this.tokenSequenceSize = result.left().size();
         this.residue = result.right();
@@ -113,11 +113,15 @@ public class SqlTokenStream implements TokenStream<SqlToken, Integer> {
      * If none of the token types match at any point we terminate, with the remaining character sequence and the tokens
      * already built as output.
      * </p>
+     * <p>
+     * The token stream is built by {@link SqlTokenScanner}, which gives the same result in a single pass without
+     * regular expressions. This is the reference definition it is tested against.
+     * </p>
      * @param cseq - the character sequence to tokenise
      * @return a {@link List} of the tokens <i>and</i> the remaining (unmatched) character sequence (residue)
      * @see #getResidue()
      */
-    private static final Pair<List<SqlToken>, CharSequence> tokenize(CharSequence cseq) {
+    static final Pair<List<SqlToken>, CharSequence> tokenizeWithPatterns(CharSequence cseq) {
 
         List<SqlToken> tokenList = new ArrayList<SqlToken>();
         Matcher m = getMatcher(cseq);
@@ -22,7 +22,7 @@ class SqlTreeNode {
         this(treeType, null);
     }
 
-    // getter and setter for expression value - used by TypeSetter and Evaluator Visitors
+    // getter and setter for expression value - used by the TypeSetter Visitor
     void setExpValue(SqlExpressionValue expValue) { this.expValue = expValue; }
     SqlExpressionValue getExpValue() { return this.expValue; }
 
@@ -0,0 +1,225 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.util;
+
+/**
+ * A set of non-negative <code>long</code> sequence numbers, such as AMQP delivery tags or publish sequence numbers,
+ * which are added in (mostly) increasing order and removed individually or from the bottom.
+ * <p>
+ * The set is a bitmap over the range between its lowest and highest elements, held in a ring of <code>long</code>
+ * words, so no element is boxed. Adding a number above the range, removing a single number and removing everything
+ * up to a number are all (amortised) constant time; storage is proportional to the <i>range</i> of the elements,
+ * one bit per number.
+ * </p>
+ * <p>
+ * This class is not thread-safe: callers must synchronise access.
+ * </p>
+ */
+public class SequenceSet {
+
+    private static final int INITIAL_CAPACITY = 16; // words; must be a power of two
+
+    private long[] words = new long[INITIAL_CAPACITY];
+    /** index of the word holding {@link #base} */
+    private int head = 0;
+    /** number of words in use, starting at {@link #head}; words not in use are always zero */
+    private int used = 0;
+    /** the number represented by bit 0 of the word at {@link #head}; a multiple of 64 */
+    private long base = 0L;
+    private int size = 0;
+    private long highest = -1L;
+
+    /**
+     * Add a number to the set.
+     * @param n - non-negative number to add
+     * @return <code>true</code> if the number was added, <code>false</code> if it was already present
+     */
+    public boolean add(long n) {
+        if (n < 0) throw new IllegalArgumentException("Negative sequence number " + n);
+        if (this.size == 0) {
+            this.base = n & ~63L;
+            this.head = 0;
+            this.used = 1;
+        } else if (n < this.base) {
+            this.extendDown(n);
+        }
+        int idx = (int) ((n - this.base) >>> 6);
+        if (idx >= this.used) {
+            this.ensureCapacity(idx + 1);
+            this.used = idx + 1;
+        }
+        int slot = this.slot(idx);
+        long bit = 1L << (n & 63);
+        if ((this.words[slot] & bit) != 0) return false;
+        this.words[slot] |= bit;
+        ++this.size;
+        if (n > this.highest) this.highest = n;
+        return true;
+    }
+
+    /**
+     * @param n - number to look for
+     * @return <code>true</code> if the number is in the set
+     */
+    public boolean contains(long n) {
+        if (this.size == 0 || n < this.base || n > this.highest) return false;
+        return (this.words[this.slot((int) ((n - this.base) >>> 6))] & (1L << (n & 63))) != 0;
+    }
+
+    /**
+     * Remove a single number from the set.
+     * @param n - number to remove
+     * @return <code>true</code> if the number was present
+     */
+    public boolean remove(long n) {
+        if (!this.contains(n)) return false;
+        int slot = this.slot((int) ((n - this.base) >>> 6));
+        this.words[slot] &= ~(1L << (n & 63));
+        if (--this.size == 0) {
+            this.reset();
+        } else {
+            this.trimBottom();
+            if (n == this.highest) this.trimTop();
+        }
+        return true;
+    }
+
+    /**
+     * @param n - upper bound
+     * @return the greatest element less than or equal to <code>n</code>, or <code>-1</code> if there is none
+     */
+    public long floor(long n) {
+        if (this.size == 0 || n < this.base) return -1L;
+        if (n >= this.highest) return this.highest;
+        int idx = (int) ((n - this.base) >>> 6);
+        long word = this.words[this.slot(idx)] & upToMask(n);
+        while (word == 0L) {
+            if (--idx < 0) return -1L;
+            word = this.words[this.slot(idx)];
+        }
+        return this.base + ((long) idx << 6) + (63 - Long.numberOfLeadingZeros(word));
+    }
+
+    /**
+     * Remove all numbers less than or equal to <code>n</code>.
+     * @param n - upper bound
+     * @return the number of elements removed
+     */
+    public int removeUpTo(long n) {
+        if (this.size == 0 || n < this.base) return 0;
+        if (n >= this.highest) {
+            int removed = this.size;
+            this.clear();
+            return removed;
+        }
+        int idx = (int) ((n - this.base) >>> 6);
+        int removed = 0;
+        for (int i = 0; i < idx; ++i) {
+            int slot = this.slot(i);
+            removed += Long.bitCount(this.words[slot]);
+            this.words[slot] = 0L;
+        }
+        int slot = this.slot(idx);
+        long mask = upToMask(n);
+        removed += Long.bitCount(this.words[slot] & mask);
+        this.words[slot] &= ~mask;
+        this.size -= removed;
+        this.trimBottom(); // n < highest, so the set is not empty
+        return removed;
+    }
+
+    /**
+     * @return the least element, or <code>-1</code> if the set is empty
+     */
+    public long first() {
+        if (this.size == 0) return -1L;
+        return this.base + Long.numberOfTrailingZeros(this.words[this.head]); // the word at head is never zero
+    }
+
+    /**
+     * @return the greatest element, or <code>-1</code> if the set is empty
+     */
+    public long last() {
+        return this.highest;
+    }
+
+    /**
+     * @return the number of elements in the set
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Remove all elements.
+     */
+    public void clear() {
+        for (int i = 0; i < this.used; ++i) {
+            this.words[this.slot(i)] = 0L;
+        }
+        this.reset();
+    }
+
+    private void reset() {
+        // all words are zero
+        this.head = 0;
+        this.used = 0;
+        this.size = 0;
+        this.highest = -1L;
+    }
+
+    private int slot(int idx) {
+        return (this.head + idx) & (this.words.length - 1);
+    }
+
+    /** mask of the bits in a word for numbers less than or equal to n */
+    private static long upToMask(long n) {
+        int bit = (int) (n & 63);
+        return bit == 63 ? -1L : (1L << (bit + 1)) - 1;
+    }
+
+    /** drop empty words at the bottom of the range; the set must not be empty */
+    private void trimBottom() {
+        while (this.words[this.head] == 0L) {
+            this.head = (this.head + 1) & (this.words.length - 1);
+            --this.used;
+            this.base += 64;
+        }
+    }
+
+    /** drop empty words at the top of the range and recompute the highest element; the set must not be empty */
+    private void trimTop() {
+        long word;
+        while ((word = this.words[this.slot(this.used - 1)]) == 0L) {
+            --this.used;
+        }
+        this.highest = this.base + ((long) (this.used - 1) << 6) + (63 - Long.numberOfLeadingZeros(word));
+    }
+
+    /** extend the range downwards to include n (which is less than base) */
+    private void extendDown(long n) {
+        int extra = (int) ((this.base - (n & ~63L)) >>> 6);
+        this.ensureCapacity(this.used + extra);
+        this.head = (this.head - extra) & (this.words.length - 1);
+        this.used += extra;
+        this.base -= ((long) extra) << 6;
+    }
+
+    private void ensureCapacity(int wordsNeeded) {
+        if (wordsNeeded <= this.words.length) return;
+        int capacity = this.words.length;
+        while (capacity < wordsNeeded) {
+            if (capacity >= (1 << 30)) throw new IllegalStateException("Sequence number range too large");
+            capacity <<= 1;
+        }
+        long[] newWords = new long[capacity];
+        for (int i = 0; i < this.used; ++i) {
+            newWords[i] = this.words[this.slot(i)];
+        }
+        this.words = newWords;
+        this.head = 0;
+    }
+}
@@ -2,6 +2,7 @@
 package com.rabbitmq.jms.util;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 
 /**
  * Simple class to track elapsed time.  Initialised with any time units, returns remaining time (in nanoseconds) on request.
@@ -98,6 +99,20 @@ public class TimeTracker {
         TimeUnit.NANOSECONDS.timedWait(lock, this.internalRemaining());
     }
 
+    /**
+     * A {@link Condition#awaitNanos} utility which uses the <code>TimeTracker</code> state.
+     * <p>
+     * Used while holding the {@link java.util.concurrent.locks.Lock Lock} of the condition; unlike
+     * {@link #timedWait(Object)} this does not pin the carrier thread of a virtual thread.
+     * </p>
+     * @param condition - condition to wait on
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void timedAwait(Condition condition) throws InterruptedException {
+        long remaining = this.internalRemaining();
+        if (remaining > 0) condition.awaitNanos(remaining);
+    }
+
     /**
      * @return <code>true</code> if time has run out, <code>false</code> otherwise
      */
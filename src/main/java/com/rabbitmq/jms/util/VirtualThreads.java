@@ -0,0 +1,56 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to virtual threads (Java 21 and later) from code compiled for earlier versions.
+ * <p>
+ * The virtual thread builder is looked up reflectively once; on JVMs without virtual threads
+ * {@link #threadFactory(String)} returns <code>null</code> and callers use platform threads.
+ * </p>
+ */
+public final class VirtualThreads {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method OF_VIRTUAL = lookUpOfVirtual();
+
+    private VirtualThreads() { }
+
+    private static Method lookUpOfVirtual() {
+        try {
+            return Thread.class.getMethod("ofVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if this JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param namePrefix - prefix of the names of threads created; a counter is appended
+     * @return a factory of virtual threads, or <code>null</code> if this JVM does not support them
+     */
+    public static ThreadFactory threadFactory(String namePrefix) {
+        if (OF_VIRTUAL == null) return null;
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) { // e.g. preview features not enabled on Java 19 and 20
+            LOGGER.warn("Cannot create virtual thread factory, using platform threads", e);
+            return null;
+        }
+    }
+}
@@ -84,6 +84,22 @@ public class RMQObjectFactoryTest {
 
     }
 
+    @Test
+    public void getObjectInstanceShouldSetTheCompressionThresholdOfADestinationViaEnvironment() throws Exception {
+
+        Hashtable<?, ?> environment = new Hashtable<Object, Object>() {{
+            put("className", "javax.jms.Queue");
+            put("destinationName", "TEST_QUEUE");
+            put("compressionThreshold", "4096");
+        }};
+
+        RMQDestination createdDestination = (RMQDestination) rmqObjectFactory.getObjectInstance("anything but a javax.naming.Reference", new CompositeName("java:global/jms/TestQueue"), null, environment);
+
+        assertEquals(Integer.valueOf(4096), createdDestination.getCompressionThreshold());
+        assertEquals("4096", createdDestination.getReference().get("compressionThreshold").getContent());
+
+    }
+
 
     @Test
     public void getObjectInstanceShouldCreateARMQDestinationTOPICViaEnvironment() throws Exception {
@@ -0,0 +1,89 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class AckAccumulatorTest {
+
+    Channel channel;
+    ScheduledExecutorService scheduler;
+
+    @BeforeEach public void init() {
+        channel = mock(Channel.class);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test public void acknowledgesHighestTagWhenBatchIsFull() throws Exception {
+        AckAccumulator accumulator = new AckAccumulator(channel, 3, 60000, scheduler);
+        accumulator.ack(1L);
+        accumulator.ack(2L);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        assertEquals(2, accumulator.pending());
+        accumulator.ack(3L);
+        verify(channel, times(1)).basicAck(3L, true);
+        assertEquals(0, accumulator.pending());
+    }
+
+    @Test public void flushSendsPendingAcknowledgementsOnce() throws Exception {
+        AckAccumulator accumulator = new AckAccumulator(channel, 10, 60000, scheduler);
+        accumulator.flush();
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        accumulator.ack(7L);
+        accumulator.ack(8L);
+        accumulator.flush();
+        accumulator.flush();
+        verify(channel, times(1)).basicAck(8L, true);
+    }
+
+    @Test public void multipleAcknowledgementDoesNotCoverAMessageStillOutstanding() throws Exception {
+        AckAccumulator accumulator = new AckAccumulator(channel, 4, 60000, scheduler);
+        for (long tag = 1L; tag <= 4L; tag++) accumulator.delivered(tag);
+        accumulator.ack(1L);
+        accumulator.ack(2L);
+        // 3 is left unacknowledged
+        accumulator.ack(4L);
+        accumulator.delivered(5L);
+        accumulator.ack(5L);
+
+        verify(channel, times(1)).basicAck(2L, true);
+        verify(channel, times(1)).basicAck(4L, false);
+        verify(channel, times(1)).basicAck(5L, false);
+        verify(channel, never()).basicAck(3L, false);
+        verify(channel, never()).basicAck(longThat(tag -> tag >= 3L), eq(true));
+
+        accumulator.rejected(3L);
+        accumulator.delivered(6L);
+        accumulator.ack(6L);
+        accumulator.flush();
+        verify(channel, times(1)).basicAck(6L, true);
+    }
+
+    @Test public void pendingAcknowledgementsAreFlushedAfterMaxDelay() throws Exception {
+        AckAccumulator accumulator = new AckAccumulator(channel, 10, 50, scheduler);
+        accumulator.ack(1L);
+        accumulator.ack(2L);
+        verify(channel, timeout(5000).times(1)).basicAck(2L, true);
+        assertEquals(0, accumulator.pending());
+    }
+}
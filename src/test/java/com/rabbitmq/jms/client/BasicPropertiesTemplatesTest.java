@@ -0,0 +1,58 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.DeliveryMode;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class BasicPropertiesTemplatesTest {
+
+    @Test public void templateHoldsTheSharedProperties() {
+        BasicPropertiesTemplates templates = new BasicPropertiesTemplates();
+        AMQP.BasicProperties template = templates.template(DeliveryMode.PERSISTENT, 7, 60000L, "replies");
+        assertEquals("application/json", template.getContentType());
+        assertEquals(Integer.valueOf(2), template.getDeliveryMode());
+        assertEquals(Integer.valueOf(7), template.getPriority());
+        assertEquals("60000", template.getExpiration());
+        assertEquals("replies", template.getReplyTo());
+
+        assertNull(templates.template(DeliveryMode.NON_PERSISTENT, 4, 0L, null).getExpiration());
+        assertEquals("4294967295", templates.template(DeliveryMode.NON_PERSISTENT, 4, Long.MAX_VALUE, null).getExpiration());
+    }
+
+    @Test public void templatesAreReusedForTheSameProperties() {
+        BasicPropertiesTemplates templates = new BasicPropertiesTemplates();
+        AMQP.BasicProperties first = templates.template(DeliveryMode.PERSISTENT, 4, 0L, null);
+        AMQP.BasicProperties other = templates.template(DeliveryMode.PERSISTENT, 4, 0L, "replies");
+        assertNotSame(first, other);
+        assertSame(first, templates.template(DeliveryMode.PERSISTENT, 4, 0L, null));
+        assertSame(other, templates.template(DeliveryMode.PERSISTENT, 4, 0L, new String("replies")));
+        assertEquals(2, templates.size());
+    }
+
+    @Test public void buildersDoNotChangeTheTemplate() {
+        BasicPropertiesTemplates templates = new BasicPropertiesTemplates();
+        AMQP.BasicProperties.Builder bob = templates.builder(DeliveryMode.PERSISTENT, 4, 0L, null);
+        bob.headers(Collections.<String, Object>singletonMap("JMSType", "test")).correlationId("id");
+        AMQP.BasicProperties template = templates.template(DeliveryMode.PERSISTENT, 4, 0L, null);
+        assertNull(template.getHeaders());
+        assertNull(template.getCorrelationId());
+    }
+
+    @Test public void leastRecentlyUsedTemplatesAreDiscarded() {
+        BasicPropertiesTemplates templates = new BasicPropertiesTemplates(2);
+        AMQP.BasicProperties first = templates.template(DeliveryMode.PERSISTENT, 1, 0L, null);
+        templates.template(DeliveryMode.PERSISTENT, 2, 0L, null);
+        templates.template(DeliveryMode.PERSISTENT, 1, 0L, null);
+        templates.template(DeliveryMode.PERSISTENT, 3, 0L, null);
+        assertEquals(2, templates.size());
+        assertSame(first, templates.template(DeliveryMode.PERSISTENT, 1, 0L, null));
+    }
+}
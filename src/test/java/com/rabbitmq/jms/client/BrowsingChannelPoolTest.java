@@ -0,0 +1,89 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BrowsingChannelPoolTest {
+
+    List<Channel> created = new ArrayList<>();
+
+    @Test public void releasedChannelIsResetAndReused() throws Exception {
+        BrowsingChannelPool pool = new BrowsingChannelPool(this::newChannel, 2, 60000);
+        Channel channel = pool.borrow();
+        pool.release(channel, "browser");
+
+        InOrder reset = inOrder(channel);
+        reset.verify(channel).basicCancel("browser");
+        reset.verify(channel).basicNack(0L, true, true);
+        reset.verify(channel).basicQos(0, true);
+        verify(channel, never()).close();
+
+        assertSame(channel, pool.borrow());
+        assertEquals(1, created.size());
+    }
+
+    @Test public void channelsBeyondMaximumIdleAreClosed() throws Exception {
+        BrowsingChannelPool pool = new BrowsingChannelPool(this::newChannel, 1, 60000);
+        Channel first = pool.borrow();
+        Channel second = pool.borrow();
+        pool.release(first, null);
+        pool.release(second, null);
+        assertEquals(1, pool.idleCount());
+        verify(second).close();
+        verify(first, never()).basicCancel(anyString());
+    }
+
+    @Test public void brokenAndIdleChannelsAreNotReused() throws Exception {
+        BrowsingChannelPool pool = new BrowsingChannelPool(this::newChannel, 2, 60000);
+        Channel broken = pool.borrow();
+        doThrow(new IOException("channel error")).when(broken).basicNack(0L, true, true);
+        pool.release(broken, null);
+        verify(broken).close();
+        assertEquals(0, pool.idleCount());
+
+        Channel closedWhileIdle = pool.borrow();
+        pool.release(closedWhileIdle, null);
+        when(closedWhileIdle.isOpen()).thenReturn(false);
+        assertNotSame(closedWhileIdle, pool.borrow());
+
+        BrowsingChannelPool expiring = new BrowsingChannelPool(this::newChannel, 2, -1);
+        Channel expired = expiring.borrow();
+        expiring.release(expired, null);
+        assertNotSame(expired, expiring.borrow());
+    }
+
+    @Test public void closedPoolClosesIdleAndReleasedChannels() throws Exception {
+        BrowsingChannelPool pool = new BrowsingChannelPool(this::newChannel, 2, 60000);
+        Channel idle = pool.borrow();
+        Channel inUse = pool.borrow();
+        pool.release(idle, null);
+        pool.close();
+        verify(idle).close();
+        pool.release(inUse, null);
+        verify(inUse).close();
+    }
+
+    private Channel newChannel() {
+        Channel channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+        created.add(channel);
+        return channel;
+    }
+}
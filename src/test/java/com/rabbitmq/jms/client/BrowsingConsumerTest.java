@@ -0,0 +1,98 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.impl.LongStringHelper;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import com.rabbitmq.jms.parse.sql.SqlSelectorCache;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.DeliveryMode;
+import javax.jms.TextMessage;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BrowsingConsumerTest {
+
+    RMQSession session;
+    RMQDestination dest;
+
+    @BeforeEach public void init() {
+        session = mock(RMQSession.class);
+        when(session.getTrustedPackages()).thenReturn(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        dest = new RMQDestination("browsed", true, false);
+    }
+
+    @Test public void selectsOnPublishedHeadersAndDecodesOnlySelectedMessages() throws Exception {
+        BrowsingConsumer consumer = consumer("region = 'EU' AND JMSPriority > 4", 3);
+        RMQMessage selected = textMessage("EU", 7);
+        RMQMessage wrongRegion = textMessage("US", 7);
+        RMQMessage lowPriority = textMessage("EU", 2);
+
+        deliver(consumer, 1, publishedHeaders(selected), selected.toByteArray());
+        // the body is not decoded for a message that is not selected
+        deliver(consumer, 2, publishedHeaders(wrongRegion), new byte[] { 1, 2, 3 });
+        deliver(consumer, 3, publishedHeaders(lowPriority), new byte[] { 1, 2, 3 });
+
+        assertEquals(3, consumer.deliveries());
+        assertTrue(consumer.isFinished());
+        assertEquals("hello EU", ((TextMessage) consumer.poll()).getText());
+        assertNull(consumer.poll());
+    }
+
+    @Test public void selectsOnDecodedMessageWithoutPublishedHeaders() throws Exception {
+        BrowsingConsumer consumer = consumer("region = 'EU'", 2);
+        RMQMessage selected = textMessage("EU", 4);
+        RMQMessage other = textMessage("US", 4);
+
+        deliver(consumer, 1, null, selected.toByteArray());
+        deliver(consumer, 2, null, other.toByteArray());
+
+        assertEquals("hello EU", ((TextMessage) consumer.poll()).getText());
+        assertNull(consumer.poll());
+    }
+
+    private BrowsingConsumer consumer(String selector, int expected) {
+        return new BrowsingConsumer(mock(Channel.class), session, dest, expected,
+            SqlSelectorCache.sharedCache().get(selector, RMQSession.JMS_TYPE_IDENTS).evaluator(),
+            ReceivingContextConsumer.NO_OP);
+    }
+
+    private static void deliver(BrowsingConsumer consumer, long tag, Map<String, Object> headers, byte[] body) throws Exception {
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().headers(headers).build();
+        consumer.handleDelivery("tag", new Envelope(tag, false, "", "browsed"), props, body);
+    }
+
+    /** headers as they arrive: strings are {@link com.rabbitmq.client.LongString}s */
+    private static Map<String, Object> publishedHeaders(RMQMessage message) throws Exception {
+        Map<String, Object> headers = new HashMap<>();
+        for (Map.Entry<String, Object> e : message.toHeaders().entrySet()) {
+            Object value = e.getValue();
+            headers.put(e.getKey(), value instanceof String ? LongStringHelper.asLongString((String) value) : value);
+        }
+        return headers;
+    }
+
+    private static RMQMessage textMessage(String region, int priority) throws Exception {
+        RMQTextMessage text = new RMQTextMessage();
+        text.setText("hello " + region);
+        RMQMessage message = text;
+        message.setStringProperty("region", region);
+        message.setJMSPriority(priority);
+        message.setJMSDeliveryMode(DeliveryMode.PERSISTENT);
+        message.setJMSTimestamp(System.currentTimeMillis());
+        message.generateInternalID();
+        return message;
+    }
+}
@@ -0,0 +1,150 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.DeliveryMode;
+import javax.jms.TextMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BrowsingMessageEnumerationTest {
+
+    RMQSession session;
+    RMQDestination dest;
+
+    @BeforeEach public void init() {
+        session = mock(RMQSession.class);
+        when(session.getTrustedPackages()).thenReturn(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        dest = new RMQDestination("browsed", true, false);
+    }
+
+    @Test public void messagesAreReadAPageAtATime() throws Exception {
+        Broker broker = new Broker(25);
+        BrowsingMessageEnumeration e = new BrowsingMessageEnumeration(session, dest, broker.channel, null, 0, 10,
+            ReceivingContextConsumer.NO_OP);
+
+        // only the first page is delivered before the enumeration is read
+        assertEquals(10, broker.delivered);
+        assertTrue(e.hasMoreElements());
+        assertEquals("message 0", ((TextMessage) e.nextElement()).getText());
+
+        for (int i = 1; i < 25; i++) {
+            assertTrue(e.hasMoreElements());
+            assertEquals("message " + i, ((TextMessage) e.nextElement()).getText());
+            assertTrue(broker.delivered - i <= 10, "more than a page delivered ahead");
+        }
+        assertFalse(e.hasMoreElements());
+        assertEquals(Integer.valueOf(25), broker.prefetchCounts.get(broker.prefetchCounts.size() - 1));
+        verify(session).closeBrowsingChannel(broker.channel, null);
+    }
+
+    @Test public void readMaxLimitsMessagesRead() throws Exception {
+        Broker broker = new Broker(25);
+        BrowsingMessageEnumeration e = new BrowsingMessageEnumeration(session, dest, broker.channel, null, 5, 10,
+            ReceivingContextConsumer.NO_OP);
+        int count = 0;
+        while (e.hasMoreElements()) {
+            e.nextElement();
+            count++;
+        }
+        assertEquals(5, count);
+        assertEquals(5, broker.delivered);
+    }
+
+    @Test public void emptyQueueIsNotConsumed() throws Exception {
+        Broker broker = new Broker(0);
+        BrowsingMessageEnumeration e = new BrowsingMessageEnumeration(session, dest, broker.channel, null, 0, 10,
+            ReceivingContextConsumer.NO_OP);
+        assertFalse(e.hasMoreElements());
+        verify(broker.channel, never()).basicConsume(anyString(), any());
+        verify(session, times(1)).closeBrowsingChannel(broker.channel, null);
+    }
+
+    @Test public void closeWakesAThreadWaitingForTheNextMessage() throws Exception {
+        Broker broker = new Broker(5);
+        when(broker.channel.basicConsume(anyString(), any())).thenReturn("tag"); // nothing is delivered
+        BrowsingMessageEnumeration e = new BrowsingMessageEnumeration(session, dest, broker.channel, null, 0, 10,
+            ReceivingContextConsumer.NO_OP);
+        CompletableFuture<Boolean> hasMore = CompletableFuture.supplyAsync(e::hasMoreElements);
+        Thread.sleep(100L); // let it wait
+
+        e.close();
+        assertFalse(hasMore.get(1, TimeUnit.SECONDS));
+        verify(session, times(1)).closeBrowsingChannel(any(), any());
+    }
+
+    /**
+     * A queue on a channel that delivers messages, synchronously, up to the channel-wide prefetch count.
+     */
+    private static class Broker {
+        final Channel channel = mock(Channel.class);
+        final List<Integer> prefetchCounts = new ArrayList<>();
+        final int messageCount;
+        BrowsingConsumer consumer;
+        int prefetch = 0;
+        int delivered = 0;
+
+        Broker(int messageCount) throws Exception {
+            this.messageCount = messageCount;
+            AMQP.Queue.DeclareOk declareOk = mock(AMQP.Queue.DeclareOk.class);
+            when(declareOk.getMessageCount()).thenReturn(messageCount);
+            when(channel.queueDeclarePassive(anyString())).thenReturn(declareOk);
+            when(channel.basicConsume(anyString(), any())).thenAnswer(invocation -> {
+                consumer = invocation.getArgument(1);
+                deliver();
+                return "tag";
+            });
+            doAnswer(invocation -> {
+                if (invocation.<Boolean>getArgument(1)) { // channel-wide
+                    prefetch = invocation.getArgument(0);
+                    prefetchCounts.add(prefetch);
+                    deliver();
+                }
+                return null;
+            }).when(channel).basicQos(anyInt(), anyBoolean());
+            doAnswer(invocation -> {
+                consumer.handleCancelOk("tag");
+                return null;
+            }).when(channel).basicCancel(anyString());
+        }
+
+        void deliver() throws Exception {
+            while (consumer != null && delivered < prefetch && delivered < messageCount) {
+                RMQTextMessage text = new RMQTextMessage();
+                text.setText("message " + delivered);
+                RMQMessage message = text;
+                message.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
+                message.setJMSPriority(4);
+                message.setJMSTimestamp(System.currentTimeMillis());
+                message.generateInternalID();
+                AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().headers(message.toHeaders()).build();
+                delivered++;
+                consumer.handleDelivery("tag", new Envelope(delivered, false, "", "browsed"), props, message.toByteArray());
+            }
+        }
+    }
+}
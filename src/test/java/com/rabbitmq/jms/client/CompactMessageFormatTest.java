@@ -0,0 +1,188 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.client.message.RMQBytesMessage;
+import com.rabbitmq.jms.client.message.RMQMapMessage;
+import com.rabbitmq.jms.client.message.RMQObjectMessage;
+import com.rabbitmq.jms.client.message.RMQStreamMessage;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import com.rabbitmq.jms.util.RMQJMSException;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.BytesMessage;
+import javax.jms.DeliveryMode;
+import javax.jms.MapMessage;
+import javax.jms.ObjectMessage;
+import javax.jms.StreamMessage;
+import javax.jms.TextMessage;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CompactMessageFormatTest {
+
+    static final List<String> TRUSTED = WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES;
+
+    @Test public void textMessageWithPropertiesRoundTrips() throws Exception {
+        RMQTextMessage text = new RMQTextMessage();
+        text.setText("héllo");
+        RMQMessage sent = withHeaderFields(text);
+        sent.setBooleanProperty("boolean", true);
+        sent.setByteProperty("byte", (byte) -3);
+        sent.setShortProperty("short", (short) -300);
+        sent.setIntProperty("int", Integer.MIN_VALUE);
+        sent.setLongProperty("long", Long.MAX_VALUE);
+        sent.setFloatProperty("float", 1.5f);
+        sent.setDoubleProperty("double", -2.25);
+        sent.setStringProperty("string", "value");
+        sent.setJMSReplyTo(new RMQDestination("replies", true, true));
+        sent.setJMSDestination(new RMQDestination("topic", false, false));
+
+        byte[] payload = sent.toCompactByteArray(new ByteArrayOutputStream());
+        assertTrue(CompactMessageFormat.isCompact(payload));
+        RMQMessage received = RMQMessage.fromMessage(payload, TRUSTED);
+
+        assertTrue(received instanceof RMQTextMessage);
+        assertEquals("héllo", ((TextMessage) received).getText());
+        assertEquals(sent.getJMSMessageID(), received.getJMSMessageID());
+        assertEquals(sent.getJMSTimestamp(), received.getJMSTimestamp());
+        assertEquals(7, received.getJMSPriority());
+        assertEquals(DeliveryMode.PERSISTENT, received.getJMSDeliveryMode());
+        assertEquals("correlation", received.getJMSCorrelationID());
+        assertEquals("type", received.getJMSType());
+        assertEquals(true, received.getBooleanProperty("boolean"));
+        assertEquals((byte) -3, received.getByteProperty("byte"));
+        assertEquals((short) -300, received.getShortProperty("short"));
+        assertEquals(Integer.MIN_VALUE, received.getIntProperty("int"));
+        assertEquals(Long.MAX_VALUE, received.getLongProperty("long"));
+        assertEquals(1.5f, received.getFloatProperty("float"));
+        assertEquals(-2.25, received.getDoubleProperty("double"));
+        assertEquals("value", received.getStringProperty("string"));
+        assertEquals(new RMQDestination("replies", true, true), received.getJMSReplyTo());
+        assertEquals(new RMQDestination("topic", false, false), received.getJMSDestination());
+    }
+
+    @Test public void otherMessageTypesRoundTrip() throws Exception {
+        RMQBytesMessage bytes = new RMQBytesMessage();
+        bytes.writeBytes(new byte[] {1, 2, 3});
+        BytesMessage receivedBytes = (BytesMessage) roundTrip(bytes);
+        byte[] body = new byte[3];
+        assertEquals(3, receivedBytes.readBytes(body));
+        assertArrayEquals(new byte[] {1, 2, 3}, body);
+
+        RMQMapMessage map = new RMQMapMessage();
+        map.setInt("int", 1);
+        map.setString("string", "value");
+        map.setBytes("bytes", new byte[] {4, 5});
+        MapMessage receivedMap = (MapMessage) roundTrip(map);
+        assertEquals(1, receivedMap.getInt("int"));
+        assertEquals("value", receivedMap.getString("string"));
+        assertArrayEquals(new byte[] {4, 5}, receivedMap.getBytes("bytes"));
+
+        RMQObjectMessage object = new RMQObjectMessage();
+        object.setObject(new ArrayList<>(Arrays.asList("a", "b")));
+        assertEquals(Arrays.asList("a", "b"), ((ObjectMessage) roundTrip(object)).getObject());
+
+        RMQStreamMessage stream = new RMQStreamMessage();
+        stream.writeInt(42);
+        stream.writeString("value");
+        StreamMessage receivedStream = (StreamMessage) roundTrip(stream);
+        assertEquals(42, receivedStream.readInt());
+        assertEquals("value", receivedStream.readString());
+
+        RMQTextMessage empty = new RMQTextMessage();
+        assertNull(((TextMessage) roundTrip(empty)).getText());
+    }
+
+    @Test public void amqpDestinationsRoundTrip() throws Exception {
+        RMQTextMessage text = new RMQTextMessage();
+        RMQMessage sent = withHeaderFields(text);
+        RMQDestination replyTo = new RMQDestination("mapped", "exchange", "key", null);
+        sent.setJMSReplyTo(replyTo);
+        RMQMessage received = RMQMessage.fromMessage(sent.toCompactByteArray(new ByteArrayOutputStream()), TRUSTED);
+        RMQDestination receivedReplyTo = (RMQDestination) received.getJMSReplyTo();
+        assertEquals(replyTo, receivedReplyTo);
+        assertTrue(receivedReplyTo.isAmqp());
+    }
+
+    @Test public void legacyFormatStillDecodes() throws Exception {
+        RMQTextMessage text = new RMQTextMessage();
+        text.setText("legacy");
+        RMQMessage sent = withHeaderFields(text);
+        byte[] payload = sent.toByteArray();
+        assertFalse(CompactMessageFormat.isCompact(payload));
+        RMQMessage received = RMQMessage.fromMessage(payload, TRUSTED);
+        assertEquals("legacy", ((TextMessage) received).getText());
+        assertEquals(sent.getJMSMessageID(), received.getJMSMessageID());
+    }
+
+    @Test public void compactFormatIsSmaller() throws Exception {
+        RMQTextMessage text = new RMQTextMessage();
+        text.setText("hello");
+        RMQMessage sent = withHeaderFields(text);
+        int legacy = sent.toByteArray().length;
+        int compact = sent.toCompactByteArray(new ByteArrayOutputStream()).length;
+        assertTrue(compact * 4 < legacy, "compact " + compact + " bytes, legacy " + legacy + " bytes");
+    }
+
+    @Test public void compactMessageDecodesLazily() throws Exception {
+        RMQSession session = mock(RMQSession.class);
+        when(session.getTrustedPackages()).thenReturn(TRUSTED);
+        when(session.willLazyMessageDecoding()).thenReturn(true);
+        RMQTextMessage text = new RMQTextMessage();
+        text.setText("lazy");
+        RMQMessage sent = withHeaderFields(text);
+        sent.setStringProperty("key", "value");
+
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+            .contentType(CompactMessageFormat.CONTENT_TYPE).headers(sent.toHeaders()).build();
+        GetResponse response = new GetResponse(new Envelope(1L, true, "", ""), props,
+            sent.toCompactByteArray(new ByteArrayOutputStream()), 0);
+        RMQMessage received = RMQMessage.convertJmsMessage(session, response, ReceivingContextConsumer.NO_OP);
+
+        assertEquals(sent.getJMSMessageID(), received.getJMSMessageID());
+        assertEquals("value", received.getStringProperty("key"));
+        assertTrue(received.getJMSRedelivered());
+        assertEquals("lazy", ((TextMessage) received).getText());
+    }
+
+    @Test public void unknownVersionIsRejected() throws Exception {
+        RMQMessage sent = withHeaderFields(new RMQTextMessage());
+        byte[] payload = sent.toCompactByteArray(new ByteArrayOutputStream());
+        payload[1] = (byte) (CompactMessageFormat.VERSION + 1);
+        assertThrows(RMQJMSException.class, () -> RMQMessage.fromMessage(payload, TRUSTED));
+    }
+
+    private static RMQMessage roundTrip(RMQMessage message) throws Exception {
+        withHeaderFields(message);
+        RMQMessage received = RMQMessage.fromMessage(message.toCompactByteArray(new ByteArrayOutputStream()), TRUSTED);
+        assertEquals(message.getClass(), received.getClass());
+        received.setReadonly(true);
+        return received;
+    }
+
+    private static RMQMessage withHeaderFields(RMQMessage message) throws Exception {
+        message.setJMSType("type");
+        message.setJMSPriority(7);
+        message.setJMSDeliveryMode(DeliveryMode.PERSISTENT);
+        message.setJMSTimestamp(System.currentTimeMillis());
+        message.setJMSCorrelationID("correlation");
+        message.generateInternalID();
+        return message;
+    }
+}
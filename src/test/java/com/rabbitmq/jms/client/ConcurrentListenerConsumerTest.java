@@ -0,0 +1,100 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.jms.admin.RMQDestination;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.MessageListener;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConcurrentListenerConsumerTest {
+
+    ScheduledExecutorService scheduler;
+    RMQMessageConsumer messageConsumer;
+    Channel channel;
+    Map<Long, CountDownLatch> releases = new ConcurrentHashMap<>();
+    MessageListener listener = message -> {
+        try {
+            releases.get(((RMQMessage) message).getRabbitDeliveryTag()).await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    };
+
+    @BeforeEach public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        messageConsumer = mock(RMQMessageConsumer.class);
+        channel = mock(Channel.class);
+        RMQSession session = mock(RMQSession.class);
+        RMQConnection connection = mock(RMQConnection.class);
+        RMQDestination destination = mock(RMQDestination.class);
+        when(messageConsumer.getSession()).thenReturn(session);
+        when(messageConsumer.getDestination()).thenReturn(destination);
+        when(messageConsumer.getReceivingContextConsumer()).thenReturn(ReceivingContextConsumer.NO_OP);
+        when(destination.isAmqp()).thenReturn(true);
+        when(session.getConnection()).thenReturn(connection);
+        when(connection.getTerminationTimeout()).thenReturn(1000L);
+        when(connection.getOnMessageTimeoutMs()).thenReturn(10000);
+        when(connection.getOnMessageWatchdog()).thenReturn(new OnMessageWatchdog(scheduler, 10000));
+    }
+
+    @AfterEach public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test public void onlyContiguousCompletedMessagesAreAcknowledged() throws Exception {
+        ConcurrentListenerConsumer consumer = new ConcurrentListenerConsumer(messageConsumer, channel, listener, 3, 6, "JMSXGroupID");
+        for (long tag = 1; tag <= 3; tag++) {
+            releases.put(tag, new CountDownLatch(1));
+            deliver(consumer, tag);
+        }
+
+        releases.get(3L).countDown();
+        releases.get(2L).countDown();
+        verify(channel, after(200).never()).basicAck(anyLong(), anyBoolean());
+
+        releases.get(1L).countDown();
+        verify(channel, timeout(5000).times(1)).basicAck(3L, true);
+        consumer.abort();
+        verify(channel, times(1)).close();
+    }
+
+    @Test public void rejectedMessageDoesNotHoldBackAcknowledgements() throws Exception {
+        when(messageConsumer.getSession().willRequeueOnMessageListenerException()).thenReturn(true);
+        MessageListener failing = message -> {
+            if (((RMQMessage) message).getRabbitDeliveryTag() == 1L) throw new IllegalStateException("listener failure");
+        };
+        ConcurrentListenerConsumer consumer = new ConcurrentListenerConsumer(messageConsumer, channel, failing, 2, 4, "JMSXGroupID");
+        deliver(consumer, 1L);
+        deliver(consumer, 2L);
+
+        verify(channel, timeout(5000).times(1)).basicNack(1L, false, true);
+        verify(channel, timeout(5000).times(1)).basicAck(2L, true);
+        verify(channel, never()).basicAck(1L, true);
+        consumer.abort();
+    }
+
+    private static void deliver(ConcurrentListenerConsumer consumer, long tag) throws Exception {
+        consumer.handleDelivery("tag", new Envelope(tag, false, "", ""), new AMQP.BasicProperties.Builder().build(), new byte[0]);
+    }
+}
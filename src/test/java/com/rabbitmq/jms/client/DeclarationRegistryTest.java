@@ -0,0 +1,115 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.jms.admin.RMQDestination;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.Session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeclarationRegistryTest {
+
+    DeclarationRegistry registry;
+    RMQConnection connection;
+    Channel channel;
+
+    @BeforeEach public void init() throws Exception {
+        registry = new DeclarationRegistry();
+        connection = mock(RMQConnection.class);
+        channel = mock(Channel.class);
+        when(connection.createRabbitChannel(anyBoolean())).thenReturn(channel);
+    }
+
+    @Test public void keysAreEqualForTheSameDeclaration() {
+        assertEquals(DeclarationRegistry.queue("q", true, false, false), DeclarationRegistry.queue("q", true, false, false));
+        assertEquals(DeclarationRegistry.queue("q", true, false, false).hashCode(),
+                     DeclarationRegistry.queue("q", true, false, false).hashCode());
+        assertNotEquals(DeclarationRegistry.queue("q", true, false, false), DeclarationRegistry.queue("q", false, false, false));
+        assertNotEquals(DeclarationRegistry.exchange("x", "direct", true), DeclarationRegistry.exchange("x", "topic", true));
+        assertNotEquals(DeclarationRegistry.exchange("q", "direct", true), DeclarationRegistry.queue("q", true, false, false));
+        assertNotEquals(DeclarationRegistry.binding("q", "x", "k"), DeclarationRegistry.binding("q", "x", "l"));
+    }
+
+    @Test public void forgettingAQueueForgetsItsBindingsButNotExchanges() {
+        registry.add(DeclarationRegistry.exchange("q", "direct", true));
+        registry.add(DeclarationRegistry.queue("q", true, false, false));
+        registry.add(DeclarationRegistry.binding("q", "x", "q"));
+        registry.add(DeclarationRegistry.queue("other", true, false, false));
+
+        registry.forgetQueue("q");
+
+        assertEquals(2, registry.size());
+        assertTrue(registry.contains(DeclarationRegistry.exchange("q", "direct", true)));
+        assertTrue(registry.contains(DeclarationRegistry.queue("other", true, false, false)));
+    }
+
+    @Test public void onlyShutdownsNotInitiatedByTheApplicationClearTheRegistry() {
+        registry.add(DeclarationRegistry.queue("q", true, false, false));
+        registry.shutdownCompleted(shutdown(false, true));
+        assertEquals(1, registry.size());
+
+        registry.shutdownCompleted(shutdown(false, false));
+        assertEquals(0, registry.size());
+
+        registry.add(DeclarationRegistry.queue("q", true, false, false));
+        registry.shutdownCompleted(shutdown(true, true));
+        assertEquals(0, registry.size());
+    }
+
+    @Test public void queueIsDeclaredOncePerConnection() throws Exception {
+        session().createProducer(new RMQDestination("orders", true, false));
+        session().createProducer(new RMQDestination("orders", true, false));
+
+        verify(channel, times(1)).exchangeDeclare(anyString(), anyString(), anyBoolean(), anyBoolean(), anyBoolean(), any());
+        verify(channel, times(1)).queueDeclare(eq("orders"), anyBoolean(), anyBoolean(), anyBoolean(), any());
+        verify(channel, times(1)).queueBind(eq("orders"), anyString(), eq("orders"), any());
+    }
+
+    @Test public void deletedDestinationIsDeclaredAgain() throws Exception {
+        RMQDestination orders = new RMQDestination("orders", true, false);
+        session().createProducer(orders);
+        orders.delete();
+        assertFalse(orders.isDeclared());
+        session().createProducer(new RMQDestination("orders", true, false));
+
+        verify(channel, times(2)).queueDeclare(eq("orders"), anyBoolean(), anyBoolean(), anyBoolean(), any());
+    }
+
+    @Test public void queueIsDeclaredAgainAfterTheBrokerClosedAChannel() throws Exception {
+        session().createProducer(new RMQDestination("orders", true, false));
+        registry.shutdownCompleted(shutdown(false, false));
+        session().createProducer(new RMQDestination("orders", true, false));
+
+        verify(channel, times(2)).queueDeclare(eq("orders"), anyBoolean(), anyBoolean(), anyBoolean(), any());
+        verify(channel, times(2)).addShutdownListener(registry);
+    }
+
+    private RMQSession session() throws Exception {
+        return new RMQSession(new SessionParams()
+            .setConnection(connection)
+            .setMode(Session.AUTO_ACKNOWLEDGE)
+            .setDeclarationRegistry(registry));
+    }
+
+    private static ShutdownSignalException shutdown(boolean hardError, boolean initiatedByApplication) {
+        ShutdownSignalException cause = mock(ShutdownSignalException.class);
+        when(cause.isHardError()).thenReturn(hardError);
+        when(cause.isInitiatedByApplication()).thenReturn(initiatedByApplication);
+        return cause;
+    }
+}
@@ -0,0 +1,131 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.jms.util.TimeTracker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DelayedReceiverTest {
+
+    RMQMessageConsumer messageConsumer;
+    Channel channel;
+
+    @BeforeEach public void init() {
+        messageConsumer = mock(RMQMessageConsumer.class);
+        channel = mock(Channel.class);
+        RMQSession session = mock(RMQSession.class);
+        RMQConnection connection = mock(RMQConnection.class);
+        when(messageConsumer.getSession()).thenReturn(session);
+        when(session.getChannel()).thenReturn(channel);
+        when(session.getConnection()).thenReturn(connection);
+        when(connection.getChannelsQos()).thenReturn(RMQConnection.NO_CHANNEL_QOS);
+    }
+
+    @Test public void pollingDoesNotSubscribe() throws Exception {
+        DelayedReceiver receiver = new DelayedReceiver(5, messageConsumer);
+        assertNull(receiver.get(TimeTracker.ZERO));
+        verify(messageConsumer, times(1)).getFromRabbitQueue();
+        verify(messageConsumer, never()).basicConsume(any(Consumer.class), anyString());
+    }
+
+    @Test public void prefetchedMessagesAreReturnedFromBuffer() throws Exception {
+        DelayedReceiver receiver = new DelayedReceiver(5, true, messageConsumer);
+        assertNull(receiver.get(TimeTracker.ZERO));
+        Consumer consumer = subscription();
+        verify(channel).basicQos(5);
+        verify(channel).basicQos(0);
+
+        deliver(consumer, 1L);
+        deliver(consumer, 2L);
+        assertEquals(1L, receiver.get(TimeTracker.ZERO).getEnvelope().getDeliveryTag());
+        assertEquals(2L, receiver.get(TimeTracker.ZERO).getEnvelope().getDeliveryTag());
+        assertNull(receiver.get(TimeTracker.ZERO));
+
+        verify(messageConsumer, never()).getFromRabbitQueue();
+        verify(messageConsumer, times(1)).basicConsume(any(Consumer.class), anyString());
+    }
+
+    @Test public void blockedReceiverIsWokenByDelivery() throws Exception {
+        DelayedReceiver receiver = new DelayedReceiver(5, true, messageConsumer);
+        assertNull(receiver.get(TimeTracker.ZERO));
+        Consumer consumer = subscription();
+
+        CompletableFuture<GetResponse> received = CompletableFuture.supplyAsync(
+            () -> receiver.get(new TimeTracker(10, TimeUnit.SECONDS)));
+        deliver(consumer, 1L);
+        assertEquals(1L, received.get(5, TimeUnit.SECONDS).getEnvelope().getDeliveryTag());
+    }
+
+    @Test public void cancelRequeuesBufferedAndLateMessages() throws Exception {
+        DelayedReceiver receiver = new DelayedReceiver(5, true, messageConsumer);
+        assertNull(receiver.get(TimeTracker.ZERO));
+        Consumer consumer = subscription();
+        deliver(consumer, 1L);
+        deliver(consumer, 2L);
+
+        receiver.cancel();
+        verify(channel).basicCancel(anyString());
+        verify(channel).basicNack(1L, false, true);
+        verify(channel).basicNack(2L, false, true);
+
+        deliver(consumer, 3L);
+        verify(channel).basicNack(3L, false, true);
+        verify(channel, times(3)).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test public void drainToTakesBufferedMessagesUpToMax() throws Exception {
+        DelayedReceiver receiver = new DelayedReceiver(5, true, messageConsumer);
+        assertNull(receiver.get(TimeTracker.ZERO));
+        Consumer consumer = subscription();
+        for (long tag = 1; tag <= 4; tag++) deliver(consumer, tag);
+
+        List<GetResponse> responses = new ArrayList<>();
+        assertEquals(3, receiver.drainTo(responses, 3));
+        assertEquals(3L, responses.get(2).getEnvelope().getDeliveryTag());
+        assertEquals(1, receiver.drainTo(responses, 3));
+        assertEquals(0, receiver.drainTo(responses, 3));
+        assertEquals(4, responses.size());
+    }
+
+    @Test public void drainToPollsUntilQueueIsEmpty() throws Exception {
+        DelayedReceiver receiver = new DelayedReceiver(5, messageConsumer);
+        GetResponse response = new GetResponse(new Envelope(1L, false, "", "q"), new AMQP.BasicProperties(), new byte[0], 0);
+        when(messageConsumer.getFromRabbitQueue()).thenReturn(response, response, null);
+        List<GetResponse> responses = new ArrayList<>();
+        assertEquals(2, receiver.drainTo(responses, 10));
+        verify(messageConsumer, times(3)).getFromRabbitQueue();
+    }
+
+    private Consumer subscription() throws Exception {
+        ArgumentCaptor<Consumer> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(messageConsumer).basicConsume(captor.capture(), anyString());
+        return captor.getValue();
+    }
+
+    private static void deliver(Consumer consumer, long dtag) throws Exception {
+        consumer.handleDelivery("tag", new Envelope(dtag, false, "", "q"), new AMQP.BasicProperties(), new byte[0]);
+    }
+}
@@ -0,0 +1,86 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.util.RMQJMSException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.MessageListener;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class DeliveryExecutorTest {
+
+    ScheduledExecutorService scheduler;
+
+    @BeforeEach public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test public void directDispatchCallsListenerOnCallingThread() throws Exception {
+        DeliveryExecutor executor = new DeliveryExecutor(1000, new OnMessageWatchdog(scheduler, 1000));
+        AtomicReference<Thread> listenerThread = new AtomicReference<>();
+        executor.deliverMessageWithProtection(mock(RMQMessage.class), message -> listenerThread.set(Thread.currentThread()));
+        assertSame(Thread.currentThread(), listenerThread.get());
+        executor.close();
+    }
+
+    @Test public void directDispatchInterruptsOverrunningListener() throws Exception {
+        DeliveryExecutor executor = new DeliveryExecutor(50, new OnMessageWatchdog(scheduler, 50));
+        MessageListener sleepy = message -> {
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        long start = System.currentTimeMillis();
+        RMQJMSException e = assertThrows(RMQJMSException.class,
+            () -> executor.deliverMessageWithProtection(mock(RMQMessage.class), sleepy));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertTrue(e.getCause() instanceof TimeoutException);
+        assertFalse(Thread.currentThread().isInterrupted());
+
+        // a subsequent quick call is not affected
+        executor.deliverMessageWithProtection(mock(RMQMessage.class), message -> { });
+        executor.close();
+    }
+
+    @Test public void executorThreadComesFromGivenFactory() throws Exception {
+        AtomicReference<Thread> created = new AtomicReference<>();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, "test-listener");
+            created.set(t);
+            return t;
+        };
+        DeliveryExecutor executor = new DeliveryExecutor(1000, null, threadFactory);
+        AtomicReference<Thread> listenerThread = new AtomicReference<>();
+        executor.deliverMessageWithProtection(mock(RMQMessage.class), message -> listenerThread.set(Thread.currentThread()));
+        assertSame(created.get(), listenerThread.get());
+        executor.close();
+    }
+
+    @Test public void directDispatchWrapsListenerException() throws Exception {
+        DeliveryExecutor executor = new DeliveryExecutor(1000, new OnMessageWatchdog(scheduler, 1000));
+        IllegalStateException thrown = new IllegalStateException("listener failure");
+        RMQMessageListenerExecutionJMSException e = assertThrows(RMQMessageListenerExecutionJMSException.class,
+            () -> executor.deliverMessageWithProtection(mock(RMQMessage.class), message -> { throw thrown; }));
+        assertEquals(thrown, e.getCause());
+        executor.close();
+    }
+}
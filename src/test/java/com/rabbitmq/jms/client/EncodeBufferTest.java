@@ -0,0 +1,76 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.client.message.RMQBytesMessage;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.BytesMessage;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EncodeBufferTest {
+
+    @Test public void contentIsCopiedAtExactSize() {
+        EncodeBuffer buffer = new EncodeBuffer(16);
+        buffer.reset();
+        buffer.write(1);
+        buffer.write(new byte[] {2, 3, 4}, 1, 2);
+        byte[] bytes = buffer.toByteArray();
+        assertArrayEquals(new byte[] {1, 3, 4}, bytes);
+
+        buffer.reset();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.toByteArray().length);
+    }
+
+    @Test public void capacityFollowsRecentMessageSizes() {
+        EncodeBuffer buffer = new EncodeBuffer(16);
+        encode(buffer, 4000);
+        // the next message has room without growing
+        buffer.reset();
+        assertTrue(buffer.capacity() >= 4000, "capacity " + buffer.capacity());
+
+        // after many small messages the buffer shrinks back
+        for (int i = 0; i < 100; i++) encode(buffer, 10);
+        buffer.reset();
+        assertTrue(buffer.capacity() < 100, "capacity " + buffer.capacity());
+    }
+
+    @Test public void largeBuffersAreNotRetained() {
+        EncodeBuffer buffer = new EncodeBuffer(16);
+        encode(buffer, EncodeBuffer.MAX_RETAINED_SIZE * 4);
+        assertEquals(16, buffer.capacity());
+        // nor allocated again for the small messages which follow
+        for (int i = 0; i < 10; i++) {
+            buffer.reset();
+            assertTrue(buffer.capacity() <= EncodeBuffer.MAX_RETAINED_SIZE, "capacity " + buffer.capacity());
+            buffer.write(new byte[10], 0, 10);
+            buffer.toByteArray();
+        }
+    }
+
+    @Test public void bytesMessageBodyIsWrittenIntoTheBuffer() throws Exception {
+        byte[] body = new byte[10000];
+        Arrays.fill(body, (byte) 7);
+        RMQBytesMessage message = new RMQBytesMessage();
+        message.writeBytes(body);
+        RMQMessage rmqMessage = message;
+        rmqMessage.generateInternalID();
+
+        EncodeBuffer buffer = new EncodeBuffer();
+        byte[] amqp = rmqMessage.toAmqpByteArray(buffer);
+        assertArrayEquals(body, amqp);
+        byte[] jms = rmqMessage.toByteArray(buffer);
+        BytesMessage received = (BytesMessage) RMQMessage.fromMessage(jms, CompactMessageFormatTest.TRUSTED);
+        assertEquals(body.length, received.getBodyLength());
+    }
+
+    private static void encode(EncodeBuffer buffer, int size) {
+        buffer.reset();
+        buffer.write(new byte[size], 0, size);
+        assertEquals(size, buffer.toByteArray().length);
+    }
+}
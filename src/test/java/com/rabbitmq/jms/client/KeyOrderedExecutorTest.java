@@ -0,0 +1,53 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeyOrderedExecutorTest {
+
+    @Test public void tasksWithSameKeyRunInOrder() throws Exception {
+        KeyOrderedExecutor executor = new KeyOrderedExecutor(4, "test-");
+        int count = 1000;
+        List<Integer> a = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> b = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2 * count);
+        for (int i = 0; i < count; i++) {
+            final int n = i;
+            executor.execute("a", () -> { a.add(n); done.countDown(); });
+            executor.execute("b", () -> { b.add(n); done.countDown(); });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, a.get(i).intValue());
+            assertEquals(i, b.get(i).intValue());
+        }
+        executor.shutdown();
+    }
+
+    @Test public void differentKeysRunInParallel() throws Exception {
+        KeyOrderedExecutor executor = new KeyOrderedExecutor(2, "test-");
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(2);
+        Runnable task = () -> {
+            bothRunning.countDown();
+            try {
+                if (bothRunning.await(10, TimeUnit.SECONDS)) done.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        executor.execute("a", task);
+        executor.execute(null, task);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,285 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.client.message.RMQBytesMessage;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.jms.BytesMessage;
+import javax.jms.TextMessage;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+
+public class LargeMessageTest {
+
+    RMQSession session;
+    RMQDestination queue;
+    List<GetResponse> published;
+
+    @BeforeEach public void init() throws Exception {
+        session = Mockito.mock(RMQSession.class);
+        Mockito.when(session.getEncodeBuffer()).thenReturn(new EncodeBuffer());
+        Mockito.when(session.getMessageIdGenerator()).thenReturn(MessageIdGenerator.RANDOM_UUID);
+        Mockito.when(session.getPayloadCompression()).thenReturn(new PayloadCompression(0, null));
+        Mockito.when(session.getTrustedPackages()).thenReturn(CompactMessageFormatTest.TRUSTED);
+        Mockito.when(session.getLargeMessageChunkSize()).thenReturn(1000);
+        queue = new RMQDestination("large", true, false);
+        published = new ArrayList<>();
+        doAnswer(invocation -> {
+            published.add(new GetResponse(new Envelope(published.size() + 1, false, "", "large"),
+                invocation.getArgument(2), invocation.getArgument(3), 0));
+            return null;
+        }).when(session).publish(anyString(), anyString(), any(), any(), any(), any());
+    }
+
+    @Test public void largeBytesMessagesAreSentInChunksAndPutBackTogether() throws Exception {
+        for (boolean compact : new boolean[] {true, false}) {
+            published.clear();
+            Mockito.when(session.willUseCompactMessageFormat()).thenReturn(compact);
+            byte[] body = body(10000);
+            RMQBytesMessage sent = new RMQBytesMessage();
+            sent.writeBytes(body);
+            sent.setStringProperty("key", "value");
+            new RMQMessageProducer(session, queue).send(sent);
+
+            assertTrue(published.size() > 10, "chunks " + published.size());
+            for (int i = 0; i < published.size(); i++) {
+                GetResponse chunk = published.get(i);
+                assertTrue(chunk.getBody().length <= 1000);
+                assertEquals(sent.getJMSMessageID(), LargeMessageOutputStream.group(chunk.getProps().getHeaders()));
+                assertEquals(i, LargeMessageOutputStream.index(chunk.getProps().getHeaders()));
+                assertEquals(i == published.size() - 1, LargeMessageOutputStream.isLast(chunk.getProps().getHeaders()));
+            }
+
+            BytesMessage received = (BytesMessage) receive(new ChunkAssembler());
+            assertEquals(sent.getJMSMessageID(), received.getJMSMessageID());
+            assertEquals("value", received.getStringProperty("key"));
+            assertEquals(body.length, received.getBodyLength());
+            byte[] read = new byte[body.length];
+            assertEquals(body.length, received.readBytes(read));
+            assertArrayEquals(body, read);
+        }
+    }
+
+    @Test public void smallMessagesAreNotSplit() throws Exception {
+        RMQTextMessage sent = new RMQTextMessage();
+        sent.setText("small");
+        new RMQMessageProducer(session, queue).send(sent);
+        assertEquals(1, published.size());
+        assertFalse(LargeMessageOutputStream.isChunk(published.get(0).getProps().getHeaders()));
+    }
+
+    @Test public void otherMessagesAndCompressedPayloadsArePutBackTogetherInMemory() throws Exception {
+        Mockito.when(session.getPayloadCompression()).thenReturn(new PayloadCompression(1000, null));
+        String text = new String(PayloadCompressionTest.json(300000), "UTF-8");
+        RMQTextMessage sent = new RMQTextMessage();
+        sent.setText(text);
+        new RMQMessageProducer(session, queue).send(sent);
+
+        assertTrue(published.size() > 1);
+        assertEquals(PayloadCompression.DEFLATE, published.get(0).getProps().getContentEncoding());
+        assertEquals(text, ((TextMessage) receive(new ChunkAssembler())).getText());
+    }
+
+    @Test public void chunksAreStoredInAFileAboveTheSpillThreshold() throws Exception {
+        byte[] body = body(10000);
+        RMQBytesMessage sent = new RMQBytesMessage();
+        sent.writeBytes(body);
+        new RMQMessageProducer(session, queue).send(sent);
+
+        RMQBytesMessage received = (RMQBytesMessage) receive(new ChunkAssembler(2000));
+        assertEquals(body.length, received.getBodyLength());
+        try (InputStream in = received.getBodyInputStream()) {
+            assertArrayEquals(body, readAll(in));
+        }
+    }
+
+    @Test public void outputStreamSendsTheBodyAsItIsWritten() throws Exception {
+        RMQBytesMessage sent = new RMQBytesMessage();
+        sent.writeBytes(new byte[] {1, 2, 3});
+        sent.setIntProperty("part", 1);
+        byte[] rest = body(5000);
+        OutputStream out = new RMQMessageProducer(session, queue).createLargeMessageOutputStream(sent);
+        out.write(rest, 0, 2500);
+        assertTrue(published.size() >= 2); // full chunks are published as they are written
+        out.write(rest, 2500, 2500);
+        out.close();
+        for (GetResponse chunk : published.subList(0, published.size() - 1)) {
+            assertEquals(1000, chunk.getBody().length);
+        }
+
+        RMQBytesMessage received = (RMQBytesMessage) receive(new ChunkAssembler());
+        assertEquals(1, received.getIntProperty("part"));
+        assertEquals(5003, received.getBodyLength());
+        byte[] read = readAll(received.getBodyInputStream());
+        assertArrayEquals(new byte[] {1, 2, 3}, Arrays.copyOf(read, 3));
+        assertArrayEquals(rest, Arrays.copyOfRange(read, 3, read.length));
+    }
+
+    @Test public void groupWithoutItsFirstChunksIsRejected() throws Exception {
+        RMQBytesMessage sent = new RMQBytesMessage();
+        sent.writeBytes(body(3000));
+        new RMQMessageProducer(session, queue).send(sent);
+
+        ChunkAssembler assembler = new ChunkAssembler();
+        List<Long> rejected = new ArrayList<>();
+        for (GetResponse chunk : published.subList(1, published.size())) {
+            assertNull(assembler.add(chunk, 0, dtags -> add(rejected, dtags)));
+        }
+        assertEquals(tags(published.subList(1, published.size())), rejected);
+        assertEquals(0, assembler.pendingGroups());
+    }
+
+    @Test public void redeliveredGroupStartsAgain() throws Exception {
+        RMQBytesMessage sent = new RMQBytesMessage();
+        sent.writeBytes(body(3000));
+        new RMQMessageProducer(session, queue).send(sent);
+
+        ChunkAssembler assembler = new ChunkAssembler();
+        List<Long> rejected = new ArrayList<>();
+        assertNull(assembler.add(published.get(0), 0, dtags -> add(rejected, dtags)));
+        assertNull(assembler.add(published.get(1), 0, dtags -> add(rejected, dtags)));
+        assertTrue(rejected.isEmpty());
+        List<GetResponse> redelivered = redeliver(published);
+        ChunkAssembler.Chunks chunks = null;
+        for (GetResponse chunk : redelivered) {
+            chunks = assembler.add(chunk, 0, dtags -> add(rejected, dtags));
+        }
+        assertEquals(tags(published.subList(0, 2)), rejected); // the chunks replaced are not left unacknowledged
+        assertNotNull(chunks);
+        assertEquals(tags(redelivered), tags(chunks.getDeliveryTags()));
+        assertEquals(redelivered.get(redelivered.size() - 1).getEnvelope().getDeliveryTag(), chunks.getEnvelope().getDeliveryTag());
+    }
+
+    @Test public void groupWithAMissingChunkIsRejected() throws Exception {
+        RMQBytesMessage sent = new RMQBytesMessage();
+        sent.writeBytes(body(3000));
+        new RMQMessageProducer(session, queue).send(sent);
+
+        ChunkAssembler assembler = new ChunkAssembler();
+        List<Long> rejected = new ArrayList<>();
+        assertNull(assembler.add(published.get(0), 0, dtags -> add(rejected, dtags)));
+        for (GetResponse chunk : published.subList(2, published.size())) {
+            assertNull(assembler.add(chunk, 0, dtags -> add(rejected, dtags)));
+        }
+        List<Long> expected = tags(published);
+        expected.remove(1);
+        assertEquals(expected, rejected);
+        assertEquals(0, assembler.pendingGroups());
+    }
+
+    @Test public void messageWithMoreChunksThanThePrefetchIsRejectedWithoutStalling() throws Exception {
+        RMQBytesMessage large = new RMQBytesMessage();
+        large.writeBytes(body(10000));
+        new RMQMessageProducer(session, queue).send(large);
+        int largeChunks = published.size();
+        RMQBytesMessage small = new RMQBytesMessage();
+        small.writeBytes(body(2500));
+        new RMQMessageProducer(session, queue).send(small);
+
+        int prefetch = 4;
+        assertTrue(largeChunks > prefetch);
+        ChunkAssembler assembler = new ChunkAssembler();
+        List<Long> rejected = new ArrayList<>();
+        List<ChunkAssembler.Chunks> completed = new ArrayList<>();
+        int unacknowledged = 0;
+        for (GetResponse chunk : published) {
+            // the broker delivers no more than the prefetch without acknowledgements
+            assertTrue(unacknowledged < prefetch, "consumer stalled");
+            unacknowledged++;
+            int before = rejected.size();
+            ChunkAssembler.Chunks chunks = assembler.add(chunk, prefetch, dtags -> add(rejected, dtags));
+            unacknowledged -= rejected.size() - before;
+            if (chunks != null) {
+                completed.add(chunks);
+                unacknowledged -= chunks.getDeliveryTags().length;
+            }
+        }
+        assertEquals(tags(published.subList(0, largeChunks)), rejected);
+        assertEquals(1, completed.size());
+        assertEquals(tags(published.subList(largeChunks, published.size())), tags(completed.get(0).getDeliveryTags()));
+        assertEquals(0, assembler.pendingGroups());
+    }
+
+    @Test public void receivedMessageKeepsTheDeliveryTagsOfItsChunks() throws Exception {
+        RMQBytesMessage sent = new RMQBytesMessage();
+        sent.writeBytes(body(3000));
+        new RMQMessageProducer(session, queue).send(sent);
+
+        RMQMessage received = receive(new ChunkAssembler());
+        long[] tags = received.getChunkDeliveryTags();
+        assertEquals(published.size(), tags.length);
+        assertEquals(tags[tags.length - 1], received.getRabbitDeliveryTag());
+    }
+
+    private RMQMessage receive(ChunkAssembler assembler) throws Exception {
+        ChunkAssembler.Chunks chunks = null;
+        for (GetResponse chunk : published) {
+            assertNull(chunks);
+            chunks = assembler.add(chunk, 0, dtags -> { throw new AssertionError("rejected " + Arrays.toString(dtags)); });
+        }
+        assertNotNull(chunks);
+        assertEquals(0, assembler.pendingGroups());
+        return RMQMessage.convertChunkedMessage(session, chunks, ReceivingContextConsumer.NO_OP);
+    }
+
+    private static List<GetResponse> redeliver(List<GetResponse> responses) {
+        List<GetResponse> redelivered = new ArrayList<>();
+        for (GetResponse response : responses) {
+            Envelope envelope = response.getEnvelope();
+            redelivered.add(new GetResponse(new Envelope(envelope.getDeliveryTag() + 100, true, envelope.getExchange(),
+                envelope.getRoutingKey()), response.getProps(), response.getBody(), 0));
+        }
+        return redelivered;
+    }
+
+    private static List<Long> tags(List<GetResponse> responses) {
+        List<Long> tags = new ArrayList<>();
+        for (GetResponse response : responses) tags.add(response.getEnvelope().getDeliveryTag());
+        return tags;
+    }
+
+    private static List<Long> tags(long[] dtags) {
+        List<Long> tags = new ArrayList<>();
+        add(tags, dtags);
+        return tags;
+    }
+
+    private static void add(List<Long> tags, long[] dtags) {
+        for (long dtag : dtags) tags.add(dtag);
+    }
+
+    private static byte[] body(int size) {
+        byte[] body = new byte[size];
+        new Random(size).nextBytes(body);
+        return body;
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[777];
+        int n;
+        while ((n = in.read(buffer)) >= 0) out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,99 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import com.rabbitmq.jms.util.RMQJMSException;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.DeliveryMode;
+import javax.jms.TextMessage;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LazyMessageDecodingTest {
+
+    RMQSession session;
+
+    @BeforeEach public void init() {
+        session = mock(RMQSession.class);
+        when(session.getTrustedPackages()).thenReturn(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        when(session.willLazyMessageDecoding()).thenReturn(true);
+    }
+
+    @Test public void lazilyDecodedMessageMatchesSentMessage() throws Exception {
+        RMQMessage sent = textMessage();
+        RMQMessage received = receive(sent.toByteArray(), sent.toHeaders(), true, "reply-queue");
+
+        assertTrue(received instanceof TextMessage);
+        assertEquals(sent.getJMSMessageID(), received.getJMSMessageID());
+        assertEquals("value", received.getStringProperty("key"));
+        assertEquals(42, received.getIntProperty("number"));
+        assertEquals("type", received.getJMSType());
+        assertEquals(7, received.getJMSPriority());
+        assertEquals("correlation", received.getJMSCorrelationID());
+        assertTrue(received.getJMSRedelivered());
+        assertEquals("reply-queue", ((RMQDestination) received.getJMSReplyTo()).getAmqpQueueName());
+        assertEquals("hello", ((TextMessage) received).getText());
+    }
+
+    @Test public void headerFieldsAreAnsweredWithoutDecodingProperties() throws Exception {
+        RMQMessage sent = textMessage();
+        // only the class name and message ID: decoding the properties fails
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeUTF(RMQTextMessage.class.getName());
+        out.writeUTF(sent.getInternalID());
+        out.flush();
+        RMQMessage received = receive(bout.toByteArray(), sent.toHeaders(), false, null);
+
+        assertEquals("type", received.getJMSType());
+        assertEquals(7, received.getJMSPriority());
+        assertEquals("correlation", received.getJMSCorrelationID());
+        assertThrows(RMQJMSException.class, () -> received.getStringProperty("key"));
+    }
+
+    @Test public void bodyIsDecodedOnFirstBodyAccess() throws Exception {
+        RMQMessage sent = textMessage();
+        byte[] payload = sent.toByteArray();
+        // cut the end of the text: the properties decode, the body does not
+        RMQMessage received = receive(Arrays.copyOf(payload, payload.length - 2), sent.toHeaders(), false, null);
+
+        assertEquals("value", received.getStringProperty("key"));
+        assertThrows(RMQJMSException.class, () -> ((TextMessage) received).getText());
+    }
+
+    private RMQMessage receive(byte[] payload, Map<String, Object> headers, boolean redelivered, String replyTo) throws Exception {
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().headers(headers).replyTo(replyTo).build();
+        GetResponse response = new GetResponse(new Envelope(1L, redelivered, "", ""), props, payload, 0);
+        return RMQMessage.convertJmsMessage(session, response, ReceivingContextConsumer.NO_OP);
+    }
+
+    private static RMQMessage textMessage() throws Exception {
+        RMQTextMessage text = new RMQTextMessage();
+        text.setText("hello");
+        RMQMessage message = text;
+        message.setStringProperty("key", "value");
+        message.setIntProperty("number", 42);
+        message.setJMSType("type");
+        message.setJMSPriority(7);
+        message.setJMSDeliveryMode(DeliveryMode.PERSISTENT);
+        message.setJMSTimestamp(System.currentTimeMillis());
+        message.setJMSCorrelationID("correlation");
+        message.generateInternalID();
+        return message;
+    }
+}
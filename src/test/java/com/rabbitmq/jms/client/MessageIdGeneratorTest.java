@@ -0,0 +1,69 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageIdGeneratorTest {
+
+    @Test public void sequentialIdsAreCanonicalUuids() {
+        MessageIdGenerator generator = MessageIdGenerator.sequential();
+        for (int i = 0; i < 1000; i++) {
+            String id = generator.generate();
+            assertEquals(id, UUID.fromString(id).toString());
+        }
+    }
+
+    @Test public void sequentialIdsShareAPrefixAndCountUp() {
+        SequentialMessageIdGenerator generator = new SequentialMessageIdGenerator(new FixedRandom(0x0123456789abcdefL, -2L));
+        assertEquals("01234567-89ab-cdef-ffff-fffffffffffe", generator.generate());
+        assertEquals("01234567-89ab-cdef-ffff-ffffffffffff", generator.generate());
+        assertEquals("01234567-89ab-cdef-0000-000000000000", generator.generate());
+        assertEquals("01234567-89ab-cdef-0000-000000000001", generator.generate());
+    }
+
+    @Test public void generatorsHaveDifferentPrefixes() {
+        String first = MessageIdGenerator.sequential().generate();
+        String second = MessageIdGenerator.sequential().generate();
+        assertNotEquals(first.substring(0, 19), second.substring(0, 19));
+    }
+
+    @Test public void idsAreUniqueAcrossThreads() throws Exception {
+        MessageIdGenerator generator = MessageIdGenerator.sequential();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 10000; i++) ids.add(generator.generate());
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(40000, ids.size());
+    }
+
+    private static final class FixedRandom extends Random {
+        private final long[] values;
+        private int next = 0;
+
+        FixedRandom(long... values) {
+            this.values = values;
+        }
+
+        @Override
+        public long nextLong() {
+            return this.values[this.next++];
+        }
+    }
+}
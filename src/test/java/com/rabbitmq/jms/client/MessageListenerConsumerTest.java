@@ -0,0 +1,163 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.client.message.RMQBytesMessage;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.jms.BytesMessage;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MessageListenerConsumerTest {
+
+    RMQConnection connection;
+    Channel channel;
+    RMQSession session;
+    RMQMessageConsumer messageConsumer;
+    RMQDestination queue;
+
+    @BeforeEach public void init() throws Exception {
+        connection = mock(RMQConnection.class);
+        channel = mock(Channel.class);
+        when(connection.createRabbitChannel(anyBoolean())).thenReturn(channel);
+        when(connection.getChannelsQos()).thenReturn(RMQConnection.NO_CHANNEL_QOS);
+        session = new RMQSession(new SessionParams()
+            .setConnection(connection)
+            .setMode(Session.DUPS_OK_ACKNOWLEDGE)
+            .setOnMessageTimeoutMs(5000)
+            .setLargeMessageChunkSize(1000)
+            .setAckBatchSize(2));
+        queue = new RMQDestination("listened", true, false);
+        messageConsumer = mock(RMQMessageConsumer.class);
+        when(messageConsumer.getSession()).thenReturn(session);
+        when(messageConsumer.getDestination()).thenReturn(queue);
+        doAnswer(invocation -> {
+            session.explicitAck(invocation.getArgument(1));
+            return null;
+        }).when(messageConsumer).dealWithAcknowledgements(anyBoolean(), anyLong());
+    }
+
+    @AfterEach public void tearDown() throws Exception {
+        session.close();
+    }
+
+    @Test public void messageLeftUnacknowledgedByAFailedListenerIsNotCoveredByAMultipleAcknowledgement() throws Exception {
+        MessageListener listener = message -> {
+            try {
+                if ("fail".equals(((TextMessage) message).getText())) throw new IllegalStateException("listener failed");
+            } catch (javax.jms.JMSException e) {
+                throw new RuntimeException(e);
+            }
+        };
+        MessageListenerConsumer consumer = new MessageListenerConsumer(messageConsumer, channel, listener, 0L,
+            false, ReceivingContextConsumer.NO_OP);
+
+        deliver(consumer, 1L, "ok");
+        deliver(consumer, 2L, "fail");
+        deliver(consumer, 3L, "ok");
+        deliver(consumer, 4L, "ok");
+        session.flushPendingAcks();
+
+        verify(channel, times(1)).basicAck(1L, true);
+        verify(channel, never()).basicAck(longThat(tag -> tag >= 2L), eq(true));
+        verify(channel, never()).basicAck(eq(2L), anyBoolean());
+        verify(channel, times(1)).basicAck(3L, false);
+        verify(channel, times(1)).basicAck(4L, false);
+    }
+
+    @Test public void chunksHeldForALargeMessageAreNotCoveredByTheAcknowledgementOfALaterMessage() throws Exception {
+        List<GetResponse> chunks = chunks(3000);
+        assertTrue(chunks.size() > 2, "chunks " + chunks.size());
+        ChunkAssembler assembler = new ChunkAssembler();
+        when(messageConsumer.isChunk(any())).thenAnswer(invocation ->
+            LargeMessageOutputStream.isChunk(invocation.<GetResponse>getArgument(0).getProps().getHeaders()));
+        when(messageConsumer.assembleChunk(any(), anyInt())).thenAnswer(invocation ->
+            assembler.add(invocation.getArgument(0), 0, rejected -> { }));
+        List<Message> received = new ArrayList<>();
+        MessageListenerConsumer consumer = new MessageListenerConsumer(messageConsumer, channel, received::add, 0L,
+            false, ReceivingContextConsumer.NO_OP);
+
+        // the first chunks, then a normal message, then the last chunk
+        long tag = 0L;
+        for (GetResponse chunk : chunks.subList(0, chunks.size() - 1)) {
+            consumer.handleDelivery("tag", new Envelope(++tag, false, "", "listened"), chunk.getProps(), chunk.getBody());
+        }
+        long normal = ++tag;
+        deliver(consumer, normal, "ok");
+        session.flushPendingAcks();
+
+        assertEquals(1, received.size());
+        verify(channel, never()).basicAck(anyLong(), eq(true));
+        verify(channel, times(1)).basicAck(normal, false);
+
+        GetResponse last = chunks.get(chunks.size() - 1);
+        long lastTag = ++tag;
+        consumer.handleDelivery("tag", new Envelope(lastTag, false, "", "listened"), last.getProps(), last.getBody());
+        session.flushPendingAcks();
+
+        assertEquals(2, received.size());
+        assertEquals(3000L, ((BytesMessage) received.get(1)).getBodyLength());
+        verify(channel, times(1)).basicAck(lastTag, true);
+    }
+
+    /**
+     * @return the chunks of a large message sent on the session
+     */
+    private List<GetResponse> chunks(int size) throws Exception {
+        RMQBytesMessage message = new RMQBytesMessage();
+        message.writeBytes(new byte[size]);
+        new RMQMessageProducer(session, queue).send(message);
+        ArgumentCaptor<AMQP.BasicProperties> props = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        ArgumentCaptor<byte[]> bodies = ArgumentCaptor.forClass(byte[].class);
+        verify(channel, atLeastOnce()).basicPublish(anyString(), anyString(), props.capture(), bodies.capture());
+        List<GetResponse> chunks = new ArrayList<>();
+        for (int i = 0; i < bodies.getAllValues().size(); i++) {
+            chunks.add(new GetResponse(null, props.getAllValues().get(i), bodies.getAllValues().get(i), 0));
+        }
+        return chunks;
+    }
+
+    static void deliver(MessageListenerConsumer consumer, long deliveryTag, String text) throws Exception {
+        RMQTextMessage textMessage = new RMQTextMessage();
+        textMessage.setText(text);
+        RMQMessage message = textMessage;
+        message.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message.setJMSPriority(4);
+        message.setJMSTimestamp(System.currentTimeMillis());
+        message.generateInternalID();
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().headers(message.toHeaders()).build();
+        consumer.handleDelivery("tag", new Envelope(deliveryTag, false, "", "listened"), props, message.toByteArray());
+    }
+}
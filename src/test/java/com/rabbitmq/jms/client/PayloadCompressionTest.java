@@ -0,0 +1,157 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.util.RMQJMSException;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.BytesMessage;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PayloadCompressionTest {
+
+    private static final RMQDestination QUEUE = new RMQDestination("queue", true, false);
+    private static final RMQDestination COMPRESSED = new RMQDestination("compressed", true, false);
+    static {
+        COMPRESSED.setCompressionThreshold(100);
+    }
+
+    @Test public void payloadsAboveTheThresholdAreCompressed() throws Exception {
+        PayloadCompression compression = new PayloadCompression(1000, null);
+        byte[] small = json(900);
+        byte[] large = json(5000);
+        assertNull(compression.compress(QUEUE, small));
+
+        byte[] compressed = compression.compress(QUEUE, large);
+        assertNotNull(compressed);
+        assertTrue(compressed.length * 4 < large.length, "compressed to " + compressed.length + " bytes");
+        assertArrayEquals(large, compression.decompress(PayloadCompression.DEFLATE, compressed));
+    }
+
+    @Test public void payloadsThatDoNotShrinkAreNotCompressed() {
+        PayloadCompression compression = new PayloadCompression(10, null);
+        byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+        assertNull(compression.compress(QUEUE, random));
+    }
+
+    @Test public void destinationThresholdOverridesTheConnectionThreshold() {
+        PayloadCompression compression = new PayloadCompression(0, null);
+        RMQDestination compressed = new RMQDestination("compressed", true, false);
+        compressed.setCompressionThreshold(100);
+        RMQDestination uncompressed = new RMQDestination("uncompressed", true, false);
+        uncompressed.setCompressionThreshold(0);
+        byte[] data = json(1000);
+
+        assertNull(compression.compress(QUEUE, data));
+        assertNotNull(compression.compress(compressed, data));
+        assertNull(new PayloadCompression(100, null).compress(uncompressed, data));
+    }
+
+    @Test public void otherContentEncodingsAreLeftAsTheyAre() throws Exception {
+        PayloadCompression compression = new PayloadCompression(0, null);
+        byte[] data = json(100);
+        assertSame(data, compression.decompress("utf-8", data));
+    }
+
+    @Test public void truncatedPayloadIsRejected() {
+        PayloadCompression compression = new PayloadCompression(100, null);
+        byte[] compressed = compression.compress(QUEUE, json(10000));
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+        assertThrows(DataFormatException.class, () -> compression.decompress(PayloadCompression.DEFLATE, truncated));
+        // the pooled inflater is still usable
+        assertThrows(DataFormatException.class, () -> compression.decompress(PayloadCompression.DEFLATE, truncated));
+    }
+
+    @Test public void payloadsDecompressingAboveTheMaximumAreRejected() throws Exception {
+        byte[] bomb = new PayloadCompression(100, null).compress(QUEUE, new byte[1024 * 1024]);
+        assertTrue(bomb.length < 2048, "compressed to " + bomb.length + " bytes");
+        PayloadCompression compression = new PayloadCompression(0, 100000, null);
+        assertThrows(RMQJMSException.class, () -> compression.decompress(PayloadCompression.DEFLATE, bomb));
+        // payloads up to the maximum are decompressed
+        byte[] data = json(100000);
+        assertArrayEquals(data, compression.decompress(PayloadCompression.DEFLATE, compression.compress(COMPRESSED, data)));
+    }
+
+    @Test public void amqpMessagesAreOnlyDecompressedWhenTheDestinationIsCompressed() throws Exception {
+        PayloadCompression compression = new PayloadCompression(0, null);
+        RMQSession session = mock(RMQSession.class);
+        when(session.getPayloadCompression()).thenReturn(compression);
+        byte[] data = json(1000);
+        byte[] compressed = compression.compress(COMPRESSED, data);
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().contentEncoding(PayloadCompression.DEFLATE).build();
+        GetResponse response = new GetResponse(new Envelope(1L, false, "x", "k"), props, compressed, 0);
+
+        RMQDestination amqp = new RMQDestination("amqp", "x", "k", "amqp");
+        assertArrayEquals(compressed, body(RMQMessage.convertMessage(session, amqp, response, ReceivingContextConsumer.NO_OP)));
+        amqp.setCompressionThreshold(100);
+        assertArrayEquals(data, body(RMQMessage.convertMessage(session, amqp, response, ReceivingContextConsumer.NO_OP)));
+    }
+
+    @Test public void ratiosAreReportedToTheMetricsCollector() throws Exception {
+        CompressionMetricsCollector collector = mock(CompressionMetricsCollector.class);
+        PayloadCompression compression = new PayloadCompression(100, collector);
+        byte[] data = json(2000);
+        byte[] compressed = compression.compress(QUEUE, data);
+        compression.decompress(PayloadCompression.DEFLATE, compressed);
+        verify(collector).compressed(QUEUE, data.length, compressed.length);
+        verify(collector).decompressed(compressed.length, data.length);
+    }
+
+    @Test public void compressionIsThreadSafe() throws Exception {
+        PayloadCompression compression = new PayloadCompression(100, null);
+        byte[][] payloads = new byte[8][];
+        for (int i = 0; i < payloads.length; i++) payloads[i] = json(1000 + i * 500);
+        Thread[] threads = new Thread[8];
+        Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads.length; t++) {
+            byte[] payload = payloads[t];
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        byte[] compressed = compression.compress(QUEUE, payload);
+                        assertArrayEquals(payload, compression.decompress(PayloadCompression.DEFLATE, compressed));
+                    }
+                } catch (Throwable e) {
+                    failure[0] = e;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertNull(failure[0]);
+        compression.close();
+    }
+
+    private static byte[] body(RMQMessage message) throws Exception {
+        byte[] body = new byte[(int) ((BytesMessage) message).getBodyLength()];
+        ((BytesMessage) message).readBytes(body);
+        return body;
+    }
+
+    static byte[] json(int size) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; json.length() < size - 1; i++) {
+            json.append("{\"id\":").append(i).append(",\"name\":\"item\",\"active\":true},");
+        }
+        json.setLength(size - 1);
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,189 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.Message;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PublisherConfirmsTest {
+
+    Channel channel;
+    PublisherConfirms confirms;
+    long nextSeqNo;
+    List<String> events;
+
+    @BeforeEach public void init() {
+        channel = mock(Channel.class);
+        nextSeqNo = 1;
+        when(channel.getNextPublishSeqNo()).thenAnswer(invocation -> nextSeqNo);
+        events = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @Test public void listenersAreCalledInSendOrder() throws Exception {
+        confirms = new PublisherConfirms(channel, 0);
+        for (int i = 1; i <= 3; i++) send(i);
+        assertEquals(3, confirms.unconfirmedCount());
+
+        confirms.handleAck(2, false);
+        assertTrue(events.isEmpty(), "message 2 completed before message 1");
+        confirms.handleAck(1, false);
+        assertEquals(list("ok 1", "ok 2"), events);
+        confirms.handleAck(3, false);
+        assertEquals(list("ok 1", "ok 2", "ok 3"), events);
+        assertTrue(confirms.awaitConfirms(0));
+    }
+
+    @Test public void multipleConfirmCompletesEarlierMessages() throws Exception {
+        confirms = new PublisherConfirms(channel, 0);
+        for (int i = 1; i <= 4; i++) send(i);
+
+        confirms.handleNack(2, true);
+        confirms.handleAck(3, false);
+        assertEquals(list("rejected 1", "rejected 2", "ok 3"), events);
+        assertEquals(1, confirms.unconfirmedCount());
+        assertFalse(confirms.awaitConfirms(10));
+    }
+
+    @Test public void sendWaitsWhileTooManyMessagesAreUnconfirmed() throws Exception {
+        confirms = new PublisherConfirms(channel, 2);
+        send(1);
+        send(2);
+
+        CountDownLatch sent = new CountDownLatch(1);
+        Thread sender = new Thread(() -> {
+            try {
+                send(3);
+                sent.countDown();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        sender.start();
+        assertFalse(sent.await(100, TimeUnit.MILLISECONDS), "send did not wait for a confirm");
+        confirms.handleAck(1, false);
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        sender.join();
+        assertEquals(2, confirms.unconfirmedCount());
+    }
+
+    @Test public void channelShutdownFailsUnconfirmedMessages() throws Exception {
+        confirms = new PublisherConfirms(channel, 0);
+        send(1);
+        send(2);
+        confirms.handleAck(1, false);
+        confirms.shutdownCompleted(new ShutdownSignalException(false, false, null, channel));
+        assertEquals(list("ok 1", "failed 2"), events);
+        assertEquals(0, confirms.unconfirmedCount());
+    }
+
+    @Test public void confirmsAreHandledWhileAPublicationIsBlocked() throws Exception {
+        confirms = new PublisherConfirms(channel, 0);
+        send(1);
+
+        CountDownLatch publishing = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        Thread sender = new Thread(() -> {
+            try {
+                RMQTextMessage message = new RMQTextMessage();
+                message.setText("2");
+                confirms.publish(message, new RecordingListener(), () -> {
+                    publishing.countDown();
+                    try {
+                        unblock.await(); // e.g. flow control
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    nextSeqNo++;
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        sender.start();
+        assertTrue(publishing.await(5, TimeUnit.SECONDS));
+        Thread confirmer = new Thread(() -> confirms.handleAck(1, false));
+        confirmer.start();
+        confirmer.join(5000);
+        assertFalse(confirmer.isAlive(), "confirm blocked by the publication");
+        assertEquals(list("ok 1"), events);
+
+        unblock.countDown();
+        sender.join();
+        confirms.handleAck(2, false);
+        assertEquals(list("ok 1", "ok 2"), events);
+    }
+
+    @Test public void messageNotPublishedIsForgotten() throws Exception {
+        confirms = new PublisherConfirms(channel, 1);
+        RMQTextMessage message = new RMQTextMessage();
+        message.setText("1");
+        assertThrows(IOException.class, () -> confirms.publish(message, new RecordingListener(), () -> {
+            throw new IOException("connection lost");
+        }));
+        assertEquals(0, confirms.unconfirmedCount());
+        send(1); // does not wait for the message not published
+        confirms.handleAck(1, false);
+        assertEquals(list("ok 1"), events);
+    }
+
+    @Test public void messagePublishedAsTheChannelClosesIsFailed() throws Exception {
+        confirms = new PublisherConfirms(channel, 0);
+        RMQTextMessage message = new RMQTextMessage();
+        message.setText("1");
+        confirms.publish(message, new RecordingListener(), () -> {
+            nextSeqNo++;
+            confirms.shutdownCompleted(new ShutdownSignalException(false, false, null, channel));
+            assertTrue(events.isEmpty(), "failed before it was published");
+        });
+        assertEquals(list("failed 1"), events);
+    }
+
+    private void send(int n) throws Exception {
+        RMQTextMessage message = new RMQTextMessage();
+        message.setText(String.valueOf(n));
+        confirms.publish(message, new RecordingListener(), () -> nextSeqNo++);
+    }
+
+    private static List<String> list(String... events) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, events);
+        return list;
+    }
+
+    private class RecordingListener implements CompletionListener {
+        @Override
+        public void onCompletion(Message message) {
+            events.add("ok " + text(message));
+        }
+
+        @Override
+        public void onException(Message message, Exception exception) {
+            events.add((exception.getCause() instanceof ShutdownSignalException ? "failed " : "rejected ") + text(message));
+        }
+
+        private String text(Message message) {
+            try {
+                return ((RMQTextMessage) message).getText();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
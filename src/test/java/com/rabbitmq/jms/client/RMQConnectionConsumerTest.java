@@ -0,0 +1,137 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.util.Abortable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageListener;
+import javax.jms.ServerSession;
+import javax.jms.ServerSessionPool;
+import javax.jms.Session;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RMQConnectionConsumerTest {
+
+    RMQConnection connection;
+    RMQSession session;
+    Channel channel;
+    RMQMessageConsumer messageConsumer;
+    RMQDestination destination;
+    ServerSessionPool pool;
+    ServerSession serverSession;
+    RMQSession serverRmqSession;
+    MessageListener listener;
+
+    @BeforeEach public void init() throws Exception {
+        connection = mock(RMQConnection.class);
+        session = mock(RMQSession.class);
+        channel = mock(Channel.class);
+        messageConsumer = mock(RMQMessageConsumer.class);
+        destination = mock(RMQDestination.class);
+        pool = mock(ServerSessionPool.class);
+        serverSession = mock(ServerSession.class);
+        serverRmqSession = mock(RMQSession.class);
+        listener = mock(MessageListener.class);
+
+        when(connection.createSession(false, Session.AUTO_ACKNOWLEDGE)).thenReturn(session);
+        when(session.getChannel()).thenReturn(channel);
+        when(session.createConsumer(any(Destination.class), any())).thenReturn(messageConsumer);
+        when(messageConsumer.getDestination()).thenReturn(destination);
+        when(messageConsumer.getReceivingContextConsumer()).thenReturn(ReceivingContextConsumer.NO_OP);
+        when(destination.isAmqp()).thenReturn(true);
+        when(pool.getServerSession()).thenReturn(serverSession);
+        when(serverSession.getSession()).thenReturn(serverRmqSession);
+    }
+
+    @Test public void messageIsLoadedIntoServerSessionAndAcknowledgedAfterRun() throws Exception {
+        new RMQConnectionConsumer(connection, destination, null, null, pool, 1);
+        deliver(subscription(), 42L);
+
+        verify(serverSession, times(1)).start();
+        RMQConnectionConsumer.Delivery delivery = loaded();
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        delivery.deliverTo(serverRmqSession, listener);
+        verify(serverRmqSession, times(1)).deliverMessage(any(RMQMessage.class), any(MessageListener.class));
+        verify(channel, times(1)).basicAck(42L, false);
+    }
+
+    @Test public void listenerExceptionNacksWhenRequeueing() throws Exception {
+        when(session.willRequeueOnMessageListenerException()).thenReturn(true);
+        doThrow(new RMQMessageListenerExecutionJMSException("onMessage threw exception", new RuntimeException()))
+            .when(serverRmqSession).deliverMessage(any(RMQMessage.class), any(MessageListener.class));
+        new RMQConnectionConsumer(connection, destination, null, null, pool, 1);
+        deliver(subscription(), 7L);
+
+        loaded().deliverTo(serverRmqSession, listener);
+        verify(session, times(1)).explicitNack(7L);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test public void listenerExceptionLeavesMessageUnacknowledgedWhenNotRequeueing() throws Exception {
+        when(session.willRequeueOnMessageListenerException()).thenReturn(false);
+        doThrow(new RMQMessageListenerExecutionJMSException("onMessage threw exception", new RuntimeException()))
+            .when(serverRmqSession).deliverMessage(any(RMQMessage.class), any(MessageListener.class));
+        new RMQConnectionConsumer(connection, destination, null, null, pool, 1);
+        deliver(subscription(), 8L);
+
+        loaded().deliverTo(serverRmqSession, listener);
+        verify(session, never()).explicitNack(anyLong());
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test public void messageIsNackedWhenNoServerSessionIsAvailable() throws Exception {
+        when(pool.getServerSession()).thenThrow(new JMSException("pool closed"));
+        new RMQConnectionConsumer(connection, destination, null, null, pool, 1);
+        deliver(subscription(), 3L);
+
+        verify(session, times(1)).explicitNack(3L);
+        verify(serverRmqSession, never()).loadMessage(any());
+    }
+
+    @Test public void closeCancelsSubscriptionAndClosesSession() throws Exception {
+        RMQConnectionConsumer connectionConsumer = new RMQConnectionConsumer(connection, destination, null, null, pool, 1);
+        subscription();
+        connectionConsumer.close();
+        verify(channel, times(1)).basicCancel(anyString());
+        verify(session, times(1)).close();
+    }
+
+    private Consumer subscription() throws Exception {
+        ArgumentCaptor<Abortable> captor = ArgumentCaptor.forClass(Abortable.class);
+        verify(messageConsumer).addSubscription(captor.capture());
+        Abortable subscription = captor.getValue();
+        subscription.start();
+        verify(messageConsumer).basicConsume(any(Consumer.class), anyString());
+        return (Consumer) subscription;
+    }
+
+    private RMQConnectionConsumer.Delivery loaded() {
+        ArgumentCaptor<RMQConnectionConsumer.Delivery> captor = ArgumentCaptor.forClass(RMQConnectionConsumer.Delivery.class);
+        verify(serverRmqSession).loadMessage(captor.capture());
+        return captor.getValue();
+    }
+
+    private static void deliver(Consumer consumer, long tag) throws Exception {
+        consumer.handleDelivery("tag", new Envelope(tag, false, "", ""), new AMQP.BasicProperties.Builder().build(), new byte[0]);
+    }
+}
@@ -0,0 +1,78 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.jms.admin.RMQDestination;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.Message;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RMQMessageConsumerTest {
+
+    RMQSession session;
+    Channel channel;
+    RMQDestination destination;
+
+    @BeforeEach public void init() {
+        session = mock(RMQSession.class);
+        channel = mock(Channel.class);
+        destination = mock(RMQDestination.class);
+        RMQConnection connection = mock(RMQConnection.class);
+        when(session.getChannel()).thenReturn(channel);
+        when(session.getConnection()).thenReturn(connection);
+        when(session.syncAllowed()).thenReturn(true);
+        when(destination.isAmqp()).thenReturn(true);
+        when(destination.isQueue()).thenReturn(true);
+        when(destination.getAmqpQueueName()).thenReturn("q");
+    }
+
+    @Test public void receiveBatchReturnsAvailableMessagesInOrder() throws Exception {
+        when(session.isAutoAck()).thenReturn(true);
+        when(channel.basicGet("q", false)).thenReturn(response(1L), response(2L), response(3L), null);
+        RMQMessageConsumer consumer = consumer();
+
+        List<Message> messages = consumer.receiveBatch(10, 1000);
+        assertEquals(3, messages.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1L, ((RMQMessage) messages.get(i)).getRabbitDeliveryTag());
+            verify(session, times(1)).explicitAck(i + 1L);
+        }
+    }
+
+    @Test public void receiveBatchStopsAtMax() throws Exception {
+        when(channel.basicGet("q", false)).thenReturn(response(1L), response(2L), response(3L), null);
+        RMQMessageConsumer consumer = consumer();
+
+        assertEquals(2, consumer.receiveBatch(2, 1000).size());
+        verify(session, times(1)).unackedMessageReceived(1L);
+        verify(session, times(1)).unackedMessageReceived(2L);
+        verify(channel, times(2)).basicGet("q", false);
+    }
+
+    @Test public void receiveBatchIsEmptyOnTimeout() throws Exception {
+        RMQMessageConsumer consumer = consumer();
+        assertTrue(consumer.receiveBatch(5, 50).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> consumer.receiveBatch(0, 50));
+    }
+
+    private RMQMessageConsumer consumer() {
+        return new RMQMessageConsumer(session, destination, "uuid", false, null, false, ReceivingContextConsumer.NO_OP, 0);
+    }
+
+    private static GetResponse response(long dtag) {
+        return new GetResponse(new Envelope(dtag, false, "", "q"), new AMQP.BasicProperties.Builder().build(), new byte[0], 0);
+    }
+}
@@ -1,20 +1,35 @@
 /* Copyright (c) 2017 Pivotal Software, Inc. All rights reserved. */
 package com.rabbitmq.jms.client;
 
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
 import com.rabbitmq.jms.admin.RMQDestination;
 import com.rabbitmq.jms.client.message.RMQTextMessage;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import javax.jms.DeliveryMode;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 /**
  *
@@ -26,6 +41,9 @@ public class RMQMessageProducerTest {
 
     @BeforeEach public void init() {
         session = Mockito.mock(RMQSession.class);
+        Mockito.when(session.getEncodeBuffer()).thenReturn(new EncodeBuffer());
+        Mockito.when(session.getMessageIdGenerator()).thenReturn(MessageIdGenerator.RANDOM_UUID);
+        Mockito.when(session.getPayloadCompression()).thenReturn(new PayloadCompression(0, null));
         destination = Mockito.mock(RMQDestination.class);
     }
 
@@ -96,6 +114,149 @@ public class RMQMessageProducerTest {
         assertEquals(expiration, message.getJMSExpiration());
     }
 
+    @Test public void batchIsPublishedInOrderAndDestinationDeclaredOnce() throws Exception {
+        RMQDestination queue = new RMQDestination("batch", true, false);
+        RMQMessageProducer producer = new RMQMessageProducer(session, queue, false);
+        producer.setPriority(9);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            RMQTextMessage message = new RMQTextMessage();
+            message.setText("message " + i);
+            messages.add(message);
+        }
+        messages.get(1).setJMSPriority(1);
+
+        producer.sendBatch(null, messages);
+
+        verify(session, times(1)).declareDestinationIfNecessary(queue);
+        ArgumentCaptor<AMQP.BasicProperties> props = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(session, times(3)).publish(eq(queue.getAmqpExchangeName()), eq("batch"), props.capture(), any(byte[].class), sent.capture(), any());
+        assertEquals(messages, sent.getAllValues());
+        assertEquals(Integer.valueOf(9), props.getAllValues().get(0).getPriority());
+        assertEquals(Integer.valueOf(1), props.getAllValues().get(1).getPriority());
+        assertEquals(Integer.valueOf(9), props.getAllValues().get(2).getPriority());
+        assertNull(props.getAllValues().get(0).getExpiration());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(messages.get(i).getJMSMessageID(), props.getAllValues().get(i).getHeaders().get("JMSMessageID"));
+        }
+    }
+
+    @Test public void batchIsSentLikeSingleMessages() throws Exception {
+        Mockito.when(session.getPayloadCompression()).thenReturn(new PayloadCompression(1000, null));
+        Mockito.when(session.willUseCompactMessageFormat()).thenReturn(true);
+        List<SendingContext> contexts = new ArrayList<>();
+        RMQDestination queue = new RMQDestination("batch", true, false);
+        RMQMessageProducer producer = new RMQMessageProducer(session, queue, false, null, contexts::add);
+        String text = new String(PayloadCompressionTest.json(5000), "UTF-8");
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            RMQTextMessage message = new RMQTextMessage();
+            message.setText(text);
+            messages.add(message);
+        }
+
+        producer.send(messages.get(0));
+        producer.sendBatch(null, messages.subList(1, 2));
+
+        ArgumentCaptor<AMQP.BasicProperties> props = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        verify(session, times(2)).publish(anyString(), eq("batch"), props.capture(), any(), any(), any());
+        for (AMQP.BasicProperties sent : props.getAllValues()) {
+            assertEquals(PayloadCompression.DEFLATE, sent.getContentEncoding());
+            assertEquals(CompactMessageFormat.CONTENT_TYPE, sent.getContentType());
+        }
+        assertEquals(2, contexts.size());
+        for (SendingContext context : contexts) {
+            assertEquals(queue, context.getDestination());
+        }
+    }
+
+    @Test public void confirmedBatchFailsIfAnyMessageIsRejected() throws Exception {
+        RMQDestination queue = new RMQDestination("batch", true, false);
+        RMQMessageProducer producer = new RMQMessageProducer(session, queue);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 3; i++) messages.add(new RMQTextMessage());
+        doAnswer(invocation -> {
+            Message message = invocation.getArgument(4);
+            CompletionListener listener = invocation.getArgument(5);
+            if (message == messages.get(1)) listener.onException(message, new Exception("nack"));
+            else listener.onCompletion(message);
+            return null;
+        }).when(session).publish(anyString(), anyString(), any(), any(), any(), any());
+
+        JMSException e = assertThrows(JMSException.class, () -> producer.sendBatch(null, messages, 1000L));
+        assertEquals("nack", e.getCause().getMessage());
+        verify(session, times(3)).publish(anyString(), anyString(), any(), any(), any(), any());
+    }
+
+    @Test public void confirmedBatchTimesOutIfMessagesAreNotConfirmed() throws Exception {
+        RMQDestination queue = new RMQDestination("batch", true, false);
+        RMQMessageProducer producer = new RMQMessageProducer(session, queue);
+        List<Message> messages = new ArrayList<>();
+        messages.add(new RMQTextMessage());
+        assertThrows(JMSException.class, () -> producer.sendBatch(null, messages, 10L));
+    }
+
+    @Test public void messageIdsComeFromTheSessionGenerator() throws Exception {
+        Mockito.when(session.getMessageIdGenerator()).thenReturn(() -> "generated");
+        RMQDestination queue = new RMQDestination("ids", true, false);
+        RMQMessageProducer producer = new RMQMessageProducer(session, queue, false);
+        RMQTextMessage message = new RMQTextMessage();
+        producer.send(message);
+        assertEquals("ID:generated", message.getJMSMessageID());
+    }
+
+    @Test public void noMessageIdIsGeneratedWhenDisabled() throws Exception {
+        RMQDestination queue = new RMQDestination("ids", true, false);
+        RMQMessageProducer producer = new RMQMessageProducer(session, queue, false);
+        RMQTextMessage message = new RMQTextMessage();
+        message.setText("no id");
+        producer.send(message);
+        assertTrue(message.getJMSMessageID().startsWith("ID:"));
+
+        producer.setDisableMessageID(true);
+        producer.send(message);
+        assertNull(message.getJMSMessageID());
+
+        ArgumentCaptor<AMQP.BasicProperties> props = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        ArgumentCaptor<byte[]> body = ArgumentCaptor.forClass(byte[].class);
+        verify(session, times(2)).publish(anyString(), eq("ids"), props.capture(), body.capture(), any(), any());
+        assertTrue(props.getAllValues().get(0).getHeaders().containsKey("JMSMessageID"));
+        assertFalse(props.getAllValues().get(1).getHeaders().containsKey("JMSMessageID"));
+        RMQMessage received = RMQMessage.fromMessage(body.getAllValues().get(1), CompactMessageFormatTest.TRUSTED);
+        assertNull(received.getJMSMessageID());
+        assertNull(received.getInternalID());
+        assertEquals("no id", ((RMQTextMessage) received).getText());
+    }
+
+    @Test public void largePayloadsAreCompressedAndDecompressedOnReceive() throws Exception {
+        PayloadCompression compression = new PayloadCompression(1000, null);
+        Mockito.when(session.getPayloadCompression()).thenReturn(compression);
+        Mockito.when(session.getTrustedPackages()).thenReturn(CompactMessageFormatTest.TRUSTED);
+        Mockito.when(session.willUseCompactMessageFormat()).thenReturn(true);
+        RMQDestination queue = new RMQDestination("compressed", true, false);
+        RMQMessageProducer producer = new RMQMessageProducer(session, queue, false);
+        String text = new String(PayloadCompressionTest.json(10000), "UTF-8");
+        RMQTextMessage small = new RMQTextMessage();
+        small.setText("small");
+        RMQTextMessage large = new RMQTextMessage();
+        large.setText(text);
+        producer.send(small);
+        producer.send(large);
+
+        ArgumentCaptor<AMQP.BasicProperties> props = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        ArgumentCaptor<byte[]> body = ArgumentCaptor.forClass(byte[].class);
+        verify(session, times(2)).publish(anyString(), eq("compressed"), props.capture(), body.capture(), any(), any());
+        assertNull(props.getAllValues().get(0).getContentEncoding());
+        assertEquals(PayloadCompression.DEFLATE, props.getAllValues().get(1).getContentEncoding());
+        assertTrue(body.getAllValues().get(1).length * 4 < text.length());
+
+        GetResponse response = new GetResponse(new Envelope(1L, false, "", "compressed"), props.getAllValues().get(1),
+            body.getAllValues().get(1), 0);
+        RMQMessage received = RMQMessage.convertJmsMessage(session, response, ReceivingContextConsumer.NO_OP);
+        assertEquals(text, ((RMQTextMessage) received).getText());
+    }
+
     static class StubRMQMessageProducer extends RMQMessageProducer {
 
         RMQMessage message;
@@ -105,7 +266,8 @@ public class RMQMessageProducerTest {
         }
 
         @Override
-        protected void sendJMSMessage(RMQDestination destination, RMQMessage msg, int deliveryMode, int priority, long timeToLive) throws JMSException {
+        protected void sendJMSMessage(RMQDestination destination, RMQMessage msg, int deliveryMode, int priority, long timeToLive,
+                                      CompletionListener completionListener) throws JMSException {
             this.message = msg;
         }
     }
@@ -0,0 +1,141 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.parse.sql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+public class SqlEvaluatorTest {
+
+    @Test
+    public void comparisonsAndArithmetic() {
+        Map<String, Object> env = env("a", 7, "b", 2L, "d", 1.5, "s", "abc");
+        assertEval(true, "a > b AND d < a", env);
+        assertEval(true, "a / b = 3", env);              // integer division
+        assertEval(true, "a / 2.0 = 3.5", env);
+        assertEval(true, "a * b - 4 = 10 AND -b < 0", env);
+        assertEval(true, "d BETWEEN 1 AND 2 AND a NOT BETWEEN 1 AND 5", env);
+        assertEval(true, "s IN ('x', 'abc') AND s NOT IN ('y')", env);
+        assertEval(true, "s = 'abc' AND s <> 'abd'", env);
+        assertEval(false, "s = a", env);
+        assertEval(false, "a / 0 = 1", env);             // unknown
+    }
+
+    @Test
+    public void threeValuedLogic() {
+        Map<String, Object> env = env("t", true, "f", false);
+        assertEval(true, "missing IS NULL AND t IS NOT NULL", env);
+        assertEval(false, "missing > 1", env);
+        assertEval(false, "NOT (missing > 1)", env);      // not unknown is unknown
+        assertEval(true, "missing > 1 OR t", env);
+        assertEval(false, "missing > 1 AND t", env);
+        assertEval(true, "NOT (missing > 1 AND f)", env); // unknown and false is false
+    }
+
+    @Test
+    public void likePatterns() {
+        Map<String, Object> env = env("s", "EU-west_1", "n", 3);
+        assertEval(true, "s LIKE 'EU%'", env);
+        assertEval(true, "s LIKE '_U-w%1'", env);
+        assertEval(true, "s LIKE '%west!_1' ESCAPE '!'", env);
+        assertEval(false, "s LIKE 'EU-west!_' ESCAPE '!'", env);
+        assertEval(true, "s NOT LIKE 'US%'", env);
+        assertEval(true, "s LIKE 'EU.%'  OR s LIKE 'EU-west_1'", env);
+        assertEval(false, "s LIKE 'EU.%'", env);          // regular expression characters match themselves
+        assertEval(false, "n LIKE '3'", env);             // unknown
+    }
+
+    @Test
+    public void constantSubexpressionsAreFolded() {
+        assertTrue(compile("2 * 3 + 1 > 6 AND NOT 1.5 < 1") instanceof SqlClosure.Constant);
+        assertTrue(compile("1 > 2 AND n > 3") instanceof SqlClosure.Constant);
+        SqlClosure comparison = compile("n > 2 * 3");
+        assertTrue(comparison instanceof SqlClosure.Comparison);
+        assertEquals(SqlClosure.TRUE, comparison.truth(env("n", 7)));
+        assertEquals(SqlClosure.FALSE, comparison.truth(env("n", 6)));
+    }
+
+    @Test
+    public void literalLikePatternsAreMatchedWithoutRegularExpressions() {
+        assertTrue(compile("s LIKE 'EU%'") instanceof SqlClosure.LiteralLike);
+        String[][] cases = {
+            // pattern, matching, not matching
+            { "'EU%'",                  "EU-west",  "US-EU"     },
+            { "'%west'",                "EU-west",  "westerly"  },
+            { "'%-we%'",                "EU-west",  "EUwest"    },
+            { "'EU-west'",              "EU-west",  "EU-wes"    },
+            { "'%'",                    "",         null        },
+            { "'E_-%'",                 "EU-west",  "E-west"    },
+            { "'%!%' ESCAPE '!'",       "100%",     "100"       },
+            { "'a!_%' ESCAPE '!'",      "a_b",      "ab"        },
+            { "'a%b%c'",                "a-b-c",    "a-c-b"     },
+        };
+        for (String[] c : cases) {
+            SqlEvaluator evaluator = evaluator("s LIKE " + c[0]);
+            assertTrue(evaluator.evaluate(env("s", c[1])), c[0] + " on " + c[1]);
+            if (c[2] != null) assertFalse(evaluator.evaluate(env("s", c[2])), c[0] + " on " + c[2]);
+        }
+    }
+
+    @Test
+    public void largeInListsAreHashed() {
+        StringBuilder selector = new StringBuilder("region LIKE 'EU%' AND sku IN (");
+        for (int i = 0; i < 200; i++) selector.append(i == 0 ? "" : ", ").append("'sku-").append(i).append('\'');
+        selector.append(')');
+        SqlEvaluator evaluator = evaluator(selector.toString());
+        assertTrue(evaluator.evaluate(env("region", "EU-west", "sku", "sku-199")));
+        assertFalse(evaluator.evaluate(env("region", "EU-west", "sku", "sku-200")));
+        assertFalse(evaluator.evaluate(env("region", "US-east", "sku", "sku-1")));
+    }
+
+    @Test
+    public void evaluatorIsReentrant() throws Exception {
+        final SqlEvaluator evaluator = evaluator("n > 100 AND s LIKE 'k%'");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int t = 0; t < futures.length; t++) {
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        boolean expected = i > 100 && i % 2 == 0;
+                        assertEquals(expected, evaluator.evaluate(env("n", i, "s", i % 2 == 0 ? "key" : "value")));
+                    }
+                });
+            }
+            for (Future<?> future : futures) future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertEval(boolean expected, String selector, Map<String, Object> env) {
+        assertEquals(expected, evaluator(selector).evaluate(env), selector);
+    }
+
+    private static SqlClosure compile(String selector) {
+        return SqlClosure.compile(evaluator(selector).typedParseTree());
+    }
+
+    private static SqlEvaluator evaluator(String selector) {
+        SqlEvaluator evaluator = new SqlEvaluator(new SqlParser(new SqlTokenStream(selector)),
+            Collections.<String, SqlExpressionType> emptyMap());
+        assertTrue(evaluator.evaluatorOk(), selector);
+        assertFalse(evaluator.typedParseTree() == null);
+        return evaluator;
+    }
+
+    private static Map<String, Object> env(Object... keysAndValues) {
+        Map<String, Object> env = new HashMap<String, Object>();
+        for (int i = 0; i < keysAndValues.length; i += 2) env.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        return env;
+    }
+}
@@ -0,0 +1,70 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.parse.sql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class SqlSelectorCacheTest {
+
+    private static final Map<String, SqlExpressionType> NO_TYPES = Collections.emptyMap();
+
+    @Test
+    public void sameSelectorAndTypesShareOneEntry() {
+        SqlSelectorCache cache = new SqlSelectorCache(10, 1L << 20);
+        SqlSelectorCache.CompiledSelector first = cache.get("region = 'EU' AND size > 10", NO_TYPES);
+        assertTrue(first.evaluator().evaluatorOk());
+        assertTrue(first.compiler().compileOk());
+        assertSame(first, cache.get("region = 'EU' AND size > 10", NO_TYPES));
+        assertNotSame(first, cache.get("region = 'EU' AND size > 10",
+            Collections.singletonMap("region", SqlExpressionType.STRING)));
+        assertEquals(1, cache.hitCount());
+        assertEquals(2, cache.missCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void invalidSelectorsCarryTheirError() {
+        SqlSelectorCache cache = new SqlSelectorCache(10, 1L << 20);
+        SqlSelectorCache.CompiledSelector compiled = cache.get("size >", NO_TYPES);
+        assertFalse(compiled.evaluator().evaluatorOk());
+        assertFalse(compiled.compiler().compileOk());
+        assertSame(compiled, cache.get("size >", NO_TYPES));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() {
+        SqlSelectorCache cache = new SqlSelectorCache(2, 1L << 20);
+        SqlSelectorCache.CompiledSelector a = cache.get("a > 1", NO_TYPES);
+        cache.get("b > 1", NO_TYPES);
+        cache.get("a > 1", NO_TYPES);  // b is now least recently used
+        cache.get("c > 1", NO_TYPES);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertSame(a, cache.get("a > 1", NO_TYPES));
+        long misses = cache.missCount();
+        cache.get("b > 1", NO_TYPES);
+        assertEquals(misses + 1, cache.missCount());
+    }
+
+    @Test
+    public void weightIsBounded() {
+        long oneEntry = new SqlSelectorCache.CompiledSelector("n0 > 1", NO_TYPES).weight();
+        SqlSelectorCache cache = new SqlSelectorCache(100, 3 * oneEntry);
+        for (int i = 0; i < 10; i++) cache.get("n" + i + " > 1", NO_TYPES);
+        assertEquals(3, cache.size());
+        assertTrue(cache.weight() <= 3 * oneEntry);
+
+        // too heavy to keep at all
+        SqlSelectorCache.CompiledSelector heavy = cache.get("n0 > 1 AND n1 > 1 AND n2 > 1 AND n3 > 1", NO_TYPES);
+        assertTrue(heavy.evaluator().evaluatorOk());
+        assertEquals(3, cache.size());
+    }
+}
@@ -0,0 +1,82 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.parse.sql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.rabbitmq.jms.parse.Multiples.Pair;
+
+/**
+ * Checks that {@link SqlTokenScanner} tokenises exactly as the {@link SqlTokenType} patterns do.
+ */
+public class SqlTokenScannerTest {
+
+    private static final String[] FRAGMENTS = {
+        " ", "  ", "\t", "\n", "\u000B", "\f", "\r",
+        "like", "LIKE", "Like", "likes", "like.", "not", "NOT", "nothing", "in", "IN", "inner", "is", "IS", "isnull",
+        "null", "NULL", "between", "BETWEEN", "and", "AND", "or", "OR", "escape", "ESCAPE", "true", "TRUE", "false",
+        "False", "a", "b.c", "_x", "$y", "JMSType", "x1", "é",
+        "0", "1", "42", "007", ".", "e", "E", "e2", "E-3", "+", "-", "f", "F", "d", "D", "x", "0x1F", "1.", "2.5",
+        "'", "''", "'abc'", "'it''s'", "%",
+        "=", "<>", "<=", ">=", "<", ">", "*", "/", ",", "(", ")", "~", "!", "?",
+    };
+
+    @Test
+    public void examplesTokeniseAsPatternsDo() {
+        String[] examples = {
+            "",
+            "1 2.0 2.1e-1 name is null  'hello world''s'  2e2 2.e2 2D 2.0f",
+            "nothing IS NULL", "IS  NOT NULL", "IS\u000BNOT NULL", "\n\t\f\r\u000BIS NULLify \n",
+            " ~ABC='abc'", "abc'", "'a''", "'a''b''c", "'a'''", "'unterminated",
+            "2.e2", "1.5e-", "1.5e-x", "1.e", "3.f", "3.x", "3e", "3E+4", "3.5D", "0x1F", "1like", "x.like",
+            "IS foo", "is not nullx", "is not", "NOT LIKEx", "not\tlike", "not  between 1 and 2", "not innings",
+            "like.", "a <> b AND c <= d OR e >= f", "JMSPriority > 4 AND region LIKE 'EU%' ESCAPE '!'",
+            "size NOT IN ('a', 'b') AND -x * (y + 2) / 3 <>4",
+            "naïve = 1", "x = 1 # comment",
+        };
+        for (String example : examples) {
+            assertSameTokens(example);
+        }
+    }
+
+    @Test
+    public void generatedSelectorsTokeniseAsPatternsDo() {
+        Random random = new Random(4242);
+        for (int length = 100; length <= 10000; length *= 10) {
+            for (int i = 0; i < 200; i++) {
+                StringBuilder sb = new StringBuilder();
+                while (sb.length() < length) sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                assertSameTokens(sb.toString());
+            }
+        }
+    }
+
+    @Test
+    public void wellFormedSelectorsAreTokenisedCompletely() {
+        StringBuilder sb = new StringBuilder("JMSPriority > 4");
+        while (sb.length() < 10000) {
+            sb.append(" AND (region LIKE 'EU%' OR size NOT BETWEEN 1.5e3 AND 2000 OR name IS NOT NULL)");
+        }
+        Pair<List<SqlToken>, CharSequence> scanned = SqlTokenScanner.tokenize(sb);
+        assertEquals("", scanned.right().toString());
+        assertSameTokens(sb.toString());
+    }
+
+    private static void assertSameTokens(String selector) {
+        Pair<List<SqlToken>, CharSequence> expected = SqlTokenStream.tokenizeWithPatterns(selector);
+        Pair<List<SqlToken>, CharSequence> actual = SqlTokenScanner.tokenize(selector);
+        assertEquals(describe(expected.left()), describe(actual.left()), selector);
+        assertEquals(expected.right().toString(), actual.right().toString(), selector);
+    }
+
+    private static List<String> describe(List<SqlToken> tokens) {
+        List<String> descriptions = new ArrayList<String>(tokens.size());
+        for (SqlToken token : tokens) descriptions.add(token.type() + " " + token);
+        return descriptions;
+    }
+}
@@ -0,0 +1,108 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the {@link SequenceSet} of delivery tags, against a {@link TreeSet}.
+ */
+public class TestSequenceSet {
+
+    @Test
+    public void testAddContainsRemove() {
+        SequenceSet set = new SequenceSet();
+        assertTrue(set.isEmpty());
+        assertEquals(-1L, set.last());
+        assertEquals(-1L, set.first());
+        assertTrue(set.add(1L));
+        assertFalse(set.add(1L));
+        assertTrue(set.add(65L));
+        assertTrue(set.add(200L));
+        assertEquals(3, set.size());
+        assertEquals(200L, set.last());
+        assertEquals(1L, set.first());
+        assertTrue(set.contains(65L));
+        assertFalse(set.contains(64L));
+
+        assertTrue(set.remove(200L));
+        assertEquals(65L, set.last());
+        assertFalse(set.remove(200L));
+        assertTrue(set.remove(1L));
+        assertTrue(set.remove(65L));
+        assertTrue(set.isEmpty());
+        assertEquals(-1L, set.last());
+    }
+
+    @Test
+    public void testFloorAndRemoveUpTo() {
+        SequenceSet set = new SequenceSet();
+        for (long tag = 10; tag <= 300; tag += 10) set.add(tag);
+        assertEquals(-1L, set.floor(9L));
+        assertEquals(10L, set.floor(19L));
+        assertEquals(130L, set.floor(135L));
+        assertEquals(300L, set.floor(1000L));
+
+        assertEquals(13, set.removeUpTo(135L));
+        assertFalse(set.contains(130L));
+        assertTrue(set.contains(140L));
+        assertEquals(17, set.size());
+        assertEquals(140L, set.first());
+        assertEquals(17, set.removeUpTo(Long.MAX_VALUE));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void testAddBelowRange() {
+        SequenceSet set = new SequenceSet();
+        set.add(1000L);
+        set.add(3L);
+        set.add(500L);
+        assertEquals(3, set.size());
+        assertEquals(3L, set.floor(499L));
+        assertEquals(1000L, set.last());
+        assertTrue(set.remove(3L));
+        assertEquals(500L, set.floor(999L));
+    }
+
+    @Test
+    public void testManyOutstandingTagsAgainstTreeSet() {
+        Random random = new Random(42);
+        SequenceSet set = new SequenceSet();
+        SortedSet<Long> reference = new TreeSet<Long>();
+        long nextTag = 1L;
+        for (int round = 0; round < 20; ++round) {
+            // receive a batch of messages, leaving more than 10000 unacknowledged
+            for (int i = 0; i < 12000; ++i) {
+                long tag = nextTag++;
+                set.add(tag);
+                reference.add(tag);
+            }
+            // individual acknowledgements
+            for (int i = 0; i < 2000; ++i) {
+                long tag = nextTag - 1 - random.nextInt(12000);
+                assertEquals(reference.remove(tag), set.remove(tag));
+            }
+            assertEquals(reference.size(), set.size());
+            assertEquals(reference.last().longValue(), set.last());
+            // group acknowledgement up to a point
+            long upTo = nextTag - 1 - random.nextInt(6000);
+            SortedSet<Long> head = reference.headSet(upTo + 1);
+            assertEquals(head.isEmpty() ? -1L : head.last().longValue(), set.floor(upTo));
+            int removed = head.size();
+            head.clear();
+            assertEquals(removed, set.removeUpTo(upTo));
+            assertEquals(reference.size(), set.size());
+            assertEquals(reference.first().longValue(), set.first());
+            assertEquals(reference.first().longValue(), set.floor(reference.first()));
+        }
+        for (Long tag : reference) assertTrue(set.contains(tag));
+    }
+}
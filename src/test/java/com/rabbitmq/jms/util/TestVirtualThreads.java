@@ -0,0 +1,28 @@
+/* Copyright (c) 2018 Pivotal Software, Inc. All rights reserved. */
+package com.rabbitmq.jms.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test {@link VirtualThreads} on whatever JVM runs the tests.
+ */
+public class TestVirtualThreads {
+
+    @Test
+    public void testThreadFactoryMatchesSupport() throws Exception {
+        ThreadFactory factory = VirtualThreads.threadFactory("test-virtual-");
+        if (!VirtualThreads.isSupported()) {
+            assertNull(factory);
+            return;
+        }
+        Thread thread = factory.newThread(() -> { });
+        assertTrue(thread.getName().startsWith("test-virtual-"));
+        assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(thread));
+    }
+}